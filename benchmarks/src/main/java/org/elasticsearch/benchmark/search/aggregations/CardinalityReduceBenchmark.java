@@ -0,0 +1,109 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search.aggregations;
+
+import com.carrotsearch.hppc.BitMixer;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the coordinating node does with the cardinality counters of shard responses: reading them from the wire and
+ * merging them into a single counter.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class CardinalityReduceBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    // 16 is what a precision_threshold of 40000 resolves to
+    @Param({"14", "16"})
+    public int precision = 16;
+
+    // distinct values per shard response
+    @Param({"100", "5000", "100000"})
+    public int cardinality = 5000;
+
+    @Param({"20"})
+    public int shards = 20;
+
+    // the version of the wire format, 6.x nodes only understand full registers
+    @Param({"current", "6.2"})
+    public String wireFormat = "current";
+
+    private Version version;
+    private BytesReference[] responses;
+
+    @Setup
+    public void setUp() throws IOException {
+        version = "current".equals(wireFormat) ? Version.CURRENT : Version.V_6_2_0;
+        Random random = new Random(42);
+        responses = new BytesReference[shards];
+        for (int i = 0; i < shards; i++) {
+            try (HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(precision, BigArrays.NON_RECYCLING_INSTANCE, 1);
+                 BytesStreamOutput out = new BytesStreamOutput()) {
+                for (int j = 0; j < cardinality; j++) {
+                    counts.collect(0, BitMixer.mix64(random.nextLong()));
+                }
+                out.setVersion(version);
+                counts.writeTo(0, out);
+                responses[i] = out.bytes();
+            }
+        }
+    }
+
+    @Benchmark
+    public long reduce() throws IOException {
+        try (HyperLogLogPlusPlus reduced = new HyperLogLogPlusPlus(precision, BigArrays.NON_RECYCLING_INSTANCE, 1)) {
+            for (BytesReference response : responses) {
+                try (StreamInput in = response.streamInput()) {
+                    in.setVersion(version);
+                    try (HyperLogLogPlusPlus counts = HyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE)) {
+                        reduced.merge(0, counts, 0);
+                    }
+                }
+            }
+            return reduced.cardinality(0);
+        }
+    }
+}
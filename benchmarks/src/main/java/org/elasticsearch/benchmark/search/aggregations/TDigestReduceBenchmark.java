@@ -0,0 +1,93 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search.aggregations;
+
+import org.elasticsearch.search.aggregations.metrics.percentiles.tdigest.TDigestState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reducing the digests of shard responses of the percentiles aggregation by adding every centroid of every digest to
+ * a new digest with merging the sorted centroids of all digests in a single pass.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class TDigestReduceBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({"50", "500"})
+    public int shards = 500;
+
+    // values collected by every shard
+    @Param({"10000"})
+    public int values = 10000;
+
+    @Param({"100"})
+    public double compression = 100;
+
+    private List<TDigestState> digests;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        digests = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            TDigestState digest = new TDigestState(compression);
+            for (int j = 0; j < values; j++) {
+                digest.add(random.nextGaussian());
+            }
+            digest.compress();
+            digests.add(digest);
+        }
+    }
+
+    @Benchmark
+    public double addCentroids() {
+        TDigestState merged = new TDigestState(compression);
+        for (TDigestState digest : digests) {
+            merged.add(digest);
+        }
+        return merged.quantile(0.99);
+    }
+
+    @Benchmark
+    public double mergeSorted() {
+        return TDigestState.merge(compression, digests).quantile(0.99);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays an update heavy indexing trace against the {@link LiveVersionMap}, once backed by concurrent hash maps and once backed by the
+ * {@link PackedVersionLookup}. The benchmark lives in the package of the version map since the map is package private.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class LiveVersionMapBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({"false", "true"})
+    public boolean packed = false;
+
+    // number of distinct ids that are updated over and over again
+    @Param({"1000", "100000"})
+    public int numIds = 1000;
+
+    @Param({"1000000"})
+    public int numOperations = 1000000;
+
+    // number of operations between two refreshes
+    @Param({"10000"})
+    public int refreshInterval = 10000;
+
+    // percentage of operations that are deletes
+    @Param({"0", "10"})
+    public int deletePercentage = 0;
+
+    private BytesRef[] uids;
+    private int[] trace;
+    private boolean[] deletes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        uids = new BytesRef[numIds];
+        for (int i = 0; i < numIds; i++) {
+            uids[i] = new BytesRef(Long.toString(random.nextLong() & Long.MAX_VALUE).getBytes(StandardCharsets.UTF_8));
+        }
+        trace = new int[numOperations];
+        deletes = new boolean[numOperations];
+        for (int i = 0; i < numOperations; i++) {
+            trace[i] = random.nextInt(numIds);
+            deletes[i] = random.nextInt(100) < deletePercentage;
+        }
+    }
+
+    @Benchmark
+    public long replayTrace() throws IOException {
+        LiveVersionMap map = new LiveVersionMap(packed);
+        long maxRamBytesUsed = 0;
+        for (int i = 0; i < numOperations; i++) {
+            BytesRef uid = uids[trace[i]];
+            VersionValue previous = map.getUnderLock(uid);
+            long version = previous == null ? 1 : previous.version + 1;
+            if (deletes[i]) {
+                map.putUnderLock(uid, new DeleteVersionValue(version, i, 1, i));
+            } else {
+                map.putUnderLock(uid, new VersionValue(version, i, 1));
+            }
+            if ((i + 1) % refreshInterval == 0) {
+                maxRamBytesUsed = Math.max(maxRamBytesUsed, map.ramBytesUsed());
+                map.beforeRefresh();
+                map.afterRefresh(true);
+            }
+        }
+        return maxRamBytesUsed;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.index.fielddata.FieldData;
+import org.elasticsearch.index.fielddata.NumericDoubleValues;
+import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares collecting a numeric field into a sum per document with collecting it in blocks through
+ * {@link BufferingBucketCollector}. The collector mirrors the leaf collector of the sum aggregation since building real
+ * aggregators needs a full search context. The benchmark lives in the package of the buffering collector since it is package
+ * private.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class BulkCollectBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({"1000000"})
+    public int numDocs = 1_000_000;
+
+    // "all" matches every document, "half" only every other one
+    @Param({"all", "half"})
+    public String matches = "all";
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+    private Query query;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = new RAMDirectory();
+        Random random = new Random(42);
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            for (int i = 0; i < numDocs; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("parity", i % 2 == 0 ? "even" : "odd", Field.Store.NO));
+                doc.add(new SortedNumericDocValuesField("value", NumericUtils.doubleToSortableLong(random.nextDouble())));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+        searcher.setQueryCache(null);
+        query = "all".equals(matches) ? new MatchAllDocsQuery() : new TermQuery(new Term("parity", "even"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Benchmark
+    public double perDoc() throws IOException {
+        SumCollector collector = new SumCollector();
+        searcher.search(query, collector);
+        return collector.sums.get(0);
+    }
+
+    @Benchmark
+    public double blocks() throws IOException {
+        SumCollector collector = new SumCollector();
+        BufferingBucketCollector buffering = new BufferingBucketCollector(collector);
+        searcher.search(query, buffering);
+        buffering.postCollection();
+        return collector.sums.get(0);
+    }
+
+    private static class SumCollector extends BucketCollector {
+        private final BigArrays bigArrays = BigArrays.NON_RECYCLING_INSTANCE;
+        private DoubleArray sums = bigArrays.newDoubleArray(1, true);
+
+        @Override
+        public LeafBucketCollector getLeafCollector(LeafReaderContext ctx) throws IOException {
+            final SortedNumericDoubleValues values =
+                FieldData.sortableLongBitsToDoubles(DocValues.getSortedNumeric(ctx.reader(), "value"));
+            final NumericDoubleValues singleton = FieldData.unwrapSingleton(values);
+            return new LeafBucketCollector() {
+                @Override
+                public void collect(int doc, long bucket) throws IOException {
+                    sums = bigArrays.grow(sums, bucket + 1);
+                    if (values.advanceExact(doc)) {
+                        final int valuesCount = values.docValueCount();
+                        double sum = 0;
+                        for (int i = 0; i < valuesCount; i++) {
+                            sum += values.nextValue();
+                        }
+                        sums.increment(bucket, sum);
+                    }
+                }
+
+                @Override
+                public void collect(int[] docs, int count, long bucket) throws IOException {
+                    sums = bigArrays.grow(sums, bucket + 1);
+                    double sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        if (singleton.advanceExact(docs[i])) {
+                            sum += singleton.doubleValue();
+                        }
+                    }
+                    sums.increment(bucket, sum);
+                }
+            };
+        }
+
+        @Override
+        public void preCollection() {
+        }
+
+        @Override
+        public void postCollection() {
+        }
+
+        @Override
+        public boolean needsScores() {
+            return false;
+        }
+    }
+}
@@ -54,6 +54,7 @@ import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.Mapping;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.seqno.SequenceNumbers;
@@ -61,10 +62,13 @@ import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.TypeMissingException;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportRequestOptions;
 import org.elasticsearch.transport.TransportService;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.function.LongSupplier;
 
@@ -118,12 +122,24 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
             MappingUpdatePerformer mappingUpdater) throws Exception {
         final IndexMetaData metaData = primary.indexSettings().getIndexMetaData();
         Translog.Location location = null;
+        // on append-only indices, consecutive index requests with auto-generated ids are handed to the shard as one batch
+        final boolean batchIndexRequests = primary.indexSettings().isAppendOnly();
+        final List<Engine.Index> batch = new ArrayList<>();
+        final List<Integer> batchSlots = new ArrayList<>();
         for (int requestIndex = 0; requestIndex < request.items().length; requestIndex++) {
             if (isAborted(request.items()[requestIndex].getPrimaryResponse()) == false) {
-                location = executeBulkItemRequest(metaData, primary, request, location, requestIndex,
-                    updateHelper, nowInMillisSupplier, mappingUpdater);
+                final DocWriteRequest itemRequest = request.items()[requestIndex].request();
+                if (batchIndexRequests && canIndexInBatch(itemRequest)) {
+                    location = executeOrBatchIndexRequest((IndexRequest) itemRequest, primary, request, location, requestIndex,
+                        mappingUpdater, batch, batchSlots);
+                } else {
+                    location = executeIndexBatch(primary, request, location, batch, batchSlots);
+                    location = executeBulkItemRequest(metaData, primary, request, location, requestIndex,
+                        updateHelper, nowInMillisSupplier, mappingUpdater);
+                }
             }
         }
+        location = executeIndexBatch(primary, request, location, batch, batchSlots);
         BulkItemResponse[] responses = new BulkItemResponse[request.items().length];
         BulkItemRequest[] items = request.items();
         for (int i = 0; i < items.length; i++) {
@@ -138,6 +154,13 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
                                                             final IndexShard primary,
                                                             final MappingUpdatePerformer mappingUpdater) throws Exception {
         Engine.IndexResult indexResult = executeIndexRequestOnPrimary(indexRequest, primary, mappingUpdater);
+        return createIndexResultHolder(indexRequest, bulkItemRequest, primary, indexResult);
+    }
+
+    private static BulkItemResultHolder createIndexResultHolder(final IndexRequest indexRequest,
+                                                                final BulkItemRequest bulkItemRequest,
+                                                                final IndexShard primary,
+                                                                final Engine.IndexResult indexResult) {
         if (indexResult.hasFailure()) {
             return new BulkItemResultHolder(null, indexResult, bulkItemRequest);
         } else {
@@ -261,6 +284,88 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         return calculateTranslogLocation(location, responseHolder);
     }
 
+    /**
+     * Returns whether the given item may be indexed as part of a batch, which is the case for index requests with auto-generated ids
+     * that aren't retries. These are the requests that the engine of an append-only index can index together, see
+     * {@link Engine#bulk(List)}.
+     */
+    static boolean canIndexInBatch(DocWriteRequest itemRequest) {
+        if (itemRequest.opType() != DocWriteRequest.OpType.INDEX && itemRequest.opType() != DocWriteRequest.OpType.CREATE) {
+            return false;
+        }
+        final IndexRequest request = (IndexRequest) itemRequest;
+        return request.getAutoGeneratedTimestamp() != IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP && request.isRetry() == false;
+    }
+
+    /**
+     * Parses an index request and adds it to the pending batch. A request that fails to parse or needs a mapping update is executed on
+     * its own instead, after the pending batch, so that items are still executed in order. The document is not parsed again unless
+     * the mapping was updated.
+     */
+    private static Translog.Location executeOrBatchIndexRequest(IndexRequest indexRequest, IndexShard primary,
+                                                                BulkShardRequest request, Translog.Location location, int requestIndex,
+                                                                MappingUpdatePerformer mappingUpdater, List<Engine.Index> batch,
+                                                                List<Integer> batchSlots) throws Exception {
+        final SourceToParse sourceToParse =
+            SourceToParse.source(indexRequest.index(), indexRequest.type(), indexRequest.id(), indexRequest.source(),
+                indexRequest.getContentType()).routing(indexRequest.routing()).parent(indexRequest.parent());
+        final Engine.Index operation;
+        try {
+            operation = primary.prepareIndexOnPrimary(indexRequest.version(), indexRequest.versionType(), sourceToParse,
+                indexRequest.getAutoGeneratedTimestamp(), indexRequest.isRetry());
+        } catch (MapperParsingException | IllegalArgumentException | TypeMissingException e) {
+            location = executeIndexBatch(primary, request, location, batch, batchSlots);
+            return recordIndexResult(primary, request, location, requestIndex,
+                new Engine.IndexResult(e, indexRequest.version(), SequenceNumbers.UNASSIGNED_SEQ_NO));
+        }
+        final Mapping update = operation.parsedDoc().dynamicMappingsUpdate();
+        if (update == null) {
+            batch.add(operation);
+            batchSlots.add(requestIndex);
+            return location;
+        }
+        location = executeIndexBatch(primary, request, location, batch, batchSlots);
+        try {
+            mappingUpdater.updateMappings(update, primary.shardId(), sourceToParse.type());
+        } catch (MapperParsingException | IllegalArgumentException | TypeMissingException e) {
+            // the master might also throw a MapperParsingException when updating the mapping
+            return recordIndexResult(primary, request, location, requestIndex,
+                new Engine.IndexResult(e, indexRequest.version(), SequenceNumbers.UNASSIGNED_SEQ_NO));
+        }
+        // the document is parsed again with the updated mapping
+        final Engine.IndexResult indexResult = primary.applyIndexOperationOnPrimary(indexRequest.version(),
+            indexRequest.versionType(), sourceToParse, indexRequest.getAutoGeneratedTimestamp(), indexRequest.isRetry(),
+            mappingUpdate -> mappingUpdater.verifyMappings(mappingUpdate, primary.shardId()));
+        return recordIndexResult(primary, request, location, requestIndex, indexResult);
+    }
+
+    /** Executes the pending batch of index operations, if any, and records the responses of the corresponding bulk items */
+    private static Translog.Location executeIndexBatch(IndexShard primary, BulkShardRequest request, Translog.Location location,
+                                                       List<Engine.Index> batch, List<Integer> batchSlots) throws Exception {
+        if (batch.isEmpty()) {
+            return location;
+        }
+        final List<Engine.IndexResult> results = primary.applyIndexOperationsOnPrimary(batch);
+        for (int i = 0; i < results.size(); i++) {
+            location = recordIndexResult(primary, request, location, batchSlots.get(i), results.get(i));
+        }
+        batch.clear();
+        batchSlots.clear();
+        return location;
+    }
+
+    private static Translog.Location recordIndexResult(IndexShard primary, BulkShardRequest request, Translog.Location location,
+                                                       int requestIndex, Engine.IndexResult indexResult) {
+        final BulkItemRequest item = request.items()[requestIndex];
+        final IndexRequest indexRequest = (IndexRequest) item.request();
+        final BulkItemResultHolder responseHolder = createIndexResultHolder(indexRequest, item, primary, indexResult);
+        final BulkItemResponse primaryResponse = createPrimaryResponse(responseHolder, indexRequest.opType(), request);
+        if (primaryResponse != null) {
+            item.setPrimaryResponse(primaryResponse);
+        }
+        return calculateTranslogLocation(location, responseHolder);
+    }
+
     private static boolean isAborted(BulkItemResponse response) {
         return response != null && response.isFailed() && response.getFailure().isAborted();
     }
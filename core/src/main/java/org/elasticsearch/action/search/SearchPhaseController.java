@@ -32,6 +32,7 @@ import org.apache.lucene.search.TermStatistics;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.grouping.CollapseTopFieldDocs;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.collect.HppcMaps;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.settings.Settings;
@@ -626,6 +627,7 @@ public final class SearchPhaseController extends AbstractComponent {
         private final SearchPhaseController controller;
         private int numReducePhases = 0;
         private final TopDocsStats topDocsStats = new TopDocsStats();
+        private final SearchTask task;
 
         /**
          * Creates a new {@link QueryPhaseResultConsumer}
@@ -633,9 +635,10 @@ public final class SearchPhaseController extends AbstractComponent {
          * @param expectedResultSize the expected number of query results. Corresponds to the number of shards queried
          * @param bufferSize the size of the reduce buffer. if the buffer size is smaller than the number of expected results
          *                   the buffer is used to incrementally reduce aggregation results before all shards responded.
+         * @param task the task of the search request that is notified of the progress of the query phase, or <code>null</code>
          */
         private QueryPhaseResultConsumer(SearchPhaseController controller, int expectedResultSize, int bufferSize,
-                                         boolean hasTopDocs, boolean hasAggs) {
+                                         boolean hasTopDocs, boolean hasAggs, @Nullable SearchTask task) {
             super(expectedResultSize);
             if (expectedResultSize != 1 && bufferSize < 2) {
                 throw new IllegalArgumentException("buffer size must be >= 2 if there is more than one expected result");
@@ -653,7 +656,10 @@ public final class SearchPhaseController extends AbstractComponent {
             this.hasTopDocs = hasTopDocs;
             this.hasAggs = hasAggs;
             this.bufferSize = bufferSize;
-
+            this.task = task;
+            if (task != null) {
+                task.onQueryPhaseStart(expectedResultSize);
+            }
         }
 
         @Override
@@ -679,16 +685,30 @@ public final class SearchPhaseController extends AbstractComponent {
                 }
                 numReducePhases++;
                 index = 1;
+                if (task != null) {
+                    task.onPartialReduce(hasAggs ? aggsBuffer[0] : null, numReducePhases);
+                }
             }
             final int i = index++;
             if (hasAggs) {
                 aggsBuffer[i] = (InternalAggregations) querySearchResult.consumeAggs();
             }
+            final long shardHits;
             if (hasTopDocs) {
                 final TopDocs topDocs = querySearchResult.consumeTopDocs(); // can't be null
                 topDocsStats.add(topDocs);
+                shardHits = topDocs.totalHits;
                 SearchPhaseController.setShardIndex(topDocs, querySearchResult.getShardIndex());
                 topDocsBuffer[i] = topDocs;
+            } else if (querySearchResult.hasConsumedTopDocs() == false) {
+                // the top docs are consumed by the final reduce
+                shardHits = querySearchResult.topDocs().totalHits;
+            } else {
+                shardHits = 0;
+            }
+            if (task != null) {
+                // the hits of this shard count right away, not only once they were reduced incrementally
+                task.onShardQueryResult(shardHits);
             }
         }
 
@@ -703,6 +723,9 @@ public final class SearchPhaseController extends AbstractComponent {
 
         @Override
         public ReducedQueryPhase reduce() {
+            if (task != null) {
+                task.onFinalReduce();
+            }
             return controller.reducedQueryPhase(results.asList(), getRemainingAggs(), getRemainingTopDocs(), topDocsStats,
                 numReducePhases, false);
         }
@@ -721,6 +744,15 @@ public final class SearchPhaseController extends AbstractComponent {
      * Returns a new ArraySearchPhaseResults instance. This might return an instance that reduces search responses incrementally.
      */
     InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult> newSearchPhaseResults(SearchRequest request, int numShards) {
+        return newSearchPhaseResults(request, numShards, null);
+    }
+
+    /**
+     * Returns a new ArraySearchPhaseResults instance. This might return an instance that reduces search responses incrementally.
+     * The given task, if not <code>null</code>, is notified of every shard result and of every incremental reduction.
+     */
+    InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult> newSearchPhaseResults(SearchRequest request, int numShards,
+                                                                                        @Nullable SearchTask task) {
         SearchSourceBuilder source = request.source();
         boolean isScrollRequest = request.scroll() != null;
         final boolean hasAggs = source != null && source.aggregations() != null;
@@ -731,10 +763,28 @@ public final class SearchPhaseController extends AbstractComponent {
             // no incremental reduce if scroll is used - we only hit a single shard or sometimes more...
             if (request.getBatchedReduceSize() < numShards) {
                 // only use this if there are aggs and if there are more shards than we should reduce at once
-                return new QueryPhaseResultConsumer(this, numShards, request.getBatchedReduceSize(), hasTopDocs, hasAggs);
+                return new QueryPhaseResultConsumer(this, numShards, request.getBatchedReduceSize(), hasTopDocs, hasAggs, task);
             }
         }
-        return new InitialSearchPhase.ArraySearchPhaseResults(numShards) {
+        if (task != null) {
+            task.onQueryPhaseStart(numShards);
+        }
+        return new InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult>(numShards) {
+            @Override
+            void consumeResult(SearchPhaseResult result) {
+                super.consumeResult(result);
+                if (task != null) {
+                    final QuerySearchResult queryResult = result.queryResult();
+                    final long shardHits;
+                    if (queryResult != null && queryResult.hasConsumedTopDocs() == false && queryResult.topDocs() != null) {
+                        shardHits = queryResult.topDocs().totalHits;
+                    } else {
+                        shardHits = 0;
+                    }
+                    task.onShardQueryResult(shardHits);
+                }
+            }
+
             @Override
             public ReducedQueryPhase reduce() {
                 return reducedQueryPhase(results.asList(), isScrollRequest, trackTotalHits);
@@ -19,14 +19,37 @@
 
 package org.elasticsearch.action.search;
 
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.tasks.CancellableTask;
+import org.elasticsearch.tasks.Task;
 import org.elasticsearch.tasks.TaskId;
 
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * Task storing information about a currently running search request.
+ * Task storing information about a currently running search request. On the coordinating node the task also tracks the
+ * progress of the query phase: how many shards responded so far and the latest incremental reduction of their aggregations
+ * (see {@link SearchRequest#setBatchedReduceSize(int)}), so that callers can inspect partial results through the task management
+ * API before the slowest shard responds.
  */
 public class SearchTask extends CancellableTask {
 
+    private volatile int totalShards = -1;
+    private final AtomicInteger completedShards = new AtomicInteger();
+    private volatile int numReducePhases;
+    private final AtomicLong partialTotalHits = new AtomicLong();
+    // the instance that the consumer of the query results buffers for the next reduction anyway, so it doesn't hold extra memory
+    // until the final reduction, which releases it
+    private volatile InternalAggregations partialAggregations;
+
     public SearchTask(long id, String type, String action, String description, TaskId parentTaskId) {
         super(id, type, action, description, parentTaskId);
     }
@@ -36,4 +59,178 @@ public class SearchTask extends CancellableTask {
         return true;
     }
 
+    /**
+     * Called when the query phase starts executing on the given number of shards.
+     */
+    void onQueryPhaseStart(int totalShards) {
+        this.totalShards = totalShards;
+    }
+
+    /**
+     * Called when a shard returned its query result, once the result has been merged into the results of the other shards.
+     *
+     * @param totalHits the number of hits of the shard
+     */
+    void onShardQueryResult(long totalHits) {
+        partialTotalHits.addAndGet(totalHits);
+        completedShards.incrementAndGet();
+    }
+
+    /**
+     * Called after the buffered query results have been reduced incrementally.
+     *
+     * @param aggregations the reduced aggregations of the shards whose results were reduced, or <code>null</code> if the request
+     *                     has no aggregations
+     * @param numReducePhases the number of incremental reductions so far
+     */
+    void onPartialReduce(@Nullable InternalAggregations aggregations, int numReducePhases) {
+        this.partialAggregations = aggregations;
+        this.numReducePhases = numReducePhases;
+    }
+
+    /**
+     * Called when the results of all shards are reduced. The partial aggregations are not needed anymore from then on.
+     */
+    void onFinalReduce() {
+        this.partialAggregations = null;
+    }
+
+    /**
+     * Returns the number of shards that responded to the query phase so far.
+     */
+    public int getCompletedShards() {
+        return completedShards.get();
+    }
+
+    /**
+     * Returns the aggregations of the latest incremental reduction, or <code>null</code> if none happened yet or the final
+     * reduction started. These aggregations are not final: pipeline aggregations are not applied and buckets may still be missing.
+     */
+    @Nullable
+    public InternalAggregations getPartialAggregations() {
+        return partialAggregations;
+    }
+
+    @Override
+    public Status getStatus() {
+        final int totalShards = this.totalShards;
+        if (totalShards < 0) {
+            // not a coordinating search or the query phase didn't start yet
+            return null;
+        }
+        return new Status(totalShards, completedShards.get(), numReducePhases, partialTotalHits.get(), partialAggregations);
+    }
+
+    /**
+     * The progress of the query phase of a search, along with the aggregations of its latest incremental reduction.
+     */
+    public static class Status implements Task.Status {
+        public static final String NAME = "search";
+
+        private final int totalShards;
+        private final int completedShards;
+        private final int numReducePhases;
+        private final long partialTotalHits;
+        @Nullable
+        private final InternalAggregations partialAggregations;
+
+        public Status(int totalShards, int completedShards, int numReducePhases, long partialTotalHits,
+                      @Nullable InternalAggregations partialAggregations) {
+            this.totalShards = totalShards;
+            this.completedShards = completedShards;
+            this.numReducePhases = numReducePhases;
+            this.partialTotalHits = partialTotalHits;
+            this.partialAggregations = partialAggregations;
+        }
+
+        public Status(StreamInput in) throws IOException {
+            totalShards = in.readVInt();
+            completedShards = in.readVInt();
+            numReducePhases = in.readVInt();
+            partialTotalHits = in.readZLong();
+            partialAggregations = in.readBoolean() ? InternalAggregations.readAggregations(in) : null;
+        }
+
+        @Override
+        public String getWriteableName() {
+            return NAME;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(totalShards);
+            out.writeVInt(completedShards);
+            out.writeVInt(numReducePhases);
+            out.writeZLong(partialTotalHits);
+            if (partialAggregations == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                partialAggregations.writeTo(out);
+            }
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field("total_shards", totalShards);
+            builder.field("completed_shards", completedShards);
+            builder.field("num_reduce_phases", numReducePhases);
+            builder.field("partial_total_hits", partialTotalHits);
+            if (partialAggregations != null) {
+                builder.startObject("partial_aggregations");
+                partialAggregations.toXContentInternal(builder, params);
+                builder.endObject();
+            }
+            builder.endObject();
+            return builder;
+        }
+
+        public int getTotalShards() {
+            return totalShards;
+        }
+
+        public int getCompletedShards() {
+            return completedShards;
+        }
+
+        public int getNumReducePhases() {
+            return numReducePhases;
+        }
+
+        public long getPartialTotalHits() {
+            return partialTotalHits;
+        }
+
+        /**
+         * Returns the aggregations of the latest incremental reduction, see {@link SearchTask#getPartialAggregations()}.
+         */
+        @Nullable
+        public InternalAggregations getPartialAggregations() {
+            return partialAggregations;
+        }
+
+        @Override
+        public String toString() {
+            return Strings.toString(this);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null || obj.getClass() != SearchTask.Status.class) {
+                return false;
+            }
+            SearchTask.Status other = (Status) obj;
+            return totalShards == other.totalShards
+                && completedShards == other.completedShards
+                && numReducePhases == other.numReducePhases
+                && partialTotalHits == other.partialTotalHits
+                && Objects.equals(partialAggregations, other.partialAggregations);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(totalShards, completedShards, numReducePhases, partialTotalHits, partialAggregations);
+        }
+    }
 }
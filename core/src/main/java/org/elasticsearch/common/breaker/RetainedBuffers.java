@@ -0,0 +1,61 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.breaker;
+
+/**
+ * Decides whether bytes that are backed by pooled network buffers may be kept as they are for as long as a request is handled,
+ * instead of being copied to the heap. Keeping a slice of a pooled buffer keeps the whole buffer alive, so the bytes that the
+ * buffers hold beyond the kept bytes are accounted for in a circuit breaker, in addition to the kept bytes themselves which the
+ * caller accounts for. The buffers are only kept if they are at most {@link #MAX_RETAINED_RATIO} times as large as the kept bytes
+ * and the breaker admits the additional bytes.
+ */
+public final class RetainedBuffers {
+
+    /**
+     * The maximum ratio between the size of the buffers and the number of bytes that are kept of them. Network buffers grow by
+     * doubling their capacity, so a buffer that holds nothing but the kept bytes may already be almost twice as large.
+     */
+    public static final int MAX_RETAINED_RATIO = 4;
+
+    private RetainedBuffers() {}
+
+    /**
+     * Reserves the bytes that keeping {@code length} bytes of buffers of {@code retainedBytes} bytes in total holds in addition.
+     *
+     * @return the number of reserved bytes, which have to be released from the breaker once the buffers are released, or
+     *         <code>-1</code> if nothing was reserved and the bytes have to be copied instead
+     */
+    public static long tryReserve(CircuitBreaker breaker, long length, long retainedBytes, String label) {
+        final long overhead = Math.max(0L, retainedBytes - length);
+        if (overhead == 0) {
+            return 0;
+        }
+        if (retainedBytes > length * MAX_RETAINED_RATIO) {
+            return -1;
+        }
+        try {
+            breaker.addEstimateBytesAndMaybeBreak(overhead, label);
+        } catch (CircuitBreakingException e) {
+            // copying the bytes releases the buffers right away
+            return -1;
+        }
+        return overhead;
+    }
+}
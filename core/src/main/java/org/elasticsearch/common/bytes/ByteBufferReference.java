@@ -78,7 +78,9 @@ public class ByteBufferReference extends BytesReference {
             return new BytesRef(buffer.array(), buffer.arrayOffset() + offset, length);
         }
         final byte[] copy = new byte[length];
-        buffer.get(copy, offset, length);
+        final ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(copy, 0, length);
         return new BytesRef(copy);
     }
 
@@ -26,6 +26,8 @@ import org.apache.lucene.util.RamUsageEstimator;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -75,6 +77,13 @@ public final class CompositeBytesReference extends BytesReference {
         return length;
     }
 
+    /**
+     * Returns the references this composite joins, in order.
+     */
+    public List<BytesReference> references() {
+        return Collections.unmodifiableList(Arrays.asList(references));
+    }
+
     @Override
     public BytesReference slice(int from, int length) {
         // for slices we only need to find the start and the end reference
@@ -0,0 +1,112 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+/**
+ * A bloom filter over {@link BytesRef}s: {@link #mightContain} never returns {@code false} for a value that was
+ * {@link #put}, and returns {@code true} for a value that wasn't with a probability that depends on the number of
+ * bits per value. Bits are derived from the two halves of a 128 bits murmur3 hash of the value.
+ */
+public final class BloomFilter implements Accountable {
+
+    /** Ten bits and seven hash functions per value make about one false positive out of a hundred lookups. */
+    public static final int DEFAULT_BITS_PER_VALUE = 10;
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BloomFilter.class);
+
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashFunctions;
+    private final MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+
+    /**
+     * Create a filter for the given number of values with {@link #DEFAULT_BITS_PER_VALUE}.
+     */
+    public BloomFilter(long expectedValues) {
+        this(expectedValues, DEFAULT_BITS_PER_VALUE);
+    }
+
+    public BloomFilter(long expectedValues, int bitsPerValue) {
+        if (expectedValues < 0) {
+            throw new IllegalArgumentException("expected values must be >= 0, got " + expectedValues);
+        }
+        if (bitsPerValue < 1) {
+            throw new IllegalArgumentException("bits per value must be >= 1, got " + bitsPerValue);
+        }
+        final long numWords = numWords(expectedValues, bitsPerValue);
+        this.bits = new long[Math.toIntExact(numWords)];
+        this.numBits = numWords << 6;
+        // the optimal number of hash functions is ln(2) times the number of bits per value
+        this.numHashFunctions = Math.max(1, (int) Math.round(bitsPerValue * Math.log(2)));
+    }
+
+    /**
+     * Add a value to this filter. Not thread-safe.
+     */
+    public void put(BytesRef value) {
+        MurmurHash3.hash128(value.bytes, value.offset, value.length, 0, hash);
+        long combined = hash.h1;
+        for (int i = 0; i < numHashFunctions; i++) {
+            final long bit = (combined & Long.MAX_VALUE) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+            combined += hash.h2;
+        }
+    }
+
+    /**
+     * Return {@code false} if the value was never added to this filter, {@code true} if it might have been. Thread-safe
+     * once all values have been added.
+     */
+    public boolean mightContain(BytesRef value) {
+        final MurmurHash3.Hash128 hash = MurmurHash3.hash128(value.bytes, value.offset, value.length, 0, new MurmurHash3.Hash128());
+        long combined = hash.h1;
+        for (int i = 0; i < numHashFunctions; i++) {
+            final long bit = (combined & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += hash.h2;
+        }
+        return true;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bits);
+    }
+
+    /**
+     * Returns the {@link #ramBytesUsed()} of a filter for the given number of values, before building it.
+     */
+    public static long ramBytesUsed(long expectedValues, int bitsPerValue) {
+        final long numWords = numWords(expectedValues, bitsPerValue);
+        return BASE_RAM_BYTES_USED
+            + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + Long.BYTES * numWords);
+    }
+
+    private static long numWords(long expectedValues, int bitsPerValue) {
+        return Math.max(1, (Math.max(1, expectedValues) * bitsPerValue + 63) >>> 6);
+    }
+}
@@ -30,6 +30,7 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.settings.Setting;
@@ -47,6 +48,7 @@ import org.elasticsearch.index.analysis.AnalysisRegistry;
 import org.elasticsearch.index.analysis.IndexAnalyzers;
 import org.elasticsearch.index.cache.IndexCache;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
+import org.elasticsearch.index.cache.bloom.TermsBloomFilterCache;
 import org.elasticsearch.index.cache.query.QueryCache;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.EngineFactory;
@@ -67,6 +69,8 @@ import org.elasticsearch.index.similarity.SimilarityService;
 import org.elasticsearch.index.store.IndexStore;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.index.translog.TranslogGroupCommitService;
+import org.elasticsearch.indices.IndicesRefreshBudget;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.indices.cluster.IndicesClusterStateService;
 import org.elasticsearch.indices.fielddata.cache.IndicesFieldDataCache;
@@ -77,7 +81,9 @@ import org.elasticsearch.threadpool.ThreadPool;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -100,6 +106,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
     private final IndexEventListener eventListener;
     private final IndexFieldDataService indexFieldData;
     private final BitsetFilterCache bitsetFilterCache;
+    private final TermsBloomFilterCache termsBloomFilterCache;
     private final NodeEnvironment nodeEnv;
     private final ShardStoreDeleter shardStoreDeleter;
     private final IndexStore indexStore;
@@ -130,6 +137,8 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
     private final ScriptService scriptService;
     private final Client client;
     private final CircuitBreakerService circuitBreakerService;
+    private final TranslogGroupCommitService translogGroupCommitService;
+    private final IndicesRefreshBudget refreshBudget;
     private Supplier<Sort> indexSortSupplier;
 
     public IndexService(
@@ -153,13 +162,17 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
             IndicesFieldDataCache indicesFieldDataCache,
             List<SearchOperationListener> searchOperationListeners,
             List<IndexingOperationListener> indexingOperationListeners,
-            NamedWriteableRegistry namedWriteableRegistry) throws IOException {
+            NamedWriteableRegistry namedWriteableRegistry,
+            @Nullable TranslogGroupCommitService translogGroupCommitService,
+            @Nullable IndicesRefreshBudget refreshBudget) throws IOException {
         super(indexSettings);
         this.indexSettings = indexSettings;
         this.xContentRegistry = xContentRegistry;
         this.similarityService = similarityService;
         this.namedWriteableRegistry = namedWriteableRegistry;
         this.circuitBreakerService = circuitBreakerService;
+        this.translogGroupCommitService = translogGroupCommitService;
+        this.refreshBudget = refreshBudget;
         this.mapperService = new MapperService(indexSettings, registry.build(indexSettings), xContentRegistry, similarityService,
             mapperRegistry,
             // we parse all percolator queries as they would be parsed on shard 0
@@ -185,8 +198,10 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
         this.indexStore = indexStore;
         indexFieldData.setListener(new FieldDataCacheListener(this));
         this.bitsetFilterCache = new BitsetFilterCache(indexSettings, new BitsetCacheListener(this));
+        this.termsBloomFilterCache = new TermsBloomFilterCache(indexSettings,
+            circuitBreakerService.getBreaker(CircuitBreaker.FIELDDATA), new TermsBloomFilterCacheListener(this));
         this.warmer = new IndexWarmer(indexSettings.getSettings(), threadPool, indexFieldData,
-            bitsetFilterCache.createListener(threadPool));
+            bitsetFilterCache.createListener(threadPool), termsBloomFilterCache.createListener(threadPool));
         this.indexCache = new IndexCache(indexSettings, queryCache, bitsetFilterCache);
         this.engineFactory = engineFactory;
         // initialize this last -- otherwise if the wrapper requires any other member to be non-null we fail with an NPE
@@ -245,6 +260,10 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
         return indexCache;
     }
 
+    public TermsBloomFilterCache termsBloomFilterCache() {
+        return termsBloomFilterCache;
+    }
+
     public IndexAnalyzers getIndexAnalyzers() {
         return this.mapperService.getIndexAnalyzers();
     }
@@ -280,6 +299,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
             } finally {
                 IOUtils.close(
                         bitsetFilterCache,
+                        termsBloomFilterCache,
                         indexCache,
                         indexFieldData,
                         mapperService,
@@ -383,7 +403,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
                 indexCache, mapperService, similarityService, engineFactory,
                 eventListener, searcherWrapper, threadPool, bigArrays, engineWarmer,
                 searchOperationListeners, indexingOperationListeners, () -> globalCheckpointSyncer.accept(shardId),
-                circuitBreakerService);
+                circuitBreakerService, translogGroupCommitService);
             eventListener.indexShardStateChanged(indexShard, null, indexShard.state(), "shard created");
             eventListener.afterIndexShardCreated(indexShard);
             shards = newMapBuilder(shards).put(shardId.id(), indexShard).immutableMap();
@@ -582,6 +602,50 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
         }
     }
 
+    private static final class TermsBloomFilterCacheListener implements TermsBloomFilterCache.Listener {
+        final IndexService indexService;
+
+        private TermsBloomFilterCacheListener(IndexService indexService) {
+            this.indexService = indexService;
+        }
+
+        @Override
+        public void onCache(ShardId shardId, Accountable accountable) {
+            final IndexShard shard = getShardOrNull(shardId);
+            if (shard != null) {
+                shard.shardTermsBloomFilterCache().onCached(accountable.ramBytesUsed());
+            }
+        }
+
+        @Override
+        public void onRemoval(ShardId shardId, Accountable accountable) {
+            final IndexShard shard = getShardOrNull(shardId);
+            if (shard != null) {
+                shard.shardTermsBloomFilterCache().onRemoval(accountable.ramBytesUsed());
+            }
+        }
+
+        @Override
+        public void onHit(ShardId shardId) {
+            final IndexShard shard = getShardOrNull(shardId);
+            if (shard != null) {
+                shard.shardTermsBloomFilterCache().onHit();
+            }
+        }
+
+        @Override
+        public void onMiss(ShardId shardId) {
+            final IndexShard shard = getShardOrNull(shardId);
+            if (shard != null) {
+                shard.shardTermsBloomFilterCache().onMiss();
+            }
+        }
+
+        private IndexShard getShardOrNull(ShardId shardId) {
+            return shardId == null ? null : indexService.getShardOrNull(shardId.id());
+        }
+    }
+
     private final class FieldDataCacheListener implements IndexFieldDataCache.Listener {
         final IndexService indexService;
 
@@ -713,9 +777,18 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
 
     private void maybeRefreshEngine(boolean force) {
         if (indexSettings.getRefreshInterval().millis() > 0 || force) {
-            for (IndexShard shard : this.shards.values()) {
+            final List<IndexShard> shards = new ArrayList<>(this.shards.values());
+            if (force == false && refreshBudget != null) {
+                // shards whose refreshes got postponed the most go first, so the budget doesn't always favour the same shards
+                shards.sort(Comparator.comparingInt(IndexShard::getPostponedScheduledRefreshes).reversed());
+            }
+            for (IndexShard shard : shards) {
                 try {
-                    shard.scheduledRefresh();
+                    if (force || refreshBudget == null) {
+                        shard.scheduledRefresh();
+                    } else {
+                        shard.scheduledRefresh(refreshBudget::tryAcquire);
+                    }
                 } catch (IndexShardClosedException | AlreadyClosedException ex) {
                     // fine - continue;
                 }
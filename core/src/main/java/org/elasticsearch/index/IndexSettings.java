@@ -68,6 +68,37 @@ public final class IndexSettings {
     public static final Setting<Translog.Durability> INDEX_TRANSLOG_DURABILITY_SETTING =
         new Setting<>("index.translog.durability", Translog.Durability.REQUEST.name(),
             (value) -> Translog.Durability.valueOf(value.toUpperCase(Locale.ROOT)), Property.Dynamic, Property.IndexScope);
+    /**
+     * Controls whether request level translog syncs of this index are handed to the node wide, per data path group commit
+     * scheduler instead of being executed by the indexing threads. This only has an effect with {@link Translog.Durability#REQUEST}.
+     */
+    public static final Setting<Boolean> INDEX_TRANSLOG_GROUP_COMMIT_SETTING =
+        Setting.boolSetting("index.translog.group_commit", false, Property.Dynamic, Property.IndexScope);
+    /**
+     * Controls whether snapshots of immutable translog generations read their operations from a read-only memory mapping of the
+     * generation instead of copying them through heap buffers.
+     */
+    public static final Setting<Boolean> INDEX_TRANSLOG_MMAP_READS_SETTING =
+        Setting.boolSetting("index.translog.mmap_reads", false, Property.IndexScope);
+    /**
+     * Controls whether the sources of index operations are compressed with LZ4 when they are written to the translog.
+     */
+    public static final Setting<Boolean> INDEX_TRANSLOG_COMPRESS_SETTING =
+        Setting.boolSetting("index.translog.compress", false, Property.IndexScope);
+    /**
+     * The number of lanes operations are replayed on when a shard recovers from its local translog. Operations are assigned to a
+     * lane by the hash of their id so that all operations on the same document are applied in translog order. A value of
+     * {@code 1} replays the translog sequentially on the recovery thread. The number of lanes is further limited to the number of
+     * processors of the node that recovers the shard.
+     */
+    public static final Setting<Integer> INDEX_TRANSLOG_RECOVERY_THREADS_SETTING =
+        Setting.intSetting("index.translog.recovery_threads", 1, 1, 32, Property.IndexScope);
+    /**
+     * Declares an index as append-only: documents are only ever added with auto-generated ids and are never updated or deleted by id.
+     * This allows the engine to index such documents without taking per-id locks or tracking them in the live version map.
+     */
+    public static final Setting<Boolean> INDEX_APPEND_ONLY_SETTING =
+        Setting.boolSetting("index.append_only", false, Property.IndexScope, Property.Final);
     public static final Setting<Boolean> INDEX_WARMER_ENABLED_SETTING =
         Setting.boolSetting("index.warmer.enabled", true, Property.Dynamic, Property.IndexScope);
     public static final Setting<Boolean> INDEX_TTL_DISABLE_PURGE_SETTING =
@@ -101,6 +132,13 @@ public final class IndexSettings {
      */
     public static final Setting<Integer> MAX_INNER_RESULT_WINDOW_SETTING =
         Setting.intSetting("index.max_inner_result_window", 100, 1, Property.Dynamic, Property.IndexScope);
+    /**
+     * Index setting describing the maximum number of slices of segments that the query phase of a search request searches
+     * concurrently on a single shard. The default of 1 searches all segments on the search thread, one after another. Every slice
+     * but the first takes a thread of the search_slice pool, and gets its own aggregators, so the maximum of 32 is defensive.
+     */
+    public static final Setting<Integer> MAX_CONCURRENT_SLICES_SETTING =
+        Setting.intSetting("index.search.max_concurrent_slices", 1, 1, 32, Property.Dynamic, Property.IndexScope);
 
     /**
      * Index setting describing the maximum value of allowed `script_fields`that can be retrieved
@@ -252,6 +290,7 @@ public final class IndexSettings {
     private final boolean queryStringAllowLeadingWildcard;
     private final boolean defaultAllowUnmappedFields;
     private volatile Translog.Durability durability;
+    private volatile boolean translogGroupCommit;
     private final TimeValue syncInterval;
     private volatile TimeValue refreshInterval;
     private volatile ByteSizeValue flushThresholdSize;
@@ -266,6 +305,7 @@ public final class IndexSettings {
     private volatile boolean warmerEnabled;
     private volatile int maxResultWindow;
     private volatile int maxInnerResultWindow;
+    private volatile int maxConcurrentSlices;
     private volatile int maxAdjacencyMatrixFilters;
     private volatile int maxRescoreWindow;
     private volatile int maxDocvalueFields;
@@ -288,6 +328,7 @@ public final class IndexSettings {
      * Whether the index is required to have at most one type.
      */
     private final boolean singleType;
+    private final boolean appendOnly;
 
     /**
      * Returns the default search fields for this index.
@@ -362,6 +403,7 @@ public final class IndexSettings {
         this.queryStringAllowLeadingWildcard = QUERY_STRING_ALLOW_LEADING_WILDCARD.get(nodeSettings);
         this.defaultAllowUnmappedFields = scopedSettings.get(ALLOW_UNMAPPED);
         this.durability = scopedSettings.get(INDEX_TRANSLOG_DURABILITY_SETTING);
+        this.translogGroupCommit = scopedSettings.get(INDEX_TRANSLOG_GROUP_COMMIT_SETTING);
         defaultFields = scopedSettings.get(DEFAULT_FIELD_SETTING);
         syncInterval = INDEX_TRANSLOG_SYNC_INTERVAL_SETTING.get(settings);
         refreshInterval = scopedSettings.get(INDEX_REFRESH_INTERVAL_SETTING);
@@ -374,6 +416,7 @@ public final class IndexSettings {
         warmerEnabled = scopedSettings.get(INDEX_WARMER_ENABLED_SETTING);
         maxResultWindow = scopedSettings.get(MAX_RESULT_WINDOW_SETTING);
         maxInnerResultWindow = scopedSettings.get(MAX_INNER_RESULT_WINDOW_SETTING);
+        maxConcurrentSlices = scopedSettings.get(MAX_CONCURRENT_SLICES_SETTING);
         maxAdjacencyMatrixFilters = scopedSettings.get(MAX_ADJACENCY_MATRIX_FILTERS_SETTING);
         maxRescoreWindow = scopedSettings.get(MAX_RESCORE_WINDOW_SETTING);
         maxDocvalueFields = scopedSettings.get(MAX_DOCVALUE_FIELDS_SEARCH_SETTING);
@@ -387,6 +430,7 @@ public final class IndexSettings {
         this.mergePolicyConfig = new MergePolicyConfig(logger, this);
         this.indexSortConfig = new IndexSortConfig(this);
         searchIdleAfter = scopedSettings.get(INDEX_SEARCH_IDLE_AFTER);
+        appendOnly = scopedSettings.get(INDEX_APPEND_ONLY_SETTING);
         singleType = INDEX_MAPPING_SINGLE_TYPE_SETTING.get(indexMetaData.getSettings()); // get this from metadata - it's not registered
         if ((singleType || version.before(Version.V_6_0_0_alpha1)) == false) {
             throw new AssertionError(index.toString()  + "multiple types are only allowed on pre 6.x indices but version is: ["
@@ -406,9 +450,11 @@ public final class IndexSettings {
             mergeSchedulerConfig::setMaxThreadAndMergeCount);
         scopedSettings.addSettingsUpdateConsumer(MergeSchedulerConfig.AUTO_THROTTLE_SETTING, mergeSchedulerConfig::setAutoThrottle);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_DURABILITY_SETTING, this::setTranslogDurability);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_GROUP_COMMIT_SETTING, this::setTranslogGroupCommit);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TTL_DISABLE_PURGE_SETTING, this::setTTLPurgeDisabled);
         scopedSettings.addSettingsUpdateConsumer(MAX_RESULT_WINDOW_SETTING, this::setMaxResultWindow);
         scopedSettings.addSettingsUpdateConsumer(MAX_INNER_RESULT_WINDOW_SETTING, this::setMaxInnerResultWindow);
+        scopedSettings.addSettingsUpdateConsumer(MAX_CONCURRENT_SLICES_SETTING, this::setMaxConcurrentSlices);
         scopedSettings.addSettingsUpdateConsumer(MAX_ADJACENCY_MATRIX_FILTERS_SETTING, this::setMaxAdjacencyMatrixFilters);
         scopedSettings.addSettingsUpdateConsumer(MAX_RESCORE_WINDOW_SETTING, this::setMaxRescoreWindow);
         scopedSettings.addSettingsUpdateConsumer(MAX_DOCVALUE_FIELDS_SEARCH_SETTING, this::setMaxDocvalueFields);
@@ -528,6 +574,12 @@ public final class IndexSettings {
      */
     public boolean isSingleType() { return singleType; }
 
+    /**
+     * Returns <code>true</code> if this index is declared append-only.
+     * @see #INDEX_APPEND_ONLY_SETTING
+     */
+    public boolean isAppendOnly() { return appendOnly; }
+
     /**
      * Returns the node settings. The settings returned from {@link #getSettings()} are a merged version of the
      * index settings and the node settings where node settings are overwritten by index settings.
@@ -573,6 +625,17 @@ public final class IndexSettings {
         this.durability = durability;
     }
 
+    /**
+     * Returns <code>true</code> if request level translog syncs should be coalesced by the per data path group commit scheduler.
+     */
+    public boolean isTranslogGroupCommit() {
+        return translogGroupCommit;
+    }
+
+    private void setTranslogGroupCommit(boolean translogGroupCommit) {
+        this.translogGroupCommit = translogGroupCommit;
+    }
+
     /**
      * Returns true if index warmers are enabled, otherwise <code>false</code>
      */
@@ -643,6 +706,17 @@ public final class IndexSettings {
         this.maxResultWindow = maxResultWindow;
     }
 
+    /**
+     * Returns the maximum number of slices of segments that the query phase searches concurrently on a shard.
+     */
+    public int getMaxConcurrentSlices() {
+        return this.maxConcurrentSlices;
+    }
+
+    private void setMaxConcurrentSlices(int maxConcurrentSlices) {
+        this.maxConcurrentSlices = maxConcurrentSlices;
+    }
+
     /**
      * Returns the max result window for an individual inner hit definition or top hits aggregation.
      */
@@ -0,0 +1,376 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.bloom;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.RemovalListener;
+import org.elasticsearch.common.cache.RemovalNotification;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.BloomFilter;
+import org.elasticsearch.index.AbstractIndexComponent;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.IndexWarmer;
+import org.elasticsearch.index.IndexWarmer.TerminationHandle;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.ShardUtils;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Keeps a {@link BloomFilter} of the terms of every segment for the fields listed in
+ * {@link #INDEX_BLOOM_FILTER_FIELDS_SETTING}, so that the can match phase can tell that a shard has no document for a
+ * term query without looking the term up in the terms dictionary of every segment. Filters are built when new segments
+ * are warmed and dropped when their segment is closed. Like the {@link org.elasticsearch.index.cache.bitset.BitsetFilterCache}
+ * this cache is unbounded, so it should only be enabled for fields that are looked up by exact value. The filters are
+ * accounted for in the given circuit breaker, and a filter that would trip it is not built.
+ */
+public final class TermsBloomFilterCache extends AbstractIndexComponent
+    implements IndexReader.ClosedListener, RemovalListener<IndexReader.CacheKey, Map<String, CompletableFuture<TermsBloomFilterCache.Value>>>, Closeable {
+
+    public static final Setting<List<String>> INDEX_BLOOM_FILTER_FIELDS_SETTING =
+        Setting.listSetting("index.search.bloom_filter.fields", Collections.emptyList(), Function.identity(), Property.IndexScope);
+
+    private final Set<String> fields;
+    private final CircuitBreaker breaker;
+    private final Listener listener;
+    private final Cache<IndexReader.CacheKey, Map<String, CompletableFuture<Value>>> loadedFilters;
+
+    public TermsBloomFilterCache(IndexSettings indexSettings, CircuitBreaker breaker, Listener listener) {
+        super(indexSettings);
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must not be null");
+        }
+        this.fields = Collections.unmodifiableSet(new HashSet<>(indexSettings.getValue(INDEX_BLOOM_FILTER_FIELDS_SETTING)));
+        this.breaker = breaker;
+        this.listener = listener;
+        this.loadedFilters = CacheBuilder.<IndexReader.CacheKey, Map<String, CompletableFuture<Value>>>builder()
+            .removalListener(this).build();
+    }
+
+    public IndexWarmer.Listener createListener(ThreadPool threadPool) {
+        return new BloomFilterWarmer(threadPool);
+    }
+
+    /**
+     * Return {@code false} if the given query can't match any document of the given shard context because it requires a
+     * term of a field with bloom filters that no segment has, {@code true} otherwise.
+     */
+    public boolean canMatch(QueryBuilder query, QueryShardContext context) throws IOException {
+        if (fields.isEmpty() || context.getIndexReader() == null) {
+            return true;
+        }
+        if (query instanceof TermQueryBuilder) {
+            final TermQueryBuilder termQuery = (TermQueryBuilder) query;
+            final MappedFieldType fieldType = context.fieldMapper(termQuery.fieldName());
+            if (fieldType == null || fields.contains(fieldType.name()) == false) {
+                return true;
+            }
+            final Query luceneQuery = fieldType.termQuery(termQuery.value(), context);
+            if (luceneQuery instanceof TermQuery == false) {
+                return true;
+            }
+            final Term term = ((TermQuery) luceneQuery).getTerm();
+            return mightContain(context.getIndexReader(), term.field(), term.bytes());
+        } else if (query instanceof BoolQueryBuilder) {
+            final BoolQueryBuilder boolQuery = (BoolQueryBuilder) query;
+            for (QueryBuilder clause : boolQuery.must()) {
+                if (canMatch(clause, context) == false) {
+                    return false;
+                }
+            }
+            for (QueryBuilder clause : boolQuery.filter()) {
+                if (canMatch(clause, context) == false) {
+                    return false;
+                }
+            }
+        } else if (query instanceof ConstantScoreQueryBuilder) {
+            return canMatch(((ConstantScoreQueryBuilder) query).innerQuery(), context);
+        }
+        return true;
+    }
+
+    /**
+     * Return {@code false} if no segment of the given reader has the given term, {@code true} if one of them might have it.
+     * Filters are only built by the warmer, so a segment whose filter isn't built yet might have the term.
+     */
+    public boolean mightContain(IndexReader reader, String field, BytesRef term) {
+        if (fields.contains(field) == false) {
+            return true;
+        }
+        for (LeafReaderContext context : reader.leaves()) {
+            final BloomFilter filter = getIfLoaded(context.reader(), field);
+            if (filter == null) {
+                listener.onMiss(ShardUtils.extractShardId(context.reader()));
+                return true;
+            }
+            listener.onHit(ShardUtils.extractShardId(context.reader()));
+            if (filter.mightContain(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private BloomFilter getIfLoaded(LeafReader reader, String field) {
+        final IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        if (cacheHelper == null) {
+            return null;
+        }
+        final Map<String, CompletableFuture<Value>> segmentFilters = loadedFilters.get(cacheHelper.getKey());
+        if (segmentFilters == null) {
+            return null;
+        }
+        // don't wait for a filter that is being built
+        final CompletableFuture<Value> future = segmentFilters.get(field);
+        if (future == null || future.isDone() == false || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join().filter;
+    }
+
+    /**
+     * Returns the filter of the given field for the given segment, and builds it if needed. Concurrent calls for the same filter
+     * build it only once.
+     */
+    BloomFilter getOrLoad(LeafReader reader, String field) throws IOException {
+        final IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        if (cacheHelper == null) {
+            throw new IllegalArgumentException("Reader " + reader + " does not support caching");
+        }
+        final Map<String, CompletableFuture<Value>> segmentFilters;
+        try {
+            segmentFilters = loadedFilters.computeIfAbsent(cacheHelper.getKey(), key -> {
+                cacheHelper.addClosedListener(TermsBloomFilterCache.this);
+                return new ConcurrentHashMap<>();
+            });
+        } catch (ExecutionException e) {
+            throw ExceptionsHelper.convertToElastic(e);
+        }
+        final CompletableFuture<Value> future = new CompletableFuture<>();
+        final CompletableFuture<Value> existing = segmentFilters.putIfAbsent(field, future);
+        if (existing != null) {
+            try {
+                return existing.get().filter;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for the bloom filter of [" + field + "]", e);
+            } catch (ExecutionException e) {
+                throw ExceptionsHelper.convertToElastic(e);
+            }
+        }
+        final Value value;
+        try {
+            final ShardId shardId = ShardUtils.extractShardId(reader);
+            value = new Value(load(reader, field), shardId);
+            listener.onCache(shardId, value.filter);
+        } catch (Exception e) {
+            // a later warm-up may try again
+            segmentFilters.remove(field, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        future.complete(value);
+        return value.filter;
+    }
+
+    private BloomFilter load(LeafReader reader, String field) throws IOException {
+        final Terms terms = reader.terms(field);
+        long size = 0;
+        if (terms != null) {
+            size = terms.size();
+            if (size == -1) {
+                size = 0;
+                for (TermsEnum termsEnum = terms.iterator(); termsEnum.next() != null; ) {
+                    size++;
+                }
+            }
+        }
+        final long ramBytesUsed = BloomFilter.ramBytesUsed(size, BloomFilter.DEFAULT_BITS_PER_VALUE);
+        breaker.addEstimateBytesAndMaybeBreak(ramBytesUsed, "terms_bloom_filter [" + field + "]");
+        boolean success = false;
+        try {
+            final BloomFilter filter = new BloomFilter(size);
+            if (terms != null) {
+                final TermsEnum termsEnum = terms.iterator();
+                for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                    filter.put(term);
+                }
+            }
+            assert filter.ramBytesUsed() == ramBytesUsed;
+            success = true;
+            return filter;
+        } finally {
+            if (success == false) {
+                breaker.addWithoutBreaking(-ramBytesUsed);
+            }
+        }
+    }
+
+    @Override
+    public void onClose(IndexReader.CacheKey ownerCoreCacheKey) {
+        loadedFilters.invalidate(ownerCoreCacheKey);
+    }
+
+    @Override
+    public void close() {
+        clear("close");
+    }
+
+    public void clear(String reason) {
+        logger.debug("clearing all bloom filters because [{}]", reason);
+        loadedFilters.invalidateAll();
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<IndexReader.CacheKey, Map<String, CompletableFuture<Value>>> notification) {
+        if (notification.getKey() == null) {
+            return;
+        }
+
+        Map<String, CompletableFuture<Value>> valueCache = notification.getValue();
+        if (valueCache == null) {
+            return;
+        }
+
+        for (CompletableFuture<Value> future : valueCache.values()) {
+            // filters that are still being built are released once they are built
+            future.thenAccept(value -> {
+                breaker.addWithoutBreaking(-value.filter.ramBytesUsed());
+                listener.onRemoval(value.shardId, value.filter);
+            });
+        }
+    }
+
+    Cache<IndexReader.CacheKey, Map<String, CompletableFuture<Value>>> getLoadedFilters() {
+        return loadedFilters;
+    }
+
+    static final class Value {
+
+        final BloomFilter filter;
+        final ShardId shardId;
+
+        Value(BloomFilter filter, ShardId shardId) {
+            this.filter = filter;
+            this.shardId = shardId;
+        }
+    }
+
+    final class BloomFilterWarmer implements IndexWarmer.Listener {
+
+        private final Executor executor;
+
+        BloomFilterWarmer(ThreadPool threadPool) {
+            this.executor = threadPool.executor(ThreadPool.Names.WARMER);
+        }
+
+        @Override
+        public TerminationHandle warmReader(final IndexShard indexShard, final Engine.Searcher searcher) {
+            if (indexSettings.getIndex().equals(indexShard.indexSettings().getIndex()) == false || fields.isEmpty()) {
+                return TerminationHandle.NO_WAIT;
+            }
+
+            final CountDownLatch latch = new CountDownLatch(searcher.reader().leaves().size() * fields.size());
+            for (final LeafReaderContext ctx : searcher.reader().leaves()) {
+                for (final String field : fields) {
+                    executor.execute(() -> {
+                        try {
+                            final long start = System.nanoTime();
+                            getOrLoad(ctx.reader(), field);
+                            if (indexShard.warmerService().logger().isTraceEnabled()) {
+                                indexShard.warmerService().logger().trace("warmed bloom filter for [{}], took [{}]", field,
+                                    TimeValue.timeValueNanos(System.nanoTime() - start));
+                            }
+                        } catch (Exception e) {
+                            indexShard.warmerService().logger().warn(
+                                (Supplier<?>) () -> new ParameterizedMessage("failed to load bloom filter for [{}]", field), e);
+                        } finally {
+                            latch.countDown();
+                        }
+                    });
+                }
+            }
+            return () -> latch.await();
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called for each built filter.
+         * @param shardId the shard id the filter was built for. This can be <code>null</code>
+         * @param accountable the filter's ram representation
+         */
+        void onCache(ShardId shardId, Accountable accountable);
+        /**
+         * Called for each removed filter.
+         * @param shardId the shard id the filter was built for. This can be <code>null</code>
+         * @param accountable the filter's ram representation
+         */
+        void onRemoval(ShardId shardId, Accountable accountable);
+        /**
+         * Called when a segment was checked for a term with its filter.
+         * @param shardId the shard id of the segment. This can be <code>null</code>
+         */
+        void onHit(ShardId shardId);
+        /**
+         * Called when a segment couldn't be checked for a term because its filter isn't built.
+         * @param shardId the shard id of the segment. This can be <code>null</code>
+         */
+        void onMiss(ShardId shardId);
+    }
+}
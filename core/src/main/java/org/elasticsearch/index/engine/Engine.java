@@ -74,6 +74,7 @@ import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Comparator;
@@ -294,6 +295,36 @@ public abstract class Engine implements Closeable {
 
     public abstract NoOpResult noOp(NoOp noOp);
 
+    /**
+     * Perform a batch of operations on the engine. Operations are applied in order unless the engine can prove
+     * that reordering them is safe, for instance because they index documents with distinct auto-generated ids.
+     * The default implementation applies the operations one by one.
+     *
+     * @param operations the operations to perform
+     * @return one {@link Result} per operation, in the same order as the operations
+     *
+     * Note: engine level failures (i.e. persistent engine failures) are thrown
+     */
+    public List<Result> bulk(List<? extends Operation> operations) throws IOException {
+        final List<Result> results = new ArrayList<>(operations.size());
+        for (Operation operation : operations) {
+            switch (operation.operationType()) {
+                case INDEX:
+                    results.add(index((Index) operation));
+                    break;
+                case DELETE:
+                    results.add(delete((Delete) operation));
+                    break;
+                case NO_OP:
+                    results.add(noOp((NoOp) operation));
+                    break;
+                default:
+                    throw new IllegalStateException("unexpected operation type [" + operation.operationType() + "]");
+            }
+        }
+        return results;
+    }
+
     /**
      * Base class for index and delete operation results
      * Holds result meta data (e.g. translog location, updated version)
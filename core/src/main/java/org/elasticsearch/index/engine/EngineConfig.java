@@ -110,6 +110,14 @@ public final class EngineConfig {
     public static final Setting<Boolean> INDEX_OPTIMIZE_AUTO_GENERATED_IDS = Setting.boolSetting("index.optimize_auto_generated_id", true,
         Property.IndexScope, Property.Dynamic);
 
+    /**
+     * Configures the engine to keep the uids and versions of recent indexing operations in packed, lock striped hash tables over
+     * {@link org.elasticsearch.common.util.BigArrays} pages rather than in concurrent hash maps holding objects per entry. This reduces
+     * the memory used by the version map under update heavy workloads. The default is <code>false</code>
+     */
+    public static final Setting<Boolean> INDEX_PACKED_VERSION_MAP_SETTING = Setting.boolSetting("index.engine.packed_version_map", false,
+        Property.IndexScope);
+
     private final TranslogConfig translogConfig;
     private final OpenMode openMode;
 
@@ -366,6 +374,13 @@ public final class EngineConfig {
         return indexSettings.getValue(INDEX_OPTIMIZE_AUTO_GENERATED_IDS);
     }
 
+    /**
+     * returns true if the engine should keep its version map in packed hash tables
+     */
+    public boolean isPackedVersionMapEnabled() {
+        return indexSettings.getValue(INDEX_PACKED_VERSION_MAP_SETTING);
+    }
+
     /**
      * Return the sort order of this index, or null if the index has no sort.
      */
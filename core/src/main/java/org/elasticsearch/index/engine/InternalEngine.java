@@ -80,6 +80,7 @@ import org.elasticsearch.index.translog.TranslogDeletionPolicy;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -93,6 +94,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiFunction;
 import java.util.function.LongSupplier;
 
@@ -116,10 +118,19 @@ public class InternalEngine extends Engine {
 
     // A uid (in the form of BytesRef) to the version map
     // we use the hashed variant since we iterate over it and check removal and additions on existing keys
-    private final LiveVersionMap versionMap = new LiveVersionMap();
+    private final LiveVersionMap versionMap;
 
     private final KeyedLock<BytesRef> keyedLock = new KeyedLock<>();
 
+    private final boolean appendOnly;
+    // append-only operations that bypass the keyed lock hold the read lock while they index, retries of auto-generated id operations
+    // take the write lock after publishing their timestamp to wait for copies of themselves that might still be in flight
+    private final ReentrantReadWriteLock appendOnlyLock = new ReentrantReadWriteLock();
+    private final ReleasableLock appendOnlyReadLock = new ReleasableLock(appendOnlyLock.readLock());
+    private final ReleasableLock appendOnlyWriteLock = new ReleasableLock(appendOnlyLock.writeLock());
+    // whether documents that are not tracked in the version map were indexed through the append-only fast path since the last refresh
+    private final AtomicBoolean appendOnlyWritesSinceRefresh = new AtomicBoolean(false);
+
     private volatile SegmentInfos lastCommittedSegmentInfos;
 
     private final IndexThrottle throttle;
@@ -136,6 +147,8 @@ public class InternalEngine extends Engine {
     private final AtomicInteger throttleRequestCount = new AtomicInteger();
     private final EngineConfig.OpenMode openMode;
     private final AtomicBoolean pendingTranslogRecovery = new AtomicBoolean(false);
+    // set while #recoverFromTranslog holds the read lock on behalf of the threads that replay the translog
+    private volatile boolean replayingTranslog = false;
     public static final String MAX_UNSAFE_AUTO_ID_TIMESTAMP_COMMIT_ID = "max_unsafe_auto_id_timestamp";
     private final AtomicLong maxUnsafeAutoIdTimestamp = new AtomicLong(-1);
     private final CounterMetric numVersionLookups = new CounterMetric();
@@ -159,6 +172,8 @@ public class InternalEngine extends Engine {
             final BiFunction<EngineConfig, SeqNoStats, SequenceNumbersService> seqNoServiceSupplier) {
         super(engineConfig);
         openMode = engineConfig.getOpenMode();
+        versionMap = new LiveVersionMap(engineConfig.isPackedVersionMapEnabled());
+        appendOnly = engineConfig.getIndexSettings().isAppendOnly();
         if (engineConfig.isAutoGeneratedIDsOptimizationEnabled() == false) {
             maxUnsafeAutoIdTimestamp.set(Long.MAX_VALUE);
         }
@@ -391,6 +406,7 @@ public class InternalEngine extends Engine {
             if (pendingTranslogRecovery.get() == false) {
                 throw new IllegalStateException("Engine has already been recovered");
             }
+            replayingTranslog = true;
             try {
                 recoverFromTranslogInternal();
             } catch (Exception e) {
@@ -401,6 +417,8 @@ public class InternalEngine extends Engine {
                     e.addSuppressed(inner);
                 }
                 throw e;
+            } finally {
+                replayingTranslog = false;
             }
         } finally {
             flushLock.unlock();
@@ -408,6 +426,19 @@ public class InternalEngine extends Engine {
         return this;
     }
 
+    /**
+     * Acquires the read lock for the given operation. Operations that are replayed from the local translog may be applied on other
+     * threads than the one that runs {@link #recoverFromTranslog()}, which already holds the read lock for the whole replay. These
+     * must not acquire it again since they would queue up behind a pending close, which itself waits for the replay to release it.
+     */
+    private Releasable acquireReadLock(Operation operation) {
+        if (operation.origin() == Operation.Origin.LOCAL_TRANSLOG_RECOVERY && replayingTranslog) {
+            assert rwl.getReadLockCount() > 0 : "the translog is replayed without holding the read lock";
+            return () -> {};
+        }
+        return readLock.acquire();
+    }
+
     private void recoverFromTranslogInternal() throws IOException {
         Translog.TranslogGeneration translogGeneration = translog.getGeneration();
         final int opsRecovered;
@@ -569,6 +600,9 @@ public class InternalEngine extends Engine {
                             get.versionType().explainConflictForReads(versionValue.version, get.version()));
                     }
                     refresh("realtime_get", SearcherScope.INTERNAL);
+                } else if (appendOnlyWritesSinceRefresh.get()) {
+                    // documents that were indexed through the append-only fast path are not tracked in the version map
+                    refresh("realtime_get", SearcherScope.INTERNAL);
                 }
                 scope = SearcherScope.INTERNAL;
             } else {
@@ -748,10 +782,28 @@ public class InternalEngine extends Engine {
     public IndexResult index(Index index) throws IOException {
         assert Objects.equals(index.uid().field(), uidField) : index.uid().field();
         final boolean doThrottle = index.origin().isRecovery() == false;
-        try (ReleasableLock releasableLock = readLock.acquire()) {
+        try (Releasable releasableLock = acquireReadLock(index)) {
             ensureOpen();
             assert assertIncomingSequenceNumber(index.origin(), index.seqNo());
             assert assertVersionType(index);
+            // only the primary may skip the version map, replicas resolve retries against it, see planIndexingAsNonPrimary
+            if (appendOnly && index.origin() == Operation.Origin.PRIMARY && canOptimizeAddDocument(index)) {
+                if (index.isRetry()) {
+                    // publish our timestamp such that no copy of this operation enters the fast path anymore and wait for those
+                    // that already did, otherwise we might not see them when we resolve this operation below
+                    mayHaveBeenIndexedBefore(index);
+                    try (ReleasableLock ignored = appendOnlyWriteLock.acquire()) {
+                        // nothing to do, all fast path operations that started before we published our timestamp are done
+                    }
+                } else {
+                    try (Releasable indexThrottle = doThrottle ? () -> {} : throttle.acquireThrottle();
+                         ReleasableLock ignored = appendOnlyReadLock.acquire()) {
+                        if (mayHaveBeenIndexedBefore(index) == false) {
+                            return indexAppendOnly(index);
+                        }
+                    }
+                }
+            }
             try (Releasable ignored = acquireLock(index.uid());
                 Releasable indexThrottle = doThrottle ? () -> {} : throttle.acquireThrottle()) {
                 lastWriteNanos = index.startTime();
@@ -799,24 +851,130 @@ public class InternalEngine extends Engine {
                     indexResult = new IndexResult(
                             plan.versionForIndexing, plan.seqNoForIndexing, plan.currentNotFoundOrDeleted);
                 }
-                if (index.origin() != Operation.Origin.LOCAL_TRANSLOG_RECOVERY) {
-                    final Translog.Location location;
-                    if (indexResult.hasFailure() == false) {
-                        location = translog.add(new Translog.Index(index, indexResult));
-                    } else if (indexResult.getSeqNo() != SequenceNumbers.UNASSIGNED_SEQ_NO) {
-                        // if we have document failure, record it as a no-op in the translog with the generated seq_no
-                        location = translog.add(new Translog.NoOp(indexResult.getSeqNo(), index.primaryTerm(), indexResult.getFailure().getMessage()));
+                return completeIndexOperation(index, indexResult);
+            }
+        } catch (RuntimeException | IOException e) {
+            try {
+                maybeFailEngine("index", e);
+            } catch (Exception inner) {
+                e.addSuppressed(inner);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Indexes a primary operation with an auto-generated id into an append-only index. Since the id has never been seen before, this
+     * neither takes the lock of the id nor plans the operation against the version map and the operation isn't added to the version map
+     * either. Must be called while holding the {@link #appendOnlyReadLock}.
+     */
+    private IndexResult indexAppendOnly(Index index) throws IOException {
+        assert appendOnly && index.origin() == Operation.Origin.PRIMARY && index.isRetry() == false;
+        assert appendOnlyLock.getReadHoldCount() > 0;
+        lastWriteNanos = index.startTime();
+        appendOnlyWritesSinceRefresh.set(true);
+        final long seqNo = generateSeqNoForOperation(index);
+        assert assertSequenceNumberBeforeIndexing(index.origin(), seqNo);
+        index.parsedDoc().updateSeqID(seqNo, index.primaryTerm());
+        index.parsedDoc().version().setLongValue(1L);
+        IndexResult indexResult;
+        try {
+            index(index.docs(), indexWriter);
+            indexResult = new IndexResult(1L, seqNo, true);
+        } catch (Exception ex) {
+            if (indexWriter.getTragicException() != null) {
+                throw ex;
+            }
+            // a document failure, see indexIntoLucene
+            indexResult = new IndexResult(ex, Versions.MATCH_ANY, seqNo);
+        }
+        return completeIndexOperation(index, indexResult);
+    }
+
+    private IndexResult completeIndexOperation(Index index, IndexResult indexResult) throws IOException {
+        if (index.origin() != Operation.Origin.LOCAL_TRANSLOG_RECOVERY) {
+            final Translog.Location location;
+            if (indexResult.hasFailure() == false) {
+                location = translog.add(new Translog.Index(index, indexResult));
+            } else if (indexResult.getSeqNo() != SequenceNumbers.UNASSIGNED_SEQ_NO) {
+                // if we have document failure, record it as a no-op in the translog with the generated seq_no
+                location = translog.add(new Translog.NoOp(indexResult.getSeqNo(), index.primaryTerm(), indexResult.getFailure().getMessage()));
+            } else {
+                location = null;
+            }
+            indexResult.setTranslogLocation(location);
+        }
+        if (indexResult.getSeqNo() != SequenceNumbers.UNASSIGNED_SEQ_NO) {
+            seqNoService.markSeqNoAsCompleted(indexResult.getSeqNo());
+        }
+        indexResult.setTook(System.nanoTime() - index.startTime());
+        indexResult.freeze();
+        return indexResult;
+    }
+
+    @Override
+    public List<Result> bulk(List<? extends Operation> operations) throws IOException {
+        if (appendOnly == false) {
+            return super.bulk(operations);
+        }
+        final Result[] results = new Result[operations.size()];
+        int i = 0;
+        while (i < operations.size()) {
+            if (canIndexAppendOnlyInBatch(operations.get(i))) {
+                int end = i + 1;
+                while (end < operations.size() && canIndexAppendOnlyInBatch(operations.get(end))) {
+                    end++;
+                }
+                indexAppendOnly(operations, i, end, results);
+                i = end;
+            } else {
+                // operations that can't be batched take the regular path, they acquire the engine locks themselves
+                results[i] = super.bulk(operations.subList(i, i + 1)).get(0);
+                i++;
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private boolean canIndexAppendOnlyInBatch(Operation operation) {
+        if (appendOnly && operation.operationType() == Operation.TYPE.INDEX && operation.origin() == Operation.Origin.PRIMARY) {
+            final Index index = (Index) operation;
+            assert Objects.equals(index.uid().field(), uidField) : index.uid().field();
+            assert assertIncomingSequenceNumber(index.origin(), index.seqNo());
+            return canOptimizeAddDocument(index) && index.isRetry() == false;
+        }
+        return false;
+    }
+
+    /**
+     * Indexes the operations from {@code from} (inclusive) to {@code to} (exclusive), all of which have auto-generated ids and aren't
+     * retries, into an append-only index. Unlike {@link #indexAppendOnly(Index)} this reserves a single range of sequence numbers, hands
+     * all documents to Lucene in one call, writes all translog operations with one write and marks the range as completed at once.
+     * Operations that may have been indexed before are indexed one by one afterwards.
+     */
+    private void indexAppendOnly(List<? extends Operation> operations, int from, int to, Result[] results) throws IOException {
+        final List<Index> batch = new ArrayList<>(to - from);
+        final List<Integer> slots = new ArrayList<>(to - from);
+        final List<Integer> deoptimized = new ArrayList<>();
+        try (ReleasableLock releasableLock = readLock.acquire()) {
+            ensureOpen();
+            // batched operations are primary operations, which index() doesn't throttle either
+            try (ReleasableLock ignored = appendOnlyReadLock.acquire()) {
+                for (int i = from; i < to; i++) {
+                    final Index index = (Index) operations.get(i);
+                    if (mayHaveBeenIndexedBefore(index)) {
+                        deoptimized.add(i);
                     } else {
-                        location = null;
+                        batch.add(index);
+                        slots.add(i);
                     }
-                    indexResult.setTranslogLocation(location);
                 }
-                if (indexResult.getSeqNo() != SequenceNumbers.UNASSIGNED_SEQ_NO) {
-                    seqNoService.markSeqNoAsCompleted(indexResult.getSeqNo());
+                if (batch.isEmpty() == false) {
+                    final IndexResult[] batchResults = indexAppendOnly(batch);
+                    for (int i = 0; i < batchResults.length; i++) {
+                        results[slots.get(i)] = batchResults[i];
+                    }
                 }
-                indexResult.setTook(System.nanoTime() - index.startTime());
-                indexResult.freeze();
-                return indexResult;
             }
         } catch (RuntimeException | IOException e) {
             try {
@@ -826,6 +984,66 @@ public class InternalEngine extends Engine {
             }
             throw e;
         }
+        // these are rare, they only happen if a retry with a later timestamp was seen in the meantime
+        for (int slot : deoptimized) {
+            results[slot] = index((Index) operations.get(slot));
+        }
+    }
+
+    private IndexResult[] indexAppendOnly(List<Index> batch) throws IOException {
+        assert appendOnlyLock.getReadHoldCount() > 0;
+        final int size = batch.size();
+        lastWriteNanos = batch.get(0).startTime();
+        appendOnlyWritesSinceRefresh.set(true);
+        final long firstSeqNo = seqNoService.generateSeqNoRange(size);
+        final List<ParseContext.Document> docs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Index index = batch.get(i);
+            index.parsedDoc().updateSeqID(firstSeqNo + i, index.primaryTerm());
+            index.parsedDoc().version().setLongValue(1L);
+            docs.addAll(index.docs());
+        }
+        final IndexResult[] results = new IndexResult[size];
+        try {
+            indexWriter.addDocuments(docs);
+            for (int i = 0; i < size; i++) {
+                results[i] = new IndexResult(1L, firstSeqNo + i, true);
+            }
+        } catch (Exception ex) {
+            if (indexWriter.getTragicException() != null) {
+                throw ex;
+            }
+            // Lucene rolls back the whole block on a document failure, retry the documents one by one to find out which ones failed
+            for (int i = 0; i < size; i++) {
+                try {
+                    index(batch.get(i).docs(), indexWriter);
+                    results[i] = new IndexResult(1L, firstSeqNo + i, true);
+                } catch (Exception inner) {
+                    if (indexWriter.getTragicException() != null) {
+                        throw inner;
+                    }
+                    results[i] = new IndexResult(inner, Versions.MATCH_ANY, firstSeqNo + i);
+                }
+            }
+        }
+        final List<Translog.Operation> translogOperations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Index index = batch.get(i);
+            if (results[i].hasFailure() == false) {
+                translogOperations.add(new Translog.Index(index, results[i]));
+            } else {
+                // if we have document failure, record it as a no-op in the translog with the generated seq_no
+                translogOperations.add(new Translog.NoOp(results[i].getSeqNo(), index.primaryTerm(), results[i].getFailure().getMessage()));
+            }
+        }
+        final List<Translog.Location> locations = translog.add(translogOperations);
+        seqNoService.markSeqNoRangeAsCompleted(firstSeqNo, firstSeqNo + size - 1);
+        for (int i = 0; i < size; i++) {
+            results[i].setTranslogLocation(locations.get(i));
+            results[i].setTook(System.nanoTime() - batch.get(i).startTime());
+            results[i].freeze();
+        }
+        return results;
     }
 
     private IndexingStrategy planIndexingAsNonPrimary(Index index) throws IOException {
@@ -1078,7 +1296,7 @@ public class InternalEngine extends Engine {
         assert assertIncomingSequenceNumber(delete.origin(), delete.seqNo());
         final DeleteResult deleteResult;
         // NOTE: we don't throttle this when merges fall behind because delete-by-id does not create new segments:
-        try (ReleasableLock ignored = readLock.acquire(); Releasable ignored2 = acquireLock(delete.uid())) {
+        try (Releasable ignored = acquireReadLock(delete); Releasable ignored2 = acquireLock(delete.uid())) {
             ensureOpen();
             lastWriteNanos = delete.startTime();
             final DeletionStrategy plan;
@@ -1265,7 +1483,7 @@ public class InternalEngine extends Engine {
     @Override
     public NoOpResult noOp(final NoOp noOp) {
         NoOpResult noOpResult;
-        try (ReleasableLock ignored = readLock.acquire()) {
+        try (Releasable ignored = acquireReadLock(noOp)) {
             noOpResult = innerNoOp(noOp);
         } catch (final Exception e) {
             noOpResult = new NoOpResult(noOp.seqNo(), e);
@@ -1274,7 +1492,8 @@ public class InternalEngine extends Engine {
     }
 
     private NoOpResult innerNoOp(final NoOp noOp) throws IOException {
-        assert readLock.isHeldByCurrentThread() || writeLock.isHeldByCurrentThread();
+        assert readLock.isHeldByCurrentThread() || writeLock.isHeldByCurrentThread()
+            || (noOp.origin() == Operation.Origin.LOCAL_TRANSLOG_RECOVERY && replayingTranslog);
         assert noOp.seqNo() > SequenceNumbers.NO_OPS_PERFORMED;
         final long seqNo = noOp.seqNo();
         try {
@@ -1307,6 +1526,8 @@ public class InternalEngine extends Engine {
         writingBytes.addAndGet(bytes);
         try (ReleasableLock lock = readLock.acquire()) {
             ensureOpen();
+            // cleared before refreshing, so that documents that are indexed concurrently with the refresh keep it set
+            appendOnlyWritesSinceRefresh.set(false);
             switch (scope) {
                 case EXTERNAL:
                     // even though we maintain 2 managers we really do the heavy-lifting only once.
@@ -34,6 +34,117 @@ import java.util.concurrent.atomic.AtomicLong;
 /** Maps _uid value to its version information. */
 class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
+    /**
+     * The per refresh cycle lookup from _uid to its version information. Implementations must be safe for concurrent access by
+     * threads that hold the lock of different uids.
+     */
+    interface VersionLookup {
+
+        VersionValue get(BytesRef uid);
+
+        /** Associates the uid with the given version and returns the previous version, or <code>null</code> if there was none */
+        VersionValue put(BytesRef uid, VersionValue version);
+
+        int size();
+
+        boolean isEmpty();
+
+        /** Returns a new, empty lookup of the same kind sized for the given number of entries */
+        VersionLookup newLookup(int expectedSize);
+
+        /**
+         * Returns the bytes an entry for the given uid and version accounts for in this lookup. This excludes any bytes that a delete
+         * shares with its tombstone, see {@link #bytesSharedWithTombstone(BytesRef, VersionValue)}.
+         */
+        long ramBytesUsed(BytesRef uid, VersionValue version);
+
+        /**
+         * Returns the bytes of a delete entry that are held by both this lookup and the tombstones and are therefore accounted against
+         * the tombstones as long as the tombstone exists.
+         */
+        long bytesSharedWithTombstone(BytesRef uid, VersionValue delete);
+
+        /** Returns a point in time copy or view of all entries */
+        Map<BytesRef, VersionValue> asMap();
+    }
+
+    /** The default lookup that holds a {@link BytesRef} and a {@link VersionValue} per entry in a concurrent hash map. */
+    private static final class ConcurrentVersionLookup implements VersionLookup {
+
+        private final Map<BytesRef, VersionValue> map;
+
+        ConcurrentVersionLookup(Map<BytesRef, VersionValue> map) {
+            this.map = map;
+        }
+
+        @Override
+        public VersionValue get(BytesRef uid) {
+            return map.get(uid);
+        }
+
+        @Override
+        public VersionValue put(BytesRef uid, VersionValue version) {
+            return map.put(uid, version);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public VersionLookup newLookup(int expectedSize) {
+            return new ConcurrentVersionLookup(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency(expectedSize));
+        }
+
+        @Override
+        public long ramBytesUsed(BytesRef uid, VersionValue version) {
+            long bytes = BASE_BYTES_PER_CHM_ENTRY;
+            if (version.isDelete() == false) {
+                bytes += version.ramBytesUsed() + uidRamBytesUsed(uid);
+            }
+            return bytes;
+        }
+
+        @Override
+        public long bytesSharedWithTombstone(BytesRef uid, VersionValue delete) {
+            assert delete.isDelete();
+            // the tombstone and this map share the same BytesRef and DeleteVersionValue instances
+            return delete.ramBytesUsed() + uidRamBytesUsed(uid);
+        }
+
+        @Override
+        public Map<BytesRef, VersionValue> asMap() {
+            return map;
+        }
+    }
+
+    private static final VersionLookup EMPTY_LOOKUP = new ConcurrentVersionLookup(Collections.emptyMap());
+
+    private final VersionLookup emptyLookup;
+
+    LiveVersionMap() {
+        this(false);
+    }
+
+    /**
+     * @param packed if <code>true</code> the uids and versions of each refresh cycle are kept in a {@link PackedVersionLookup} instead
+     *               of concurrent hash maps
+     */
+    LiveVersionMap(boolean packed) {
+        this.emptyLookup = packed ? new PackedVersionLookup(0) : EMPTY_LOOKUP;
+        this.maps = newMaps();
+    }
+
+    private Maps newMaps() {
+        return new Maps(emptyLookup.newLookup(16), EMPTY_LOOKUP);
+    }
+
     /**
      * Resets the internal map and adjusts it's capacity as if there were no indexing operations.
      * This must be called under write lock in the engine
@@ -43,32 +154,27 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
             assert false : "map must be empty"; // fail hard if not empty and fail with assertion in tests to ensure we never swallow it
             throw new IllegalStateException("map must be empty");
         }
-        maps = new Maps();
+        maps = newMaps();
     }
 
     private static class Maps {
 
         // All writes (adds and deletes) go into here:
-        final Map<BytesRef,VersionValue> current;
+        final VersionLookup current;
 
         // Used while refresh is running, and to hold adds/deletes until refresh finishes.  We read from both current and old on lookup:
-        final Map<BytesRef,VersionValue> old;
+        final VersionLookup old;
 
-        Maps(Map<BytesRef,VersionValue> current, Map<BytesRef,VersionValue> old) {
+        Maps(VersionLookup current, VersionLookup old) {
            this.current = current;
            this.old = old;
         }
-
-        Maps() {
-            this(ConcurrentCollections.<BytesRef,VersionValue>newConcurrentMapWithAggressiveConcurrency(),
-                 Collections.emptyMap());
-        }
     }
 
     // All deletes also go here, and delete "tombstones" are retained after refresh:
     private final Map<BytesRef,DeleteVersionValue> tombstones = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
 
-    private volatile Maps maps = new Maps();
+    private volatile Maps maps;
 
     /** Bytes consumed for each BytesRef UID:
      * In this base value, we account for the {@link BytesRef} object itself as
@@ -86,6 +192,10 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
             // lost bytes on average
             3;
 
+    private static long uidRamBytesUsed(BytesRef uid) {
+        return BASE_BYTES_PER_BYTESREF + uid.bytes.length;
+    }
+
     /** Bytes used by having CHM point to a key/value. */
     private static final long BASE_BYTES_PER_CHM_ENTRY;
     static {
@@ -113,7 +223,7 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
         // map.  While reopen is running, any lookup will first
         // try this new map, then fallback to old, then to the
         // current searcher:
-        maps = new Maps(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency(maps.current.size()), maps.current);
+        maps = new Maps(maps.current.newLookup(maps.current.size()), maps.current);
 
         // This is not 100% correct, since concurrent indexing ops can change these counters in between our execution of the previous
         // line and this one, but that should be minor, and the error won't accumulate over time:
@@ -128,7 +238,7 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
         // case.  This is because we assign new maps (in beforeRefresh) slightly before Lucene actually flushes any segments for the
         // reopen, and so any concurrent indexing requests can still sneak in a few additions to that current map that are in fact reflected
         // in the previous reader.   We don't touch tombstones here: they expire on their own index.gc_deletes timeframe:
-        maps = new Maps(maps.current, Collections.emptyMap());
+        maps = new Maps(maps.current, EMPTY_LOOKUP);
     }
 
     /** Returns the live version (add or delete) for this uid. */
@@ -152,24 +262,17 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     /** Adds this uid/version to the pending adds map. */
     void putUnderLock(BytesRef uid, VersionValue version) {
         assert uid.bytes.length == uid.length : "Oversized _uid! UID length: " + uid.length + ", bytes length: " + uid.bytes.length;
-        long uidRAMBytesUsed = BASE_BYTES_PER_BYTESREF + uid.bytes.length;
+        long uidRAMBytesUsed = uidRamBytesUsed(uid);
 
-        final VersionValue prev = maps.current.put(uid, version);
+        final VersionLookup current = maps.current;
+        final VersionValue prev = current.put(uid, version);
         if (prev != null) {
             // Deduct RAM for the version we just replaced:
-            long prevBytes = BASE_BYTES_PER_CHM_ENTRY;
-            if (prev.isDelete() == false) {
-                prevBytes += prev.ramBytesUsed() + uidRAMBytesUsed;
-            }
-            ramBytesUsedCurrent.addAndGet(-prevBytes);
+            ramBytesUsedCurrent.addAndGet(-current.ramBytesUsed(uid, prev));
         }
 
         // Add RAM for the new version:
-        long newBytes = BASE_BYTES_PER_CHM_ENTRY;
-        if (version.isDelete() == false) {
-            newBytes += version.ramBytesUsed() + uidRAMBytesUsed;
-        }
-        ramBytesUsedCurrent.addAndGet(newBytes);
+        ramBytesUsedCurrent.addAndGet(current.ramBytesUsed(uid, version));
 
         final VersionValue prevTombstone;
         if (version.isDelete()) {
@@ -184,7 +287,7 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
             if (prevTombstone == null && prev != null && prev.isDelete()) {
                 // If prev was a delete that had already been removed from tombstones, then current was already accounting for the
                 // BytesRef/VersionValue RAM, so we now deduct that as well:
-                ramBytesUsedCurrent.addAndGet(-(prev.ramBytesUsed() + uidRAMBytesUsed));
+                ramBytesUsedCurrent.addAndGet(-current.bytesSharedWithTombstone(uid, prev));
             }
         } else {
             // UID came back to life so we remove the tombstone:
@@ -201,7 +304,7 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     /** Removes this uid from the pending deletes map. */
     void removeTombstoneUnderLock(BytesRef uid) {
 
-        long uidRAMBytesUsed = BASE_BYTES_PER_BYTESREF + uid.bytes.length;
+        long uidRAMBytesUsed = uidRamBytesUsed(uid);
 
         final VersionValue prev = tombstones.remove(uid);
         if (prev != null) {
@@ -209,12 +312,13 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
             long v = ramBytesUsedTombstones.addAndGet(-(BASE_BYTES_PER_CHM_ENTRY + prev.ramBytesUsed() + uidRAMBytesUsed));
             assert v >= 0: "bytes=" + v;
         }
-        final VersionValue curVersion = maps.current.get(uid);
+        final VersionLookup current = maps.current;
+        final VersionValue curVersion = current.get(uid);
         if (curVersion != null && curVersion.isDelete()) {
             // We now shift accounting of the BytesRef from tombstones to current, because a refresh would clear this RAM.  This should be
             // uncommon, because with the default refresh=1s and gc_deletes=60s, deletes should be cleared from current long before we drop
             // them from tombstones:
-            ramBytesUsedCurrent.addAndGet(curVersion.ramBytesUsed() + uidRAMBytesUsed);
+            ramBytesUsedCurrent.addAndGet(current.bytesSharedWithTombstone(uid, curVersion));
         }
     }
 
@@ -235,7 +339,7 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
     /** Called when this index is closed. */
     synchronized void clear() {
-        maps = new Maps();
+        maps = newMaps();
         tombstones.clear();
         ramBytesUsedCurrent.set(0);
 
@@ -264,5 +368,5 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
     /** Returns the current internal versions as a point in time snapshot*/
     Map<BytesRef, VersionValue> getAllCurrent() {
-        return maps.current;
+        return maps.current.asMap();
     }}
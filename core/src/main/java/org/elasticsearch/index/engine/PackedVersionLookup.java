@@ -0,0 +1,182 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.common.util.LongArray;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link LiveVersionMap.VersionLookup} that stores the uid bytes, version, seq# and term of each entry inline in open addressed hash
+ * tables over {@link BigArrays} pages instead of allocating a {@link BytesRef}, a <code>byte[]</code>, a {@link VersionValue} and a
+ * hash map node per entry. The tables are striped by uid hash and each stripe is guarded by its own monitor, such that concurrent
+ * indexing threads only contend if their uids fall into the same stripe.
+ * <p>
+ * The pages are allocated from {@link BigArrays#NON_RECYCLING_INSTANCE}: a lookup is dropped as a whole on refresh while other threads
+ * may still read from it, so its pages are left to the garbage collector rather than being recycled.
+ */
+final class PackedVersionLookup implements LiveVersionMap.VersionLookup {
+
+    private static final int NUM_STRIPES = 16; // must be a power of two
+    private static final long NOT_A_DELETE = Long.MIN_VALUE;
+
+    /**
+     * Bytes used per entry on top of the uid bytes: the start offset and hash cached by the {@link BytesRefHash}, the id slot of the
+     * hash table at the default load factor of 0.6 and the version, seq#, term and delete time arrays.
+     */
+    static final long BYTES_PER_ENTRY = Long.BYTES + Integer.BYTES + (long) Math.ceil(Long.BYTES / 0.6) + 4 * Long.BYTES;
+
+    private final Stripe[] stripes;
+
+    PackedVersionLookup(int expectedSize) {
+        final long stripeCapacity = Math.max(1, expectedSize / NUM_STRIPES);
+        stripes = new Stripe[NUM_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    private Stripe stripe(BytesRef uid) {
+        return stripes[uid.hashCode() & (NUM_STRIPES - 1)];
+    }
+
+    @Override
+    public VersionValue get(BytesRef uid) {
+        return stripe(uid).get(uid);
+    }
+
+    @Override
+    public VersionValue put(BytesRef uid, VersionValue version) {
+        return stripe(uid).put(uid, version);
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return Math.toIntExact(size);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public LiveVersionMap.VersionLookup newLookup(int expectedSize) {
+        return new PackedVersionLookup(expectedSize);
+    }
+
+    @Override
+    public long ramBytesUsed(BytesRef uid, VersionValue version) {
+        // deletes are copied into the tables as well, so they are freed up on refresh just like any other entry
+        return BYTES_PER_ENTRY + uid.length;
+    }
+
+    @Override
+    public long bytesSharedWithTombstone(BytesRef uid, VersionValue delete) {
+        assert delete.isDelete();
+        // the tombstone holds its own BytesRef and DeleteVersionValue, nothing is shared with the tables
+        return 0;
+    }
+
+    @Override
+    public Map<BytesRef, VersionValue> asMap() {
+        final Map<BytesRef, VersionValue> map = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            stripe.copyTo(map);
+        }
+        return map;
+    }
+
+    private static final class Stripe {
+
+        private final BytesRefHash uids;
+        private LongArray versions;
+        private LongArray seqNos;
+        private LongArray terms;
+        private LongArray deleteTimes;
+
+        Stripe(long capacity) {
+            final BigArrays bigArrays = BigArrays.NON_RECYCLING_INSTANCE;
+            uids = new BytesRefHash(capacity, bigArrays);
+            versions = bigArrays.newLongArray(capacity, false);
+            seqNos = bigArrays.newLongArray(capacity, false);
+            terms = bigArrays.newLongArray(capacity, false);
+            deleteTimes = bigArrays.newLongArray(capacity, false);
+        }
+
+        synchronized long size() {
+            return uids.size();
+        }
+
+        synchronized VersionValue get(BytesRef uid) {
+            final long id = uids.find(uid);
+            return id < 0 ? null : valueAt(id);
+        }
+
+        synchronized VersionValue put(BytesRef uid, VersionValue version) {
+            long id = uids.add(uid);
+            final VersionValue prev;
+            if (id < 0) {
+                id = -1 - id;
+                prev = valueAt(id);
+            } else {
+                final BigArrays bigArrays = BigArrays.NON_RECYCLING_INSTANCE;
+                versions = bigArrays.grow(versions, id + 1);
+                seqNos = bigArrays.grow(seqNos, id + 1);
+                terms = bigArrays.grow(terms, id + 1);
+                deleteTimes = bigArrays.grow(deleteTimes, id + 1);
+                prev = null;
+            }
+            versions.set(id, version.version);
+            seqNos.set(id, version.seqNo);
+            terms.set(id, version.term);
+            deleteTimes.set(id, version.isDelete() ? ((DeleteVersionValue) version).time : NOT_A_DELETE);
+            return prev;
+        }
+
+        synchronized void copyTo(Map<BytesRef, VersionValue> map) {
+            for (long id = 0; id < uids.size(); id++) {
+                map.put(BytesRef.deepCopyOf(uids.get(id, new BytesRef())), valueAt(id));
+            }
+        }
+
+        private VersionValue valueAt(long id) {
+            final long deleteTime = deleteTimes.get(id);
+            if (deleteTime == NOT_A_DELETE) {
+                return new VersionValue(versions.get(id), seqNos.get(id), terms.get(id));
+            } else {
+                return new DeleteVersionValue(versions.get(id), seqNos.get(id), terms.get(id), deleteTime);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PackedVersionLookup{size=" + size() + "}";
+    }
+}
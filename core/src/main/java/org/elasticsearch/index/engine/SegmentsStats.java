@@ -21,6 +21,7 @@ package org.elasticsearch.index.engine;
 
 import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -47,6 +48,9 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
     private long versionMapMemoryInBytes;
     private long maxUnsafeAutoIdTimestamp = Long.MIN_VALUE;
     private long bitsetMemoryInBytes;
+    private long termsBloomFilterMemoryInBytes;
+    private long termsBloomFilterHitCount;
+    private long termsBloomFilterMissCount;
     private ImmutableOpenMap<String, Long> fileSizes = ImmutableOpenMap.of();
 
     /*
@@ -124,6 +128,13 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         this.bitsetMemoryInBytes += bitsetMemoryInBytes;
     }
 
+    public void addTermsBloomFilterStats(long termsBloomFilterMemoryInBytes, long termsBloomFilterHitCount,
+                                         long termsBloomFilterMissCount) {
+        this.termsBloomFilterMemoryInBytes += termsBloomFilterMemoryInBytes;
+        this.termsBloomFilterHitCount += termsBloomFilterHitCount;
+        this.termsBloomFilterMissCount += termsBloomFilterMissCount;
+    }
+
     public void addFileSizes(ImmutableOpenMap<String, Long> fileSizes) {
         ImmutableOpenMap.Builder<String, Long> map = ImmutableOpenMap.builder(this.fileSizes);
 
@@ -155,6 +166,8 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         addIndexWriterMemoryInBytes(mergeStats.indexWriterMemoryInBytes);
         addVersionMapMemoryInBytes(mergeStats.versionMapMemoryInBytes);
         addBitsetMemoryInBytes(mergeStats.bitsetMemoryInBytes);
+        addTermsBloomFilterStats(mergeStats.termsBloomFilterMemoryInBytes, mergeStats.termsBloomFilterHitCount,
+            mergeStats.termsBloomFilterMissCount);
         addFileSizes(mergeStats.fileSizes);
     }
 
@@ -275,6 +288,32 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         return new ByteSizeValue(bitsetMemoryInBytes);
     }
 
+    /**
+     * Estimation of how much the bloom filters of the terms of segments are taking, see
+     * {@link org.elasticsearch.index.cache.bloom.TermsBloomFilterCache}.
+     */
+    public long getTermsBloomFilterMemoryInBytes() {
+        return termsBloomFilterMemoryInBytes;
+    }
+
+    public ByteSizeValue getTermsBloomFilterMemory() {
+        return new ByteSizeValue(termsBloomFilterMemoryInBytes);
+    }
+
+    /**
+     * The number of times a segment was checked for a term with its bloom filter.
+     */
+    public long getTermsBloomFilterHitCount() {
+        return termsBloomFilterHitCount;
+    }
+
+    /**
+     * The number of times a segment couldn't be checked for a term because its bloom filter wasn't built yet.
+     */
+    public long getTermsBloomFilterMissCount() {
+        return termsBloomFilterMissCount;
+    }
+
     public ImmutableOpenMap<String, Long> getFileSizes() {
         return fileSizes;
     }
@@ -301,6 +340,9 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         builder.byteSizeField(Fields.INDEX_WRITER_MEMORY_IN_BYTES, Fields.INDEX_WRITER_MEMORY, indexWriterMemoryInBytes);
         builder.byteSizeField(Fields.VERSION_MAP_MEMORY_IN_BYTES, Fields.VERSION_MAP_MEMORY, versionMapMemoryInBytes);
         builder.byteSizeField(Fields.FIXED_BIT_SET_MEMORY_IN_BYTES, Fields.FIXED_BIT_SET, bitsetMemoryInBytes);
+        builder.byteSizeField(Fields.TERMS_BLOOM_FILTER_MEMORY_IN_BYTES, Fields.TERMS_BLOOM_FILTER_MEMORY, termsBloomFilterMemoryInBytes);
+        builder.field(Fields.TERMS_BLOOM_FILTER_HIT_COUNT, termsBloomFilterHitCount);
+        builder.field(Fields.TERMS_BLOOM_FILTER_MISS_COUNT, termsBloomFilterMissCount);
         builder.field(Fields.MAX_UNSAFE_AUTO_ID_TIMESTAMP, maxUnsafeAutoIdTimestamp);
         builder.startObject(Fields.FILE_SIZES);
         for (Iterator<ObjectObjectCursor<String, Long>> it = fileSizes.iterator(); it.hasNext();) {
@@ -339,6 +381,10 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         static final String MAX_UNSAFE_AUTO_ID_TIMESTAMP = "max_unsafe_auto_id_timestamp";
         static final String FIXED_BIT_SET = "fixed_bit_set";
         static final String FIXED_BIT_SET_MEMORY_IN_BYTES = "fixed_bit_set_memory_in_bytes";
+        static final String TERMS_BLOOM_FILTER_MEMORY = "terms_bloom_filter_memory";
+        static final String TERMS_BLOOM_FILTER_MEMORY_IN_BYTES = "terms_bloom_filter_memory_in_bytes";
+        static final String TERMS_BLOOM_FILTER_HIT_COUNT = "terms_bloom_filter_hit_count";
+        static final String TERMS_BLOOM_FILTER_MISS_COUNT = "terms_bloom_filter_miss_count";
         static final String FILE_SIZES = "file_sizes";
         static final String SIZE = "size";
         static final String SIZE_IN_BYTES = "size_in_bytes";
@@ -359,6 +405,11 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         versionMapMemoryInBytes = in.readLong();
         bitsetMemoryInBytes = in.readLong();
         maxUnsafeAutoIdTimestamp = in.readLong();
+        if (in.getVersion().onOrAfter(Version.V_7_0_0_alpha1)) {
+            termsBloomFilterMemoryInBytes = in.readLong();
+            termsBloomFilterHitCount = in.readVLong();
+            termsBloomFilterMissCount = in.readVLong();
+        }
 
         int size = in.readVInt();
         ImmutableOpenMap.Builder<String, Long> map = ImmutableOpenMap.builder(size);
@@ -384,6 +435,11 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         out.writeLong(versionMapMemoryInBytes);
         out.writeLong(bitsetMemoryInBytes);
         out.writeLong(maxUnsafeAutoIdTimestamp);
+        if (out.getVersion().onOrAfter(Version.V_7_0_0_alpha1)) {
+            out.writeLong(termsBloomFilterMemoryInBytes);
+            out.writeVLong(termsBloomFilterHitCount);
+            out.writeVLong(termsBloomFilterMissCount);
+        }
 
         out.writeVInt(fileSizes.size());
         for (ObjectObjectCursor<String, Long> entry : fileSizes) {
@@ -19,37 +19,49 @@
 
 package org.elasticsearch.index.seqno;
 
-import com.carrotsearch.hppc.LongObjectHashMap;
-import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.common.SuppressForbidden;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class generates sequences numbers and keeps track of the so-called "local checkpoint" which is the highest number for which all
  * previous sequence numbers have been processed (inclusive).
+ *
+ * The tracker does not take a lock on the write path. Completing the sequence number (or range of sequence numbers) that directly follows
+ * the checkpoint advances the checkpoint with a compare-and-set. Anything completed out of order is recorded as a range in
+ * {@link #completedRanges} until the checkpoint catches up with it. Every thread that advances the checkpoint or records a range
+ * afterwards drains all ranges that have become contiguous with the checkpoint, so a range that is recorded concurrently with an advance
+ * is picked up by at least one of the two threads.
  */
 public class LocalCheckpointTracker {
 
     /**
-     * We keep a bit for each sequence number that is still pending. To optimize allocation, we do so in multiple sets allocating them on
-     * demand and cleaning up while completed. This constant controls the size of the sets.
+     * Ranges of completed sequence numbers above the checkpoint, keyed by the first sequence number of the range and mapping to the last
+     * sequence number of the range (inclusive). Adjacent and overlapping ranges are merged when a range is added, yet concurrent additions
+     * may still leave ranges that overlap, and ranges may fall below the checkpoint until they are drained.
      */
-    static final int BIT_SET_SIZE = 1024;
+    final ConcurrentSkipListMap<Long, Long> completedRanges = new ConcurrentSkipListMap<>();
 
     /**
-     * A collection of bit sets representing pending sequence numbers. Each sequence number is mapped to a bit set by dividing by the
-     * bit set size.
+     * The current local checkpoint, i.e., all sequence numbers no more than this number have been completed.
      */
-    final LongObjectHashMap<FixedBitSet> processedSeqNo = new LongObjectHashMap<>();
+    final AtomicLong checkpoint;
 
     /**
-     * The current local checkpoint, i.e., all sequence numbers no more than this number have been completed.
+     * The next available sequence number.
      */
-    volatile long checkpoint;
+    private final AtomicLong nextSeqNo;
 
     /**
-     * The next available sequence number.
+     * The number of threads blocked in {@link #waitForOpsToComplete(long)}, such that advancing the checkpoint only needs to acquire the
+     * monitor of this tracker if somebody is waiting.
      */
-    private volatile long nextSeqNo;
+    private final AtomicInteger waiters = new AtomicInteger();
 
     /**
      * Initialize the local checkpoint service. The {@code maxSeqNo} should be set to the last sequence number assigned, or
@@ -69,8 +81,8 @@ public class LocalCheckpointTracker {
             throw new IllegalArgumentException(
                 "max seq. no. must be non-negative or [" + SequenceNumbers.NO_OPS_PERFORMED + "] but was [" + maxSeqNo + "]");
         }
-        nextSeqNo = maxSeqNo == SequenceNumbers.NO_OPS_PERFORMED ? 0 : maxSeqNo + 1;
-        checkpoint = localCheckpoint;
+        nextSeqNo = new AtomicLong(maxSeqNo == SequenceNumbers.NO_OPS_PERFORMED ? 0 : maxSeqNo + 1);
+        checkpoint = new AtomicLong(localCheckpoint);
     }
 
     /**
@@ -78,8 +90,19 @@ public class LocalCheckpointTracker {
      *
      * @return the next assigned sequence number
      */
-    synchronized long generateSeqNo() {
-        return nextSeqNo++;
+    long generateSeqNo() {
+        return nextSeqNo.getAndIncrement();
+    }
+
+    /**
+     * Issue a range of consecutive sequence numbers.
+     *
+     * @param count the number of sequence numbers to issue
+     * @return the first sequence number of the range, the last one is {@code count - 1} higher
+     */
+    long generateSeqNoRange(final int count) {
+        assert count > 0 : "count must be positive but was [" + count + "]";
+        return nextSeqNo.getAndAdd(count);
     }
 
     /**
@@ -87,20 +110,78 @@ public class LocalCheckpointTracker {
      *
      * @param seqNo the sequence number to mark as completed
      */
-    public synchronized void markSeqNoAsCompleted(final long seqNo) {
-        // make sure we track highest seen sequence number
-        if (seqNo >= nextSeqNo) {
-            nextSeqNo = seqNo + 1;
+    public void markSeqNoAsCompleted(final long seqNo) {
+        markSeqNoRangeAsCompleted(seqNo, seqNo);
+    }
+
+    /**
+     * Marks the processing of all sequence numbers from {@code fromSeqNo} to {@code toSeqNo} (inclusive) as completed and updates the
+     * checkpoint if possible. This is equivalent to, but cheaper than, calling {@link #markSeqNoAsCompleted(long)} for each of them.
+     *
+     * @param fromSeqNo the first sequence number to mark as completed
+     * @param toSeqNo   the last sequence number to mark as completed
+     */
+    public void markSeqNoRangeAsCompleted(final long fromSeqNo, final long toSeqNo) {
+        assert fromSeqNo <= toSeqNo : "invalid range [" + fromSeqNo + ", " + toSeqNo + "]";
+        // make sure we track highest seen sequence number, this must happen before the checkpoint moves past it
+        if (toSeqNo >= nextSeqNo.get()) {
+            nextSeqNo.accumulateAndGet(toSeqNo + 1, Math::max);
         }
-        if (seqNo <= checkpoint) {
+        final long current = checkpoint.get();
+        if (toSeqNo <= current) {
             // this is possible during recovery where we might replay an operation that was also replicated
             return;
         }
-        final FixedBitSet bitSet = getBitSetForSeqNo(seqNo);
-        final int offset = seqNoToBitSetOffset(seqNo);
-        bitSet.set(offset);
-        if (seqNo == checkpoint + 1) {
-            updateCheckpoint();
+        if (fromSeqNo <= current + 1 && checkpoint.compareAndSet(current, toSeqNo)) {
+            notifyWaiters();
+        } else {
+            addCompletedRange(fromSeqNo, toSeqNo);
+        }
+        drainCompletedRanges();
+    }
+
+    /**
+     * Records the given range, merged with the recorded ranges that it overlaps with or that it is adjacent to, so that a burst of out
+     * of order completions leaves one range per gap rather than one per completion. The merged range is recorded before the ranges
+     * it covers are removed, so every completed sequence number stays covered by some range while other threads add or drain ranges
+     * concurrently. The ranges are only removed if nobody extended them in the meantime.
+     */
+    private void addCompletedRange(final long fromSeqNo, final long toSeqNo) {
+        long from = fromSeqNo;
+        long to = toSeqNo;
+        final Map.Entry<Long, Long> floor = completedRanges.floorEntry(fromSeqNo);
+        if (floor != null && floor.getValue() >= fromSeqNo - 1) {
+            from = floor.getKey();
+            to = Math.max(to, floor.getValue());
+        }
+        final List<Map.Entry<Long, Long>> covered = new ArrayList<>();
+        for (Map.Entry<Long, Long> next : completedRanges.tailMap(from, false).entrySet()) {
+            if (next.getKey() > to + 1) {
+                break;
+            }
+            covered.add(next);
+            to = Math.max(to, next.getValue());
+        }
+        completedRanges.merge(from, to, Math::max);
+        for (Map.Entry<Long, Long> range : covered) {
+            completedRanges.remove(range.getKey(), range.getValue());
+        }
+    }
+
+    /**
+     * Moves the checkpoint over all recorded ranges that are contiguous with it and removes them.
+     */
+    private void drainCompletedRanges() {
+        while (true) {
+            final long current = checkpoint.get();
+            final Map.Entry<Long, Long> first = completedRanges.firstEntry();
+            if (first == null || first.getKey() > current + 1) {
+                return;
+            }
+            if (completedRanges.remove(first.getKey(), first.getValue()) && first.getValue() > current) {
+                checkpoint.accumulateAndGet(first.getValue(), Math::max);
+                notifyWaiters();
+            }
         }
     }
 
@@ -111,9 +192,9 @@ public class LocalCheckpointTracker {
      */
     synchronized void resetCheckpoint(final long checkpoint) {
         assert checkpoint != SequenceNumbers.UNASSIGNED_SEQ_NO;
-        assert checkpoint <= this.checkpoint;
-        processedSeqNo.clear();
-        this.checkpoint = checkpoint;
+        assert checkpoint <= this.checkpoint.get();
+        completedRanges.clear();
+        this.checkpoint.set(checkpoint);
     }
 
     /**
@@ -122,7 +203,7 @@ public class LocalCheckpointTracker {
      * @return the current checkpoint
      */
     public long getCheckpoint() {
-        return checkpoint;
+        return checkpoint.get();
     }
 
     /**
@@ -131,17 +212,19 @@ public class LocalCheckpointTracker {
      * @return the maximum sequence number
      */
     long getMaxSeqNo() {
-        return nextSeqNo - 1;
+        return nextSeqNo.get() - 1;
     }
 
 
     /**
      * constructs a {@link SeqNoStats} object, using local state and the supplied global checkpoint
      *
-     * @implNote this is needed to make sure the local checkpoint and max seq no are consistent
+     * @implNote the checkpoint is read before the max seq no. Since the max seq no is updated before the checkpoint moves past it, the
+     * returned checkpoint is never above the returned max seq no.
      */
-    synchronized SeqNoStats getStats(final long globalCheckpoint) {
-        return new SeqNoStats(getMaxSeqNo(), getCheckpoint(), globalCheckpoint);
+    SeqNoStats getStats(final long globalCheckpoint) {
+        final long localCheckpoint = getCheckpoint();
+        return new SeqNoStats(getMaxSeqNo(), localCheckpoint, globalCheckpoint);
     }
 
     /**
@@ -152,88 +235,26 @@ public class LocalCheckpointTracker {
      */
     @SuppressForbidden(reason = "Object#wait")
     synchronized void waitForOpsToComplete(final long seqNo) throws InterruptedException {
-        while (checkpoint < seqNo) {
-            // notified by updateCheckpoint
-            this.wait();
-        }
-    }
-
-    /**
-     * Moves the checkpoint to the last consecutively processed sequence number. This method assumes that the sequence number following the
-     * current checkpoint is processed.
-     */
-    @SuppressForbidden(reason = "Object#notifyAll")
-    private void updateCheckpoint() {
-        assert Thread.holdsLock(this);
-        assert getBitSetForSeqNo(checkpoint + 1).get(seqNoToBitSetOffset(checkpoint + 1)) :
-            "updateCheckpoint is called but the bit following the checkpoint is not set";
+        // register before checking the checkpoint, a concurrent advance either is visible below or sees us and notifies
+        waiters.incrementAndGet();
         try {
-            // keep it simple for now, get the checkpoint one by one; in the future we can optimize and read words
-            long bitSetKey = getBitSetKey(checkpoint);
-            FixedBitSet current = processedSeqNo.get(bitSetKey);
-            if (current == null) {
-                // the bit set corresponding to the checkpoint has already been removed, set ourselves up for the next bit set
-                assert checkpoint % BIT_SET_SIZE == BIT_SET_SIZE - 1;
-                current = processedSeqNo.get(++bitSetKey);
+            while (checkpoint.get() < seqNo) {
+                // notified by notifyWaiters
+                this.wait();
             }
-            do {
-                checkpoint++;
-                /*
-                 * The checkpoint always falls in the current bit set or we have already cleaned it; if it falls on the last bit of the
-                 * current bit set, we can clean it.
-                 */
-                if (checkpoint == lastSeqNoInBitSet(bitSetKey)) {
-                    assert current != null;
-                    final FixedBitSet removed = processedSeqNo.remove(bitSetKey);
-                    assert removed == current;
-                    current = processedSeqNo.get(++bitSetKey);
-                }
-            } while (current != null && current.get(seqNoToBitSetOffset(checkpoint + 1)));
         } finally {
-            // notifies waiters in waitForOpsToComplete
-            this.notifyAll();
+            waiters.decrementAndGet();
         }
     }
 
-    private long lastSeqNoInBitSet(final long bitSetKey) {
-        return (1 + bitSetKey) * BIT_SET_SIZE - 1;
-    }
-
-    /**
-     * Return the bit set for the provided sequence number, possibly allocating a new set if needed.
-     *
-     * @param seqNo the sequence number to obtain the bit set for
-     * @return the bit set corresponding to the provided sequence number
-     */
-    private long getBitSetKey(final long seqNo) {
-        assert Thread.holdsLock(this);
-        return seqNo / BIT_SET_SIZE;
-    }
-
-    private FixedBitSet getBitSetForSeqNo(final long seqNo) {
-        assert Thread.holdsLock(this);
-        final long bitSetKey = getBitSetKey(seqNo);
-        final int index = processedSeqNo.indexOf(bitSetKey);
-        final FixedBitSet bitSet;
-        if (processedSeqNo.indexExists(index)) {
-            bitSet = processedSeqNo.indexGet(index);
-        } else {
-            bitSet = new FixedBitSet(BIT_SET_SIZE);
-            processedSeqNo.indexInsert(index, bitSetKey, bitSet);
+    @SuppressForbidden(reason = "Object#notifyAll")
+    private void notifyWaiters() {
+        if (waiters.get() > 0) {
+            synchronized (this) {
+                // notifies waiters in waitForOpsToComplete
+                this.notifyAll();
+            }
         }
-        return bitSet;
-    }
-
-    /**
-     * Obtain the position in the bit set corresponding to the provided sequence number. The bit set corresponding to the sequence number
-     * can be obtained via {@link #getBitSetForSeqNo(long)}.
-     *
-     * @param seqNo the sequence number to obtain the position for
-     * @return the position in the bit set corresponding to the provided sequence number
-     */
-    private int seqNoToBitSetOffset(final long seqNo) {
-        assert Thread.holdsLock(this);
-        return Math.toIntExact(seqNo % BIT_SET_SIZE);
     }
 
 }
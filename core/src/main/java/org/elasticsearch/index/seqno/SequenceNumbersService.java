@@ -70,6 +70,17 @@ public class SequenceNumbersService extends AbstractIndexShardComponent {
         return localCheckpointTracker.generateSeqNo();
     }
 
+    /**
+     * Issue a range of consecutive sequence numbers. Note that you must call {@link #markSeqNoRangeAsCompleted(long, long)} or
+     * {@link #markSeqNoAsCompleted(long)} for each issued sequence number once the corresponding operation completes.
+     *
+     * @param count the number of sequence numbers to issue
+     * @return the first sequence number of the range
+     */
+    public final long generateSeqNoRange(final int count) {
+        return localCheckpointTracker.generateSeqNoRange(count);
+    }
+
     /**
      * The maximum sequence number issued so far. See {@link LocalCheckpointTracker#getMaxSeqNo()} for additional details.
      *
@@ -99,6 +110,17 @@ public class SequenceNumbersService extends AbstractIndexShardComponent {
         localCheckpointTracker.markSeqNoAsCompleted(seqNo);
     }
 
+    /**
+     * Marks the processing of a range of sequence numbers as completed and updates the checkpoint if possible.
+     * See {@link LocalCheckpointTracker#markSeqNoRangeAsCompleted(long, long)} for additional details.
+     *
+     * @param fromSeqNo the first sequence number to mark as completed
+     * @param toSeqNo   the last sequence number to mark as completed
+     */
+    public void markSeqNoRangeAsCompleted(final long fromSeqNo, final long toSeqNo) {
+        localCheckpointTracker.markSeqNoRangeAsCompleted(fromSeqNo, toSeqNo);
+    }
+
     /**
      * Resets the local checkpoint to the specified value.
      *
@@ -46,6 +46,7 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.flush.FlushRequest;
 import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
 import org.elasticsearch.action.admin.indices.upgrade.post.UpgradeRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
@@ -65,6 +66,8 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.AsyncIOProcessor;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexModule;
@@ -74,6 +77,7 @@ import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.cache.IndexCache;
 import org.elasticsearch.index.cache.bitset.ShardBitsetFilterCache;
+import org.elasticsearch.index.cache.bloom.ShardTermsBloomFilterCache;
 import org.elasticsearch.index.cache.request.ShardRequestCache;
 import org.elasticsearch.index.codec.CodecService;
 import org.elasticsearch.index.engine.CommitStats;
@@ -117,6 +121,7 @@ import org.elasticsearch.index.store.StoreFileMetaData;
 import org.elasticsearch.index.store.StoreStats;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.translog.TranslogConfig;
+import org.elasticsearch.index.translog.TranslogGroupCommitService;
 import org.elasticsearch.index.translog.TranslogStats;
 import org.elasticsearch.index.warmer.ShardIndexWarmerService;
 import org.elasticsearch.index.warmer.WarmerStats;
@@ -149,14 +154,18 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -177,6 +186,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     private final ShardRequestCache requestCacheStats;
     private final ShardFieldData shardFieldData;
     private final ShardBitsetFilterCache shardBitsetFilterCache;
+    private final ShardTermsBloomFilterCache shardTermsBloomFilterCache;
     private final Object mutex = new Object();
     private final String checkIndexOnStartup;
     private final CodecService codecService;
@@ -188,6 +198,8 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     private final Supplier<Sort> indexSortSupplier;
     // Package visible for testing
     final CircuitBreakerService circuitBreakerService;
+    @Nullable
+    private final TranslogGroupCommitService translogGroupCommitService;
 
     private final SearchOperationListener searchOperationListener;
 
@@ -242,6 +254,13 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     private final AtomicLong lastSearcherAccess = new AtomicLong();
     private final AtomicReference<Translog.Location> pendingRefreshLocation = new AtomicReference<>();
 
+    /**
+     * The maximum number of consecutive scheduled refreshes that the node wide refresh budget may postpone, after which the
+     * refresh happens regardless of the budget so that the staleness of the shard stays bounded.
+     */
+    public static final int MAX_POSTPONED_SCHEDULED_REFRESHES = 3;
+    private final AtomicInteger postponedScheduledRefreshes = new AtomicInteger();
+
     public IndexShard(
             ShardRouting shardRouting,
             IndexSettings indexSettings,
@@ -260,7 +279,8 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             List<SearchOperationListener> searchOperationListener,
             List<IndexingOperationListener> listeners,
             Runnable globalCheckpointSyncer,
-            CircuitBreakerService circuitBreakerService) throws IOException {
+            CircuitBreakerService circuitBreakerService,
+            @Nullable TranslogGroupCommitService translogGroupCommitService) throws IOException {
         super(shardRouting.shardId(), indexSettings);
         assert shardRouting.initializing();
         this.shardRouting = shardRouting;
@@ -289,9 +309,11 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         this.requestCacheStats = new ShardRequestCache();
         this.shardFieldData = new ShardFieldData();
         this.shardBitsetFilterCache = new ShardBitsetFilterCache(shardId, indexSettings);
+        this.shardTermsBloomFilterCache = new ShardTermsBloomFilterCache(shardId, indexSettings);
         state = IndexShardState.CREATED;
         this.path = path;
         this.circuitBreakerService = circuitBreakerService;
+        this.translogGroupCommitService = translogGroupCommitService;
         /* create engine config */
         logger.debug("state: [CREATED]");
 
@@ -335,6 +357,10 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return shardBitsetFilterCache;
     }
 
+    public ShardTermsBloomFilterCache shardTermsBloomFilterCache() {
+        return shardTermsBloomFilterCache;
+    }
+
     public MapperService mapperService() {
         return mapperService;
     }
@@ -672,6 +698,10 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         assert opPrimaryTerm <= this.primaryTerm : "op term [ " + opPrimaryTerm + " ] > shard term [" + this.primaryTerm + "]";
         assert versionType.validateVersionForWrites(version);
         ensureWriteAllowed(origin);
+        if (origin == Engine.Operation.Origin.PRIMARY && indexSettings.isAppendOnly()
+            && autoGeneratedTimeStamp == IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP) {
+            return new Engine.IndexResult(explicitIdOnAppendOnlyIndex(), version, seqNo);
+        }
         Engine.Index operation;
         try {
             operation = prepareIndex(docMapper(sourceToParse.type()), indexSettings.getIndexVersionCreated(), sourceToParse, seqNo,
@@ -692,6 +722,64 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return index(getEngine(), operation);
     }
 
+    private IllegalArgumentException explicitIdOnAppendOnlyIndex() {
+        return new IllegalArgumentException("index [" + shardId.getIndexName()
+            + "] is append-only and only accepts documents with auto-generated ids");
+    }
+
+    /**
+     * Parses a document into an index operation on the primary without executing it, see {@link #applyIndexOperationsOnPrimary(List)}.
+     * The caller is responsible for dealing with dynamic mapping updates of the returned operation.
+     */
+    public Engine.Index prepareIndexOnPrimary(long version, VersionType versionType, SourceToParse sourceToParse,
+                                              long autoGeneratedTimestamp, boolean isRetry) {
+        assert versionType.validateVersionForWrites(version);
+        if (indexSettings.isAppendOnly() && autoGeneratedTimestamp == IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP) {
+            throw explicitIdOnAppendOnlyIndex();
+        }
+        return prepareIndex(docMapper(sourceToParse.type()), indexSettings.getIndexVersionCreated(), sourceToParse,
+            SequenceNumbers.UNASSIGNED_SEQ_NO, primaryTerm, version, versionType, Engine.Operation.Origin.PRIMARY, autoGeneratedTimestamp,
+            isRetry);
+    }
+
+    /**
+     * Executes a batch of index operations on the primary with a single call to the engine. This allows the engine to amortize its
+     * locking, translog writes and sequence number bookkeeping over the whole batch. The listeners are notified about the operations
+     * in order, see {@link IndexingOperationListener#preIndex(ShardId, Engine.Index)}.
+     *
+     * @param operations operations created by {@link #prepareIndexOnPrimary}, without pending mapping updates
+     * @return one result per operation, in order
+     */
+    public List<Engine.IndexResult> applyIndexOperationsOnPrimary(List<Engine.Index> operations) throws IOException {
+        ensureWriteAllowed(Engine.Operation.Origin.PRIMARY);
+        active.set(true);
+        final List<Engine.Index> preIndexed = new ArrayList<>(operations.size());
+        for (Engine.Index operation : operations) {
+            assert operation.origin() == Engine.Operation.Origin.PRIMARY;
+            assert operation.parsedDoc().dynamicMappingsUpdate() == null : "operations must not require mapping updates";
+            preIndexed.add(indexingOperationListeners.preIndex(shardId, operation));
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("bulk index [{}] operations", preIndexed.size());
+        }
+        final List<Engine.Result> results;
+        try {
+            results = getEngine().bulk(preIndexed);
+        } catch (Exception e) {
+            for (Engine.Index operation : preIndexed) {
+                indexingOperationListeners.postIndex(shardId, operation, e);
+            }
+            throw e;
+        }
+        final List<Engine.IndexResult> indexResults = new ArrayList<>(results.size());
+        for (int i = 0; i < preIndexed.size(); i++) {
+            final Engine.IndexResult result = (Engine.IndexResult) results.get(i);
+            indexingOperationListeners.postIndex(shardId, preIndexed.get(i), result);
+            indexResults.add(result);
+        }
+        return indexResults;
+    }
+
     public static Engine.Index prepareIndex(DocumentMapperForType docMapper, Version indexCreatedVersion, SourceToParse source, long seqNo,
             long primaryTerm, long version, VersionType versionType, Engine.Operation.Origin origin, long autoGeneratedIdTimestamp,
             boolean isRetry) {
@@ -768,6 +856,10 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         assert opPrimaryTerm <= this.primaryTerm : "op term [ " + opPrimaryTerm + " ] > shard term [" + this.primaryTerm + "]";
         assert versionType.validateVersionForWrites(version);
         ensureWriteAllowed(origin);
+        if (origin == Engine.Operation.Origin.PRIMARY && indexSettings.isAppendOnly()) {
+            return new Engine.DeleteResult(new IllegalArgumentException("index [" + shardId.getIndexName()
+                + "] is append-only and does not accept deletes"), version, seqNo, false);
+        }
         if (indexSettings().isSingleType()) {
             // When there is a single type, the unique identifier is only composed of the _id,
             // so there is no way to differenciate foo#1 from bar#1. This is especially an issue
@@ -957,6 +1049,8 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     public SegmentsStats segmentStats(boolean includeSegmentFileSizes) {
         SegmentsStats segmentsStats = getEngine().segmentsStats(includeSegmentFileSizes);
         segmentsStats.addBitsetMemoryInBytes(shardBitsetFilterCache.getMemorySizeInBytes());
+        segmentsStats.addTermsBloomFilterStats(shardTermsBloomFilterCache.getMemorySizeInBytes(),
+            shardTermsBloomFilterCache.getHitCount(), shardTermsBloomFilterCache.getMissCount());
         return segmentsStats;
     }
 
@@ -1254,29 +1348,174 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     int runTranslogRecovery(Engine engine, Translog.Snapshot snapshot) throws IOException {
         recoveryState.getTranslog().totalOperations(snapshot.totalOperations());
         recoveryState.getTranslog().totalOperationsOnStart(snapshot.totalOperations());
+        // more lanes than processors only add contention on the engine
+        final int lanes = Math.min(indexSettings.getValue(IndexSettings.INDEX_TRANSLOG_RECOVERY_THREADS_SETTING),
+            EsExecutors.numberOfProcessors(indexSettings.getNodeSettings()));
+        if (lanes > 1) {
+            return runParallelTranslogRecovery(snapshot, lanes);
+        }
         int opsRecovered = 0;
         Translog.Operation operation;
         while ((operation = snapshot.next()) != null) {
-            try {
-                logger.trace("[translog] recover op {}", operation);
-                Engine.Result result = applyTranslogOperation(operation, Engine.Operation.Origin.LOCAL_TRANSLOG_RECOVERY, update -> {
-                    throw new IllegalArgumentException("unexpected mapping update: " + update);
-                });
-                ExceptionsHelper.reThrowIfNotNull(result.getFailure());
+            if (recoverTranslogOperation(operation)) {
                 opsRecovered++;
-                recoveryState.getTranslog().incrementRecoveredOperations();
-            } catch (Exception e) {
-                if (ExceptionsHelper.status(e) == RestStatus.BAD_REQUEST) {
-                    // mainly for MapperParsingException and Failure to detect xcontent
-                    logger.info("ignoring recovery of a corrupt translog entry", e);
-                } else {
-                    throw e;
-                }
             }
         }
         return opsRecovered;
     }
 
+    /**
+     * Applies a single operation read from the local translog. Returns <code>true</code> if the operation was recovered and
+     * <code>false</code> if it was skipped because it is corrupt.
+     */
+    private boolean recoverTranslogOperation(Translog.Operation operation) throws IOException {
+        try {
+            logger.trace("[translog] recover op {}", operation);
+            Engine.Result result = applyTranslogOperation(operation, Engine.Operation.Origin.LOCAL_TRANSLOG_RECOVERY, update -> {
+                throw new IllegalArgumentException("unexpected mapping update: " + update);
+            });
+            ExceptionsHelper.reThrowIfNotNull(result.getFailure());
+            recoveryState.getTranslog().incrementRecoveredOperations();
+            return true;
+        } catch (Exception e) {
+            if (ExceptionsHelper.status(e) == RestStatus.BAD_REQUEST) {
+                // mainly for MapperParsingException and Failure to detect xcontent
+                logger.info("ignoring recovery of a corrupt translog entry", e);
+                return false;
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    private static final Translog.Operation END_OF_TRANSLOG_RECOVERY_LANE = new Translog.NoOp(0, 0, "end of translog recovery lane");
+
+    private static final int TRANSLOG_RECOVERY_LANE_CAPACITY = 1024;
+
+    /**
+     * Replays the translog on the given number of lanes, each of which is drained by a generic thread. The recovery thread reads
+     * the snapshot and routes every operation to a lane by the hash of its id, so operations on the same document are still
+     * applied in translog order while operations on different documents are applied concurrently through the engine's
+     * per-id locking. The local checkpoint tracker copes with sequence numbers completing out of order. The recovery thread holds
+     * the engine's read lock on behalf of the lanes, which therefore don't acquire it themselves, see
+     * {@link InternalEngine#recoverFromTranslog()}.
+     */
+    private int runParallelTranslogRecovery(Translog.Snapshot snapshot, int lanes) throws IOException {
+        final List<BlockingQueue<Translog.Operation>> queues = new ArrayList<>(lanes);
+        final Set<BlockingQueue<Translog.Operation>> stoppedQueues = ConcurrentCollections.newConcurrentSet();
+        final AtomicInteger opsRecovered = new AtomicInteger();
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final CountDownLatch lanesDone = new CountDownLatch(lanes);
+        for (int i = 0; i < lanes; i++) {
+            final BlockingQueue<Translog.Operation> queue = new ArrayBlockingQueue<>(TRANSLOG_RECOVERY_LANE_CAPACITY);
+            queues.add(queue);
+            threadPool.generic().execute(new AbstractRunnable() {
+                @Override
+                public void onFailure(Exception e) {
+                    // the lane was rejected or interrupted and doesn't drain its queue anymore, the reader stops adding to it
+                    failure.compareAndSet(null, e);
+                    stoppedQueues.add(queue);
+                }
+
+                @Override
+                protected void doRun() throws Exception {
+                    Translog.Operation operation;
+                    while ((operation = queue.take()) != END_OF_TRANSLOG_RECOVERY_LANE) {
+                        // once any lane or the reader failed the remaining operations are only drained, the recovery fails anyway
+                        if (failure.get() == null) {
+                            try {
+                                if (recoverTranslogOperation(operation)) {
+                                    opsRecovered.incrementAndGet();
+                                }
+                            } catch (Exception e) {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                public void onAfter() {
+                    lanesDone.countDown();
+                }
+            });
+        }
+        boolean interrupted = false;
+        try {
+            Translog.Operation operation;
+            while (failure.get() == null && (operation = snapshot.next()) != null) {
+                interrupted |= putToTranslogRecoveryLane(queues.get(translogRecoveryLane(operation, lanes)), operation,
+                    stoppedQueues, failure);
+            }
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            // every lane that still drains its queue must see the end of it, otherwise we would wait for it forever below
+            for (BlockingQueue<Translog.Operation> queue : queues) {
+                interrupted |= putToTranslogRecoveryLane(queue, END_OF_TRANSLOG_RECOVERY_LANE, stoppedQueues, failure);
+            }
+        }
+        while (true) {
+            try {
+                lanesDone.await();
+                break;
+            } catch (InterruptedException e) {
+                // we must not return while lanes are still applying operations, they stop at the end of their queues
+                interrupted = true;
+                failure.compareAndSet(null, e);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        final Exception e = failure.get();
+        if (e != null) {
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw ExceptionsHelper.convertToRuntime(e);
+        }
+        return opsRecovered.get();
+    }
+
+    private static int translogRecoveryLane(Translog.Operation operation, int lanes) {
+        final int hash;
+        switch (operation.opType()) {
+            case INDEX:
+                hash = ((Translog.Index) operation).id().hashCode();
+                break;
+            case DELETE:
+                hash = ((Translog.Delete) operation).id().hashCode();
+                break;
+            default:
+                hash = Long.hashCode(operation.seqNo());
+                break;
+        }
+        return Math.floorMod(hash, lanes);
+    }
+
+    /**
+     * Blocks until the operation was added to the queue of a lane, unless the lane stopped draining its queue. A full queue is
+     * polled so that a lane that stops while the reader waits for it is noticed. An interrupt fails the recovery but doesn't stop
+     * the put, since the lanes stop at the end of their queues only. Returns whether the current thread was interrupted.
+     */
+    private static boolean putToTranslogRecoveryLane(BlockingQueue<Translog.Operation> queue, Translog.Operation operation,
+                                                     Set<BlockingQueue<Translog.Operation>> stoppedQueues,
+                                                     AtomicReference<Exception> failure) {
+        boolean interrupted = false;
+        while (stoppedQueues.contains(queue) == false) {
+            try {
+                if (queue.offer(operation, 100, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                failure.compareAndSet(null, e);
+            }
+        }
+        return interrupted;
+    }
+
     /**
      * After the store has been recovered, we need to start the engine in order to apply operations
      */
@@ -2341,12 +2580,27 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      * the transaction log the caller thread will be hijacked to run the fsync for all pending fsync operations.
      * This method allows indexing threads to continue indexing without blocking on fsync calls. We ensure that there is only
      * one thread blocking on the sync an all others can continue indexing.
+     * If {@link IndexSettings#INDEX_TRANSLOG_GROUP_COMMIT_SETTING} is enabled the sync is instead handed to the node wide group commit
+     * scheduler of this shard's data path which coalesces the pending syncs of all shards on that path and notifies the listener on the
+     * generic thread pool once the sync completed, so the sync thread of the path can move on to the next fsync wave.
      * NOTE: if the syncListener throws an exception when it's processed the exception will only be logged. Users should make sure that the
      * listener handles all exception cases internally.
      */
     public final void sync(Translog.Location location, Consumer<Exception> syncListener) {
         verifyNotClosed();
-        translogSyncProcessor.put(location, syncListener);
+        if (translogGroupCommitService != null && indexSettings.isTranslogGroupCommit()) {
+            final Translog translog;
+            try {
+                translog = getEngine().getTranslog();
+            } catch (AlreadyClosedException ex) {
+                // that's fine since we already synced everything on engine close
+                syncListener.accept(null);
+                return;
+            }
+            translogGroupCommitService.sync(path.getRootDataPath(), translog, location, syncListener);
+        } else {
+            translogSyncProcessor.put(location, syncListener);
+        }
     }
 
     public final void sync() throws IOException {
@@ -2469,6 +2723,17 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      * @return <code>true</code> iff the engine got refreshed otherwise <code>false</code>
      */
     public boolean scheduledRefresh() {
+        return scheduledRefresh(() -> true);
+    }
+
+    /**
+     * Executes a scheduled refresh if necessary. The given budget is only consulted for refreshes that neither a refresh listener nor
+     * a pending search is waiting for; if it denies the refresh it is postponed to the next schedule, at most
+     * {@link #MAX_POSTPONED_SCHEDULED_REFRESHES} times in a row.
+     *
+     * @return <code>true</code> iff the engine got refreshed otherwise <code>false</code>
+     */
+    public boolean scheduledRefresh(BooleanSupplier refreshBudget) {
         boolean listenerNeedsRefresh = refreshListeners.refreshNeeded();
         if (isReadAllowed() && (listenerNeedsRefresh || getEngine().refreshNeeded())) {
             if (listenerNeedsRefresh == false // if we have a listener that is waiting for a refresh we need to force it
@@ -2480,7 +2745,15 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
                 // cause the next schedule to refresh.
                 setRefreshPending();
                 return false;
+            } else if (listenerNeedsRefresh == false
+                && active.get() // inactive shards must refresh to free up segment memory
+                && postponedScheduledRefreshes.get() < MAX_POSTPONED_SCHEDULED_REFRESHES // don't let this shard starve
+                && refreshBudget.getAsBoolean() == false) {
+                // the node wide refresh budget is exhausted; the changes become visible on the next schedule
+                postponedScheduledRefreshes.incrementAndGet();
+                return false;
             } else {
+                postponedScheduledRefreshes.set(0);
                 refresh("schedule");
                 return true;
             }
@@ -2488,6 +2761,14 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return false;
     }
 
+    /**
+     * Returns the number of consecutive scheduled refreshes that the refresh budget postponed since this shard last got refreshed
+     * on schedule.
+     */
+    public int getPostponedScheduledRefreshes() {
+        return postponedScheduledRefreshes.get();
+    }
+
     /**
      * Returns true if this shards is search idle
      */
@@ -31,7 +31,9 @@ import java.util.List;
 public interface IndexingOperationListener {
 
     /**
-     * Called before the indexing occurs.
+     * Called before the indexing occurs. Operations that are indexed as one batch, see
+     * {@link IndexShard#applyIndexOperationsOnPrimary(List)}, are all passed to this method in order before the first of them is
+     * indexed, and are passed to {@code postIndex} in the same order once the batch was indexed.
      */
     default Engine.Index preIndex(ShardId shardId, Engine.Index operation) {
         return operation;
@@ -35,6 +35,8 @@ import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 final class Checkpoint {
 
@@ -178,9 +180,15 @@ final class Checkpoint {
         // now go and write to the channel, in one go.
         try (FileChannel channel = factory.open(checkpointFile, options)) {
             Channels.writeToChannel(byteOutputStream.toByteArray(), channel);
-            // no need to force metadata, file size stays the same and we did the full fsync
-            // when we first created the file, so the directory entry doesn't change as well
-            channel.force(false);
+            if (Arrays.asList(options).contains(StandardOpenOption.CREATE_NEW)) {
+                // the file was just created, so its size and other metadata have to be made durable along with its content; the
+                // directory entry is fsynced by the caller
+                channel.force(true);
+            } else {
+                // no need to force metadata, file size stays the same and we did the full fsync
+                // when we first created the file, so the directory entry doesn't change as well
+                channel.force(false);
+            }
         }
     }
 
@@ -30,6 +30,8 @@ import org.elasticsearch.common.UUIDs;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.bytes.ReleasablePagedBytesReference;
+import org.elasticsearch.common.compress.CompressorFactory;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -49,6 +51,7 @@ import org.elasticsearch.index.shard.IndexShardComponent;
 import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -68,6 +71,7 @@ import java.util.function.LongSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 /**
  * A Translog is a per index shard component that records all non-committed index operations in a durable manner.
@@ -107,6 +111,9 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     public static final String CHECKPOINT_SUFFIX = ".ckp";
     public static final String CHECKPOINT_FILE_NAME = "translog" + CHECKPOINT_SUFFIX;
 
+    // sources that are smaller than this are not worth compressing, mostly because of the per-stream overhead
+    static final int MIN_COMPRESSED_SOURCE_SIZE = 256;
+
     static final Pattern PARSE_STRICT_ID_PATTERN = Pattern.compile("^" + TRANSLOG_FILE_PREFIX + "(\\d+)(\\.tlog)$");
 
     // the list of translog readers is guaranteed to be in order of translog generation
@@ -122,6 +129,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     private final LongSupplier globalCheckpointSupplier;
     private final String translogUUID;
     private final TranslogDeletionPolicy deletionPolicy;
+    private final boolean compress;
 
     /**
      * Creates a new Translog instance. This method will create a new transaction log unless the given {@link TranslogGeneration} is
@@ -143,6 +151,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         this.config = config;
         this.globalCheckpointSupplier = globalCheckpointSupplier;
         this.deletionPolicy = deletionPolicy;
+        this.compress = config.isCompress();
         if (expectedTranslogUUID == null) {
             translogUUID = UUIDs.randomBase64UUID();
         } else {
@@ -198,8 +207,8 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
                 Files.createDirectories(location);
                 final Checkpoint checkpoint = Checkpoint.emptyTranslogCheckpoint(0, generation, globalCheckpointSupplier.getAsLong(), generation);
                 final Path checkpointFile = location.resolve(CHECKPOINT_FILE_NAME);
+                // writing a new checkpoint file forces its content and metadata, so it doesn't need another fsync
                 Checkpoint.write(getChannelFactory(), checkpointFile, checkpoint, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
-                IOUtils.fsync(checkpointFile, false);
                 current = createWriter(generation, generation);
                 readers.clear();
             }
@@ -492,7 +501,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         try {
             final long start = out.position();
             out.skip(Integer.BYTES);
-            writeOperationNoSize(new BufferedChecksumStreamOutput(out), operation);
+            writeOperationNoSize(new BufferedChecksumStreamOutput(out), compress ? compressSource(operation) : operation);
             final long end = out.position();
             final int operationSize = (int) (end - Integer.BYTES - start);
             out.seek(start);
@@ -522,6 +531,79 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         }
     }
 
+    /**
+     * Adds a batch of operations to the transaction log. All operations are serialized into a single buffer which is written with one
+     * call to the current generation, see {@link #add(Operation)} for the single operation variant.
+     *
+     * @param operations the operations to add
+     * @return the location of each operation in the translog, in order
+     * @throws IOException if adding the operations to the translog resulted in an I/O exception
+     */
+    public List<Location> add(final List<? extends Operation> operations) throws IOException {
+        final ReleasableBytesStreamOutput out = new ReleasableBytesStreamOutput(bigArrays);
+        try {
+            final long[] seqNos = new long[operations.size()];
+            final int[] sizes = new int[operations.size()];
+            final BufferedChecksumStreamOutput checksumStreamOutput = new BufferedChecksumStreamOutput(out);
+            for (int i = 0; i < operations.size(); i++) {
+                final Operation operation = operations.get(i);
+                final long start = out.position();
+                out.skip(Integer.BYTES);
+                writeOperationNoSize(checksumStreamOutput, compress ? compressSource(operation) : operation);
+                final long end = out.position();
+                final int operationSize = (int) (end - Integer.BYTES - start);
+                out.seek(start);
+                out.writeInt(operationSize);
+                out.seek(end);
+                seqNos[i] = operation.seqNo();
+                sizes[i] = (int) (end - start);
+            }
+            final ReleasablePagedBytesReference bytes = out.bytes();
+            try (ReleasableLock ignored = readLock.acquire()) {
+                ensureOpen();
+                return Arrays.asList(current.add(bytes, seqNos, sizes));
+            }
+        } catch (final AlreadyClosedException | IOException ex) {
+            try {
+                closeOnTragicEvent(ex);
+            } catch (final Exception inner) {
+                ex.addSuppressed(inner);
+            }
+            throw ex;
+        } catch (final Exception e) {
+            try {
+                closeOnTragicEvent(e);
+            } catch (final Exception inner) {
+                e.addSuppressed(inner);
+            }
+            throw new TranslogException(shardId, "Failed to write [" + operations.size() + "] operations", e);
+        } finally {
+            Releasables.close(out);
+        }
+    }
+
+    /**
+     * Returns a copy of the given operation with an LZ4 compressed source if it is an index operation whose source is large enough to
+     * benefit from compression, or the operation itself otherwise. Compressed sources are decompressed when the operation is read back,
+     * so the translog file format and the locations of operations are not affected.
+     */
+    static Operation compressSource(final Operation operation) throws IOException {
+        if (operation.opType() != Operation.Type.INDEX) {
+            return operation;
+        }
+        final Index index = (Index) operation;
+        final BytesReference source = index.source();
+        if (source.length() < MIN_COMPRESSED_SOURCE_SIZE) {
+            return operation;
+        }
+        final BytesStreamOutput bytes = new BytesStreamOutput(source.length());
+        try (StreamOutput compressed = CompressorFactory.LZ4_COMPRESSOR.streamOutput(bytes)) {
+            source.writeTo(compressed);
+        }
+        // incompressible sources are kept as they are
+        return bytes.size() < source.length() ? new Index(index, bytes.bytes()) : operation;
+    }
+
     /**
      * Tests whether or not the translog should be flushed. This test is based on the current size
      * of the translog comparted to the configured flush threshold size.
@@ -591,7 +673,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             }
             TranslogSnapshot[] snapshots = Stream.concat(readers.stream(), Stream.of(current))
                     .filter(reader -> reader.getGeneration() >= minGeneration)
-                    .map(BaseTranslogReader::newSnapshot).toArray(TranslogSnapshot[]::new);
+                    .map(this::newReaderSnapshot).toArray(TranslogSnapshot[]::new);
             return newMultiSnapshot(snapshots);
         }
     }
@@ -599,12 +681,27 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     public Snapshot newSnapshotFromMinSeqNo(long minSeqNo) throws IOException {
         try (ReleasableLock ignored = readLock.acquire()) {
             ensureOpen();
-            TranslogSnapshot[] snapshots = readersAboveMinSeqNo(minSeqNo).map(BaseTranslogReader::newSnapshot)
+            TranslogSnapshot[] snapshots = readersAboveMinSeqNo(minSeqNo).map(this::newReaderSnapshot)
                 .toArray(TranslogSnapshot[]::new);
             return newMultiSnapshot(snapshots);
         }
     }
 
+    /**
+     * Creates a snapshot of the given reader. Immutable generations are read through a memory mapping if
+     * {@link TranslogConfig#isMmapReads()} is enabled, the current generation is always read through its channel.
+     */
+    private TranslogSnapshot newReaderSnapshot(BaseTranslogReader reader) {
+        if (config.isMmapReads() && reader instanceof TranslogReader && ((TranslogReader) reader).canMap()) {
+            try {
+                return ((TranslogReader) reader).newMappedSnapshot();
+            } catch (IOException e) {
+                throw new TranslogException(shardId, "failed to map translog generation [" + reader.getGeneration() + "]", e);
+            }
+        }
+        return reader.newSnapshot();
+    }
+
     private Snapshot newMultiSnapshot(TranslogSnapshot[] snapshots) throws IOException {
         final Closeable onClose;
         if (snapshots.length == 0) {
@@ -980,7 +1077,9 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             assert format >= FORMAT_2_X : "format was: " + format;
             id = in.readString();
             type = in.readString();
-            source = in.readBytesReference();
+            final BytesReference source = in.readBytesReference();
+            // sources may have been compressed when they were written to the translog, see Translog#compressSource
+            this.source = CompressorFactory.LZ4_COMPRESSOR.isCompressed(source) ? CompressorFactory.uncompress(source) : source;
             routing = in.readOptionalString();
             parent = in.readOptionalString();
             this.version = in.readLong();
@@ -1017,6 +1116,19 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             this.autoGeneratedIdTimestamp = index.getAutoGeneratedIdTimestamp();
         }
 
+        private Index(Index other, BytesReference source) {
+            this.id = other.id;
+            this.type = other.type;
+            this.source = source;
+            this.routing = other.routing;
+            this.parent = other.parent;
+            this.seqNo = other.seqNo;
+            this.primaryTerm = other.primaryTerm;
+            this.version = other.version;
+            this.versionType = other.versionType;
+            this.autoGeneratedIdTimestamp = other.autoGeneratedIdTimestamp;
+        }
+
         public Index(String type, String id, long seqNo, byte[] source) {
             this(type, id, seqNo, Versions.MATCH_ANY, VersionType.INTERNAL, source, null, null, -1);
         }
@@ -1468,6 +1580,33 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         return operation;
     }
 
+    /**
+     * Reads a single operation from the given buffer which holds the operation without its leading size. The checksum is verified
+     * directly on the buffer and bytes references of the operation, like the source of an index operation, are slices of the buffer
+     * rather than copies. This is used to read operations from memory mapped translog generations.
+     */
+    static Translog.Operation readOperation(ByteBuffer buffer) throws IOException {
+        final int checksumPosition = buffer.limit() - Integer.BYTES;
+        if (checksumPosition < buffer.position()) { // 4byte for the checksum
+            throw new TranslogCorruptedException("operation size must be at least 4 but was: " + buffer.remaining());
+        }
+        final ByteBuffer operation = buffer.duplicate();
+        operation.limit(checksumPosition);
+        final CRC32 digest = new CRC32();
+        digest.update(operation.duplicate());
+        final long expectedChecksum = digest.getValue();
+        final long readChecksum = buffer.getInt(checksumPosition) & 0xFFFF_FFFFL;
+        if (readChecksum != expectedChecksum) {
+            throw new TranslogCorruptedException("translog stream is corrupted, expected: 0x" +
+                Long.toHexString(expectedChecksum) + ", got: 0x" + Long.toHexString(readChecksum));
+        }
+        try {
+            return Translog.Operation.readOperation(new MappedTranslogStreamInput(operation));
+        } catch (EOFException e) {
+            throw new TruncatedTranslogException("reached premature end of file, translog is truncated", e);
+        }
+    }
+
     /**
      * Writes all operations in the given iterable to the given output stream including the size of the array
      * use {@link #readOperations(StreamInput)} to read it back.
@@ -1542,12 +1681,15 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             try {
                 final TranslogReader reader = current.closeIntoReader();
                 readers.add(reader);
-                final Path checkpoint = location.resolve(CHECKPOINT_FILE_NAME);
-                assert Checkpoint.read(checkpoint).generation == current.getGeneration();
+                assert Checkpoint.read(location.resolve(CHECKPOINT_FILE_NAME)).equals(reader.getCheckpoint());
                 final Path generationCheckpoint =
                         location.resolve(getCommitCheckpointFileName(current.getGeneration()));
-                Files.copy(checkpoint, generationCheckpoint);
-                IOUtils.fsync(generationCheckpoint, false);
+                // the reader holds the last synced checkpoint, which is exactly what the current checkpoint file contains, so we
+                // write it out directly instead of copying the file; this saves reading the current checkpoint file and reopening
+                // the copy, but it is still one fsync of the file followed by one of the directory
+                Checkpoint.write(getChannelFactory(), generationCheckpoint, reader.getCheckpoint(),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+                // the checkpoint and its metadata were fsynced when it was written, the new directory entry still needs an fsync
                 IOUtils.fsync(generationCheckpoint.getParent(), true);
                 // create a new translog file; this will sync it and update the checkpoint data;
                 current = createWriter(current.getGeneration() + 1);
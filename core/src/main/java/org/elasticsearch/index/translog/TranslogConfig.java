@@ -94,4 +94,20 @@ public final class TranslogConfig {
     public ByteSizeValue getBufferSize() {
         return bufferSize;
     }
+
+    /**
+     * Returns <code>true</code> if snapshots of immutable translog generations should read from a memory mapping of the generation.
+     * Default is <code>false</code>
+     */
+    public boolean isMmapReads() {
+        return indexSettings.getValue(IndexSettings.INDEX_TRANSLOG_MMAP_READS_SETTING);
+    }
+
+    /**
+     * Returns <code>true</code> if the sources of index operations should be compressed when they are written to the translog.
+     * Default is <code>false</code>
+     */
+    public boolean isCompress() {
+        return indexSettings.getValue(IndexSettings.INDEX_TRANSLOG_COMPRESS_SETTING);
+    }
 }
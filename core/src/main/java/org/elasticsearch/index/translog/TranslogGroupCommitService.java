@@ -0,0 +1,250 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A node level service that coalesces translog sync requests of all shards that live on the same data path. Each data path gets a
+ * dedicated sync thread that drains all pending sync requests at once, fsyncs every translog that has pending requests exactly once up
+ * to the highest requested location and then hands the waiting listeners of the batch over to an executor, so that the next fsync
+ * wave doesn't wait for them. This keeps indexing threads from being hijacked to run fsyncs and turns many overlapping fsyncs on the
+ * same disk into a single fsync wave.
+ *
+ * @see org.elasticsearch.index.IndexSettings#INDEX_TRANSLOG_GROUP_COMMIT_SETTING
+ */
+public final class TranslogGroupCommitService extends AbstractComponent implements Closeable {
+
+    private final ConcurrentMap<Path, PathSyncer> syncers = ConcurrentCollections.newConcurrentMap();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final Executor listenerExecutor;
+
+    /**
+     * @param listenerExecutor the executor to notify the listeners of completed syncs on
+     */
+    public TranslogGroupCommitService(Settings settings, Executor listenerExecutor) {
+        super(settings);
+        this.listenerExecutor = Objects.requireNonNull(listenerExecutor, "listener executor must not be null");
+    }
+
+    /**
+     * Schedules a sync of the given translog up to at least the given location. The listener is notified on the listener executor
+     * once the location has been synced or the sync failed. A translog that has been closed in the meantime is treated as synced since
+     * all operations are synced on close.
+     *
+     * @param dataPath the data path the translog lives on
+     * @param translog the translog to sync
+     * @param location the location to sync up to
+     * @param listener the listener to notify once the sync completed
+     */
+    public void sync(Path dataPath, Translog translog, Translog.Location location, Consumer<Exception> listener) {
+        Objects.requireNonNull(translog, "translog must not be null");
+        Objects.requireNonNull(location, "location must not be null");
+        Objects.requireNonNull(listener, "listener must not be null");
+        if (closed.get()) {
+            listener.accept(new AlreadyClosedException("translog group commit service is closed"));
+            return;
+        }
+        PathSyncer syncer = syncers.get(dataPath);
+        if (syncer == null) {
+            final PathSyncer newSyncer = new PathSyncer(dataPath);
+            syncer = syncers.putIfAbsent(dataPath, newSyncer);
+            if (syncer == null) {
+                syncer = newSyncer;
+                newSyncer.start();
+                if (closed.get()) {
+                    // we raced with close, which might not have seen the new syncer - stop it ourselves
+                    syncers.remove(dataPath, newSyncer);
+                    newSyncer.stop();
+                }
+            }
+        }
+        syncer.add(new PendingSync(translog, location, listener));
+    }
+
+    /**
+     * Returns the number of data paths that currently have a dedicated sync thread.
+     */
+    int numberOfSyncers() {
+        return syncers.size();
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            for (PathSyncer syncer : syncers.values()) {
+                syncer.stop();
+            }
+            syncers.clear();
+        }
+    }
+
+    private static final class PendingSync {
+        /** wakes up a sync thread that got stopped, interrupting it instead might close a translog that is being fsynced */
+        static final PendingSync STOP = new PendingSync(null, null, null);
+
+        final Translog translog;
+        final Translog.Location location;
+        final Consumer<Exception> listener;
+
+        PendingSync(Translog translog, Translog.Location location, Consumer<Exception> listener) {
+            this.translog = translog;
+            this.location = location;
+            this.listener = listener;
+        }
+    }
+
+    private final class PathSyncer implements Runnable {
+        private final Path dataPath;
+        private final BlockingQueue<PendingSync> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        PathSyncer(Path dataPath) {
+            this.dataPath = dataPath;
+            this.thread = EsExecutors.daemonThreadFactory(settings, "translog_group_commit").newThread(this);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void add(PendingSync pendingSync) {
+            queue.add(pendingSync);
+            if (running == false) {
+                // the sync thread might already be gone - make sure nobody waits forever
+                failPending(new AlreadyClosedException("translog group commit for [" + dataPath + "] is stopped"));
+            }
+        }
+
+        void stop() {
+            running = false;
+            queue.add(PendingSync.STOP);
+        }
+
+        @Override
+        public void run() {
+            final List<PendingSync> batch = new ArrayList<>();
+            boolean stopped = false;
+            while (stopped == false) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failPending(new AlreadyClosedException("translog group commit for [" + dataPath + "] got interrupted"));
+                    return;
+                }
+                queue.drainTo(batch);
+                // everything that was added before we got stopped is still synced, later additions are failed by #add
+                stopped = batch.remove(PendingSync.STOP);
+                processBatch(batch);
+                batch.clear();
+            }
+        }
+
+        private void processBatch(List<PendingSync> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            // we only need to sync the max location per translog since it will sync all other locations implicitly
+            final Map<Translog, Translog.Location> maxLocations = new IdentityHashMap<>();
+            for (PendingSync pendingSync : batch) {
+                maxLocations.merge(pendingSync.translog, pendingSync.location,
+                    (existing, location) -> existing.compareTo(location) >= 0 ? existing : location);
+            }
+            final Map<Translog, Exception> failures = new IdentityHashMap<>();
+            for (Map.Entry<Translog, Translog.Location> entry : maxLocations.entrySet()) {
+                try {
+                    entry.getKey().ensureSynced(entry.getValue());
+                } catch (AlreadyClosedException ex) {
+                    // that's fine since we already synced everything on translog close
+                } catch (Exception ex) {
+                    logger.debug((Supplier<?>) () -> new ParameterizedMessage("failed to sync translog on [{}]", dataPath), ex);
+                    failures.put(entry.getKey(), ex);
+                }
+            }
+            final List<PendingSync> completed = new ArrayList<>(batch);
+            final Runnable notifyListeners = () -> {
+                for (PendingSync pendingSync : completed) {
+                    notifyListener(pendingSync, failures.get(pendingSync.translog));
+                }
+            };
+            listenerExecutor.execute(new AbstractRunnable() {
+                @Override
+                public void onFailure(Exception e) {
+                    logger.warn("failed to notify translog sync listeners", e);
+                }
+
+                @Override
+                public void onRejection(Exception e) {
+                    // the node is shutting down, don't leave anybody waiting
+                    notifyListeners.run();
+                }
+
+                @Override
+                protected void doRun() {
+                    notifyListeners.run();
+                }
+            });
+        }
+
+        private void failPending(Exception exception) {
+            final List<PendingSync> pending = new ArrayList<>();
+            queue.drainTo(pending);
+            for (PendingSync pendingSync : pending) {
+                if (pendingSync == PendingSync.STOP) {
+                    // the sync thread still has to see that it got stopped
+                    queue.add(pendingSync);
+                } else {
+                    notifyListener(pendingSync, exception);
+                }
+            }
+        }
+
+        private void notifyListener(PendingSync pendingSync, Exception exception) {
+            try {
+                pendingSync.listener.accept(exception);
+            } catch (Exception ex) {
+                logger.warn("failed to notify callback", ex);
+            }
+        }
+    }
+}
@@ -49,6 +49,8 @@ public class TranslogReader extends BaseTranslogReader implements Closeable {
     private final int totalOperations;
     private final Checkpoint checkpoint;
     protected final AtomicBoolean closed = new AtomicBoolean(false);
+    // lazily created read-only mapping of this generation, only used if memory mapped reads are enabled
+    private volatile ByteBuffer mapping;
 
     /**
      * Create a translog writer against the specified translog file channel.
@@ -161,6 +163,33 @@ public class TranslogReader extends BaseTranslogReader implements Closeable {
         return checkpoint;
     }
 
+    /**
+     * Returns <code>true</code> if this generation is small enough to be read through a single memory mapping.
+     */
+    boolean canMap() {
+        return length <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Creates a snapshot that reads operations from a read-only memory mapping of this generation instead of copying them through heap
+     * buffers. The mapping is created on first use and shared by all mapped snapshots of this reader. Since this generation is immutable
+     * the mapping stays valid even after this reader is closed and is only released once it is no longer referenced.
+     */
+    TranslogSnapshot newMappedSnapshot() throws IOException {
+        assert canMap() : "generation [" + generation + "] is too large to be mapped: " + length;
+        ensureOpen();
+        ByteBuffer mapping = this.mapping;
+        if (mapping == null) {
+            synchronized (this) {
+                if (this.mapping == null) {
+                    this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                }
+                mapping = this.mapping;
+            }
+        }
+        return new TranslogSnapshot(this, length, mapping.duplicate());
+    }
+
     /**
      * reads an operation at the given position into the given buffer.
      */
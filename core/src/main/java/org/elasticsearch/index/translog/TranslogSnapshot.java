@@ -18,6 +18,7 @@
  */
 package org.elasticsearch.index.translog;
 
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.Channels;
 
 import java.io.EOFException;
@@ -31,6 +32,8 @@ final class TranslogSnapshot extends BaseTranslogReader {
     protected final long length;
 
     private final ByteBuffer reusableBuffer;
+    @Nullable
+    private final ByteBuffer mapping;
     private long position;
     private int readOperations;
     private BufferedChecksumStreamInput reuse;
@@ -39,7 +42,16 @@ final class TranslogSnapshot extends BaseTranslogReader {
      * Create a snapshot of translog file channel.
      */
     TranslogSnapshot(final BaseTranslogReader reader, final long length) {
+        this(reader, length, null);
+    }
+
+    /**
+     * Create a snapshot of translog file channel that reads from the given read-only mapping of the file if it is not <code>null</code>.
+     */
+    TranslogSnapshot(final BaseTranslogReader reader, final long length, @Nullable final ByteBuffer mapping) {
         super(reader.generation, reader.channel, reader.path, reader.firstOperationOffset);
+        assert mapping == null || mapping.capacity() >= length : "mapping is shorter than the snapshot: " + mapping.capacity();
+        this.mapping = mapping;
         this.length = length;
         this.totalOperations = reader.totalOperations();
         this.checkpoint = reader.getCheckpoint();
@@ -69,8 +81,17 @@ final class TranslogSnapshot extends BaseTranslogReader {
 
     protected Translog.Operation readOperation() throws IOException {
         final int opSize = readSize(reusableBuffer, position);
-        reuse = checksummedStream(reusableBuffer, position, opSize, reuse);
-        Translog.Operation op = read(reuse);
+        final Translog.Operation op;
+        if (mapping != null) {
+            // skip the size header, the operation is read straight from the mapping without copying it
+            final ByteBuffer operation = mapping.duplicate();
+            operation.limit(Math.toIntExact(position + opSize));
+            operation.position(Math.toIntExact(position + Integer.BYTES));
+            op = Translog.readOperation(operation.slice());
+        } else {
+            reuse = checksummedStream(reusableBuffer, position, opSize, reuse);
+            op = read(reuse);
+        }
         position += opSize;
         readOperations++;
         return op;
@@ -90,7 +111,17 @@ final class TranslogSnapshot extends BaseTranslogReader {
         if (position < getFirstOperationOffset()) {
             throw new IOException("read requested before position of first ops. pos [" + position + "] first op on: [" + getFirstOperationOffset() + "], generation: [" + getGeneration() + "], path: [" + path + "]");
         }
-        Channels.readFromFileChannelWithEofException(channel, position, buffer);
+        if (mapping != null) {
+            if (position + buffer.remaining() > length) {
+                throw new EOFException("read requested past EOF. pos [" + position + "] end: [" + length + "], generation: [" + getGeneration() + "], path: [" + path + "]");
+            }
+            final ByteBuffer source = mapping.duplicate();
+            source.position(Math.toIntExact(position));
+            source.limit(Math.toIntExact(position + buffer.remaining()));
+            buffer.put(source);
+        } else {
+            Channels.readFromFileChannelWithEofException(channel, position, buffer);
+        }
     }
 
     @Override
@@ -102,6 +133,7 @@ final class TranslogSnapshot extends BaseTranslogReader {
                 ", length=" + length +
                 ", generation=" + generation +
                 ", reusableBuffer=" + reusableBuffer +
+                ", mapped=" + (mapping != null) +
                 '}';
     }
 
@@ -209,6 +209,42 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
         return new Translog.Location(generation, offset, data.length());
     }
 
+    /**
+     * Adds a batch of serialized operations with a single write. The operations are stored back to back in {@code data}, the i-th
+     * operation is {@code sizes[i]} bytes long and has the sequence number {@code seqNos[i]}.
+     *
+     * @return the location of each operation, in order
+     */
+    public synchronized Translog.Location[] add(final BytesReference data, final long[] seqNos, final int[] sizes) throws IOException {
+        assert seqNos.length == sizes.length : "got [" + seqNos.length + "] seq nos but [" + sizes.length + "] sizes";
+        ensureOpen();
+        final long offset = totalOffset;
+        try {
+            data.writeTo(outputStream);
+        } catch (final Exception ex) {
+            try {
+                closeWithTragicEvent(ex);
+            } catch (final Exception inner) {
+                ex.addSuppressed(inner);
+            }
+            throw ex;
+        }
+        totalOffset += data.length();
+
+        final Translog.Location[] locations = new Translog.Location[seqNos.length];
+        int position = 0;
+        for (int i = 0; i < seqNos.length; i++) {
+            minSeqNo = SequenceNumbers.min(minSeqNo, seqNos[i]);
+            maxSeqNo = SequenceNumbers.max(maxSeqNo, seqNos[i]);
+            assert assertNoSeqNumberConflict(seqNos[i], data.slice(position, sizes[i]));
+            locations[i] = new Translog.Location(generation, offset + position, sizes[i]);
+            position += sizes[i];
+        }
+        assert position == data.length() : "sizes sum up to [" + position + "] but got [" + data.length() + "] bytes";
+        operationCounter += seqNos.length;
+        return locations;
+    }
+
     private synchronized boolean assertNoSeqNumberConflict(long seqNo, BytesReference data) throws IOException {
         if (seqNo == SequenceNumbers.UNASSIGNED_SEQ_NO) {
             // nothing to do
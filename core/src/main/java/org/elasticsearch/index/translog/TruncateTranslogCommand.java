@@ -195,8 +195,7 @@ public class TruncateTranslogCommand extends EnvironmentAwareCommand {
             SequenceNumbers.UNASSIGNED_SEQ_NO, translogGeneration);
         Checkpoint.write(FileChannel::open, filename, emptyCheckpoint,
             StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.CREATE_NEW);
-        // fsync with metadata here to make sure.
-        IOUtils.fsync(filename, false);
+        // a new checkpoint file is fsynced with its metadata when it is written
     }
 
     /**
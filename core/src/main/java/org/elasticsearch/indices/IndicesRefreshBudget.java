@@ -0,0 +1,93 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A node level token bucket that limits how many scheduled refreshes all shards on this node may execute per second. Scheduled
+ * refreshes that nobody is waiting for are postponed to the next refresh interval of their index once the budget is exhausted, so
+ * write heavy shards stop producing tiny segments that are only merged away again. Refreshes that a refresh listener or a search
+ * is waiting for never consult the budget.
+ *
+ * @see org.elasticsearch.index.shard.IndexShard#scheduledRefresh(java.util.function.BooleanSupplier)
+ */
+public final class IndicesRefreshBudget extends AbstractComponent {
+
+    /**
+     * The maximum number of scheduled refreshes per second across all shards of this node. <code>0</code> disables the budget.
+     */
+    public static final Setting<Integer> INDICES_REFRESH_MAX_SCHEDULED_PER_SECOND_SETTING =
+        Setting.intSetting("indices.refresh.max_scheduled_per_second", 0, 0, Property.NodeScope);
+
+    private final int permitsPerSecond;
+    private final LongSupplier nanoTime;
+    private double permits;
+    private long lastRefillNanos;
+
+    public IndicesRefreshBudget(Settings settings) {
+        this(settings, System::nanoTime);
+    }
+
+    IndicesRefreshBudget(Settings settings, LongSupplier nanoTime) {
+        super(settings);
+        this.permitsPerSecond = INDICES_REFRESH_MAX_SCHEDULED_PER_SECOND_SETTING.get(settings);
+        this.nanoTime = nanoTime;
+        this.permits = permitsPerSecond;
+        this.lastRefillNanos = nanoTime.getAsLong();
+    }
+
+    /**
+     * Returns <code>true</code> if the budget is disabled
+     */
+    public boolean isUnlimited() {
+        return permitsPerSecond == 0;
+    }
+
+    /**
+     * Takes a permit for a single scheduled refresh. Returns <code>true</code> if the refresh may run now, otherwise
+     * <code>false</code> and the refresh should be postponed.
+     */
+    public boolean tryAcquire() {
+        if (isUnlimited()) {
+            return true;
+        }
+        synchronized (this) {
+            final long now = nanoTime.getAsLong();
+            final long elapsedNanos = now - lastRefillNanos;
+            if (elapsedNanos > 0) {
+                // never accumulate more than one second worth of refreshes
+                permits = Math.min(permitsPerSecond, permits + (double) elapsedNanos * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+                lastRefillNanos = now;
+            }
+            if (permits >= 1) {
+                permits -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.carrotsearch.hppc.ObjectHashSet;
 import com.carrotsearch.hppc.ObjectSet;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -44,8 +45,10 @@ import java.io.Closeable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
@@ -58,6 +61,10 @@ import java.util.function.Supplier;
  * Currently, the cache is only enabled for count requests, and can only be opted in on an index
  * level setting that can be dynamically changed and defaults to false.
  * <p>
+ * Entries may also be associated with a single segment instead of the whole reader, see
+ * {@link #getOrCompute(CacheEntity, Supplier, LeafReader, BytesReference)}. Such entries survive refreshes as long as
+ * the segment and its deleted documents don't change.
+ * <p>
  * There are still several TODOs left in this class, some easily addressable, some more complex, but the support
  * is functional.
  */
@@ -100,7 +107,7 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
     }
 
     void clear(CacheEntity entity) {
-        keysToClean.add(new CleanupKey(entity, -1));
+        keysToClean.add(new CleanupKey(entity, null));
         cleanCache();
     }
 
@@ -111,20 +118,45 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
 
     BytesReference getOrCompute(CacheEntity cacheEntity, Supplier<BytesReference> loader,
             DirectoryReader reader, BytesReference cacheKey) throws Exception {
-        final Key key =  new Key(cacheEntity, reader.getVersion(), cacheKey);
+        return getOrCompute(cacheEntity, loader, reader.getVersion(),
+            cleanupKey -> ElasticsearchDirectoryReader.addReaderCloseListener(reader, cleanupKey), cacheKey, true);
+    }
+
+    /**
+     * Same as {@link #getOrCompute(CacheEntity, Supplier, DirectoryReader, BytesReference)} but the entry is associated with a
+     * single segment. The entry is reused by later readers of the same shard as long as the segment and its deleted documents
+     * don't change, so the value must only depend on the content of this segment. Hits and misses are not recorded on the
+     * entity since a request may look up many segments; the caller records a single hit or miss for the whole request.
+     *
+     * @param reader a segment reader that has a {@link LeafReader#getReaderCacheHelper() reader cache helper}
+     */
+    BytesReference getOrCompute(CacheEntity cacheEntity, Supplier<BytesReference> loader,
+            LeafReader reader, BytesReference cacheKey) throws Exception {
+        final IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+        if (cacheHelper == null) {
+            throw new IllegalArgumentException("Reader " + reader + " does not support caching");
+        }
+        return getOrCompute(cacheEntity, loader, cacheHelper.getKey(), cacheHelper::addClosedListener, cacheKey, false);
+    }
+
+    private BytesReference getOrCompute(CacheEntity cacheEntity, Supplier<BytesReference> loader, Object readerCacheKey,
+            Consumer<CleanupKey> addReaderCloseListener, BytesReference cacheKey, boolean recordStats) throws Exception {
+        final Key key =  new Key(cacheEntity, readerCacheKey, cacheKey);
         Loader cacheLoader = new Loader(cacheEntity, loader);
         BytesReference value = cache.computeIfAbsent(key, cacheLoader);
         if (cacheLoader.isLoaded()) {
-            key.entity.onMiss();
+            if (recordStats) {
+                key.entity.onMiss();
+            }
             // see if its the first time we see this reader, and make sure to register a cleanup key
-            CleanupKey cleanupKey = new CleanupKey(cacheEntity, reader.getVersion());
+            CleanupKey cleanupKey = new CleanupKey(cacheEntity, readerCacheKey);
             if (!registeredClosedListeners.containsKey(cleanupKey)) {
                 Boolean previous = registeredClosedListeners.putIfAbsent(cleanupKey, Boolean.TRUE);
                 if (previous == null) {
-                    ElasticsearchDirectoryReader.addReaderCloseListener(reader, cleanupKey);
+                    addReaderCloseListener.accept(cleanupKey);
                 }
             }
-        } else {
+        } else if (recordStats) {
             key.entity.onHit();
         }
         return value;
@@ -206,12 +238,13 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
         private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class);
 
         public final CacheEntity entity; // use as identity equality
-        public final long readerVersion; // use the reader version to now keep a reference to a "short" lived reader until its reaped
+        // the reader version or the cache key of a segment to not keep a reference to a "short" lived reader until its reaped
+        public final Object readerCacheKey;
         public final BytesReference value;
 
-        Key(CacheEntity entity, long readerVersion, BytesReference value) {
+        Key(CacheEntity entity, Object readerCacheKey, BytesReference value) {
             this.entity = entity;
-            this.readerVersion = readerVersion;
+            this.readerCacheKey = readerCacheKey;
             this.value = value;
         }
 
@@ -230,7 +263,7 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
         public boolean equals(Object o) {
             if (this == o) return true;
             Key key = (Key) o;
-            if (readerVersion != key.readerVersion) return false;
+            if (!readerCacheKey.equals(key.readerCacheKey)) return false;
             if (!entity.getCacheIdentity().equals(key.entity.getCacheIdentity())) return false;
             if (!value.equals(key.value)) return false;
             return true;
@@ -239,7 +272,7 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
         @Override
         public int hashCode() {
             int result = entity.getCacheIdentity().hashCode();
-            result = 31 * result + Long.hashCode(readerVersion);
+            result = 31 * result + readerCacheKey.hashCode();
             result = 31 * result + value.hashCode();
             return result;
         }
@@ -247,11 +280,11 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
 
     private class CleanupKey implements IndexReader.ClosedListener {
         final CacheEntity entity;
-        final long readerVersion; // use the reader version to now keep a reference to a "short" lived reader until its reaped
+        final Object readerCacheKey; // the reader version or segment cache key of the key, null to clean all entries of the entity
 
-        private CleanupKey(CacheEntity entity, long readerVersion) {
+        private CleanupKey(CacheEntity entity, Object readerCacheKey) {
             this.entity = entity;
-            this.readerVersion = readerVersion;
+            this.readerCacheKey = readerCacheKey;
         }
 
         @Override
@@ -269,7 +302,7 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
                 return false;
             }
             CleanupKey that = (CleanupKey) o;
-            if (readerVersion != that.readerVersion) return false;
+            if (Objects.equals(readerCacheKey, that.readerCacheKey) == false) return false;
             if (!entity.getCacheIdentity().equals(that.entity.getCacheIdentity())) return false;
             return true;
         }
@@ -277,7 +310,7 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
         @Override
         public int hashCode() {
             int result = entity.getCacheIdentity().hashCode();
-            result = 31 * result + Long.hashCode(readerVersion);
+            result = 31 * result + Objects.hashCode(readerCacheKey);
             return result;
         }
     }
@@ -292,8 +325,8 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
         for (Iterator<CleanupKey> iterator = keysToClean.iterator(); iterator.hasNext(); ) {
             CleanupKey cleanupKey = iterator.next();
             iterator.remove();
-            if (cleanupKey.readerVersion == -1 || cleanupKey.entity.isOpen() == false) {
-                // -1 indicates full cleanup, as does a closed shard
+            if (cleanupKey.readerCacheKey == null || cleanupKey.entity.isOpen() == false) {
+                // null indicates full cleanup, as does a closed shard
                 currentFullClean.add(cleanupKey.entity.getCacheIdentity());
             } else {
                 currentKeysToClean.add(cleanupKey);
@@ -305,7 +338,7 @@ public final class IndicesRequestCache extends AbstractComponent implements Remo
                 if (currentFullClean.contains(key.entity.getCacheIdentity())) {
                     iterator.remove();
                 } else {
-                    if (currentKeysToClean.contains(new CleanupKey(key.entity, key.readerVersion))) {
+                    if (currentKeysToClean.contains(new CleanupKey(key.entity, key.readerCacheKey))) {
                         iterator.remove();
                     }
                 }
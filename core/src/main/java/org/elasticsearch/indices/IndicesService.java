@@ -22,6 +22,11 @@ package org.elasticsearch.indices;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.util.CollectionUtil;
@@ -53,6 +58,7 @@ import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.settings.IndexScopedSettings;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
@@ -95,6 +101,7 @@ import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.index.shard.IndexingOperationListener;
 import org.elasticsearch.index.shard.IndexingStats;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.translog.TranslogGroupCommitService;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.indices.cluster.IndicesClusterStateService;
 import org.elasticsearch.indices.fielddata.cache.IndicesFieldDataCache;
@@ -104,15 +111,19 @@ import org.elasticsearch.indices.recovery.RecoveryState;
 import org.elasticsearch.plugins.PluginsService;
 import org.elasticsearch.repositories.RepositoriesService;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.query.QueryPhase;
 import org.elasticsearch.search.query.QuerySearchResult;
+import org.elasticsearch.tasks.TaskCancelledException;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -157,6 +168,8 @@ public class IndicesService extends AbstractLifecycleComponent
     private final CacheCleaner cacheCleaner;
     private final ThreadPool threadPool;
     private final CircuitBreakerService circuitBreakerService;
+    private final TranslogGroupCommitService translogGroupCommitService;
+    private final IndicesRefreshBudget refreshBudget;
     private final BigArrays bigArrays;
     private final ScriptService scriptService;
     private final Client client;
@@ -200,6 +213,8 @@ public class IndicesService extends AbstractLifecycleComponent
                                                                 () -> Iterables.flatten(this).iterator());
         this.indexScopedSettings = indexScopedSettings;
         this.circuitBreakerService = circuitBreakerService;
+        this.translogGroupCommitService = new TranslogGroupCommitService(settings, threadPool.generic());
+        this.refreshBudget = new IndicesRefreshBudget(settings);
         this.bigArrays = bigArrays;
         this.scriptService = scriptService;
         this.client = client;
@@ -244,7 +259,8 @@ public class IndicesService extends AbstractLifecycleComponent
 
     @Override
     protected void doClose() {
-        IOUtils.closeWhileHandlingException(analysisRegistry, indexingMemoryController, indicesFieldDataCache, cacheCleaner, indicesRequestCache, indicesQueryCache);
+        IOUtils.closeWhileHandlingException(analysisRegistry, indexingMemoryController, indicesFieldDataCache, cacheCleaner, indicesRequestCache, indicesQueryCache,
+            translogGroupCommitService);
     }
 
     /**
@@ -461,7 +477,9 @@ public class IndicesService extends AbstractLifecycleComponent
                 indicesQueryCache,
                 mapperRegistry,
                 indicesFieldDataCache,
-                namedWriteableRegistry
+                namedWriteableRegistry,
+                translogGroupCommitService,
+                refreshBudget
         );
     }
 
@@ -1126,6 +1144,10 @@ public class IndicesService extends AbstractLifecycleComponent
      */
     public void loadIntoContext(ShardSearchRequest request, SearchContext context, QueryPhase queryPhase) throws Exception {
         assert canCache(request, context);
+        if (canCacheHitCountPerSegment(context)) {
+            loadHitCountIntoContext(request, context);
+            return;
+        }
         final DirectoryReader directoryReader = context.searcher().getDirectoryReader();
 
         boolean[] loadedFromCache = new boolean[] { true };
@@ -1158,6 +1180,88 @@ public class IndicesService extends AbstractLifecycleComponent
         }
     }
 
+    /**
+     * Returns <code>true</code> if the query phase of the request produces nothing but the number of hits and every segment of
+     * the reader can be cached on its own. The hit count can then be cached per segment so that a refresh only requires to count
+     * the hits of new or changed segments. Readers without segments are cached as a whole.
+     */
+    private static boolean canCacheHitCountPerSegment(SearchContext context) {
+        if (context.size() != 0
+                || context.aggregations() != null
+                || context.suggest() != null
+                || context.parsedPostFilter() != null
+                || context.getProfilers() != null
+                || context.minimumScore() != null
+                || context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER
+                || (context.timeout() != null && context.timeout().equals(SearchService.NO_TIMEOUT) == false)) {
+            return false;
+        }
+        final List<LeafReaderContext> leaves = context.searcher().getIndexReader().leaves();
+        if (leaves.isEmpty()) {
+            return false;
+        }
+        for (LeafReaderContext leaf : leaves) {
+            if (leaf.reader().getReaderCacheHelper() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the number of hits of a request that only needs a hit count by summing up the per segment counts, loading them from
+     * the cache if possible, and sets it on the {@link SearchContext#queryResult() context's query result}. The request counts as a
+     * single cache hit if no segment had to be counted, and as a single cache miss otherwise.
+     */
+    private void loadHitCountIntoContext(ShardSearchRequest request, SearchContext context) throws Exception {
+        final IndexShardCacheEntity cacheEntity = new IndexShardCacheEntity(context.indexShard());
+        final ContextIndexSearcher searcher = context.searcher();
+        final Weight weight = searcher.createNormalizedWeight(context.query(), false);
+        long totalHits = 0;
+        boolean[] loadedFromCache = new boolean[] { true };
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            if (context.getTask().isCancelled()) {
+                throw new TaskCancelledException("cancelled");
+            }
+            if (weight.isCacheable(leaf)) {
+                final BytesReference bytes = indicesRequestCache.getOrCompute(cacheEntity, () -> {
+                    loadedFromCache[0] = false;
+                    try (BytesStreamOutput out = new BytesStreamOutput(Long.BYTES)) {
+                        out.writeVLong(countHits(weight, leaf));
+                        return out.bytes();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, leaf.reader(), request.cacheKey());
+                totalHits += bytes.streamInput().readVLong();
+            } else {
+                // the matches of the query in this segment depend on other segments
+                loadedFromCache[0] = false;
+                totalHits += countHits(weight, leaf);
+            }
+        }
+        if (loadedFromCache[0]) {
+            cacheEntity.onHit();
+        } else {
+            cacheEntity.onMiss();
+        }
+        final QuerySearchResult result = context.queryResult();
+        result.searchTimedOut(false);
+        result.from(context.from());
+        result.size(context.size());
+        result.topDocs(new TopDocs(Math.toIntExact(totalHits), Lucene.EMPTY_SCORE_DOCS, 0), null);
+    }
+
+    private static int countHits(Weight weight, LeafReaderContext leaf) throws IOException {
+        final BulkScorer scorer = weight.bulkScorer(leaf);
+        if (scorer == null) {
+            return 0;
+        }
+        final TotalHitCountCollector collector = new TotalHitCountCollector();
+        scorer.score(collector.getLeafCollector(leaf), leaf.reader().getLiveDocs());
+        return collector.getTotalHits();
+    }
+
     public ByteSizeValue getTotalIndexingBufferBytes() {
         return indexingMemoryController.indexingBufferSize();
     }
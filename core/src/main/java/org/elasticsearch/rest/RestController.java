@@ -25,6 +25,7 @@ import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.RetainedBuffers;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.io.Streams;
@@ -233,8 +234,19 @@ public class RestController extends AbstractComponent implements HttpServerTrans
                 } else {
                     inFlightRequestsBreaker(circuitBreakerService).addWithoutBreaking(contentLength);
                 }
+                long reservedBufferBytes = -1;
+                if (mHandler.get().allowsUnsafeBuffers()) {
+                    // the pooled buffers behind the content stay alive until the response is sent, unless they are much larger
+                    // than the content or there is no room for them
+                    reservedBufferBytes = RetainedBuffers.tryReserve(inFlightRequestsBreaker(circuitBreakerService), contentLength,
+                        request.unsafeBuffersSize(), "<http_request_buffers>");
+                }
+                if (reservedBufferBytes < 0) {
+                    reservedBufferBytes = 0;
+                    request.ensureSafeBuffers();
+                }
                 // iff we could reserve bytes for the request we need to send the response also over this channel
-                responseChannel = new ResourceHandlingHttpChannel(channel, circuitBreakerService, contentLength);
+                responseChannel = new ResourceHandlingHttpChannel(channel, circuitBreakerService, contentLength + reservedBufferBytes);
 
                 final RestHandler wrappedHandler = mHandler.map(h -> handlerWrapper.apply(h)).get();
                 wrappedHandler.handleRequest(request, responseChannel, client);
@@ -446,10 +458,10 @@ public class RestController extends AbstractComponent implements HttpServerTrans
     private static final class ResourceHandlingHttpChannel implements RestChannel {
         private final RestChannel delegate;
         private final CircuitBreakerService circuitBreakerService;
-        private final int contentLength;
+        private final long contentLength;
         private final AtomicBoolean closed = new AtomicBoolean();
 
-        ResourceHandlingHttpChannel(RestChannel delegate, CircuitBreakerService circuitBreakerService, int contentLength) {
+        ResourceHandlingHttpChannel(RestChannel delegate, CircuitBreakerService circuitBreakerService, long contentLength) {
             this.delegate = delegate;
             this.circuitBreakerService = circuitBreakerService;
             this.contentLength = contentLength;
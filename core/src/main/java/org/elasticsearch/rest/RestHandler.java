@@ -47,4 +47,14 @@ public interface RestHandler {
     default boolean supportsContentStream() {
         return false;
     }
+
+    /**
+     * Indicates if the RestHandler can handle requests whose content is backed by buffers that are recycled once the response
+     * is sent, rather than by a copy of the content on the heap. A handler must only return true if neither the content of the
+     * request nor slices of it are used anymore once it sent its response. The whole buffers are accounted for in the in-flight
+     * requests circuit breaker until then, and the content is copied anyway if the buffers are much larger than the content.
+     */
+    default boolean allowsUnsafeBuffers() {
+        return false;
+    }
 }
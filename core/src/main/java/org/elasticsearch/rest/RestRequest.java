@@ -136,6 +136,25 @@ public abstract class RestRequest implements ToXContent.Params {
 
     public abstract BytesReference content();
 
+    /**
+     * Makes sure that the content of this request stays valid for as long as it is referenced, by copying it if it is backed by
+     * buffers that are recycled once the response to the request is sent. Called before the request is handled by a
+     * {@link RestHandler} that doesn't {@link RestHandler#allowsUnsafeBuffers() allow unsafe buffers}.
+     */
+    public void ensureSafeBuffers() {
+        // the content of most requests is on the heap, so there is nothing to do
+    }
+
+    /**
+     * Returns the number of bytes that the buffers backing the content of this request keep alive until they are released, as long
+     * as the content is not {@link #ensureSafeBuffers() copied}. This may be more than the length of the content if the buffers are
+     * pooled. The bytes beyond the length of the content are accounted for in the in-flight requests circuit breaker while a
+     * {@link RestHandler} that {@link RestHandler#allowsUnsafeBuffers() allows unsafe buffers} handles the request.
+     */
+    public long unsafeBuffersSize() {
+        return hasContent() ? content().length() : 0;
+    }
+
     /**
      * @return content of the request body or throw an exception if the body or content type is missing
      */
@@ -101,4 +101,10 @@ public class RestBulkAction extends BaseRestHandler {
     public boolean supportsContentStream() {
         return true;
     }
+
+    @Override
+    public boolean allowsUnsafeBuffers() {
+        // the bulk response is only sent once all items were indexed, so the sources of the items can be slices of the request
+        return true;
+    }
 }
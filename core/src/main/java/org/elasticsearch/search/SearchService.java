@@ -952,11 +952,14 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
      */
     public boolean canMatch(ShardSearchRequest request) throws IOException {
         assert request.searchType() == SearchType.QUERY_THEN_FETCH : "unexpected search type: " + request.searchType();
+        IndexService indexService = indicesService.indexServiceSafe(request.shardId().getIndex());
         try (DefaultSearchContext context = createSearchContext(request, defaultSearchTimeout, false)) {
             SearchSourceBuilder source = context.request().source();
             if (canRewriteToMatchNone(source)) {
                 QueryBuilder queryBuilder = source.query();
-                return queryBuilder instanceof MatchNoneQueryBuilder == false;
+                // the rewritten query might still require a term that the bloom filters of the shard know it doesn't have
+                return queryBuilder instanceof MatchNoneQueryBuilder == false
+                    && indexService.termsBloomFilterCache().canMatch(queryBuilder, context.getQueryShardContext());
             }
             return true; // null query means match_all
         }
@@ -19,6 +19,8 @@
 package org.elasticsearch.search.aggregations;
 
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.search.Queries;
@@ -33,6 +35,7 @@ import org.elasticsearch.search.query.QueryPhaseExecutionException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -66,6 +69,9 @@ public class AggregationPhase implements SearchPhase {
                         collector = new InternalProfileCollector(collector, CollectorResult.REASON_AGGREGATION,
                                 // TODO: report on child aggs as well
                                 Collections.emptyList());
+                    } else if (collector.needsScores() == false) {
+                        // hand matching docs over in blocks, the collected values don't depend on the scorer
+                        collector = new BufferingBucketCollector((BucketCollector) collector);
                     }
                     context.queryCollectors().put(AggregationPhase.class, collector);
                 }
@@ -122,6 +128,15 @@ public class AggregationPhase implements SearchPhase {
             }
         }
 
+        final Collector queryCollector = context.queryCollectors().get(AggregationPhase.class);
+        if (queryCollector instanceof BufferingBucketCollector) {
+            try {
+                ((BufferingBucketCollector) queryCollector).flush();
+            } catch (IOException e) {
+                throw new AggregationExecutionException("Failed to collect buffered documents", e);
+            }
+        }
+
         List<InternalAggregation> aggregations = new ArrayList<>(aggregators.length);
         context.aggregations().resetBucketMultiConsumer();
         for (Aggregator aggregator : context.aggregations().aggregators()) {
@@ -132,6 +147,9 @@ public class AggregationPhase implements SearchPhase {
                 throw new AggregationExecutionException("Failed to build aggregation [" + aggregator.name() + "]", e);
             }
         }
+        if (context.aggregations().sliceAggregators().isEmpty() == false) {
+            aggregations = reduceSlices(context, aggregations);
+        }
         context.queryResult().aggregations(new InternalAggregations(aggregations));
         try {
             List<PipelineAggregator> pipelineAggregators = context.aggregations().factories().createPipelineAggregators();
@@ -155,4 +173,96 @@ public class AggregationPhase implements SearchPhase {
         context.queryCollectors().remove(AggregationPhase.class);
     }
 
+    /**
+     * Wraps the given manager of the collectors of the slices of segments that are searched concurrently such that every slice also
+     * collects the aggregations. The first slice is collected by the aggregators that were created in {@link #preProcess}, every other
+     * slice gets its own aggregators, which are reduced into the former by {@link #execute}. Only valid if
+     * {@link AggregatorFactories#supportsConcurrentSlices()}.
+     */
+    public static <C extends Collector> CollectorManager<Collector, Void> slicedCollectorManager(SearchContext context,
+                                                                                               CollectorManager<C, Void> in) {
+        final Collector firstSlice = context.queryCollectors().get(AggregationPhase.class);
+        assert firstSlice != null : "no aggregations to collect";
+        assert context.aggregations().factories().supportsConcurrentSlices();
+        final List<C> inCollectors = new ArrayList<>();
+        return new CollectorManager<Collector, Void>() {
+            @Override
+            public Collector newCollector() throws IOException {
+                final Collector aggregations = inCollectors.isEmpty() ? firstSlice : createSliceCollector(context);
+                final C collector = in.newCollector();
+                inCollectors.add(collector);
+                return MultiCollector.wrap(collector, aggregations);
+            }
+
+            @Override
+            public Void reduce(Collection<Collector> collectors) throws IOException {
+                return in.reduce(inCollectors);
+            }
+        };
+    }
+
+    private static Collector createSliceCollector(SearchContext context) throws IOException {
+        final List<Aggregator> collectors = new ArrayList<>();
+        for (Aggregator aggregator : context.aggregations().factories().createTopLevelAggregators()) {
+            // global aggregators collect all docs of the shard once in #execute, the ones created here are released with the phase
+            if (aggregator instanceof GlobalAggregator == false) {
+                collectors.add(aggregator);
+            }
+        }
+        BucketCollector collector = BucketCollector.wrap(collectors);
+        collector.preCollection();
+        if (collector.needsScores() == false) {
+            collector = new BufferingBucketCollector(collector);
+        }
+        context.aggregations().addSlice(collectors.toArray(new Aggregator[collectors.size()]), collector);
+        return collector;
+    }
+
+    /**
+     * Reduces the aggregations of all slices into the ones of the first slice, which also hold the global aggregations. Every slice is
+     * limited to the maximum number of buckets on its own, and the partial reduce keeps all buckets, just like the aggregations of
+     * several shards that are reduced on the coordinating node in batches.
+     */
+    private static List<InternalAggregation> reduceSlices(SearchContext context, List<InternalAggregation> firstSlice) {
+        final Aggregator[] aggregators = context.aggregations().aggregators();
+        final List<InternalAggregations> slices = new ArrayList<>();
+        final List<InternalAggregation> sliced = new ArrayList<>();
+        for (int i = 0; i < aggregators.length; i++) {
+            if (aggregators[i] instanceof GlobalAggregator == false) {
+                sliced.add(firstSlice.get(i));
+            }
+        }
+        slices.add(new InternalAggregations(sliced));
+        final List<Aggregator[]> sliceAggregators = context.aggregations().sliceAggregators();
+        for (int i = 0; i < sliceAggregators.size(); i++) {
+            final List<InternalAggregation> slice = new ArrayList<>();
+            context.aggregations().resetBucketMultiConsumer();
+            try {
+                context.aggregations().sliceCollectors().get(i).postCollection();
+            } catch (IOException e) {
+                throw new AggregationExecutionException("Failed to collect buffered documents", e);
+            }
+            for (Aggregator aggregator : sliceAggregators.get(i)) {
+                try {
+                    slice.add(aggregator.buildAggregation(0));
+                } catch (IOException e) {
+                    throw new AggregationExecutionException("Failed to build aggregation [" + aggregator.name() + "]", e);
+                }
+            }
+            slices.add(new InternalAggregations(slice));
+        }
+        // none of the aggregations that can be sliced needs scripts for a partial reduce
+        final InternalAggregations reduced = InternalAggregations.reduce(slices,
+            new InternalAggregation.ReduceContext(context.bigArrays(), null, false));
+        final List<InternalAggregation> aggregations = new ArrayList<>(firstSlice.size());
+        for (int i = 0; i < aggregators.length; i++) {
+            if (aggregators[i] instanceof GlobalAggregator) {
+                aggregations.add(firstSlice.get(i));
+            } else {
+                aggregations.add(reduced.get(aggregators[i].name()));
+            }
+        }
+        return aggregations;
+    }
+
 }
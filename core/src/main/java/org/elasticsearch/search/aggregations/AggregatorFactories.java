@@ -223,6 +223,20 @@ public class AggregatorFactories {
         return aggregators;
     }
 
+    /**
+     * Returns whether all factories and their sub-factories can collect slices of the segments of a shard separately.
+     *
+     * @see AggregatorFactory#supportsConcurrentSlices()
+     */
+    public boolean supportsConcurrentSlices() {
+        for (AggregatorFactory<?> factory : factories) {
+            if (factory.supportsConcurrentSlices() == false || factory.factories.supportsConcurrentSlices() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * @return the number of sub-aggregator factories not including pipeline
      *         aggregator factories
@@ -220,6 +220,15 @@ public abstract class AggregatorFactory<AF extends AggregatorFactory<AF>> {
         return parent;
     }
 
+    /**
+     * Returns whether the aggregators of this factory can collect slices of the segments of a shard separately, such that the
+     * aggregations they build are reduced into the aggregation of the shard with a partial reduce afterwards. Aggregations that
+     * rely on shard level statistics or change their shape in a partial reduce must not be sliced.
+     */
+    public boolean supportsConcurrentSlices() {
+        return true;
+    }
+
     /**
      * Utility method. Given an {@link AggregatorFactory} that creates
      * {@link Aggregator}s that only know how to collect bucket <tt>0</tt>, this
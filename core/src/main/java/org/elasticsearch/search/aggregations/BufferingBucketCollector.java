@@ -0,0 +1,115 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+
+import java.io.IOException;
+
+/**
+ * A {@link BucketCollector} for top level aggregations that buffers the
+ * matching docs of a segment and hands them over in blocks through
+ * {@link LeafBucketCollector#collect(int[], int, long)}. Only usable for
+ * collectors that don't need scores since the scorer has moved on by the
+ * time a block is collected.
+ * <p>
+ * Lucene doesn't tell collectors when a segment is done, so the pending
+ * docs of a segment are flushed when the collector of the next segment is
+ * requested, and {@link #flush()} must be called once the search is over.
+ */
+final class BufferingBucketCollector extends BucketCollector {
+
+    static final int BUFFER_SIZE = 256;
+
+    private final BucketCollector delegate;
+    private final int[] docs = new int[BUFFER_SIZE];
+    private int count;
+    private LeafBucketCollector current;
+    private boolean terminated;
+
+    BufferingBucketCollector(BucketCollector delegate) {
+        assert delegate.needsScores() == false;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public LeafBucketCollector getLeafCollector(LeafReaderContext ctx) throws IOException {
+        flush();
+        current = null;
+        final LeafBucketCollector leafCollector = delegate.getLeafCollector(ctx);
+        if (leafCollector == LeafBucketCollector.NO_OP_COLLECTOR) {
+            return leafCollector;
+        }
+        current = leafCollector;
+        terminated = false;
+        return new LeafBucketCollector() {
+            @Override
+            public void collect(int doc, long bucket) throws IOException {
+                assert bucket == 0 : "top level aggregations collect in bucket 0, got " + bucket;
+                docs[count++] = doc;
+                if (count == docs.length) {
+                    flush();
+                    if (terminated) {
+                        throw new CollectionTerminatedException();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Collect the docs that are still buffered for the current segment.
+     */
+    void flush() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        final int toCollect = count;
+        count = 0;
+        try {
+            current.collect(docs, toCollect, 0);
+        } catch (CollectionTerminatedException e) {
+            // the delegate is done with this segment, drop what it didn't see like an unbuffered collection would
+            terminated = true;
+        }
+    }
+
+    @Override
+    public void preCollection() throws IOException {
+        delegate.preCollection();
+    }
+
+    @Override
+    public void postCollection() throws IOException {
+        flush();
+        delegate.postCollection();
+    }
+
+    @Override
+    public boolean needsScores() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "buffered(" + delegate + ")";
+    }
+}
@@ -40,6 +40,10 @@ public abstract class LeafBucketCollector implements LeafCollector {
         public void collect(int doc, long bucket) {
             // no-op
         }
+        @Override
+        public void collect(int[] docs, int count, long bucket) {
+            // no-op
+        }
     };
 
     public static LeafBucketCollector wrap(Iterable<LeafBucketCollector> collectors) {
@@ -68,6 +72,13 @@ public abstract class LeafBucketCollector implements LeafCollector {
                     }
                 }
 
+                @Override
+                public void collect(int[] docs, int count, long bucket) throws IOException {
+                    for (LeafBucketCollector c : colls) {
+                        c.collect(docs, count, bucket);
+                    }
+                }
+
             };
         }
     }
@@ -77,6 +88,19 @@ public abstract class LeafBucketCollector implements LeafCollector {
      */
     public abstract void collect(int doc, long bucket) throws IOException;
 
+    /**
+     * Collect the first {@code count} docs of the given array, which are in
+     * increasing order, in the given bucket. Implementations may override
+     * this to read values and update their per-bucket state once per block
+     * rather than once per document. The default implementation calls
+     * {@link #collect(int, long)} for each document.
+     */
+    public void collect(int[] docs, int count, long bucket) throws IOException {
+        for (int i = 0; i < count; i++) {
+            collect(docs[i], bucket);
+        }
+    }
+
     @Override
     public final void collect(int doc) throws IOException {
         collect(doc, 0);
@@ -18,6 +18,8 @@
  */
 package org.elasticsearch.search.aggregations;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.IntConsumer;
 
 import static org.elasticsearch.search.aggregations.MultiBucketConsumerService.MultiBucketConsumer;
@@ -30,6 +32,8 @@ public class SearchContextAggregations {
     private final AggregatorFactories factories;
     private final MultiBucketConsumer multiBucketConsumer;
     private Aggregator[] aggregators;
+    private final List<Aggregator[]> sliceAggregators = new ArrayList<>();
+    private final List<BucketCollector> sliceCollectors = new ArrayList<>();
 
     /**
      * Creates a new aggregation context with the parsed aggregator factories
@@ -67,4 +71,21 @@ public class SearchContextAggregations {
     void resetBucketMultiConsumer() {
         multiBucketConsumer.reset();
     }
+
+    /**
+     * Registers the non-global top level aggregators that collect one of the slices of segments that are searched concurrently,
+     * along with the collector that wraps them. The first slice is collected by {@link #aggregators()}.
+     */
+    void addSlice(Aggregator[] aggregators, BucketCollector collector) {
+        sliceAggregators.add(aggregators);
+        sliceCollectors.add(collector);
+    }
+
+    List<Aggregator[]> sliceAggregators() {
+        return sliceAggregators;
+    }
+
+    List<BucketCollector> sliceCollectors() {
+        return sliceCollectors;
+    }
 }
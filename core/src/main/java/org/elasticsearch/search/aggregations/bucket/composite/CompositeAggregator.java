@@ -128,6 +128,23 @@ final class CompositeAggregator extends BucketsAggregator {
         leaf = new LeafContext(ctx, sub);
         builder = new RoaringDocIdSet.Builder(ctx.reader().maxDoc());
         final CompositeValuesSource.Collector inner = array.getLeafCollector(ctx, getFirstPassCollector());
+        if (canEarlyTerminate && array.hasTop()) {
+            // The index sort matches the composite sort, all documents before the first competitive one
+            // produce keys that were returned in a previous round.
+            final int firstDoc = array.firstCompetitiveDoc(ctx);
+            if (firstDoc >= ctx.reader().maxDoc()) {
+                throw new CollectionTerminatedException();
+            }
+            return new LeafBucketCollector() {
+                @Override
+                public void collect(int doc, long zeroBucket) throws IOException {
+                    assert zeroBucket == 0L;
+                    if (doc >= firstDoc) {
+                        inner.collect(doc);
+                    }
+                }
+            };
+        }
         return new LeafBucketCollector() {
             @Override
             public void collect(int doc, long zeroBucket) throws IOException {
@@ -167,12 +184,9 @@ final class CompositeAggregator extends BucketsAggregator {
                     return;
                 }
                 if (array.hasTop() && array.compareTop(0) <= 0) {
-                    // This key is greater than the top value collected in the previous round.
-                    if (canEarlyTerminate) {
-                        // The index sort matches the composite sort, we can early terminate this segment.
-                        throw new CollectionTerminatedException();
-                    }
-                    // just skip this key for now
+                    // This key is smaller than or equal to the top value collected in the previous round.
+                    // Even if the index sort matches the composite sort, greater keys can follow in this segment
+                    // so we just skip this key.
                     return;
                 }
                 if (keys.size() >= size) {
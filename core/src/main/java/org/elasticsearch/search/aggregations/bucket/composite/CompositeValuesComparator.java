@@ -118,6 +118,16 @@ final class CompositeValuesComparator {
         return 0;
     }
 
+    /**
+     * Returns the first document in the provided segment that can produce a composite key greater than the top values.
+     * This is only valid if the segment is sorted by the sources of this comparator.
+     */
+    int firstCompetitiveDoc(LeafReaderContext context) throws IOException {
+        assert topValueSet;
+        // the leading source decides the position of the document in the segment
+        return arrays[0].firstCompetitiveDoc(context);
+    }
+
     /**
      * Builds the {@link CompositeKey} for <code>slot</code>.
      */
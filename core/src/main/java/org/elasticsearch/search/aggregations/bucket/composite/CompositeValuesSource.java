@@ -78,11 +78,38 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
      */
     abstract int compareTop(int slot);
 
+    /**
+     * Compares the value of <code>doc</code> in the provided segment with the top value in this source.
+     * Documents without value compare greater than the top value. Only the first value of the document is compared.
+     */
+    abstract int compareTop(LeafReaderContext context, int doc) throws IOException;
+
     /**
      * Sets the top value for this source. Values that compares smaller should not be recorded.
      */
     abstract void setTop(Comparable<?> value);
 
+    /**
+     * Returns the first document in the provided segment whose value is greater than or equal to the top value.
+     * This requires the documents of the segment to be sorted by this source, in the same order, and
+     * every document to have at most one value. All documents before the returned one can be skipped.
+     */
+    int firstCompetitiveDoc(LeafReaderContext context) throws IOException {
+        // documents without value are either sorted first or last. They don't produce any key so they can be skipped
+        // but the binary search only moves past a document that has a value smaller than the top value.
+        int low = 0;
+        int high = context.reader().maxDoc();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareTop(context, mid) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /**
      * Transforms the value in <code>slot</code> to a {@link Comparable} object.
      */
@@ -156,6 +183,16 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
             return Long.compare(values[slot], topValueLong) * reverseMul;
         }
 
+        @Override
+        int compareTop(LeafReaderContext context, int doc) throws IOException {
+            assert topValueLong != null : "the top value is resolved when the first segment is visited";
+            final SortedSetDocValues dvs = vs.globalOrdinalsValues(context);
+            if (dvs.advanceExact(doc) == false) {
+                return 1;
+            }
+            return Long.compare(dvs.nextOrd(), topValueLong) * reverseMul;
+        }
+
         @Override
         void setTop(Comparable<?> value) {
             if (value instanceof BytesRef) {
@@ -229,6 +266,15 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
             return values[slot].compareTo(topValue) * reverseMul;
         }
 
+        @Override
+        int compareTop(LeafReaderContext context, int doc) throws IOException {
+            final SortedBinaryDocValues dvs = vs.bytesValues(context);
+            if (dvs.advanceExact(doc) == false) {
+                return 1;
+            }
+            return dvs.nextValue().compareTo(topValue) * reverseMul;
+        }
+
         @Override
         void setTop(Comparable<?> value) {
             if (value.getClass() == BytesRef.class) {
@@ -292,6 +338,15 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
             return Long.compare(values[slot], topValue) * reverseMul;
         }
 
+        @Override
+        int compareTop(LeafReaderContext context, int doc) throws IOException {
+            final SortedNumericDocValues dvs = vs.longValues(context);
+            if (dvs.advanceExact(doc) == false) {
+                return 1;
+            }
+            return Long.compare(dvs.nextValue(), topValue) * reverseMul;
+        }
+
         @Override
         void setTop(Comparable<?> value) {
             if (value instanceof Number) {
@@ -353,6 +408,15 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
             return Double.compare(values[slot], topValue) * reverseMul;
         }
 
+        @Override
+        int compareTop(LeafReaderContext context, int doc) throws IOException {
+            final SortedNumericDoubleValues dvs = vs.doubleValues(context);
+            if (dvs.advanceExact(doc) == false) {
+                return 1;
+            }
+            return Double.compare(dvs.nextValue(), topValue) * reverseMul;
+        }
+
         @Override
         void setTop(Comparable<?> value) {
             if (value instanceof Number) {
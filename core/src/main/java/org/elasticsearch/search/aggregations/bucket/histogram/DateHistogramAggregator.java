@@ -18,8 +18,24 @@
  */
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PointValues;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
 import org.apache.lucene.util.CollectionUtil;
 import org.elasticsearch.common.inject.internal.Nullable;
 import org.elasticsearch.common.lease.Releasables;
@@ -43,6 +59,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.LongPredicate;
 
 /**
  * An aggregator for date values. Every date is rounded down using a configured
@@ -64,11 +81,27 @@ class DateHistogramAggregator extends BucketsAggregator {
     private final LongHash bucketOrds;
     private long offset;
 
+    /**
+     * The field whose values are aggregated if segments that are sorted by this field may be counted without visiting
+     * their documents, <code>null</code> otherwise.
+     */
+    @Nullable
+    private final String sortedSegmentsField;
+
     DateHistogramAggregator(String name, AggregatorFactories factories, Rounding rounding, long offset, BucketOrder order,
             boolean keyed,
             long minDocCount, @Nullable ExtendedBounds extendedBounds, @Nullable ValuesSource.Numeric valuesSource,
             DocValueFormat formatter, SearchContext aggregationContext,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+        this(name, factories, rounding, offset, order, keyed, minDocCount, extendedBounds, valuesSource, formatter, null,
+            aggregationContext, parent, pipelineAggregators, metaData);
+    }
+
+    DateHistogramAggregator(String name, AggregatorFactories factories, Rounding rounding, long offset, BucketOrder order,
+            boolean keyed,
+            long minDocCount, @Nullable ExtendedBounds extendedBounds, @Nullable ValuesSource.Numeric valuesSource,
+            DocValueFormat formatter, @Nullable String sortedSegmentsField, SearchContext aggregationContext,
+            Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
 
         super(name, factories, aggregationContext, parent, pipelineAggregators, metaData);
         this.rounding = rounding;
@@ -79,6 +112,9 @@ class DateHistogramAggregator extends BucketsAggregator {
         this.extendedBounds = extendedBounds;
         this.valuesSource = valuesSource;
         this.formatter = formatter;
+        // documents can only be counted in bulk if they don't need to be forwarded to sub-aggregations and if
+        // every document that matches the top level query is collected in the single bucket of this aggregation
+        this.sortedSegmentsField = parent == null && subAggregators.length == 0 ? sortedSegmentsField : null;
 
         bucketOrds = new LongHash(1, aggregationContext.bigArrays());
     }
@@ -94,6 +130,9 @@ class DateHistogramAggregator extends BucketsAggregator {
         if (valuesSource == null) {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
+        if (sortedSegmentsField != null && collectSortedSegment(ctx.reader())) {
+            return LeafBucketCollector.NO_OP_COLLECTOR;
+        }
         final SortedNumericDocValues values = valuesSource.longValues(ctx);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
@@ -124,6 +163,126 @@ class DateHistogramAggregator extends BucketsAggregator {
         };
     }
 
+    /**
+     * Counts the documents of a segment per bucket without visiting them. If the segment is sorted by the aggregated field,
+     * every document has exactly one value and the query matches all documents or a range of values of this field, then
+     * the documents of each bucket form a contiguous range of doc ids whose bounds can be found with a binary search.
+     *
+     * @return <code>false</code> if the segment does not qualify and must be collected document by document
+     */
+    private boolean collectSortedSegment(LeafReader reader) throws IOException {
+        if (context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER
+                || context.minimumScore() != null
+                || context.scrollContext() != null
+                || reader.hasDeletions()) {
+            return false;
+        }
+        final Sort sort = reader.getMetaData().getSort();
+        if (sort == null) {
+            return false;
+        }
+        final SortField sortField = sort.getSort()[0];
+        final SortField.Type sortType = sortField instanceof SortedNumericSortField
+            ? ((SortedNumericSortField) sortField).getNumericType() : sortField.getType();
+        if (sortedSegmentsField.equals(sortField.getField()) == false || sortType != SortField.Type.LONG) {
+            return false;
+        }
+        final PointValues points = reader.getPointValues(sortedSegmentsField);
+        if (points == null || points.getNumDimensions() != 1 || points.getBytesPerDimension() != Long.BYTES
+                || points.getDocCount() != reader.maxDoc() || points.size() != reader.maxDoc()
+                || DocValues.unwrapSingleton(DocValues.getSortedNumeric(reader, sortedSegmentsField)) == null) {
+            // some documents don't have a value or have several values
+            return false;
+        }
+        final long[] bounds = valueBounds(context.query());
+        if (bounds == null) {
+            return false;
+        }
+        final long min = bounds[0];
+        final long max = bounds[1];
+        final boolean reverse = sortField.getReverse();
+        final int maxDoc = reader.maxDoc();
+        final int from = firstDoc(reader, 0, maxDoc, reverse ? value -> value <= max : value -> value >= min);
+        final int to = firstDoc(reader, from, maxDoc, reverse ? value -> value < min : value -> value > max);
+        int doc = from;
+        while (doc < to) {
+            final long key = round(valueOf(reader, doc));
+            final int next = firstDoc(reader, doc + 1, to, reverse ? value -> round(value) < key : value -> round(value) > key);
+            long bucketOrd = bucketOrds.add(key);
+            if (bucketOrd < 0) { // already seen
+                bucketOrd = -1 - bucketOrd;
+            }
+            incrementBucketDocCount(bucketOrd, next - doc);
+            doc = next;
+        }
+        return true;
+    }
+
+    private long round(long value) {
+        return rounding.round(value - offset) + offset;
+    }
+
+    private long valueOf(LeafReader reader, int doc) throws IOException {
+        final NumericDocValues values = DocValues.unwrapSingleton(DocValues.getSortedNumeric(reader, sortedSegmentsField));
+        final boolean hasValue = values.advanceExact(doc);
+        assert hasValue : "doc [" + doc + "] has no value";
+        return values.longValue();
+    }
+
+    /**
+     * Returns the first document in <code>[from, to)</code> whose value matches the predicate, or <code>to</code> if there is
+     * none. Documents must be sorted such that once a value matches, the values of all following documents match.
+     */
+    private int firstDoc(LeafReader reader, int from, int to, LongPredicate predicate) throws IOException {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (predicate.test(valueOf(reader, mid))) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the inclusive range of values of the aggregated field that the query restricts documents to, or
+     * <code>null</code> if the query may select documents on anything else.
+     */
+    private long[] valueBounds(Query query) {
+        if (query instanceof MatchAllDocsQuery) {
+            return new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        } else if (query instanceof ConstantScoreQuery) {
+            return valueBounds(((ConstantScoreQuery) query).getQuery());
+        } else if (query instanceof BoostQuery) {
+            return valueBounds(((BoostQuery) query).getQuery());
+        } else if (query instanceof IndexOrDocValuesQuery) {
+            return valueBounds(((IndexOrDocValuesQuery) query).getIndexQuery());
+        } else if (query instanceof PointRangeQuery) {
+            final PointRangeQuery rangeQuery = (PointRangeQuery) query;
+            if (sortedSegmentsField.equals(rangeQuery.getField()) == false
+                    || rangeQuery.getNumDims() != 1 || rangeQuery.getBytesPerDim() != Long.BYTES) {
+                return null;
+            }
+            return new long[] { LongPoint.decodeDimension(rangeQuery.getLowerPoint(), 0),
+                LongPoint.decodeDimension(rangeQuery.getUpperPoint(), 0) };
+        } else if (query instanceof BooleanQuery && ((BooleanQuery) query).clauses().isEmpty() == false) {
+            final long[] bounds = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+            for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+                final long[] clauseBounds = clause.isRequired() ? valueBounds(clause.getQuery()) : null;
+                if (clauseBounds == null) {
+                    return null;
+                }
+                bounds[0] = Math.max(bounds[0], clauseBounds[0]);
+                bounds[1] = Math.min(bounds[1], clauseBounds[1]);
+            }
+            return bounds;
+        }
+        return null;
+    }
+
     @Override
     public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
         assert owningBucketOrdinal == 0;
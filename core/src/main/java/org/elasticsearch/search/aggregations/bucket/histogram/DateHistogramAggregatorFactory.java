@@ -77,8 +77,11 @@ public final class DateHistogramAggregatorFactory
 
     private Aggregator createAggregator(ValuesSource.Numeric valuesSource, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
             Map<String, Object> metaData) throws IOException {
+        // sorted segments can only be counted in bulk from the raw values of a field
+        final String sortedSegmentsField = valuesSource instanceof ValuesSource.Numeric.FieldData && config.fieldContext() != null
+            ? config.fieldContext().field() : null;
         return new DateHistogramAggregator(name, factories, rounding, offset, order, keyed, minDocCount, extendedBounds, valuesSource,
-                config.format(), context, parent, pipelineAggregators, metaData);
+                config.format(), sortedSegmentsField, context, parent, pipelineAggregators, metaData);
     }
 
     @Override
@@ -151,6 +151,12 @@ public class SignificantTextAggregatorFactory extends AggregatorFactory<Signific
         }
     }
 
+    @Override
+    public boolean supportsConcurrentSlices() {
+        // the superset size is the size of the whole shard and would be summed up once per slice
+        return false;
+    }
+
     @Override
     protected Aggregator createInternal(Aggregator parent, boolean collectsFromSingleBucket,
             List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
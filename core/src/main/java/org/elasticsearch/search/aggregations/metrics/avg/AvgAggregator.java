@@ -23,6 +23,8 @@ import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.DoubleArray;
 import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.index.fielddata.FieldData;
+import org.elasticsearch.index.fielddata.NumericDoubleValues;
 import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -71,6 +73,7 @@ public class AvgAggregator extends NumericMetricsAggregator.SingleValue {
         }
         final BigArrays bigArrays = context.bigArrays();
         final SortedNumericDoubleValues values = valuesSource.doubleValues(ctx);
+        final NumericDoubleValues singleton = FieldData.unwrapSingleton(values);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
             public void collect(int doc, long bucket) throws IOException {
@@ -87,6 +90,34 @@ public class AvgAggregator extends NumericMetricsAggregator.SingleValue {
                     sums.increment(bucket, sum);
                 }
             }
+
+            @Override
+            public void collect(int[] docs, int count, long bucket) throws IOException {
+                counts = bigArrays.grow(counts, bucket + 1);
+                sums = bigArrays.grow(sums, bucket + 1);
+                long valueCount = 0;
+                double sum = 0;
+                if (singleton != null) {
+                    for (int i = 0; i < count; i++) {
+                        if (singleton.advanceExact(docs[i])) {
+                            valueCount++;
+                            sum += singleton.doubleValue();
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        if (values.advanceExact(docs[i])) {
+                            final int docValueCount = values.docValueCount();
+                            valueCount += docValueCount;
+                            for (int j = 0; j < docValueCount; j++) {
+                                sum += values.nextValue();
+                            }
+                        }
+                    }
+                }
+                counts.increment(bucket, valueCount);
+                sums.increment(bucket, sum);
+            }
         };
     }
 
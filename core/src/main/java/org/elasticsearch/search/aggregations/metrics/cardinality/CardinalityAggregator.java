@@ -62,6 +62,11 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
     private Collector collector;
 
+    // null until the first segment is collected, then whether all segments collect into global ordinals bitsets
+    private Boolean useGlobalOrdinals;
+    @Nullable
+    private GlobalOrdinalsCollector globalOrdinalsCollector;
+
     public CardinalityAggregator(String name, ValuesSource valuesSource, int precision,
             SearchContext context, Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
         super(name, context, parent, pipelineAggregators, metaData);
@@ -105,11 +110,40 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
         return new DirectCollector(counts, MurmurHash3Values.hash(valuesSource.bytesValues(ctx)));
     }
 
+    /**
+     * Whether the ordinals of the field are few enough across the whole shard for the visited ordinals of every bucket to be
+     * tracked in bitsets over global ordinals, which only need to be hashed once per shard rather than once per segment.
+     * The sum of the segment value counts is an upper bound of the number of global ordinals that doesn't need to build them.
+     */
+    private boolean useGlobalOrdinals() throws IOException {
+        if (valuesSource instanceof ValuesSource.Bytes.WithOrdinals == false) {
+            return false;
+        }
+        final ValuesSource.Bytes.WithOrdinals source = (ValuesSource.Bytes.WithOrdinals) valuesSource;
+        long maxOrdUpperBound = 0;
+        for (LeafReaderContext leaf : context.searcher().getIndexReader().leaves()) {
+            maxOrdUpperBound += source.ordinalsValues(leaf).getValueCount();
+        }
+        return maxOrdUpperBound > 0
+            && GlobalOrdinalsCollector.memoryOverhead(maxOrdUpperBound) < HyperLogLogPlusPlus.memoryUsage(precision) / 4;
+    }
+
     @Override
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx,
             final LeafBucketCollector sub) throws IOException {
         postCollectLastCollector();
 
+        if (useGlobalOrdinals == null) {
+            useGlobalOrdinals = valuesSource != null && useGlobalOrdinals();
+            if (useGlobalOrdinals) {
+                final long maxOrd = ((ValuesSource.Bytes.WithOrdinals) valuesSource).globalMaxOrd(context.searcher());
+                globalOrdinalsCollector = new GlobalOrdinalsCollector(counts, maxOrd, context.bigArrays());
+            }
+        }
+        if (useGlobalOrdinals) {
+            return globalOrdinalsCollector.getLeafCollector(((ValuesSource.Bytes.WithOrdinals) valuesSource).globalOrdinalsValues(ctx));
+        }
+
         collector = pickCollector(ctx);
         return collector;
     }
@@ -128,6 +162,14 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
     @Override
     protected void doPostCollection() throws IOException {
         postCollectLastCollector();
+        if (globalOrdinalsCollector != null) {
+            try {
+                globalOrdinalsCollector.postCollect();
+            } finally {
+                Releasables.close(globalOrdinalsCollector);
+                globalOrdinalsCollector = null;
+            }
+        }
     }
 
     @Override
@@ -154,7 +196,7 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
     @Override
     protected void doClose() {
-        Releasables.close(counts, collector);
+        Releasables.close(counts, collector, globalOrdinalsCollector);
     }
 
     private abstract static class Collector extends LeafBucketCollector implements Releasable {
@@ -293,6 +335,112 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
     }
 
+    /**
+     * Collects the global ordinals that each bucket visits into bitsets that are shared by all segments of the shard, and
+     * hashes every visited ordinal once into the counts when collection is over. The bitset of a bucket only grows up to its
+     * highest visited ordinal and is allocated through {@link BigArrays} so that it is accounted against the request circuit
+     * breaker, which matters when many buckets each visit a few ordinals.
+     */
+    private static class GlobalOrdinalsCollector implements Releasable {
+
+        /**
+         * Return the memory overhead per bucket for this collector in the worst case.
+         */
+        static long memoryOverhead(long maxOrd) {
+            return RamUsageEstimator.NUM_BYTES_OBJECT_REF + ((maxOrd + 63) >>> 6) * Long.BYTES;
+        }
+
+        private final HyperLogLogPlusPlus counts;
+        private final long maxOrd;
+        private final BigArrays bigArrays;
+        private ObjectArray<LongArray> visitedOrds;
+        // the values of the last collected segment, global ordinals can be looked up from any of them
+        private SortedSetDocValues lookup;
+
+        GlobalOrdinalsCollector(HyperLogLogPlusPlus counts, long maxOrd, BigArrays bigArrays) {
+            this.counts = counts;
+            this.maxOrd = maxOrd;
+            this.bigArrays = bigArrays;
+            this.visitedOrds = bigArrays.newObjectArray(1);
+        }
+
+        LeafBucketCollector getLeafCollector(SortedSetDocValues values) {
+            lookup = values;
+            return new LeafBucketCollector() {
+                @Override
+                public void collect(int doc, long bucketOrd) throws IOException {
+                    if (values.advanceExact(doc)) {
+                        visitedOrds = bigArrays.grow(visitedOrds, bucketOrd + 1);
+                        LongArray bits = visitedOrds.get(bucketOrd);
+                        for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                            final long word = ord >>> 6;
+                            if (bits == null) {
+                                bits = bigArrays.newLongArray(word + 1, true);
+                                visitedOrds.set(bucketOrd, bits);
+                            } else if (word >= bits.size()) {
+                                bits = bigArrays.grow(bits, word + 1);
+                                visitedOrds.set(bucketOrd, bits);
+                            }
+                            bits.set(word, bits.get(word) | (1L << ord));
+                        }
+                    }
+                }
+            };
+        }
+
+        void postCollect() throws IOException {
+            if (lookup == null || maxOrd == 0) {
+                return;
+            }
+            final long numWords = (maxOrd + 63) >>> 6;
+            try (LongArray allVisitedOrds = bigArrays.newLongArray(numWords, true);
+                 LongArray hashes = bigArrays.newLongArray(maxOrd, false)) {
+                for (long bucket = visitedOrds.size() - 1; bucket >= 0; --bucket) {
+                    final LongArray bits = visitedOrds.get(bucket);
+                    if (bits != null) {
+                        // arrays are oversized when they grow, words past the last ordinal are always empty
+                        final long words = Math.min(bits.size(), numWords);
+                        for (long word = 0; word < words; ++word) {
+                            allVisitedOrds.set(word, allVisitedOrds.get(word) | bits.get(word));
+                        }
+                    }
+                }
+
+                final org.elasticsearch.common.hash.MurmurHash3.Hash128 hash = new org.elasticsearch.common.hash.MurmurHash3.Hash128();
+                for (long word = 0; word < numWords; ++word) {
+                    for (long bits = allVisitedOrds.get(word); bits != 0; bits &= bits - 1) {
+                        final long ord = (word << 6) + Long.numberOfTrailingZeros(bits);
+                        final BytesRef value = lookup.lookupOrd(ord);
+                        org.elasticsearch.common.hash.MurmurHash3.hash128(value.bytes, value.offset, value.length, 0, hash);
+                        hashes.set(ord, hash.h1);
+                    }
+                }
+
+                for (long bucket = visitedOrds.size() - 1; bucket >= 0; --bucket) {
+                    final LongArray visited = visitedOrds.get(bucket);
+                    if (visited != null) {
+                        for (long word = 0; word < visited.size(); ++word) {
+                            for (long bits = visited.get(word); bits != 0; bits &= bits - 1) {
+                                counts.collect(bucket, hashes.get((word << 6) + Long.numberOfTrailingZeros(bits)));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (visitedOrds != null) {
+                for (long bucket = 0; bucket < visitedOrds.size(); ++bucket) {
+                    Releasables.close(visitedOrds.get(bucket));
+                }
+                Releasables.close(visitedOrds);
+                visitedOrds = null;
+            }
+        }
+    }
+
     /**
      * Representation of a list of hash values. There might be dups and there is no guarantee on the order.
      */
@@ -22,6 +22,7 @@ package org.elasticsearch.search.aggregations.metrics.cardinality;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongBitSet;
 import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
@@ -34,6 +35,7 @@ import org.elasticsearch.common.util.IntArray;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -53,6 +55,11 @@ import java.util.Set;
  *
  * Trying to understand what this class does without having read the paper is
  * considered adventurous.
+ *
+ * On the wire, the hashes of linear counting are sorted and delta encoded, and
+ * the registers of hyperloglog are sent as (gap, run length) pairs when less
+ * than a third of them are set, which is the common case right after a bucket
+ * got upgraded from linear counting.
  */
 public final class HyperLogLogPlusPlus implements Releasable {
 
@@ -556,37 +563,110 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     public void writeTo(long bucket, StreamOutput out) throws IOException {
         out.writeVInt(p);
+        final boolean compact = out.getVersion().onOrAfter(Version.V_7_0_0_alpha1);
         if (algorithm.get(bucket) == LINEAR_COUNTING) {
             out.writeBoolean(LINEAR_COUNTING);
             try (IntArray hashes = hashSet.values(bucket)) {
                 out.writeVLong(hashes.size());
-                for (long i = 0; i < hashes.size(); ++i) {
-                    out.writeInt(hashes.get(i));
+                if (compact) {
+                    writeSortedDeltas(hashes, out);
+                } else {
+                    for (long i = 0; i < hashes.size(); ++i) {
+                        out.writeInt(hashes.get(i));
+                    }
                 }
             }
         } else {
             out.writeBoolean(HYPERLOGLOG);
-            for (long i = bucket << p, end = i + m; i < end; ++i) {
-                out.writeByte(runLens.get(i));
+            if (compact) {
+                writeRegisters(bucket, out);
+            } else {
+                for (long i = bucket << p, end = i + m; i < end; ++i) {
+                    out.writeByte(runLens.get(i));
+                }
             }
         }
     }
 
+    private static void writeSortedDeltas(IntArray hashes, StreamOutput out) throws IOException {
+        // the encoded hashes are uniformly distributed unsigned ints, so their deltas take fewer bytes than the hashes
+        final long[] sorted = new long[Math.toIntExact(hashes.size())];
+        for (int i = 0; i < sorted.length; ++i) {
+            sorted[i] = Integer.toUnsignedLong(hashes.get(i));
+        }
+        Arrays.sort(sorted);
+        long previous = 0;
+        for (long hash : sorted) {
+            out.writeVLong(hash - previous);
+            previous = hash;
+        }
+    }
+
+    private void writeRegisters(long bucket, StreamOutput out) throws IOException {
+        final long start = bucket << p;
+        int nonZero = 0;
+        for (long i = start, end = start + m; i < end; ++i) {
+            if (runLens.get(i) != 0) {
+                ++nonZero;
+            }
+        }
+        // a sparse register takes at least two bytes, a dense one always takes one
+        final boolean sparse = nonZero < m / 3;
+        out.writeBoolean(sparse);
+        if (sparse) {
+            out.writeVInt(nonZero);
+            int previous = 0;
+            for (int i = 0; i < m; ++i) {
+                final byte runLen = runLens.get(start + i);
+                if (runLen != 0) {
+                    out.writeVInt(i - previous);
+                    out.writeByte(runLen);
+                    previous = i;
+                }
+            }
+        } else {
+            final BytesRef registers = new BytesRef();
+            runLens.get(start, m, registers);
+            out.writeBytes(registers.bytes, registers.offset, registers.length);
+        }
+    }
+
     public static HyperLogLogPlusPlus readFrom(StreamInput in, BigArrays bigArrays) throws IOException {
         final int precision = in.readVInt();
         HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(precision, bigArrays, 1);
+        final boolean compact = in.getVersion().onOrAfter(Version.V_7_0_0_alpha1);
         final boolean algorithm = in.readBoolean();
         if (algorithm == LINEAR_COUNTING) {
             counts.algorithm.clear(0);
             final long size = in.readVLong();
+            long hash = 0;
             for (long i = 0; i < size; ++i) {
-                final int encoded = in.readInt();
+                final int encoded;
+                if (compact) {
+                    hash += in.readVLong();
+                    encoded = (int) hash;
+                } else {
+                    encoded = in.readInt();
+                }
                 counts.hashSet.add(0, encoded);
             }
         } else {
             counts.algorithm.set(0);
-            for (int i = 0; i < counts.m; ++i) {
-                counts.runLens.set(i, in.readByte());
+            if (compact && in.readBoolean()) {
+                final int nonZero = in.readVInt();
+                int index = 0;
+                for (int i = 0; i < nonZero; ++i) {
+                    index += in.readVInt();
+                    counts.runLens.set(index, in.readByte());
+                }
+            } else if (compact) {
+                final byte[] registers = new byte[counts.m];
+                in.readBytes(registers, 0, registers.length);
+                counts.runLens.set(0, registers, 0, registers.length);
+            } else {
+                for (int i = 0; i < counts.m; ++i) {
+                    counts.runLens.set(i, in.readByte());
+                }
             }
         }
         return counts;
@@ -20,11 +20,14 @@ package org.elasticsearch.search.aggregations.metrics.percentiles.tdigest;
 
 import com.tdunning.math.stats.AVLTreeDigest;
 import com.tdunning.math.stats.Centroid;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * Extension of {@link com.tdunning.math.stats.TDigest} with custom serialization.
@@ -43,11 +46,24 @@ public class TDigestState extends AVLTreeDigest {
         return compression;
     }
 
+    /**
+     * Writes the centroids of the digest in order of their means. Since 7.0 the means are written as the xor of their bits
+     * with the bits of the previous mean: neighbouring means share their sign, exponent and leading mantissa bits, so the xor
+     * is a small number that takes fewer bytes than a raw double.
+     */
     public static void write(TDigestState state, StreamOutput out) throws IOException {
         out.writeDouble(state.compression);
         out.writeVInt(state.centroidCount());
+        final boolean compact = out.getVersion().onOrAfter(Version.V_7_0_0_alpha1);
+        long previousBits = 0;
         for (Centroid centroid : state.centroids()) {
-            out.writeDouble(centroid.mean());
+            if (compact) {
+                final long bits = Double.doubleToLongBits(centroid.mean());
+                out.writeZLong(bits ^ previousBits);
+                previousBits = bits;
+            } else {
+                out.writeDouble(centroid.mean());
+            }
             out.writeVLong(centroid.count());
         }
     }
@@ -56,12 +72,99 @@ public class TDigestState extends AVLTreeDigest {
         double compression = in.readDouble();
         TDigestState state = new TDigestState(compression);
         int n = in.readVInt();
+        final boolean compact = in.getVersion().onOrAfter(Version.V_7_0_0_alpha1);
+        long previousBits = 0;
         for (int i = 0; i < n; i++) {
-            state.add(in.readDouble(), in.readVInt());
+            final double mean;
+            if (compact) {
+                previousBits ^= in.readZLong();
+                mean = Double.longBitsToDouble(previousBits);
+            } else {
+                mean = in.readDouble();
+            }
+            state.add(mean, in.readVInt());
         }
         return state;
     }
 
+    /**
+     * Merges the given digests into a new digest with the given compression. Instead of adding the centroids of every
+     * digest one by one to the tree of the merged digest, the sorted centroids of all digests are merged by mean in a
+     * single pass, folding each centroid into the previous one while the result stays within the size bound of the
+     * digest at its quantile. Only the much smaller set of folded centroids then needs to be added to the tree.
+     */
+    public static TDigestState merge(double compression, List<TDigestState> digests) {
+        long totalCount = 0;
+        final PriorityQueue<CentroidCursor> queue = new PriorityQueue<>(Math.max(1, digests.size()),
+            (a, b) -> Double.compare(a.mean(), b.mean()));
+        for (TDigestState digest : digests) {
+            if (digest.centroidCount() > 0) {
+                totalCount += digest.size();
+                queue.add(new CentroidCursor(digest));
+            }
+        }
+
+        final TDigestState merged = new TDigestState(compression);
+        double mean = 0;
+        long count = 0;
+        // the weight of the centroids that were added to the merged digest so far
+        long cumulative = 0;
+        while (queue.isEmpty() == false) {
+            final CentroidCursor cursor = queue.poll();
+            final double nextMean = cursor.mean();
+            final int nextCount = cursor.count();
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+            if (count > 0) {
+                final double q = (cumulative + (count + nextCount) / 2.0) / totalCount;
+                final double maxCount = 4 * totalCount * q * (1 - q) / compression;
+                if (count + nextCount <= maxCount && count + nextCount <= Integer.MAX_VALUE) {
+                    count += nextCount;
+                    mean += (nextMean - mean) * nextCount / count;
+                    continue;
+                }
+                merged.add(mean, (int) count);
+                cumulative += count;
+            }
+            mean = nextMean;
+            count = nextCount;
+        }
+        if (count > 0) {
+            merged.add(mean, (int) count);
+        }
+        return merged;
+    }
+
+    /**
+     * Iterates over the centroids of a digest, which are sorted by mean.
+     */
+    private static class CentroidCursor {
+        private final Iterator<? extends Centroid> centroids;
+        private Centroid current;
+
+        CentroidCursor(TDigestState digest) {
+            centroids = digest.centroids().iterator();
+            current = centroids.next();
+        }
+
+        double mean() {
+            return current.mean();
+        }
+
+        int count() {
+            return current.count();
+        }
+
+        boolean next() {
+            if (centroids.hasNext()) {
+                current = centroids.next();
+                return true;
+            }
+            return false;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null || obj instanceof TDigestState == false) {
@@ -26,6 +26,7 @@ import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.BulkScorer;
 import org.apache.lucene.search.CollectionStatistics;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -34,7 +35,10 @@ import org.apache.lucene.search.QueryCachingPolicy;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.TermStatistics;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.search.dfs.AggregatedDfs;
 import org.elasticsearch.search.profile.Timer;
@@ -42,10 +46,16 @@ import org.elasticsearch.search.profile.query.ProfileWeight;
 import org.elasticsearch.search.profile.query.QueryProfileBreakdown;
 import org.elasticsearch.search.profile.query.QueryProfiler;
 import org.elasticsearch.search.profile.query.QueryTimingType;
+import org.elasticsearch.search.query.CancellableCollector;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.BooleanSupplier;
 
 /**
  * Context-aware extension of {@link IndexSearcher}.
@@ -191,6 +201,110 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
         super.search(leaves, cancellableWeight, collector);
     }
 
+    /**
+     * Searches the leaves of this searcher in up to <code>maxSlices</code> slices of consecutive leaves concurrently, using one
+     * collector of the given manager per slice, and returns the reduced result of these collectors. Slices are handed to the
+     * executor, but slices that no thread of the executor started yet are searched by the calling thread, so this neither waits
+     * for the executor's queue nor fails if the executor rejects a slice. If a slice fails, the collectors of all slices are
+     * still reduced before the failure is rethrown.
+     *
+     * @param cancelled supplier of the cancellation flag, called for each segment
+     */
+    public <C extends Collector, T> T search(Query query, CollectorManager<C, T> collectorManager, Executor executor, int maxSlices,
+                                             BooleanSupplier cancelled) throws IOException {
+        final List<List<LeafReaderContext>> slices = slices(getIndexReader().leaves(), maxSlices);
+        final List<C> collectors = new ArrayList<>(slices.size());
+        boolean needsScores = false;
+        for (int i = 0; i < slices.size(); i++) {
+            final C collector = collectorManager.newCollector();
+            needsScores |= collector.needsScores();
+            collectors.add(collector);
+        }
+        final Weight weight = createNormalizedWeight(query, needsScores);
+        final List<FutureTask<Void>> tasks = new ArrayList<>(slices.size());
+        for (int i = 0; i < slices.size(); i++) {
+            final List<LeafReaderContext> slice = slices.get(i);
+            final Collector collector = new CancellableCollector(cancelled, collectors.get(i));
+            tasks.add(new FutureTask<>(() -> {
+                search(slice, weight, collector);
+                return null;
+            }));
+        }
+        for (int i = 1; i < tasks.size(); i++) {
+            try {
+                executor.execute(tasks.get(i));
+            } catch (EsRejectedExecutionException e) {
+                // searched by the calling thread below
+            }
+        }
+        for (FutureTask<Void> task : tasks) {
+            // does nothing if a thread of the executor already started this slice
+            task.run();
+        }
+        // wait for all slices, even if one failed, so that no slice uses the reader after this method returned
+        Throwable failure = null;
+        for (FutureTask<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ThreadInterruptedException(e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                } else if (failure != e.getCause()) {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        // the collectors are reduced even if a slice failed, so that callers that tolerate the failure, like searches that timed
+        // out, get the hits that were collected until then, as they do when the leaves are searched sequentially
+        T result = null;
+        try {
+            result = collectorManager.reduce(collectors);
+        } catch (IOException | RuntimeException e) {
+            if (failure == null) {
+                throw e;
+            }
+            failure.addSuppressed(e);
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw ExceptionsHelper.convertToRuntime((Exception) failure);
+        }
+        return result;
+    }
+
+    /**
+     * Splits the leaves into at most <code>maxSlices</code> slices of consecutive leaves with roughly the same number of documents.
+     */
+    public static List<List<LeafReaderContext>> slices(List<LeafReaderContext> leaves, int maxSlices) {
+        long totalDocs = 0;
+        for (LeafReaderContext leaf : leaves) {
+            totalDocs += leaf.reader().maxDoc();
+        }
+        final List<List<LeafReaderContext>> slices = new ArrayList<>();
+        List<LeafReaderContext> slice = new ArrayList<>();
+        long docs = 0;
+        for (LeafReaderContext leaf : leaves) {
+            slice.add(leaf);
+            docs += leaf.reader().maxDoc();
+            // close the slice once the slices hold their share of the documents
+            if (slices.size() < maxSlices - 1 && docs * maxSlices >= totalDocs * (slices.size() + 1)) {
+                slices.add(slice);
+                slice = new ArrayList<>();
+            }
+        }
+        if (slice.isEmpty() == false) {
+            slices.add(slice);
+        }
+        return slices;
+    }
+
     @Override
     public Explanation explain(Query query, int doc) throws IOException {
         if (aggregatedDfs != null) {
@@ -25,6 +25,7 @@ import org.apache.lucene.queries.SearchAfterSortedDocQuery;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.EarlyTerminatingSortingCollector;
 import org.apache.lucene.search.FieldDoc;
@@ -57,6 +58,7 @@ import org.elasticsearch.search.suggest.SuggestPhase;
 import org.elasticsearch.tasks.TaskCancelledException;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.function.Consumer;
 
@@ -258,6 +260,25 @@ public class QueryPhase implements SearchPhase {
             // add the top docs collector, the first collector context in the chain
             collectors.addFirst(topDocsFactory);
 
+            // only the collection of top docs and aggregations can be split into slices of segments, so there must be no other
+            // collector context in the chain than the top docs, the aggregations and the cancellation ones
+            final int maxSlices = searchContext.indexShard().indexSettings().getMaxConcurrentSlices();
+            final boolean slicedAggregations = collectors.size() == 3
+                && searchContext.queryCollectors().keySet().equals(Collections.singleton(AggregationPhase.class))
+                && searchContext.aggregations().factories().supportsConcurrentSlices();
+            final CollectorManager<? extends Collector, Void> slicedCollectorManager;
+            if (maxSlices > 1 && (collectors.size() == 2 || slicedAggregations) && doProfile == false && scrollContext == null
+                    && reader.leaves().size() > 1 && searcher instanceof ContextIndexSearcher) {
+                final CollectorManager<? extends Collector, Void> topDocsManager = topDocsFactory.createSlicedCollectorManager();
+                if (topDocsManager != null && slicedAggregations) {
+                    slicedCollectorManager = AggregationPhase.slicedCollectorManager(searchContext, topDocsManager);
+                } else {
+                    slicedCollectorManager = topDocsManager;
+                }
+            } else {
+                slicedCollectorManager = null;
+            }
+
             final Collector queryCollector;
             if (doProfile) {
                 InternalProfileCollector profileCollector = QueryCollectorContext.createQueryCollectorWithProfiler(collectors);
@@ -269,7 +290,13 @@ public class QueryPhase implements SearchPhase {
 
             try {
                 if (shouldCollect) {
-                    searcher.search(query, queryCollector);
+                    if (slicedCollectorManager != null) {
+                        ((ContextIndexSearcher) searcher).search(query, slicedCollectorManager,
+                            searchContext.indexShard().getThreadPool().executor(ThreadPool.Names.SEARCH_SLICE), maxSlices,
+                            searchContext.getTask()::isCancelled);
+                    } else {
+                        searcher.search(query, queryCollector);
+                    }
                 }
             } catch (TimeExceededException e) {
                 assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
@@ -24,6 +24,7 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -34,6 +35,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopDocsCollector;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.grouping.CollapsingTopDocsCollector;
@@ -47,6 +49,7 @@ import org.elasticsearch.search.rescore.RescoreContext;
 import org.elasticsearch.search.sort.SortAndFormats;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Objects;
 
 import static org.elasticsearch.search.profile.query.CollectorResult.REASON_SEARCH_COUNT;
@@ -77,9 +80,20 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
         return false;
     }
 
+    /**
+     * Returns a manager that creates one collector per slice of the leaves, so that slices can be collected concurrently, and
+     * reduces these collectors into the result of this context. Returns <code>null</code> if all leaves must be collected by the
+     * collector of {@link #create(Collector)}.
+     */
+    @Nullable
+    CollectorManager<? extends Collector, Void> createSlicedCollectorManager() {
+        return null;
+    }
+
     static class TotalHitCountCollectorContext extends TopDocsCollectorContext {
         private final TotalHitCountCollector collector;
         private final int hitCount;
+        private int slicedHitCount = -1;
 
         /**
          * Ctr
@@ -105,11 +119,27 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
             return collector;
         }
 
+        @Override
+        CollectorManager<TotalHitCountCollector, Void> createSlicedCollectorManager() {
+            return new CollectorManager<TotalHitCountCollector, Void>() {
+                @Override
+                public TotalHitCountCollector newCollector() {
+                    return new TotalHitCountCollector();
+                }
+
+                @Override
+                public Void reduce(Collection<TotalHitCountCollector> collectors) {
+                    slicedHitCount = collectors.stream().mapToInt(TotalHitCountCollector::getTotalHits).sum();
+                    return null;
+                }
+            };
+        }
+
         @Override
         void postProcess(QuerySearchResult result, boolean hasCollected) {
             final int totalHitCount;
             if (hasCollected) {
-                totalHitCount = collector.getTotalHits();
+                totalHitCount = slicedHitCount != -1 ? slicedHitCount : collector.getTotalHits();
             } else {
                 assert hitCount != -1;
                 totalHitCount = hitCount;
@@ -156,7 +186,10 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
 
     abstract static class SimpleTopDocsCollectorContext extends TopDocsCollectorContext {
         private final @Nullable SortAndFormats sortAndFormats;
+        private final @Nullable ScoreDoc searchAfter;
+        private final boolean trackMaxScore;
         private final TopDocsCollector<?> topDocsCollector;
+        private TopDocs slicedTopDocs;
 
         /**
          * Ctr
@@ -171,10 +204,16 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
                                               boolean trackMaxScore) throws IOException {
             super(REASON_SEARCH_TOP_HITS, numHits);
             this.sortAndFormats = sortAndFormats;
+            this.searchAfter = searchAfter;
+            this.trackMaxScore = trackMaxScore;
+            this.topDocsCollector = newTopDocsCollector();
+        }
+
+        private TopDocsCollector<?> newTopDocsCollector() throws IOException {
             if (sortAndFormats == null) {
-                this.topDocsCollector = TopScoreDocCollector.create(numHits, searchAfter);
+                return TopScoreDocCollector.create(numHits, searchAfter);
             } else {
-                this.topDocsCollector = TopFieldCollector.create(sortAndFormats.sort, numHits,
+                return TopFieldCollector.create(sortAndFormats.sort, numHits,
                     (FieldDoc) searchAfter, true, trackMaxScore, trackMaxScore, true);
             }
         }
@@ -185,10 +224,50 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
             return topDocsCollector;
         }
 
+        @Override
+        CollectorManager<TopDocsCollector<?>, Void> createSlicedCollectorManager() {
+            return new CollectorManager<TopDocsCollector<?>, Void>() {
+                @Override
+                public TopDocsCollector<?> newCollector() throws IOException {
+                    return newTopDocsCollector();
+                }
+
+                @Override
+                public Void reduce(Collection<TopDocsCollector<?>> collectors) {
+                    final TopDocs[] topDocs = new TopDocs[collectors.size()];
+                    float maxScore = Float.NaN;
+                    int i = 0;
+                    for (TopDocsCollector<?> collector : collectors) {
+                        topDocs[i] = collector.topDocs();
+                        if (Float.isNaN(topDocs[i].getMaxScore()) == false) {
+                            maxScore = Float.isNaN(maxScore) ? topDocs[i].getMaxScore() : Math.max(maxScore, topDocs[i].getMaxScore());
+                        }
+                        i++;
+                    }
+                    // slices hold consecutive leaves, so breaking ties by slice index is the same as breaking them by doc id
+                    if (sortAndFormats == null) {
+                        slicedTopDocs = TopDocs.merge(0, numHits, topDocs, true);
+                    } else {
+                        final TopFieldDocs[] topFieldDocs = new TopFieldDocs[topDocs.length];
+                        for (int j = 0; j < topDocs.length; j++) {
+                            topFieldDocs[j] = (TopFieldDocs) topDocs[j];
+                        }
+                        slicedTopDocs = TopDocs.merge(sortAndFormats.sort, 0, numHits, topFieldDocs, true);
+                    }
+                    slicedTopDocs.setMaxScore(maxScore);
+                    for (ScoreDoc scoreDoc : slicedTopDocs.scoreDocs) {
+                        // the slice index is meaningless outside of this shard
+                        scoreDoc.shardIndex = -1;
+                    }
+                    return null;
+                }
+            };
+        }
+
         @Override
         void postProcess(QuerySearchResult result, boolean hasCollected) throws IOException {
             assert hasCollected;
-            final TopDocs topDocs = topDocsCollector.topDocs();
+            final TopDocs topDocs = slicedTopDocs != null ? slicedTopDocs : topDocsCollector.topDocs();
             result.topDocs(topDocs, sortAndFormats == null ? null : sortAndFormats.formats);
         }
     }
@@ -207,6 +286,12 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
             this.numberOfShards = numberOfShards;
         }
 
+        @Override
+        CollectorManager<TopDocsCollector<?>, Void> createSlicedCollectorManager() {
+            // scrolls may terminate the collection early and search after the last emitted doc
+            return null;
+        }
+
         @Override
         void postProcess(QuerySearchResult result, boolean hasCollected) throws IOException {
             super.postProcess(result, hasCollected);
@@ -19,6 +19,8 @@
 
 package org.elasticsearch.tasks;
 
+import org.elasticsearch.Version;
+import org.elasticsearch.action.search.SearchTask;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -99,7 +101,12 @@ public final class TaskInfo implements Writeable, ToXContentFragment {
         out.writeString(type);
         out.writeString(action);
         out.writeOptionalString(description);
-        out.writeOptionalNamedWriteable(status);
+        if (status instanceof SearchTask.Status && out.getVersion().before(Version.V_7_0_0_alpha1)) {
+            // older nodes can't read the progress of searches
+            out.writeOptionalNamedWriteable(null);
+        } else {
+            out.writeOptionalNamedWriteable(status);
+        }
         out.writeLong(startTime);
         out.writeLong(runningTimeNanos);
         out.writeBoolean(cancellable);
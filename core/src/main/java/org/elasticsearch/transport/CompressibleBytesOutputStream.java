@@ -20,14 +20,17 @@
 package org.elasticsearch.transport;
 
 import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.Streams;
 import org.elasticsearch.common.io.stream.BytesStream;
 import org.elasticsearch.common.io.stream.StreamOutput;
-import org.elasticsearch.common.lease.Releasable;
 
 import java.io.IOException;
+import java.util.Objects;
+import java.util.function.Supplier;
 import java.util.zip.DeflaterOutputStream;
 
 /**
@@ -45,20 +48,57 @@ import java.util.zip.DeflaterOutputStream;
  */
 final class CompressibleBytesOutputStream extends StreamOutput {
 
-    private final StreamOutput stream;
-    private final BytesStream bytesStreamOutput;
-    private final boolean shouldCompress;
+    private StreamOutput stream;
+    private BytesStream bytesStreamOutput;
+    private Compressor compressor;
+    private final Compressor deferredCompressor;
+    private final long deferredCompressionMinSize;
+    private final Supplier<BytesStream> deferredStreamSupplier;
 
     CompressibleBytesOutputStream(BytesStream bytesStreamOutput, boolean shouldCompress) throws IOException {
+        this(bytesStreamOutput, shouldCompress ? CompressorFactory.COMPRESSOR : null);
+    }
+
+    /**
+     * Creates a stream that compresses bytes with the given compressor as they are written, or that doesn't compress if
+     * the compressor is {@code null}.
+     */
+    CompressibleBytesOutputStream(BytesStream bytesStreamOutput, @Nullable Compressor compressor) throws IOException {
+        this(bytesStreamOutput, compressor, null, 0, null);
+    }
+
+    /**
+     * Creates a stream that doesn't compress bytes as they are written, but compresses them with the given compressor into
+     * a stream of the given supplier when they are materialized if there are at least {@code minSize} of them, so that only
+     * messages that are large enough to pay for the cost of compression are compressed.
+     */
+    CompressibleBytesOutputStream(BytesStream bytesStreamOutput, Compressor compressor, long minSize,
+                                  Supplier<BytesStream> compressedStreamSupplier) throws IOException {
+        this(bytesStreamOutput, null, Objects.requireNonNull(compressor), minSize, Objects.requireNonNull(compressedStreamSupplier));
+    }
+
+    private CompressibleBytesOutputStream(BytesStream bytesStreamOutput, Compressor compressor, Compressor deferredCompressor,
+                                          long deferredCompressionMinSize, Supplier<BytesStream> deferredStreamSupplier)
+        throws IOException {
         this.bytesStreamOutput = bytesStreamOutput;
-        this.shouldCompress = shouldCompress;
-        if (shouldCompress) {
-            this.stream = CompressorFactory.COMPRESSOR.streamOutput(Streams.flushOnCloseStream(bytesStreamOutput));
+        this.compressor = compressor;
+        this.deferredCompressor = deferredCompressor;
+        this.deferredCompressionMinSize = deferredCompressionMinSize;
+        this.deferredStreamSupplier = deferredStreamSupplier;
+        if (compressor != null) {
+            this.stream = compressor.streamOutput(Streams.flushOnCloseStream(bytesStreamOutput));
         } else {
             this.stream = bytesStreamOutput;
         }
     }
 
+    /**
+     * Returns whether the bytes of this stream are compressed. Only final once {@link #materializeBytes()} was called.
+     */
+    boolean isCompressed() {
+        return compressor != null;
+    }
+
     /**
      * This method ensures that compression is complete and returns the underlying bytes.
      *
@@ -69,8 +109,29 @@ final class CompressibleBytesOutputStream extends StreamOutput {
         // If we are using compression the stream needs to be closed to ensure that EOS marker bytes are written.
         // The actual ReleasableBytesStreamOutput will not be closed yet as it is wrapped in flushOnCloseStream when
         // passed to the deflater stream.
-        if (shouldCompress) {
+        if (stream != bytesStreamOutput) {
             stream.close();
+            stream = bytesStreamOutput;
+        } else if (compressor == null && deferredCompressor != null && bytesStreamOutput.position() >= deferredCompressionMinSize) {
+            final BytesReference uncompressed = bytesStreamOutput.bytes();
+            final BytesStream compressedStream = deferredStreamSupplier.get();
+            boolean success = false;
+            try {
+                try (StreamOutput out = deferredCompressor.streamOutput(Streams.flushOnCloseStream(compressedStream))) {
+                    uncompressed.writeTo(out);
+                }
+                success = true;
+            } finally {
+                if (success == false) {
+                    IOUtils.closeWhileHandlingException(compressedStream);
+                }
+            }
+            // the uncompressed bytes are not needed anymore, release them right away
+            final BytesStream uncompressedStream = bytesStreamOutput;
+            bytesStreamOutput = compressedStream;
+            stream = compressedStream;
+            compressor = deferredCompressor;
+            IOUtils.close(uncompressedStream);
         }
 
         return bytesStreamOutput.bytes();
@@ -94,10 +155,9 @@ final class CompressibleBytesOutputStream extends StreamOutput {
     @Override
     public void close() throws IOException {
         if (stream == bytesStreamOutput) {
-            assert shouldCompress == false : "If the streams are the same we should not be compressing";
             IOUtils.close(stream);
         } else {
-            assert shouldCompress : "If the streams are different we should be compressing";
+            assert compressor != null : "If the streams are different we should be compressing";
             IOUtils.close(stream, bytesStreamOutput);
         }
     }
@@ -0,0 +1,180 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.CompositeBytesReference;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The messages that a remote node is sending over a channel in chunks, see {@link TcpTransport#TCP_MESSAGE_CHUNK_SIZE}. The
+ * bodies of all chunks but the last one of a message are kept as they are received, and are taken out by the last chunk of the
+ * message, which completes it. Chunks that come with a {@link Releasable} are kept as slices of the network buffer until the
+ * message is released, so that messages that are read without copying their payloads stay that way, and other chunks are
+ * copied. The bodies of incomplete messages are accounted for in the in-flight requests circuit breaker. A message whose
+ * chunks trip the breaker or exceed the maximum message size is failed: its chunks are released and the chunks that are still
+ * to come are dropped. Requests and responses are tracked separately since the request ids of the requests the remote node
+ * sends and of the responses it sends back are generated by different nodes.
+ */
+final class InboundChunks implements Releasable {
+
+    private final CircuitBreaker breaker;
+    private final long maxMessageSize;
+    private final Map<Long, Message> requests = new HashMap<>();
+    private final Map<Long, Message> responses = new HashMap<>();
+    private boolean closed;
+
+    InboundChunks(CircuitBreaker breaker, long maxMessageSize) {
+        this.breaker = breaker;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Adds the body of a chunk of the given message, which is not its last chunk.
+     *
+     * @param releasable releases the body, which is then not copied, or <code>null</code> if the body is only valid until
+     *                   this method returns. Released once the message is released, or right away if the chunk is dropped.
+     */
+    synchronized void add(long requestId, boolean isRequest, BytesReference body, @Nullable Releasable releasable) {
+        if (closed) {
+            // the channel is closed, so the message will never be complete
+            Releasables.close(releasable);
+            return;
+        }
+        final Map<Long, Message> messages = isRequest ? requests : responses;
+        Message message = messages.get(requestId);
+        if (message == null) {
+            message = new Message();
+            messages.put(requestId, message);
+        }
+        if (message.failure != null) {
+            Releasables.close(releasable);
+            return;
+        }
+        final long size = message.length + body.length();
+        try {
+            if (size > maxMessageSize) {
+                // same safety against too large messages as for messages that are sent in one piece
+                throw new IllegalArgumentException("transport content length received [" + new ByteSizeValue(size) + "] exceeded ["
+                    + new ByteSizeValue(maxMessageSize) + "]");
+            }
+            breaker.addEstimateBytesAndMaybeBreak(body.length(), "<transport_message_chunks>");
+        } catch (IllegalArgumentException | CircuitBreakingException e) {
+            Releasables.close(releasable);
+            breaker.addWithoutBreaking(-message.length);
+            message.fail(e);
+            return;
+        }
+        if (releasable == null) {
+            message.add(new BytesArray(BytesRef.deepCopyOf(body.toBytesRef())), null);
+        } else {
+            message.add(body, releasable);
+        }
+    }
+
+    /**
+     * Removes the chunks received so far for the given message, if any. The caller is responsible for releasing them, and has to
+     * fail the message if {@link Message#getFailure()} is not <code>null</code>.
+     */
+    @Nullable
+    synchronized Message remove(long requestId, boolean isRequest) {
+        final Message message = (isRequest ? requests : responses).remove(requestId);
+        if (message != null) {
+            // the complete message is accounted for by the caller
+            breaker.addWithoutBreaking(-message.length);
+        }
+        return message;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed == false) {
+            closed = true;
+            for (Message message : requests.values()) {
+                breaker.addWithoutBreaking(-message.length);
+                message.close();
+            }
+            for (Message message : responses.values()) {
+                breaker.addWithoutBreaking(-message.length);
+                message.close();
+            }
+            requests.clear();
+            responses.clear();
+        }
+    }
+
+    /**
+     * The chunks of a message received so far.
+     */
+    static final class Message implements Releasable {
+        private final List<BytesReference> bodies = new ArrayList<>();
+        private final List<Releasable> releasables = new ArrayList<>();
+        private long length;
+        private Exception failure;
+
+        private void add(BytesReference body, @Nullable Releasable releasable) {
+            bodies.add(body);
+            if (releasable != null) {
+                releasables.add(releasable);
+            }
+            length += body.length();
+        }
+
+        private void fail(Exception e) {
+            failure = e;
+            close();
+            bodies.clear();
+            releasables.clear();
+            length = 0;
+        }
+
+        /**
+         * Returns the bodies of the chunks, which stay valid until this message is released.
+         */
+        BytesReference bytes() {
+            return new CompositeBytesReference(bodies.toArray(new BytesReference[bodies.size()]));
+        }
+
+        /**
+         * Returns why the message was failed, or <code>null</code> if it wasn't.
+         */
+        @Nullable
+        Exception getFailure() {
+            return failure;
+        }
+
+        @Override
+        public void close() {
+            Releasables.close(releasables);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lease.Releasable;
+
+import java.io.IOException;
+
+/**
+ * A stream over an uncompressed inbound message whose bytes are only valid until the given {@link Releasable} is released.
+ * By default the stream copies bytes references like any other stream, but once the message is {@link #retain() retained}
+ * the bytes references it reads are slices of the message, so that large payloads like document sources or file chunks
+ * are not copied out of the network buffer. The caller that retains the message is responsible for releasing it once the
+ * request that was read from the stream doesn't use these slices anymore.
+ */
+final class RetainedMessageStreamInput extends NamedWriteableAwareStreamInput {
+
+    private final BytesReference message;
+    private final Releasable releasable;
+    private boolean retained;
+
+    /**
+     * @param message    the message, whose available bytes are exactly the bytes that are left to read from the delegate
+     * @param delegate   a stream over the message
+     * @param releasable releases the message
+     */
+    RetainedMessageStreamInput(BytesReference message, StreamInput delegate, NamedWriteableRegistry namedWriteableRegistry,
+                               Releasable releasable) {
+        super(delegate, namedWriteableRegistry);
+        this.message = message;
+        this.releasable = releasable;
+    }
+
+    /**
+     * Makes bytes references read from this stream from now on slices of the message, and returns the {@link Releasable}
+     * that must be called once the slices are not used anymore.
+     */
+    Releasable retain() {
+        assert retained == false : "message is already retained";
+        retained = true;
+        return releasable;
+    }
+
+    /**
+     * Returns whether the message was retained, in which case it is released by the caller of {@link #retain()}.
+     */
+    boolean isRetained() {
+        return retained;
+    }
+
+    @Override
+    public BytesReference readBytesReference(int length) throws IOException {
+        if (retained == false || length == 0) {
+            return super.readBytesReference(length);
+        }
+        ensureCanReadBytes(length);
+        final int offset = message.length() - delegate.available();
+        final BytesReference slice = message.slice(offset, length);
+        final long skipped = delegate.skip(length);
+        assert skipped == length : "expected to skip [" + length + "] bytes but skipped [" + skipped + "]";
+        return slice;
+    }
+}
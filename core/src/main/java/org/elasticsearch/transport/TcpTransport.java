@@ -42,6 +42,7 @@ import org.elasticsearch.common.component.Lifecycle;
 import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.compress.NotCompressedException;
+import org.elasticsearch.common.io.stream.BytesStream;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
@@ -49,6 +50,7 @@ import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.network.NetworkAddress;
@@ -59,6 +61,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.BoundTransportAddress;
 import org.elasticsearch.common.transport.PortsRange;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
@@ -86,10 +89,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -162,6 +167,26 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
     public static final Setting<ByteSizeValue> TCP_RECEIVE_BUFFER_SIZE =
         Setting.byteSizeSetting("transport.tcp.receive_buffer_size", NetworkService.TCP_RECEIVE_BUFFER_SIZE,
             Setting.Property.NodeScope);
+    public static final Setting<String> TCP_COMPRESSION_SCHEME =
+        new Setting<>("transport.tcp.compression_scheme", "deflate", TcpTransport::validateCompressionScheme,
+            Setting.Property.NodeScope);
+    // the types of requests that are compressed if they are large enough, regardless of transport.tcp.compress
+    public static final Setting<List<TransportRequestOptions.Type>> TCP_COMPRESS_TYPES =
+        listSetting("transport.tcp.compress_types", emptyList(), s -> TransportRequestOptions.Type.valueOf(s.toUpperCase(Locale.ROOT)),
+            Setting.Property.NodeScope);
+    public static final Setting<ByteSizeValue> TCP_COMPRESS_MIN_SIZE =
+        Setting.byteSizeSetting("transport.tcp.compress_min_size", new ByteSizeValue(16, ByteSizeUnit.KB), Setting.Property.NodeScope);
+    // the actions whose requests read their bytes references as slices of the inbound message instead of copies, which is only
+    // safe for actions whose handlers are done with the bytes of the request by the time they send a response
+    public static final Setting<List<String>> TCP_ZERO_COPY_ACTIONS =
+        listSetting("transport.tcp.zero_copy_actions",
+            Arrays.asList("indices:data/write/bulk[s][p]", "indices:data/write/bulk[s][r]", "internal:index/shard/recovery/file_chunk"),
+            Function.identity(), Setting.Property.NodeScope);
+    // messages that are larger than this are sent in chunks, so that they don't hold up the messages sent after them on the same
+    // channel until they are fully written
+    public static final Setting<ByteSizeValue> TCP_MESSAGE_CHUNK_SIZE =
+        Setting.byteSizeSetting("transport.tcp.message_chunk_size", new ByteSizeValue(256, ByteSizeUnit.KB), new ByteSizeValue(0),
+            new ByteSizeValue(Integer.MAX_VALUE / 2), Setting.Property.NodeScope);
 
 
     public static final Setting.AffixSetting<Boolean> TCP_NO_DELAY_PROFILE = affixKeySetting("transport.profiles.", "tcp_no_delay",
@@ -210,6 +235,12 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
     // connections while no connect operations is going on... (this might help with 100% CPU when stopping the transport?)
     private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
     protected final boolean compress;
+    private final Compressor compressor;
+    private final Set<TransportRequestOptions.Type> compressTypes;
+    private final long compressMinSize;
+    private final Set<String> zeroCopyActions;
+    private final int messageChunkSize;
+    private final ConcurrentMap<TcpChannel, InboundChunks> inboundChunks = newConcurrentMap();
     private volatile BoundTransportAddress boundAddress;
     private final String transportName;
     protected final ConnectionProfile defaultConnectionProfile;
@@ -234,11 +265,25 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         this.pingSchedule = PING_SCHEDULE.get(settings);
         this.namedWriteableRegistry = namedWriteableRegistry;
         this.compress = Transport.TRANSPORT_TCP_COMPRESS.get(settings);
+        this.compressor =
+            "lz4".equals(TCP_COMPRESSION_SCHEME.get(settings)) ? CompressorFactory.LZ4_COMPRESSOR : CompressorFactory.COMPRESSOR;
+        final List<TransportRequestOptions.Type> compressTypes = TCP_COMPRESS_TYPES.get(settings);
+        this.compressTypes = compressTypes.isEmpty() ? Collections.emptySet() : EnumSet.copyOf(compressTypes);
+        this.compressMinSize = TCP_COMPRESS_MIN_SIZE.get(settings).getBytes();
+        this.zeroCopyActions = new HashSet<>(TCP_ZERO_COPY_ACTIONS.get(settings));
+        this.messageChunkSize = TCP_MESSAGE_CHUNK_SIZE.get(settings).bytesAsInt();
         this.networkService = networkService;
         this.transportName = transportName;
         defaultConnectionProfile = buildDefaultConnectionProfile(settings);
     }
 
+    private static String validateCompressionScheme(String scheme) {
+        if ("deflate".equals(scheme) == false && "lz4".equals(scheme) == false) {
+            throw new IllegalArgumentException("unknown compression scheme [" + scheme + "], must be one of [deflate, lz4]");
+        }
+        return scheme;
+    }
+
     static ConnectionProfile buildDefaultConnectionProfile(Settings settings) {
         int connectionsPerNodeRecovery = CONNECTIONS_PER_NODE_RECOVERY.get(settings);
         int connectionsPerNodeBulk = CONNECTIONS_PER_NODE_BULK.get(settings);
@@ -1072,6 +1117,15 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
     protected void stopInternal() {
     }
 
+    /**
+     * Returns the stream that an outbound message for the given channel is serialized into. The bytes of the stream are
+     * passed to {@link TcpChannel#sendMessage(BytesReference, ActionListener)} and the stream is closed once the message
+     * was sent or failed to be sent, so implementations can serialize into buffers that the channel writes without copying.
+     */
+    protected BytesStream newMessageOutputStream(TcpChannel channel) {
+        return new ReleasableBytesStreamOutput(bigArrays);
+    }
+
     public boolean canCompress(TransportRequest request) {
         return compress && (!(request instanceof BytesTransportRequest));
     }
@@ -1087,21 +1141,20 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         // only compress if asked and the request is not bytes. Otherwise only
         // the header part is compressed, and the "body" can't be extracted as compressed
         final boolean compressMessage = options.compress() && canCompress(request);
+        // requests of some types are compressed if they turn out to be large enough once serialized
+        final boolean compressIfLarge = compressMessage == false && compressTypes.contains(options.type())
+            && (request instanceof BytesTransportRequest) == false;
+
+        // we pick the smallest of the 2, to support both backward and forward compatibility
+        // note, this is the only place we need to do this, since from here on, we use the serialized version
+        // as the version to use also when the node receiving this request will send the response with
+        Version version = Version.min(getCurrentVersion(), channelVersion);
 
         status = TransportStatus.setRequest(status);
-        ReleasableBytesStreamOutput bStream = new ReleasableBytesStreamOutput(bigArrays);
-        final CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, compressMessage);
+        final CompressibleBytesOutputStream stream =
+            newCompressibleStream(channel, version, compressMessage, compressIfLarge);
         boolean addedReleaseListener = false;
         try {
-            if (compressMessage) {
-                status = TransportStatus.setCompress(status);
-            }
-
-            // we pick the smallest of the 2, to support both backward and forward compatibility
-            // note, this is the only place we need to do this, since from here on, we use the serialized version
-            // as the version to use also when the node receiving this request will send the response with
-            Version version = Version.min(getCurrentVersion(), channelVersion);
-
             stream.setVersion(version);
             threadPool.getThreadContext().writeTo(stream);
             stream.writeString(action);
@@ -1110,7 +1163,7 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
             // this might be called in a different thread
             SendListener onRequestSent = new SendListener(channel, stream,
                 () -> transportService.onRequestSent(node, requestId, action, request, finalOptions), message.length());
-            internalSendMessage(channel, message, onRequestSent);
+            sendMessage(channel, version, message, onRequestSent);
             addedReleaseListener = true;
         } finally {
             if (!addedReleaseListener) {
@@ -1119,6 +1172,35 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         }
     }
 
+    /**
+     * Creates the stream to serialize a message into, compressing it with the configured compression scheme if asked or,
+     * if {@code compressIfLarge} is set, if it is at least {@link #TCP_COMPRESS_MIN_SIZE} bytes long.
+     */
+    private CompressibleBytesOutputStream newCompressibleStream(TcpChannel channel, Version version, boolean compressMessage,
+                                                                boolean compressIfLarge) throws IOException {
+        // nodes before 7.0 only know how to decompress deflate
+        final Compressor compressor = version.onOrAfter(Version.V_7_0_0_alpha1) ? this.compressor : CompressorFactory.COMPRESSOR;
+        if (compressIfLarge) {
+            return new CompressibleBytesOutputStream(newMessageOutputStream(channel), compressor, compressMinSize,
+                () -> newMessageOutputStream(channel));
+        }
+        return new CompressibleBytesOutputStream(newMessageOutputStream(channel), compressMessage ? compressor : null);
+    }
+
+    /**
+     * Sends a message to the given channel, in chunks of {@link #TCP_MESSAGE_CHUNK_SIZE} bytes if it is larger than that and
+     * the remote node knows how to reassemble them.
+     */
+    private void sendMessage(TcpChannel channel, Version version, BytesReference message, SendMetricListener listener)
+        throws IOException {
+        if (messageChunkSize > 0 && version.onOrAfter(Version.V_7_0_0_alpha1)
+            && message.length() - TcpHeader.HEADER_SIZE > messageChunkSize) {
+            new ChunkedMessageSender(channel, message, listener).sendNextChunk();
+        } else {
+            internalSendMessage(channel, message, listener);
+        }
+    }
+
     /**
      * sends a message to the given channel, using the given callbacks.
      */
@@ -1177,13 +1259,9 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
             options = TransportResponseOptions.builder(options).withCompress(true).build();
         }
         status = TransportStatus.setResponse(status); // TODO share some code with sendRequest
-        ReleasableBytesStreamOutput bStream = new ReleasableBytesStreamOutput(bigArrays);
-        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, options.compress());
+        CompressibleBytesOutputStream stream = newCompressibleStream(channel, nodeVersion, options.compress(), false);
         boolean addedReleaseListener = false;
         try {
-            if (options.compress()) {
-                status = TransportStatus.setCompress(status);
-            }
             threadPool.getThreadContext().writeTo(stream);
             stream.setVersion(nodeVersion);
             BytesReference message = buildMessage(requestId, status, nodeVersion, response, stream);
@@ -1192,7 +1270,7 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
             // this might be called in a different thread
             SendListener listener = new SendListener(channel, stream,
                 () -> transportService.onResponseSent(requestId, action, response, finalOptions), message.length());
-            internalSendMessage(channel, message, listener);
+            sendMessage(channel, nodeVersion, message, listener);
             addedReleaseListener = true;
         } finally {
             if (!addedReleaseListener) {
@@ -1242,6 +1320,9 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         // #validateRequest method. this might be a problem in deflate after all but it's important to write
         // the marker bytes.
         final BytesReference messageBody = stream.materializeBytes();
+        if (stream.isCompressed()) {
+            status = TransportStatus.setCompress(status);
+        }
         final BytesReference header = buildHeader(requestId, status, stream.getVersion(), messageBody.length() + zeroCopyBuffer.length());
         return new CompositeBytesReference(header, messageBody, zeroCopyBuffer);
     }
@@ -1345,11 +1426,114 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
      */
     public final void messageReceived(BytesReference reference, TcpChannel channel, String profileName,
                                       InetSocketAddress remoteAddress, int messageLengthBytes) throws IOException {
+        messageReceived(reference, channel, profileName, remoteAddress, messageLengthBytes, null);
+    }
+
+    /**
+     * This method handles the message receive part for both request and responses. If the given {@link Releasable} is not
+     * {@code null}, the bytes of the message stay valid until it is released, and requests of one of the
+     * {@link #TCP_ZERO_COPY_ACTIONS} read their bytes references as slices of the message rather than copies. The message is
+     * then released once the response to the request is sent, and otherwise before this method returns.
+     */
+    public final void messageReceived(BytesReference reference, TcpChannel channel, String profileName,
+                                      InetSocketAddress remoteAddress, int messageLengthBytes,
+                                      @Nullable Releasable releasable) throws IOException {
+        RetainedMessageStreamInput retainedStreamIn = null;
+        // if the transport doesn't pass a releasable, the bytes of the message are only valid until this method returns
+        final boolean retainable = releasable != null;
+        try {
+            final int headerSize = TcpHeader.REQUEST_ID_SIZE + TcpHeader.STATUS_SIZE + TcpHeader.VERSION_ID_SIZE;
+            if (reference.length() >= headerSize) {
+                final long requestId;
+                final Version version;
+                try (StreamInput header = reference.streamInput()) {
+                    requestId = header.readLong();
+                    header.readByte();
+                    version = Version.fromId(header.readInt());
+                }
+                final byte status = reference.get(TcpHeader.REQUEST_ID_SIZE);
+                final boolean isRequest = TransportStatus.isRequest(status);
+                if (TransportStatus.isChunk(status)) {
+                    // the chunk takes over the message, which stays valid until the whole message is released
+                    final Releasable chunkReleasable = releasable;
+                    releasable = null;
+                    getInboundChunks(channel).add(requestId, isRequest, reference.slice(headerSize, reference.length() - headerSize),
+                        chunkReleasable);
+                    return;
+                }
+                final InboundChunks chunks = inboundChunks.get(channel);
+                final InboundChunks.Message previousChunks = chunks == null ? null : chunks.remove(requestId, isRequest);
+                if (previousChunks != null) {
+                    if (previousChunks.getFailure() != null) {
+                        // the previous chunks were dropped, so the message is failed as a whole
+                        failChunkedMessage(channel, requestId, isRequest, version, previousChunks.getFailure());
+                        return;
+                    }
+                    // this is the last chunk of the message, which completes the bodies of the previous ones
+                    final BytesReference previousBodies = previousChunks.bytes();
+                    reference = new CompositeBytesReference(reference.slice(0, headerSize), previousBodies,
+                        reference.slice(headerSize, reference.length() - headerSize));
+                    messageLengthBytes += previousBodies.length();
+                    releasable = releasable == null ? previousChunks : Releasables.wrap(previousChunks, releasable);
+                }
+            }
+            StreamInput streamIn = reference.streamInput();
+            // compressed messages are decompressed into fresh bytes anyway, so there is nothing to gain from retaining them
+            if (retainable && reference.length() > TcpHeader.REQUEST_ID_SIZE
+                && TransportStatus.isCompress(reference.get(TcpHeader.REQUEST_ID_SIZE)) == false) {
+                retainedStreamIn = new RetainedMessageStreamInput(reference, streamIn, namedWriteableRegistry, releasable);
+                streamIn = retainedStreamIn;
+            }
+            messageReceived(reference, streamIn, channel, profileName, remoteAddress, messageLengthBytes);
+        } finally {
+            if (retainedStreamIn == null || retainedStreamIn.isRetained() == false) {
+                Releasables.close(releasable);
+            }
+        }
+    }
+
+    /**
+     * Fails a message whose chunks were dropped, like a message that is sent in one piece and trips the circuit breaker: the
+     * sender of a request gets an error response, and the handler of a response is notified of the failure.
+     */
+    private void failChunkedMessage(TcpChannel channel, long requestId, boolean isRequest, Version version, Exception failure)
+        throws IOException {
+        try (ThreadContext.StoredContext ignored = threadPool.getThreadContext().stashContext()) {
+            if (isRequest) {
+                // the action is only known to the dropped chunks
+                sendErrorResponse(version, channel, failure, requestId, "<transport_request>");
+            } else {
+                final TransportResponseHandler<?> handler = transportService.onResponseReceived(requestId);
+                // ignore if its null, the service logs it
+                if (handler != null) {
+                    handleException(handler, failure);
+                }
+            }
+        }
+    }
+
+    private InboundChunks getInboundChunks(TcpChannel channel) {
+        // messages of a channel are received by one thread at a time, but the chunks may be released by any thread on close
+        InboundChunks chunks = inboundChunks.get(channel);
+        if (chunks == null) {
+            final InboundChunks newChunks = new InboundChunks(getInFlightRequestBreaker(),
+                Math.min(NINETY_PER_HEAP_SIZE, Integer.MAX_VALUE - TcpHeader.HEADER_SIZE - messageChunkSize));
+            inboundChunks.put(channel, newChunks);
+            channel.addCloseListener(ActionListener.wrap(() -> {
+                inboundChunks.remove(channel, newChunks);
+                newChunks.close();
+            }));
+            chunks = newChunks;
+        }
+        return chunks;
+    }
+
+    private void messageReceived(BytesReference reference, StreamInput streamIn, TcpChannel channel, String profileName,
+                                 InetSocketAddress remoteAddress, int messageLengthBytes) throws IOException {
         final int totalMessageSize = messageLengthBytes + TcpHeader.MARKER_BYTES_SIZE + TcpHeader.MESSAGE_LENGTH_SIZE;
         readBytesMetric.inc(totalMessageSize);
         // we have additional bytes to read, outside of the header
         boolean hasMessageBytesToRead = (totalMessageSize - TcpHeader.HEADER_SIZE) > 0;
-        StreamInput streamIn = reference.streamInput();
         boolean success = false;
         try (ThreadContext.StoredContext tCtx = threadPool.getThreadContext().stashContext()) {
             long requestId = streamIn.readLong();
@@ -1375,7 +1559,9 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
             }
             final boolean isHandshake = TransportStatus.isHandshake(status);
             ensureVersionCompatibility(version, getCurrentVersion(), isHandshake);
-            streamIn = new NamedWriteableAwareStreamInput(streamIn, namedWriteableRegistry);
+            if (streamIn instanceof RetainedMessageStreamInput == false) {
+                streamIn = new NamedWriteableAwareStreamInput(streamIn, namedWriteableRegistry);
+            }
             streamIn.setVersion(version);
             threadPool.getThreadContext().readHeaders(streamIn);
             if (TransportStatus.isRequest(status)) {
@@ -1503,8 +1689,15 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
                 } else {
                     getInFlightRequestBreaker().addWithoutBreaking(messageLengthBytes);
                 }
+                final Releasable retainedMessage;
+                if (stream instanceof RetainedMessageStreamInput && zeroCopyActions.contains(action)) {
+                    // the request may hold on to slices of the message, which is released once the response is sent
+                    retainedMessage = ((RetainedMessageStreamInput) stream).retain();
+                } else {
+                    retainedMessage = null;
+                }
                 transportChannel = new TcpTransportChannel(this, channel, transportName, action, requestId, version, profileName,
-                    messageLengthBytes);
+                    messageLengthBytes, retainedMessage);
                 final TransportRequest request = reg.newRequest(stream);
                 request.remoteAddress(new TransportAddress(remoteAddress));
                 // in case we throw an exception, i.e. when the limit is hit, we don't want to verify
@@ -1514,7 +1707,8 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         } catch (Exception e) {
             // the circuit breaker tripped
             if (transportChannel == null) {
-                transportChannel = new TcpTransportChannel(this, channel, transportName, action, requestId, version, profileName, 0);
+                transportChannel = new TcpTransportChannel(this, channel, transportName, action, requestId, version, profileName, 0,
+                    null);
             }
             try {
                 transportChannel.sendResponse(e);
@@ -1686,6 +1880,70 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         }
     }
 
+    /**
+     * Sends a message as a sequence of chunks of at most {@link #TCP_MESSAGE_CHUNK_SIZE} bytes, each with its own header. The
+     * next chunk is only sent once the previous one was written, so that messages that are sent on the same channel in the
+     * meantime are written in between two chunks rather than after the whole message, and small messages are not held up by
+     * large ones. All chunks but the last one are flagged with {@link TransportStatus#setChunk(byte)} and the last one completes
+     * the message on the receiving side, see {@link InboundChunks}.
+     */
+    private final class ChunkedMessageSender implements ActionListener<Void> {
+        private final TcpChannel channel;
+        private final long requestId;
+        private final byte status;
+        private final Version version;
+        private final BytesReference body;
+        private final SendMetricListener listener;
+        private int offset;
+
+        private ChunkedMessageSender(TcpChannel channel, BytesReference message, SendMetricListener listener) throws IOException {
+            this.channel = channel;
+            this.listener = listener;
+            final int sizeHeaderLength = TcpHeader.MARKER_BYTES_SIZE + TcpHeader.MESSAGE_LENGTH_SIZE;
+            try (StreamInput header = message.slice(sizeHeaderLength, TcpHeader.HEADER_SIZE - sizeHeaderLength).streamInput()) {
+                this.requestId = header.readLong();
+                this.status = header.readByte();
+                this.version = Version.fromId(header.readInt());
+            }
+            this.body = message.slice(TcpHeader.HEADER_SIZE, message.length() - TcpHeader.HEADER_SIZE);
+        }
+
+        private void sendNextChunk() {
+            final int length = Math.min(messageChunkSize, body.length() - offset);
+            final boolean lastChunk = offset + length == body.length();
+            final BytesReference chunk;
+            try {
+                final byte chunkStatus = lastChunk ? status : TransportStatus.setChunk(status);
+                chunk = new CompositeBytesReference(buildHeader(requestId, chunkStatus, version, length), body.slice(offset, length));
+            } catch (IOException e) {
+                listener.onFailure(e);
+                return;
+            }
+            offset += length;
+            if (lastChunk) {
+                // the listener of the message is notified once its last chunk was sent
+                internalSendMessage(channel, chunk, listener);
+            } else {
+                try {
+                    channel.sendMessage(chunk, this);
+                } catch (Exception ex) {
+                    listener.onFailure(ex);
+                    onException(channel, ex);
+                }
+            }
+        }
+
+        @Override
+        public void onResponse(Void v) {
+            sendNextChunk();
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            listener.onFailure(e);
+        }
+    }
+
     /**
      * This listener increments the transmitted bytes metric on success.
      */
@@ -37,22 +37,32 @@ import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.routing.RecoverySource;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.cluster.routing.TestShardRouting;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.Mapping;
+import org.elasticsearch.index.seqno.SequenceNumbers;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardTestCase;
+import org.elasticsearch.index.shard.IndexingOperationListener;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.rest.RestStatus;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.LongSupplier;
@@ -63,6 +73,7 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.Matchers.arrayWithSize;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyBoolean;
@@ -662,6 +673,86 @@ public class TransportShardBulkActionTests extends IndexShardTestCase {
         closeShards(shard);
     }
 
+    public void testBatchedIndexRequestsWithMappingUpdateAndParseFailure() throws Exception {
+        final IndexMetaData metaData = IndexMetaData.builder("index")
+            .putMapping("type", "{\"properties\":{\"foo\":{\"type\":\"keyword\"}}}")
+            .settings(Settings.builder().put(idxSettings).put(IndexSettings.INDEX_APPEND_ONLY_SETTING.getKey(), true))
+            .primaryTerm(0, 1).build();
+        final List<String> events = new ArrayList<>();
+        final IndexingOperationListener listener = new IndexingOperationListener() {
+            @Override
+            public Engine.Index preIndex(ShardId shardId, Engine.Index operation) {
+                events.add("pre " + operation.id());
+                return operation;
+            }
+
+            @Override
+            public void postIndex(ShardId shardId, Engine.Index index, Engine.IndexResult result) {
+                events.add("post " + index.id());
+            }
+        };
+        final IndexShard shard = spy(newShard(TestShardRouting.newShardRouting(shardId, randomAlphaOfLength(10), true,
+            ShardRoutingState.INITIALIZING, RecoverySource.StoreRecoverySource.EMPTY_STORE_INSTANCE), metaData, listener));
+        recoverShardFromStore(shard);
+
+        // the third document needs a mapping update and the fifth one fails to parse, the others can be indexed in batches
+        final IndexRequest[] requests = new IndexRequest[] {
+            new IndexRequest("index", "type").source(Requests.INDEX_CONTENT_TYPE, "foo", "a"),
+            new IndexRequest("index", "type").source(Requests.INDEX_CONTENT_TYPE, "foo", "b"),
+            new IndexRequest("index", "type").source(Requests.INDEX_CONTENT_TYPE, "bar", "c"),
+            new IndexRequest("index", "type").source(Requests.INDEX_CONTENT_TYPE, "foo", "d"),
+            new IndexRequest("index", "type").source("{\"foo\":{\"bar\":\"e\"}}", XContentType.JSON),
+            new IndexRequest("index", "type").source(Requests.INDEX_CONTENT_TYPE, "foo", "f")
+        };
+        final BulkItemRequest[] items = new BulkItemRequest[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i].process(Version.CURRENT, null, "index");
+            assertTrue(TransportShardBulkAction.canIndexInBatch(requests[i]));
+            items[i] = new BulkItemRequest(i, requests[i]);
+        }
+        final BulkShardRequest bulkShardRequest = new BulkShardRequest(shardId, RefreshPolicy.NONE, items);
+
+        final AtomicInteger updateCalled = new AtomicInteger();
+        TransportShardBulkAction.performOnPrimary(bulkShardRequest, shard, null, threadPool::absoluteTimeInMillis,
+            new MappingUpdatePerformer() {
+                @Override
+                public void updateMappings(Mapping update, ShardId shardId, String type) {
+                    assertNotNull(update);
+                    updateCalled.incrementAndGet();
+                }
+
+                @Override
+                public void verifyMappings(Mapping update, ShardId shardId) {
+                }
+            });
+
+        long lastSeqNo = SequenceNumbers.NO_OPS_PERFORMED;
+        for (int i = 0; i < items.length; i++) {
+            final BulkItemResponse response = bulkShardRequest.items()[i].getPrimaryResponse();
+            assertThat(response.getItemId(), equalTo(i));
+            if (i == 4) {
+                assertTrue(response.isFailed());
+                assertThat(response.getFailure().getCause(), instanceOf(MapperParsingException.class));
+            } else {
+                assertFalse(response.isFailed());
+                // items are executed in order
+                assertThat(response.getResponse().getSeqNo(), greaterThan(lastSeqNo));
+                lastSeqNo = response.getResponse().getSeqNo();
+            }
+        }
+        assertThat(updateCalled.get(), equalTo(1));
+        // every document is parsed once, only the one that needed a mapping update is parsed again
+        verify(shard, times(requests.length)).prepareIndexOnPrimary(anyLong(), any(), any(), anyLong(), anyBoolean());
+        verify(shard, times(1)).applyIndexOperationOnPrimary(anyLong(), any(), any(), anyLong(), anyBoolean(), any());
+        assertThat(events, equalTo(Arrays.asList(
+            "pre " + requests[0].id(), "pre " + requests[1].id(), "post " + requests[0].id(), "post " + requests[1].id(),
+            "pre " + requests[2].id(), "post " + requests[2].id(),
+            "pre " + requests[3].id(), "post " + requests[3].id(),
+            "pre " + requests[5].id(), "post " + requests[5].id())));
+        assertDocCount(shard, 5);
+        closeShards(shard);
+    }
+
     public class IndexResultWithLocation extends Engine.IndexResult {
         private final Translog.Location location;
         public IndexResultWithLocation(long version, long seqNo, boolean created, Translog.Location newLocation) {
@@ -370,6 +370,84 @@ public class SearchPhaseControllerTests extends ESTestCase {
         assertEquals(max.get(), reduce.scoreDocs[0].score, 0.0f);
     }
 
+    public void testConsumerReportsProgressToTask() {
+        int expectedNumResults = randomIntBetween(3, 100);
+        int bufferSize = randomIntBetween(2, expectedNumResults - 1);
+        SearchRequest request = new SearchRequest();
+        request.source(new SearchSourceBuilder().aggregation(AggregationBuilders.max("test")));
+        request.setBatchedReduceSize(bufferSize);
+        SearchTask task = new SearchTask(123L, "", "", "", null);
+        assertNull(task.getStatus());
+        InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult> consumer =
+            searchPhaseController.newSearchPhaseResults(request, expectedNumResults, task);
+        assertThat(consumer, instanceOf(SearchPhaseController.QueryPhaseResultConsumer.class));
+        assertEquals(new SearchTask.Status(expectedNumResults, 0, 0, 0, null), task.getStatus());
+        assertNull(task.getPartialAggregations());
+        int max = 0;
+        for (int i = 0; i < expectedNumResults; i++) {
+            int number = randomIntBetween(1, 1000);
+            max = Math.max(max, number);
+            QuerySearchResult result = new QuerySearchResult(i, new SearchShardTarget("node", new Index("a", "b"), i, null));
+            result.topDocs(new TopDocs(1, new ScoreDoc[] {new ScoreDoc(0, number)}, number), new DocValueFormat[0]);
+            InternalAggregations aggs = new InternalAggregations(Arrays.asList(new InternalMax("test", (double) number,
+                DocValueFormat.RAW, Collections.emptyList(), Collections.emptyMap())));
+            result.aggregations(aggs);
+            result.setShardIndex(i);
+            result.size(1);
+            consumer.consumeResult(result);
+
+            int numReducePhases = ((SearchPhaseController.QueryPhaseResultConsumer) consumer).getNumReducePhases();
+            SearchTask.Status status = (SearchTask.Status) task.getStatus();
+            assertEquals(expectedNumResults, status.getTotalShards());
+            assertEquals(i + 1, status.getCompletedShards());
+            assertEquals(numReducePhases, status.getNumReducePhases());
+            // the hits of every shard that responded are counted, including the ones that are still buffered
+            assertEquals(i + 1, status.getPartialTotalHits());
+            if (numReducePhases == 0) {
+                assertNull(task.getPartialAggregations());
+                assertNull(status.getPartialAggregations());
+            } else {
+                InternalMax partialMax = (InternalMax) task.getPartialAggregations().asList().get(0);
+                assertThat(partialMax.getValue(), lessThanOrEqualTo((double) max));
+                assertSame(task.getPartialAggregations(), status.getPartialAggregations());
+            }
+        }
+        SearchPhaseController.ReducedQueryPhase reduce = consumer.reduce();
+        assertEquals(max, ((InternalMax) reduce.aggregations.asList().get(0)).getValue(), 0.0D);
+    }
+
+    public void testConsumerReportsHitsToTaskWithoutTopDocs() {
+        int expectedNumResults = randomIntBetween(3, 100);
+        int bufferSize = randomIntBetween(2, expectedNumResults - 1);
+        SearchRequest request = new SearchRequest();
+        request.source(new SearchSourceBuilder().aggregation(AggregationBuilders.max("test")).size(0));
+        request.setBatchedReduceSize(bufferSize);
+        SearchTask task = new SearchTask(123L, "", "", "", null);
+        InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult> consumer =
+            searchPhaseController.newSearchPhaseResults(request, expectedNumResults, task);
+        assertThat(consumer, instanceOf(SearchPhaseController.QueryPhaseResultConsumer.class));
+        long totalHits = 0;
+        for (int i = 0; i < expectedNumResults; i++) {
+            int numHits = randomIntBetween(0, 1000);
+            QuerySearchResult result = new QuerySearchResult(i, new SearchShardTarget("node", new Index("a", "b"), i, null));
+            result.topDocs(new TopDocs(numHits, new ScoreDoc[0], Float.NaN), new DocValueFormat[0]);
+            InternalAggregations aggs = new InternalAggregations(Arrays.asList(new InternalMax("test", (double) numHits,
+                DocValueFormat.RAW, Collections.emptyList(), Collections.emptyMap())));
+            result.aggregations(aggs);
+            result.setShardIndex(i);
+            result.size(0);
+            consumer.consumeResult(result);
+            totalHits += numHits;
+            // the hits of this shard count right away, even though it is only reduced with the next batch
+            assertEquals(totalHits, ((SearchTask.Status) task.getStatus()).getPartialTotalHits());
+        }
+        assertNotNull(task.getPartialAggregations());
+        SearchPhaseController.ReducedQueryPhase reduce = consumer.reduce();
+        assertEquals(totalHits, reduce.totalHits);
+        // the final reduction releases the partial aggregations
+        assertNull(task.getPartialAggregations());
+    }
+
     public void testConsumerOnlyAggs() throws InterruptedException {
         int expectedNumResults = randomIntBetween(1, 100);
         int bufferSize = randomIntBetween(2, 200);
@@ -0,0 +1,75 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchModule;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.metrics.max.InternalMax;
+import org.elasticsearch.test.AbstractWireSerializingTestCase;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+public class SearchTaskStatusTests extends AbstractWireSerializingTestCase<SearchTask.Status> {
+
+    @Override
+    protected SearchTask.Status createTestInstance() {
+        final int totalShards = randomIntBetween(1, 100);
+        final InternalAggregations aggregations;
+        if (randomBoolean()) {
+            aggregations = new InternalAggregations(Collections.singletonList(new InternalMax("max", randomDouble(),
+                DocValueFormat.RAW, Collections.emptyList(), Collections.emptyMap())));
+        } else {
+            aggregations = null;
+        }
+        return new SearchTask.Status(totalShards, randomIntBetween(0, totalShards), randomIntBetween(0, totalShards),
+            randomNonNegativeLong(), aggregations);
+    }
+
+    @Override
+    protected Writeable.Reader<SearchTask.Status> instanceReader() {
+        return SearchTask.Status::new;
+    }
+
+    @Override
+    protected NamedWriteableRegistry getNamedWriteableRegistry() {
+        return new NamedWriteableRegistry(new SearchModule(Settings.EMPTY, false, Collections.emptyList()).getNamedWriteables());
+    }
+
+    public void testToXContent() {
+        final SearchTask.Status withoutAggregations = new SearchTask.Status(5, 3, 1, 42, null);
+        assertEquals("{\"total_shards\":5,\"completed_shards\":3,\"num_reduce_phases\":1,\"partial_total_hits\":42}",
+            Strings.toString(withoutAggregations));
+        assertThat(Strings.toString(withoutAggregations), not(containsString("partial_aggregations")));
+
+        final SearchTask.Status withAggregations = new SearchTask.Status(5, 3, 1, 42,
+            new InternalAggregations(Collections.singletonList(new InternalMax("max", 7d, DocValueFormat.RAW,
+                Collections.emptyList(), Collections.emptyMap()))));
+        assertEquals("{\"total_shards\":5,\"completed_shards\":3,\"num_reduce_phases\":1,\"partial_total_hits\":42,"
+            + "\"partial_aggregations\":{\"max\":{\"value\":7.0}}}", Strings.toString(withAggregations));
+    }
+}
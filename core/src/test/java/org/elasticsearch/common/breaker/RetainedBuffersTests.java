@@ -0,0 +1,54 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.breaker;
+
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.test.ESTestCase;
+
+public class RetainedBuffersTests extends ESTestCase {
+
+    public void testReservesBytesBeyondLength() {
+        final MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(Long.MAX_VALUE), 1.0, logger);
+        final int length = randomIntBetween(1, 1024);
+        assertEquals(0, RetainedBuffers.tryReserve(breaker, length, length, "test"));
+        assertEquals(0, breaker.getUsed());
+        final int overhead = randomIntBetween(1, length * (RetainedBuffers.MAX_RETAINED_RATIO - 1));
+        assertEquals(overhead, RetainedBuffers.tryReserve(breaker, length, length + overhead, "test"));
+        assertEquals(overhead, breaker.getUsed());
+    }
+
+    public void testCopiesIfBuffersAreMuchLarger() {
+        final MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(Long.MAX_VALUE), 1.0, logger);
+        final int length = randomIntBetween(1, 1024);
+        final long retainedBytes = (long) length * RetainedBuffers.MAX_RETAINED_RATIO + randomIntBetween(1, 1024);
+        assertEquals(-1, RetainedBuffers.tryReserve(breaker, length, retainedBytes, "test"));
+        assertEquals(0, breaker.getUsed());
+    }
+
+    public void testCopiesIfBreakerTrips() {
+        final int limit = randomIntBetween(1, 100);
+        final MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(limit), 1.0, logger);
+        final int length = limit;
+        assertEquals(-1, RetainedBuffers.tryReserve(breaker, length, length + limit + 1, "test"));
+        // the breaker undoes the bytes it couldn't add
+        assertEquals(0, breaker.getUsed());
+        assertEquals(1, breaker.getTrippedCount());
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.compress;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs the streaming compression tests against the {@link LZ4Compressor}
+ */
+public class LZ4CompressTests extends DeflateCompressTests {
+
+    @Override
+    protected Compressor newCompressor() {
+        return new LZ4Compressor();
+    }
+
+    public void testDetection() throws IOException {
+        final BytesReference source = new BytesArray(randomRealisticUnicodeOfLength(randomIntBetween(1, 100))
+            .getBytes(StandardCharsets.UTF_8));
+        final BytesStreamOutput bytes = new BytesStreamOutput();
+        try (StreamOutput out = CompressorFactory.LZ4_COMPRESSOR.streamOutput(bytes)) {
+            source.writeTo(out);
+        }
+        assertTrue(CompressorFactory.LZ4_COMPRESSOR.isCompressed(bytes.bytes()));
+        assertFalse(CompressorFactory.COMPRESSOR.isCompressed(bytes.bytes()));
+        assertSame(CompressorFactory.LZ4_COMPRESSOR, CompressorFactory.compressor(bytes.bytes()));
+        assertEquals(source, CompressorFactory.uncompress(bytes.bytes()));
+    }
+}
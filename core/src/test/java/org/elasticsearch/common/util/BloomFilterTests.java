@@ -0,0 +1,74 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.lessThan;
+
+public class BloomFilterTests extends ESTestCase {
+
+    public void testNoFalseNegatives() {
+        final int numValues = randomIntBetween(1, 10000);
+        final BloomFilter filter = new BloomFilter(numValues, randomIntBetween(1, 16));
+        final Set<BytesRef> values = new HashSet<>();
+        for (int i = 0; i < numValues; i++) {
+            final BytesRef value = new BytesRef(randomUnicodeOfLengthBetween(1, 20));
+            values.add(value);
+            filter.put(value);
+        }
+        for (BytesRef value : values) {
+            assertTrue(filter.mightContain(value));
+        }
+    }
+
+    public void testFalsePositiveRate() {
+        final int numValues = 10000;
+        final BloomFilter filter = new BloomFilter(numValues);
+        for (int i = 0; i < numValues; i++) {
+            filter.put(new BytesRef("value-" + i));
+        }
+        int falsePositives = 0;
+        final int numLookups = 10000;
+        for (int i = 0; i < numLookups; i++) {
+            if (filter.mightContain(new BytesRef("other-" + i))) {
+                falsePositives++;
+            }
+        }
+        // the expected rate is about 1%, leave some room for the hash distribution
+        assertThat(falsePositives, lessThan(numLookups * 3 / 100));
+    }
+
+    public void testEmpty() {
+        final BloomFilter filter = new BloomFilter(0);
+        assertFalse(filter.mightContain(new BytesRef(randomAlphaOfLengthBetween(0, 10))));
+    }
+
+    public void testIllegalArguments() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> new BloomFilter(-1));
+        assertEquals("expected values must be >= 0, got -1", e.getMessage());
+        e = expectThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 0));
+        assertEquals("bits per value must be >= 1, got 0", e.getMessage());
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.bloom;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.BloomFilter;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.IndexSettingsModule;
+
+import java.io.IOException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class TermsBloomFilterCacheTests extends ESTestCase {
+
+    private static final IndexSettings INDEX_SETTINGS = IndexSettingsModule.newIndexSettings("test",
+        Settings.builder().putList(TermsBloomFilterCache.INDEX_BLOOM_FILTER_FIELDS_SETTING.getKey(), "id").build());
+
+    private final MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(Long.MAX_VALUE), 1.0, logger);
+    private final CountingListener listener = new CountingListener();
+
+    public void testMightContain() throws Exception {
+        IndexWriter writer = newWriter(3);
+        DirectoryReader reader = openReader(writer);
+
+        TermsBloomFilterCache cache = new TermsBloomFilterCache(INDEX_SETTINGS, breaker, listener);
+        load(cache, reader);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.mightContain(reader, "id", new BytesRef("value" + i)));
+        }
+        // There are 3 segments
+        assertThat(cache.getLoadedFilters().count(), equalTo(3));
+        assertThat(listener.cached.get(), equalTo(3));
+        assertThat(breaker.getUsed(), equalTo(listener.memory.get()));
+        // the filters have 10 bits per value, so a single missing term is very unlikely to be a false positive in all of them
+        final int hits = listener.hits.get();
+        assertFalse(cache.mightContain(reader, "id", new BytesRef("missing")));
+        assertThat(listener.hits.get() - hits, equalTo(3));
+        assertThat(listener.misses.get(), equalTo(0));
+        // fields without bloom filters might always contain the term
+        assertTrue(cache.mightContain(reader, "other", new BytesRef("missing")));
+
+        writer.forceMerge(1);
+        reader.close();
+        reader = openReader(writer);
+
+        // the filter of the new segment isn't built yet, so it might have any term
+        assertTrue(cache.mightContain(reader, "id", new BytesRef("missing")));
+        assertThat(listener.misses.get(), equalTo(1));
+        load(cache, reader);
+        assertTrue(cache.mightContain(reader, "id", new BytesRef("value1")));
+        // Only one segment now
+        assertThat(cache.getLoadedFilters().count(), equalTo(1));
+        assertThat(breaker.getUsed(), equalTo(listener.memory.get()));
+
+        reader.close();
+        writer.close();
+        // closed segments drop their filters
+        assertThat(cache.getLoadedFilters().count(), equalTo(0));
+        assertThat(listener.memory.get(), equalTo(0L));
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    public void testCircuitBreaker() throws Exception {
+        IndexWriter writer = newWriter(1);
+        DirectoryReader reader = openReader(writer);
+        final long filterBytes = BloomFilter.ramBytesUsed(1, BloomFilter.DEFAULT_BITS_PER_VALUE);
+        final MemoryCircuitBreaker limitedBreaker = new MemoryCircuitBreaker(new ByteSizeValue(filterBytes - 1), 1.0, logger);
+
+        TermsBloomFilterCache cache = new TermsBloomFilterCache(INDEX_SETTINGS, limitedBreaker, listener);
+        expectThrows(CircuitBreakingException.class, () -> load(cache, reader));
+        assertThat(limitedBreaker.getUsed(), equalTo(0L));
+        assertThat(listener.cached.get(), equalTo(0));
+        // segments without filters are never skipped
+        assertTrue(cache.mightContain(reader, "id", new BytesRef("missing")));
+        assertThat(listener.misses.get(), equalTo(1));
+
+        reader.close();
+        writer.close();
+    }
+
+    public void testConcurrentLoadsBuildOnce() throws Exception {
+        IndexWriter writer = newWriter(1);
+        DirectoryReader reader = openReader(writer);
+        final LeafReaderContext leaf = reader.leaves().get(0);
+
+        TermsBloomFilterCache cache = new TermsBloomFilterCache(INDEX_SETTINGS, breaker, listener);
+        final BloomFilter[] filters = new BloomFilter[randomIntBetween(2, 8)];
+        final Thread[] threads = new Thread[filters.length];
+        final CyclicBarrier barrier = new CyclicBarrier(threads.length);
+        for (int i = 0; i < threads.length; i++) {
+            final int slot = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    filters[slot] = cache.getOrLoad(leaf.reader(), "id");
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(listener.cached.get(), equalTo(1));
+        for (BloomFilter filter : filters) {
+            assertThat(filter, sameInstance(filters[0]));
+        }
+        assertThat(breaker.getUsed(), equalTo(filters[0].ramBytesUsed()));
+
+        reader.close();
+        writer.close();
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    private static IndexWriter newWriter(int numSegments) throws IOException {
+        IndexWriter writer = new IndexWriter(
+                new RAMDirectory(),
+                new IndexWriterConfig(new StandardAnalyzer()).setMergePolicy(new LogByteSizeMergePolicy())
+        );
+        for (int i = 0; i < numSegments; i++) {
+            Document document = new Document();
+            document.add(new StringField("id", "value" + i, Field.Store.NO));
+            document.add(new StringField("other", "value" + i, Field.Store.NO));
+            writer.addDocument(document);
+            writer.commit();
+        }
+        return writer;
+    }
+
+    private static DirectoryReader openReader(IndexWriter writer) throws IOException {
+        return ElasticsearchDirectoryReader.wrap(DirectoryReader.open(writer), new ShardId("test", "_na_", 0));
+    }
+
+    private static void load(TermsBloomFilterCache cache, DirectoryReader reader) throws IOException {
+        for (LeafReaderContext leaf : reader.leaves()) {
+            cache.getOrLoad(leaf.reader(), "id");
+        }
+    }
+
+    private static class CountingListener implements TermsBloomFilterCache.Listener {
+        final AtomicInteger cached = new AtomicInteger();
+        final AtomicLong memory = new AtomicLong();
+        final AtomicInteger hits = new AtomicInteger();
+        final AtomicInteger misses = new AtomicInteger();
+
+        @Override
+        public void onCache(ShardId shardId, Accountable accountable) {
+            cached.incrementAndGet();
+            memory.addAndGet(accountable.ramBytesUsed());
+        }
+
+        @Override
+        public void onRemoval(ShardId shardId, Accountable accountable) {
+            memory.addAndGet(-accountable.ramBytesUsed());
+        }
+
+        @Override
+        public void onHit(ShardId shardId) {
+            hits.incrementAndGet();
+        }
+
+        @Override
+        public void onMiss(ShardId shardId) {
+            misses.incrementAndGet();
+        }
+    }
+}
@@ -3281,6 +3281,133 @@ public class InternalEngineTests extends EngineTestCase {
         }
     }
 
+    public void testAppendOnlyIndexRetryConcurrently() throws InterruptedException, IOException {
+        final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test", Settings.builder()
+            .put(defaultSettings.getSettings())
+            .put(IndexSettings.INDEX_APPEND_ONLY_SETTING.getKey(), true)
+            .build());
+        Thread[] thread = new Thread[randomIntBetween(3, 5)];
+        int numDocs = randomIntBetween(1000, 10000);
+        List<Engine.Index> docs = new ArrayList<>();
+        final boolean primary = randomBoolean();
+        for (int i = 0; i < numDocs; i++) {
+            final ParsedDocument doc = testParsedDocument(Integer.toString(i), null, testDocumentWithTextField(), new BytesArray("{}".getBytes(Charset.defaultCharset())), null);
+            if (primary) {
+                docs.add(appendOnlyPrimary(doc, false, i));
+                docs.add(appendOnlyPrimary(doc, true, i));
+            } else {
+                docs.add(appendOnlyReplica(doc, false, i, i * 2));
+                docs.add(appendOnlyReplica(doc, true, i, i * 2));
+            }
+        }
+        Collections.shuffle(docs, random());
+        try (Store store = createStore();
+             InternalEngine engine = createEngine(indexSettings, store, createTempDir(), newMergePolicy())) {
+            CountDownLatch startGun = new CountDownLatch(thread.length);
+            AtomicInteger offset = new AtomicInteger(-1);
+            for (int i = 0; i < thread.length; i++) {
+                thread[i] = new Thread(() -> {
+                    startGun.countDown();
+                    try {
+                        startGun.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    int docOffset;
+                    while ((docOffset = offset.incrementAndGet()) < docs.size()) {
+                        try {
+                            engine.index(docs.get(docOffset));
+                        } catch (IOException e) {
+                            throw new AssertionError(e);
+                        }
+                    }
+                });
+                thread[i].start();
+            }
+            for (int i = 0; i < thread.length; i++) {
+                thread[i].join();
+            }
+            // documents that took the fast path are only visible through lucene, realtime gets must refresh to find them
+            final Engine.Index index = randomFrom(docs);
+            try (Engine.GetResult get = engine.get(new Engine.Get(true, index.type(), index.id(), index.uid()), engine::acquireSearcher)) {
+                assertTrue(get.exists());
+            }
+            engine.refresh("test");
+            try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+                TopDocs topDocs = searcher.searcher().search(new MatchAllDocsQuery(), 10);
+                assertEquals(numDocs, topDocs.totalHits);
+            }
+        }
+    }
+
+    public void testAppendOnlyReplicaRetryWithoutRefresh() throws IOException {
+        final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test", Settings.builder()
+            .put(defaultSettings.getSettings())
+            .put(IndexSettings.INDEX_APPEND_ONLY_SETTING.getKey(), true)
+            .build());
+        final ParsedDocument doc = testParsedDocument("1", null, testDocumentWithTextField(),
+            new BytesArray("{}".getBytes(Charset.defaultCharset())), null);
+        try (Store store = createStore();
+             InternalEngine engine = createEngine(indexSettings, store, createTempDir(), newMergePolicy())) {
+            final long autoGeneratedIdTimestamp = randomNonNegativeLong();
+            // leave a gap in the sequence numbers so that the retry is above the local checkpoint and is resolved against the doc
+            final long seqNo = randomLongBetween(1, 10);
+            final Engine.IndexResult result = engine.index(appendOnlyReplica(doc, false, autoGeneratedIdTimestamp, seqNo));
+            assertThat(result.getVersion(), equalTo(1L));
+            // the retry must find the original in the version map since it isn't visible to the internal reader yet
+            final Engine.IndexResult retryResult = engine.index(appendOnlyReplica(doc, true, autoGeneratedIdTimestamp, seqNo));
+            assertThat(retryResult.getVersion(), equalTo(1L));
+            engine.refresh("test");
+            try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+                assertEquals(1, searcher.reader().numDocs());
+            }
+        }
+    }
+
+    public void testAppendOnlyBulk() throws IOException {
+        final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test", Settings.builder()
+            .put(defaultSettings.getSettings())
+            .put(IndexSettings.INDEX_APPEND_ONLY_SETTING.getKey(), true)
+            .build());
+        final int numDocs = randomIntBetween(1, 500);
+        final List<Engine.Index> operations = new ArrayList<>();
+        final int retry = randomIntBetween(-1, numDocs - 1);
+        for (int i = 0; i < numDocs; i++) {
+            final ParsedDocument doc = testParsedDocument(Integer.toString(i), null, testDocumentWithTextField(),
+                new BytesArray("{}".getBytes(Charset.defaultCharset())), null);
+            operations.add(appendOnlyPrimary(doc, i == retry, i));
+        }
+        try (Store store = createStore();
+             InternalEngine engine = createEngine(indexSettings, store, createTempDir(), newMergePolicy())) {
+            final List<Engine.Result> results = engine.bulk(operations);
+            assertThat(results.size(), equalTo(numDocs));
+            final Set<Long> seqNos = new HashSet<>();
+            for (int i = 0; i < numDocs; i++) {
+                final Engine.Result result = results.get(i);
+                assertThat(result, instanceOf(Engine.IndexResult.class));
+                assertFalse(result.hasFailure());
+                assertNotNull(result.getTranslogLocation());
+                assertTrue(((Engine.IndexResult) result).isCreated());
+                assertTrue(seqNos.add(result.getSeqNo()));
+            }
+            assertThat(engine.seqNoService().getLocalCheckpoint(), equalTo(numDocs - 1L));
+            assertThat(engine.seqNoService().getMaxSeqNo(), equalTo(numDocs - 1L));
+            engine.refresh("test");
+            try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+                assertEquals(numDocs, searcher.reader().numDocs());
+            }
+            try (Translog.Snapshot snapshot = engine.getTranslog().newSnapshot()) {
+                assertThat(snapshot.totalOperations(), equalTo(numDocs));
+                Translog.Operation operation;
+                while ((operation = snapshot.next()) != null) {
+                    assertThat(operation, instanceOf(Translog.Index.class));
+                    assertTrue(seqNos.remove(operation.seqNo()));
+                }
+                assertTrue(seqNos.isEmpty());
+            }
+        }
+    }
+
     public void testEngineMaxTimestampIsInitialized() throws IOException {
 
         final long timestamp1 = Math.abs(randomNonNegativeLong());
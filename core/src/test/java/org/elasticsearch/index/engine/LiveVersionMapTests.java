@@ -70,6 +70,31 @@ public class LiveVersionMapTests extends ESTestCase {
         assertEquals(actualRamBytesUsed, estimatedRamBytesUsed, actualRamBytesUsed / 4);
     }
 
+    public void testPackedRamBytesUsed() throws Exception {
+        LiveVersionMap map = new LiveVersionMap(true);
+        int numDocs = randomIntBetween(1, 1000);
+        long expectedBytes = 0;
+        Map<BytesRef, VersionValue> expected = new HashMap<>();
+        for (int i = 0; i < numDocs; ++i) {
+            BytesRef uid = uid(TestUtil.randomSimpleString(random(), 10, 20));
+            VersionValue version = new VersionValue(randomLong(), randomLong(), randomLong());
+            if (expected.put(uid, version) == null) {
+                expectedBytes += PackedVersionLookup.BYTES_PER_ENTRY + uid.length;
+            }
+            map.putUnderLock(uid, version);
+        }
+        assertEquals(expectedBytes, map.ramBytesUsedForRefresh());
+        assertEquals(expected, map.getAllCurrent());
+        expected.forEach((uid, version) -> assertEquals(version, map.getUnderLock(uid)));
+
+        map.beforeRefresh();
+        assertEquals(0, map.ramBytesUsedForRefresh());
+        expected.forEach((uid, version) -> assertEquals(version, map.getUnderLock(uid)));
+        map.afterRefresh(randomBoolean());
+        expected.forEach((uid, version) -> assertNull(map.getUnderLock(uid)));
+        assertEquals(0, map.ramBytesUsed());
+    }
+
     private BytesRef uid(String string) {
         BytesRefBuilder builder = new BytesRefBuilder();
         builder.copyChars(string);
@@ -78,7 +103,7 @@ public class LiveVersionMapTests extends ESTestCase {
     }
 
     public void testBasics() throws IOException {
-        LiveVersionMap map = new LiveVersionMap();
+        LiveVersionMap map = new LiveVersionMap(randomBoolean());
         map.putUnderLock(uid("test"), new VersionValue(1,1,1));
         assertEquals(new VersionValue(1,1,1), map.getUnderLock(uid("test")));
         map.beforeRefresh();
@@ -99,7 +124,7 @@ public class LiveVersionMapTests extends ESTestCase {
 
 
     public void testAdjustMapSizeUnderLock() throws IOException {
-        LiveVersionMap map = new LiveVersionMap();
+        LiveVersionMap map = new LiveVersionMap(randomBoolean());
         map.putUnderLock(uid("test"), new VersionValue(1,1,1));
         boolean withinRefresh = randomBoolean();
         if (withinRefresh) {
@@ -132,7 +157,7 @@ public class LiveVersionMapTests extends ESTestCase {
         List<BytesRef> keyList = new ArrayList<>(keySet);
         ConcurrentHashMap<BytesRef, VersionValue> values = new ConcurrentHashMap<>();
         KeyedLock<BytesRef> keyedLock = new KeyedLock<>();
-        LiveVersionMap map = new LiveVersionMap();
+        LiveVersionMap map = new LiveVersionMap(randomBoolean());
         int numThreads = randomIntBetween(2, 5);
 
         Thread[] threads = new Thread[numThreads];
@@ -19,19 +19,16 @@
 
 package org.elasticsearch.index.seqno;
 
-import com.carrotsearch.hppc.LongObjectHashMap;
-import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.Randomness;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.test.ESTestCase;
-import org.hamcrest.BaseMatcher;
-import org.hamcrest.Description;
 import org.junit.Before;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
@@ -40,12 +37,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import static org.elasticsearch.index.seqno.LocalCheckpointTracker.BIT_SET_SIZE;
 import static org.hamcrest.Matchers.equalTo;
-import static org.hamcrest.Matchers.isOneOf;
 
 public class LocalCheckpointTrackerTests extends ESTestCase {
 
+    private static final int BATCH_SIZE = 1024;
+
     private LocalCheckpointTracker tracker;
 
     public static LocalCheckpointTracker createEmptyTracker() {
@@ -92,13 +89,13 @@ public class LocalCheckpointTrackerTests extends ESTestCase {
          * sequence numbers this could lead to excessive memory usage resulting in out of memory errors.
          */
         tracker.markSeqNoAsCompleted(randomNonNegativeLong());
-        assertThat(tracker.processedSeqNo.size(), equalTo(1));
+        assertThat(tracker.completedRanges.size(), equalTo(1));
     }
 
     public void testSimpleOverFlow() {
         List<Integer> seqNoList = new ArrayList<>();
         final boolean aligned = randomBoolean();
-        final int maxOps = BIT_SET_SIZE * randomIntBetween(1, 5) + (aligned ? 0 : randomIntBetween(1, BIT_SET_SIZE - 1));
+        final int maxOps = BATCH_SIZE * randomIntBetween(1, 5) + (aligned ? 0 : randomIntBetween(1, BATCH_SIZE - 1));
 
         for (int i = 0; i < maxOps; i++) {
             seqNoList.add(i);
@@ -107,11 +104,69 @@ public class LocalCheckpointTrackerTests extends ESTestCase {
         for (Integer seqNo : seqNoList) {
             tracker.markSeqNoAsCompleted(seqNo);
         }
-        assertThat(tracker.checkpoint, equalTo(maxOps - 1L));
-        assertThat(tracker.processedSeqNo.size(), equalTo(aligned ? 0 : 1));
-        if (aligned == false) {
-            assertThat(tracker.processedSeqNo.keys().iterator().next().value, equalTo(tracker.checkpoint / BIT_SET_SIZE));
+        assertThat(tracker.getCheckpoint(), equalTo(maxOps - 1L));
+        assertThat(tracker.completedRanges.size(), equalTo(0));
+    }
+
+    public void testMarkSeqNoRangeAsCompleted() {
+        final int maxOps = BATCH_SIZE * randomIntBetween(1, 5) + randomIntBetween(0, BATCH_SIZE - 1);
+        final long first = tracker.generateSeqNoRange(maxOps);
+        assertThat(first, equalTo(0L));
+        assertThat(tracker.getMaxSeqNo(), equalTo(maxOps - 1L));
+        // leave a gap, ranges after it must not advance the checkpoint
+        final int gap = randomIntBetween(0, maxOps - 1);
+        long from = gap + 1;
+        while (from < maxOps) {
+            final long to = Math.min(maxOps - 1, from + randomIntBetween(0, 2 * BATCH_SIZE));
+            tracker.markSeqNoRangeAsCompleted(from, to);
+            from = to + 1;
+        }
+        if (gap > 0) {
+            tracker.markSeqNoRangeAsCompleted(0, gap - 1);
         }
+        assertThat(tracker.getCheckpoint(), equalTo(gap - 1L));
+        tracker.markSeqNoAsCompleted(gap);
+        assertThat(tracker.getCheckpoint(), equalTo(maxOps - 1L));
+        // ranges at or below the checkpoint are ignored
+        tracker.markSeqNoRangeAsCompleted(0, randomIntBetween(0, maxOps - 1));
+        assertThat(tracker.getCheckpoint(), equalTo(maxOps - 1L));
+        assertThat(tracker.completedRanges.size(), equalTo(0));
+    }
+
+    public void testOutOfOrderBurstKeepsOneRangePerGap() {
+        final int maxOps = randomIntBetween(1024, 1 << 14);
+        // seq no 0 is always missing so that nothing gets drained into the checkpoint
+        final Set<Integer> gaps = new HashSet<>();
+        gaps.add(0);
+        final int numGaps = randomIntBetween(0, 16);
+        for (int i = 0; i < numGaps; i++) {
+            gaps.add(randomIntBetween(1, maxOps - 1));
+        }
+        final List<Integer> seqNos = new ArrayList<>();
+        int expectedRanges = 0;
+        for (int seqNo = 0; seqNo < maxOps; seqNo++) {
+            if (gaps.contains(seqNo) == false) {
+                seqNos.add(seqNo);
+                if (gaps.contains(seqNo - 1)) {
+                    expectedRanges++;
+                }
+            }
+        }
+        Collections.shuffle(seqNos, random());
+        for (Integer seqNo : seqNos) {
+            if (rarely()) {
+                // completing a seq no again must not grow the map either
+                tracker.markSeqNoAsCompleted(randomFrom(seqNos));
+            }
+            tracker.markSeqNoAsCompleted(seqNo);
+        }
+        assertThat(tracker.getCheckpoint(), equalTo(-1L));
+        assertThat(tracker.completedRanges.size(), equalTo(expectedRanges));
+        for (Integer gap : gaps) {
+            tracker.markSeqNoAsCompleted(gap);
+        }
+        assertThat(tracker.getCheckpoint(), equalTo(maxOps - 1L));
+        assertThat(tracker.completedRanges.size(), equalTo(0));
     }
 
     public void testConcurrentPrimary() throws InterruptedException {
@@ -151,10 +206,7 @@ public class LocalCheckpointTrackerTests extends ESTestCase {
         assertThat(tracker.getCheckpoint(), equalTo(unFinishedSeq - 1L));
         tracker.markSeqNoAsCompleted(unFinishedSeq);
         assertThat(tracker.getCheckpoint(), equalTo(maxOps - 1L));
-        assertThat(tracker.processedSeqNo.size(), isOneOf(0, 1));
-        if (tracker.processedSeqNo.size() == 1) {
-            assertThat(tracker.processedSeqNo.keys().iterator().next().value, equalTo(tracker.checkpoint / BIT_SET_SIZE));
-        }
+        assertThat(tracker.completedRanges.size(), equalTo(0));
     }
 
     public void testConcurrentReplica() throws InterruptedException {
@@ -202,10 +254,51 @@ public class LocalCheckpointTrackerTests extends ESTestCase {
         assertThat(tracker.getCheckpoint(), equalTo(unFinishedSeq - 1L));
         tracker.markSeqNoAsCompleted(unFinishedSeq);
         assertThat(tracker.getCheckpoint(), equalTo(maxOps - 1L));
-        assertThat(tracker.processedSeqNo.size(), isOneOf(0, 1));
-        if (tracker.processedSeqNo.size() == 1) {
-            assertThat(tracker.processedSeqNo.keys().iterator().next().value, equalTo(tracker.checkpoint / BIT_SET_SIZE));
+        assertThat(tracker.completedRanges.size(), equalTo(0));
+    }
+
+    public void testConcurrentRanges() throws InterruptedException {
+        Thread[] threads = new Thread[randomIntBetween(2, 8)];
+        final int rangesPerThread = randomIntBetween(100, 200);
+        final List<long[]> unfinished = Collections.synchronizedList(new ArrayList<>());
+        final CyclicBarrier barrier = new CyclicBarrier(threads.length);
+        for (int t = 0; t < threads.length; t++) {
+            final int threadId = t;
+            threads[t] = new Thread(new AbstractRunnable() {
+                @Override
+                public void onFailure(Exception e) {
+                    throw new ElasticsearchException("failure in background thread", e);
+                }
+
+                @Override
+                protected void doRun() throws Exception {
+                    barrier.await();
+                    for (int i = 0; i < rangesPerThread; i++) {
+                        final int count = randomIntBetween(1, 16);
+                        final long first = tracker.generateSeqNoRange(count);
+                        if (threadId == 0 && i == rangesPerThread / 2) {
+                            unfinished.add(new long[] {first, first + count - 1});
+                        } else if (randomBoolean()) {
+                            tracker.markSeqNoRangeAsCompleted(first, first + count - 1);
+                        } else {
+                            for (long seqNo = first; seqNo < first + count; seqNo++) {
+                                tracker.markSeqNoAsCompleted(seqNo);
+                            }
+                        }
+                    }
+                }
+            }, "testConcurrentRanges_" + threadId);
+            threads[t].start();
         }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(unfinished.size(), equalTo(1));
+        final long[] range = unfinished.get(0);
+        assertThat(tracker.getCheckpoint(), equalTo(range[0] - 1));
+        tracker.markSeqNoRangeAsCompleted(range[0], range[1]);
+        assertThat(tracker.getCheckpoint(), equalTo(tracker.getMaxSeqNo()));
+        assertThat(tracker.completedRanges.size(), equalTo(0));
     }
 
     public void testWaitForOpsToComplete() throws BrokenBarrierException, InterruptedException {
@@ -260,17 +353,7 @@ public class LocalCheckpointTrackerTests extends ESTestCase {
         tracker.resetCheckpoint(localCheckpoint);
         assertThat(tracker.getCheckpoint(), equalTo((long) localCheckpoint));
         assertThat(tracker.getMaxSeqNo(), equalTo((long) maxSeqNo));
-        assertThat(tracker.processedSeqNo, new BaseMatcher<LongObjectHashMap<FixedBitSet>>() {
-            @Override
-            public boolean matches(Object item) {
-                return (item instanceof LongObjectHashMap && ((LongObjectHashMap) item).isEmpty());
-            }
-
-            @Override
-            public void describeTo(Description description) {
-                description.appendText("empty");
-            }
-        });
+        assertThat(tracker.completedRanges.size(), equalTo(0));
         assertThat(tracker.generateSeqNo(), equalTo((long) (maxSeqNo + 1)));
     }
 }
@@ -129,6 +129,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutionException;
@@ -153,6 +154,7 @@ import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.repositories.RepositoryData.EMPTY_REPO_GEN;
 import static org.elasticsearch.test.hamcrest.RegexMatcher.matches;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
@@ -162,6 +164,7 @@ import static org.hamcrest.Matchers.hasToString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 
@@ -1604,6 +1607,107 @@ public class IndexShardTests extends IndexShardTestCase {
         closeShards(newShard);
     }
 
+    public void testParallelRecoverFromStore() throws IOException {
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexSettings.INDEX_TRANSLOG_RECOVERY_THREADS_SETTING.getKey(), randomIntBetween(2, 8))
+            .build();
+        IndexMetaData metaData = IndexMetaData.builder("test")
+            .putMapping("test", "{ \"properties\": { \"foo\":  { \"type\": \"text\"}}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        final IndexShard shard = newShard(new ShardId(metaData.getIndex(), 0), true, "n1", metaData, null);
+        recoverShardFromStore(shard);
+        final int numDocs = randomIntBetween(1, 64);
+        final Set<String> liveDocs = new HashSet<>();
+        final int totalOps = randomIntBetween(numDocs, 512);
+        for (int i = 0; i < totalOps; i++) {
+            final String id = Integer.toString(randomInt(numDocs - 1));
+            if (liveDocs.contains(id) && rarely()) {
+                deleteDoc(shard, "test", id);
+                liveDocs.remove(id);
+            } else {
+                indexDoc(shard, "test", id, "{\"foo\" : \"" + randomAlphaOfLength(8) + "\"}");
+                liveDocs.add(id);
+            }
+        }
+        IndexShard newShard = reinitShard(shard);
+        DiscoveryNode localNode = new DiscoveryNode("foo", buildNewFakeTransportAddress(), emptyMap(), emptySet(), Version.CURRENT);
+        newShard.markAsRecovering("store", new RecoveryState(newShard.routingEntry(), localNode, null));
+        assertTrue(newShard.recoverFromStore());
+        assertEquals(totalOps, newShard.recoveryState().getTranslog().recoveredOperations());
+        assertEquals(totalOps, newShard.recoveryState().getTranslog().totalOperations());
+        IndexShardTestCase.updateRoutingEntry(newShard, newShard.routingEntry().moveToStarted());
+        assertThat(newShard.getLocalCheckpoint(), equalTo(totalOps - 1L));
+        assertDocCount(newShard, liveDocs.size());
+        closeShards(newShard);
+    }
+
+    public void testCloseShardDuringParallelRecoverFromStore() throws Exception {
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexSettings.INDEX_TRANSLOG_RECOVERY_THREADS_SETTING.getKey(), randomIntBetween(2, 8))
+            .build();
+        IndexMetaData metaData = IndexMetaData.builder("test")
+            .putMapping("test", "{ \"properties\": { \"foo\":  { \"type\": \"text\"}}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        final IndexShard shard = newShard(new ShardId(metaData.getIndex(), 0), true, "n1", metaData, null);
+        recoverShardFromStore(shard);
+        final int numDocs = randomIntBetween(16, 128);
+        for (int i = 0; i < numDocs; i++) {
+            indexDoc(shard, "test", Integer.toString(i), "{\"foo\" : \"" + randomAlphaOfLength(8) + "\"}");
+        }
+        final CountDownLatch replayStarted = new CountDownLatch(1);
+        final CountDownLatch resumeReplay = new CountDownLatch(1);
+        final IndexShard newShard = reinitShard(shard, new IndexingOperationListener() {
+            @Override
+            public Engine.Index preIndex(ShardId shardId, Engine.Index operation) {
+                if (operation.origin() == Engine.Operation.Origin.LOCAL_TRANSLOG_RECOVERY) {
+                    replayStarted.countDown();
+                    try {
+                        resumeReplay.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                return operation;
+            }
+        });
+        DiscoveryNode localNode = new DiscoveryNode("foo", buildNewFakeTransportAddress(), emptyMap(), emptySet(), Version.CURRENT);
+        newShard.markAsRecovering("store", new RecoveryState(newShard.routingEntry(), localNode, null));
+        final Thread recovery = new Thread(() -> {
+            try {
+                newShard.recoverFromStore();
+            } catch (Exception e) {
+                // the shard may be closed before the recovery completes
+                logger.debug("recovery failed", e);
+            }
+        });
+        recovery.start();
+        replayStarted.await();
+        final boolean flushEngine = randomBoolean();
+        final Thread close = new Thread(() -> {
+            try {
+                newShard.close("test", flushEngine);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        close.start();
+        // the close waits on the engine's write lock, which the recovery holds off until the translog was replayed
+        assertBusy(() -> assertThat(close.getState(), equalTo(Thread.State.WAITING)));
+        resumeReplay.countDown();
+        close.join(TimeUnit.SECONDS.toMillis(30));
+        assertFalse("closing the shard deadlocked with the translog recovery", close.isAlive());
+        recovery.join(TimeUnit.SECONDS.toMillis(30));
+        assertFalse("the translog recovery deadlocked with closing the shard", recovery.isAlive());
+        assertThat(newShard.state(), equalTo(IndexShardState.CLOSED));
+        closeShards(newShard);
+    }
+
     public void testPrimaryHandOffUpdatesLocalCheckpoint() throws IOException {
         final IndexShard primarySource = newStartedShard(true);
         int totalOps = randomInt(10);
@@ -2692,6 +2796,121 @@ public class IndexShardTests extends IndexShardTestCase {
         closeShards(primary);
     }
 
+    public void testRequestDurabilityWithGroupCommitAcknowledgesAfterFsync() throws Exception {
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexSettings.INDEX_TRANSLOG_DURABILITY_SETTING.getKey(), Translog.Durability.REQUEST.name())
+            .put(IndexSettings.INDEX_TRANSLOG_GROUP_COMMIT_SETTING.getKey(), true)
+            .build();
+        IndexMetaData metaData = IndexMetaData.builder("test")
+            .putMapping("test", "{ \"properties\": { \"foo\":  { \"type\": \"text\"}}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        IndexShard primary = newShard(new ShardId(metaData.getIndex(), 0), true, "n1", metaData, null);
+        recoverShardFromStore(primary);
+        final int numDocs = randomIntBetween(1, 10);
+        final List<Translog.Location> locations = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            locations.add(indexDoc(primary, "test", Integer.toString(i), "{\"foo\" : \"bar\"}").getTranslogLocation());
+        }
+        assertTrue(primary.getEngine().getTranslog().syncNeeded());
+        final CountDownLatch latch = new CountDownLatch(numDocs);
+        final List<Throwable> failures = new CopyOnWriteArrayList<>();
+        for (Translog.Location location : locations) {
+            primary.sync(location, e -> {
+                try {
+                    assertNull(e);
+                    // the write is only acknowledged once its translog location is fsynced
+                    assertFalse(primary.getEngine().getTranslog().syncNeeded());
+                    // and the listener doesn't hold up the next fsync wave
+                    assertThat(Thread.currentThread().getName(), not(containsString("translog_group_commit")));
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertThat(failures, empty());
+        closeShards(primary);
+    }
+
+    public void testScheduledRefreshWithExhaustedBudget() throws IOException, InterruptedException {
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 1)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .build();
+        IndexMetaData metaData = IndexMetaData.builder("test")
+            .putMapping("test", "{ \"properties\": { \"foo\":  { \"type\": \"text\"}}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        IndexShard primary = newShard(new ShardId(metaData.getIndex(), 0), true, "n1", metaData, null);
+        recoverShardFromStore(primary);
+        indexDoc(primary, "test", "0", "{\"foo\" : \"bar\"}");
+        assertTrue(primary.getEngine().refreshNeeded());
+        // a refresh nobody waits for is postponed
+        assertFalse(primary.scheduledRefresh(() -> false));
+        assertTrue(primary.getEngine().refreshNeeded());
+        try (Engine.Searcher searcher = primary.acquireSearcher("test")) {
+            assertEquals(0, searcher.reader().numDocs());
+        }
+        assertTrue(primary.scheduledRefresh(() -> true));
+        assertFalse(primary.getEngine().refreshNeeded());
+
+        // a refresh listener bypasses the budget
+        Engine.IndexResult result = indexDoc(primary, "test", "1", "{\"foo\" : \"bar\"}");
+        CountDownLatch latch = new CountDownLatch(1);
+        primary.addRefreshListener(result.getTranslogLocation(), forced -> latch.countDown());
+        assertEquals(1, latch.getCount());
+        assertTrue(primary.scheduledRefresh(() -> {
+            throw new AssertionError("refreshes that listeners wait for must not consult the budget");
+        }));
+        latch.await();
+        try (Engine.Searcher searcher = primary.acquireSearcher("test")) {
+            assertEquals(2, searcher.reader().numDocs());
+        }
+        closeShards(primary);
+    }
+
+    public void testScheduledRefreshesAreNotPostponedForever() throws IOException {
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 1)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .build();
+        IndexMetaData metaData = IndexMetaData.builder("test")
+            .putMapping("test", "{ \"properties\": { \"foo\":  { \"type\": \"text\"}}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        final int numShards = randomIntBetween(IndexShard.MAX_POSTPONED_SCHEDULED_REFRESHES + 2, 10);
+        final List<IndexShard> shards = new ArrayList<>();
+        for (int i = 0; i < numShards; i++) {
+            IndexShard shard = newShard(new ShardId(metaData.getIndex(), i), true, "n1", metaData, null);
+            recoverShardFromStore(shard);
+            indexDoc(shard, "test", "0", "{\"foo\" : \"bar\"}");
+            shards.add(shard);
+        }
+        // the budget grants a single refresh per schedule, and the shards are always visited in the same order
+        final int rounds = IndexShard.MAX_POSTPONED_SCHEDULED_REFRESHES + 1;
+        for (int round = 0; round < rounds; round++) {
+            final AtomicInteger permits = new AtomicInteger(1);
+            for (IndexShard shard : shards) {
+                shard.scheduledRefresh(() -> permits.getAndDecrement() > 0);
+                assertThat(shard.getPostponedScheduledRefreshes(), lessThanOrEqualTo(IndexShard.MAX_POSTPONED_SCHEDULED_REFRESHES));
+            }
+        }
+        // no shard waits for more than the maximum number of postponed refreshes
+        for (IndexShard shard : shards) {
+            assertFalse(shard.getEngine().refreshNeeded());
+            assertEquals(0, shard.getPostponedScheduledRefreshes());
+            try (Engine.Searcher searcher = shard.acquireSearcher("test")) {
+                assertEquals(1, searcher.reader().numDocs());
+            }
+        }
+        closeShards(shards);
+    }
+
     public void testRefreshIsNeededWithRefreshListeners() throws IOException, InterruptedException {
         Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
             .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 1)
@@ -0,0 +1,207 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.IndexSettingsModule;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.elasticsearch.index.translog.TranslogDeletionPolicies.createTranslogDeletionPolicy;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+
+public class TranslogGroupCommitServiceTests extends ESTestCase {
+
+    private Translog createTranslog(ShardId shardId, Path path) throws IOException {
+        final Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, org.elasticsearch.Version.CURRENT).build();
+        final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings(shardId.getIndex(), settings);
+        final TranslogConfig config = new TranslogConfig(shardId, path, indexSettings, BigArrays.NON_RECYCLING_INSTANCE);
+        return new Translog(config, null, createTranslogDeletionPolicy(indexSettings), () -> SequenceNumbers.UNASSIGNED_SEQ_NO);
+    }
+
+    public void testSyncsAllShardsOnSamePath() throws Exception {
+        final Path dataPath = createTempDir();
+        final int numShards = randomIntBetween(1, 5);
+        final List<Translog> translogs = new ArrayList<>();
+        final TranslogGroupCommitService service = new TranslogGroupCommitService(Settings.EMPTY, EsExecutors.newDirectExecutorService());
+        try {
+            for (int i = 0; i < numShards; i++) {
+                translogs.add(createTranslog(new ShardId("index", "_na_", i), dataPath.resolve("shard_" + i)));
+            }
+            final int numOps = randomIntBetween(1, 50);
+            final CountDownLatch latch = new CountDownLatch(numOps);
+            final List<Exception> failures = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < numOps; i++) {
+                final Translog translog = randomFrom(translogs);
+                final Translog.Location location = translog.add(new Translog.Index("test", Integer.toString(i), i, new byte[]{1}));
+                service.sync(dataPath, translog, location, e -> {
+                    if (e != null) {
+                        failures.add(e);
+                    }
+                    latch.countDown();
+                });
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertThat(failures.size(), equalTo(0));
+            assertThat(service.numberOfSyncers(), equalTo(1));
+            for (Translog translog : translogs) {
+                assertFalse(translog.syncNeeded());
+            }
+        } finally {
+            service.close();
+            IOUtils.close(translogs);
+        }
+    }
+
+    public void testClosedTranslogIsTreatedAsSynced() throws Exception {
+        final Path dataPath = createTempDir();
+        final TranslogGroupCommitService service = new TranslogGroupCommitService(Settings.EMPTY, EsExecutors.newDirectExecutorService());
+        try {
+            final Translog translog = createTranslog(new ShardId("index", "_na_", 0), dataPath.resolve("shard"));
+            final Translog.Location location = translog.add(new Translog.Index("test", "1", 0, new byte[]{1}));
+            translog.close();
+            final CountDownLatch latch = new CountDownLatch(1);
+            final List<Exception> failures = new CopyOnWriteArrayList<>();
+            service.sync(dataPath, translog, location, e -> {
+                if (e != null) {
+                    failures.add(e);
+                }
+                latch.countDown();
+            });
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertThat(failures.size(), equalTo(0));
+        } finally {
+            service.close();
+        }
+    }
+
+    public void testListenersAreNotifiedOnExecutor() throws Exception {
+        final Path dataPath = createTempDir();
+        final List<Runnable> tasks = new CopyOnWriteArrayList<>();
+        final TranslogGroupCommitService service = new TranslogGroupCommitService(Settings.EMPTY, tasks::add);
+        try (Translog translog = createTranslog(new ShardId("index", "_na_", 0), dataPath.resolve("shard"))) {
+            final Translog.Location location = translog.add(new Translog.Index("test", "1", 0, new byte[]{1}));
+            final AtomicBoolean notified = new AtomicBoolean();
+            service.sync(dataPath, translog, location, e -> {
+                assertNull(e);
+                // the location was synced before we got notified
+                assertFalse(translog.syncNeeded());
+                notified.set(true);
+            });
+            assertBusy(() -> assertThat(tasks.size(), equalTo(1)));
+            // the sync thread doesn't notify the listener itself
+            assertFalse(notified.get());
+            tasks.get(0).run();
+            assertTrue(notified.get());
+        } finally {
+            service.close();
+        }
+    }
+
+    public void testSyncRacingWithCloseDoesNotLeakSyncers() throws Exception {
+        final Path dataPath = createTempDir();
+        final TranslogGroupCommitService service = new TranslogGroupCommitService(Settings.EMPTY, EsExecutors.newDirectExecutorService());
+        try (Translog translog = createTranslog(new ShardId("index", "_na_", 0), dataPath.resolve("shard"))) {
+            final Translog.Location location = translog.add(new Translog.Index("test", "1", 0, new byte[]{1}));
+            final int numThreads = randomIntBetween(2, 8);
+            final CountDownLatch notified = new CountDownLatch(numThreads);
+            final CyclicBarrier barrier = new CyclicBarrier(numThreads + 1);
+            final Thread[] threads = new Thread[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                // every thread syncs on its own data path so that each of them might create a syncer
+                final Path path = dataPath.resolve("path_" + i);
+                threads[i] = new Thread(() -> {
+                    try {
+                        barrier.await();
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                    service.sync(path, translog, location, e -> notified.countDown());
+                });
+                threads[i].start();
+            }
+            barrier.await();
+            service.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // nobody waits forever, and syncers that got created concurrently with close are stopped as well
+            assertTrue(notified.await(30, TimeUnit.SECONDS));
+            assertThat(service.numberOfSyncers(), equalTo(0));
+        }
+    }
+
+    public void testCloseDoesNotFailTranslogThatIsBeingSynced() throws Exception {
+        final Path dataPath = createTempDir();
+        final TranslogGroupCommitService service = new TranslogGroupCommitService(Settings.EMPTY, EsExecutors.newDirectExecutorService());
+        try (Translog translog = createTranslog(new ShardId("index", "_na_", 0), dataPath.resolve("shard"))) {
+            final int numOps = randomIntBetween(1, 100);
+            final CountDownLatch latch = new CountDownLatch(numOps);
+            final List<Exception> failures = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < numOps; i++) {
+                final Translog.Location location = translog.add(new Translog.Index("test", Integer.toString(i), i, new byte[]{1}));
+                service.sync(dataPath, translog, location, e -> {
+                    if (e != null) {
+                        failures.add(e);
+                    }
+                    latch.countDown();
+                });
+            }
+            // the sync thread is most likely still fsyncing, stopping it must neither fail the translog nor drop pending syncs
+            service.close();
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertThat(failures.size(), equalTo(0));
+            assertTrue(translog.isOpen());
+            assertNull(translog.getTragicException());
+            assertFalse(translog.syncNeeded());
+        }
+    }
+
+    public void testSyncAfterCloseFails() throws Exception {
+        final Path dataPath = createTempDir();
+        final TranslogGroupCommitService service = new TranslogGroupCommitService(Settings.EMPTY, EsExecutors.newDirectExecutorService());
+        service.close();
+        try (Translog translog = createTranslog(new ShardId("index", "_na_", 0), dataPath.resolve("shard"))) {
+            final Translog.Location location = translog.add(new Translog.Index("test", "1", 0, new byte[]{1}));
+            final List<Exception> failures = new CopyOnWriteArrayList<>();
+            service.sync(dataPath, translog, location, failures::add);
+            assertThat(failures.size(), equalTo(1));
+            assertThat(failures.get(0), instanceOf(AlreadyClosedException.class));
+        }
+    }
+}
@@ -36,9 +36,11 @@ import org.apache.lucene.util.LineFileDocs;
 import org.apache.lucene.util.LuceneTestCase;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.Randomness;
+import org.elasticsearch.common.bytes.ByteBufferReference;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.FileSystemUtils;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -78,6 +80,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
@@ -118,6 +121,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasToString;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.isIn;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
@@ -354,6 +358,37 @@ public class TranslogTests extends ESTestCase {
         return stats;
     }
 
+    public void testAddBatch() throws IOException {
+        final List<Translog.Operation> ops = new ArrayList<>();
+        addToTranslogAndList(translog, ops, new Translog.Index("test", "0", 0, new byte[]{0}));
+        final List<Translog.Operation> batch = new ArrayList<>();
+        final int numOps = randomIntBetween(1, 100);
+        for (int i = 1; i <= numOps; i++) {
+            if (randomBoolean()) {
+                batch.add(new Translog.Index("test", Integer.toString(i), i, new byte[]{(byte) i}));
+            } else {
+                batch.add(new Translog.NoOp(i, randomNonNegativeLong(), randomAlphaOfLength(16)));
+            }
+        }
+        final List<Translog.Location> locations = translog.add(batch);
+        ops.addAll(batch);
+        assertThat(locations.size(), equalTo(numOps));
+        for (int i = 1; i < numOps; i++) {
+            // the operations are written back to back
+            final Translog.Location previous = locations.get(i - 1);
+            assertThat(locations.get(i).generation, equalTo(previous.generation));
+            assertThat(locations.get(i).translogLocation, equalTo(previous.translogLocation + previous.size));
+        }
+        try (Translog.Snapshot snapshot = translog.newSnapshot()) {
+            assertThat(snapshot, SnapshotMatchers.equalsTo(ops));
+            assertThat(snapshot.totalOperations(), equalTo(ops.size()));
+        }
+        translog.sync();
+        try (Translog.Snapshot snapshot = translog.newSnapshot()) {
+            assertThat(snapshot, SnapshotMatchers.equalsTo(ops));
+        }
+    }
+
     public void testStats() throws IOException {
         // self control cleaning for test
         translog.getDeletionPolicy().setRetentionSizeInBytes(1024 * 1024);
@@ -502,6 +537,91 @@ public class TranslogTests extends ESTestCase {
         }
     }
 
+    public void testMappedSnapshot() throws IOException {
+        final Settings settings = Settings.builder()
+            .put(IndexMetaData.SETTING_VERSION_CREATED, org.elasticsearch.Version.CURRENT)
+            .put(IndexSettings.INDEX_TRANSLOG_MMAP_READS_SETTING.getKey(), true)
+            .build();
+        final TranslogConfig config = getTranslogConfig(createTempDir(), settings);
+        assertTrue(config.isMmapReads());
+        final List<Translog.Operation> ops = new ArrayList<>();
+        try (Translog mappedTranslog = new Translog(config, null, createTranslogDeletionPolicy(config.getIndexSettings()),
+            () -> SequenceNumbers.UNASSIGNED_SEQ_NO)) {
+            final int generations = randomIntBetween(1, 4);
+            int seqNo = 0;
+            for (int gen = 0; gen < generations; gen++) {
+                final int numOps = randomIntBetween(1, 20);
+                for (int i = 0; i < numOps; i++) {
+                    if (rarely()) {
+                        addToTranslogAndList(mappedTranslog, ops, new Translog.Delete("test", Integer.toString(seqNo), seqNo,
+                            newUid(Integer.toString(seqNo))));
+                    } else {
+                        addToTranslogAndList(mappedTranslog, ops, new Translog.Index("test", Integer.toString(seqNo), seqNo,
+                            randomAlphaOfLengthBetween(1, 128).getBytes(StandardCharsets.UTF_8)));
+                    }
+                    seqNo++;
+                }
+                mappedTranslog.rollGeneration();
+            }
+            // the current generation is still read through its channel
+            addToTranslogAndList(mappedTranslog, ops, new Translog.Index("test", Integer.toString(seqNo), seqNo, new byte[]{1}));
+            try (Translog.Snapshot snapshot = mappedTranslog.newSnapshot()) {
+                assertThat(snapshot, SnapshotMatchers.equalsTo(ops));
+            }
+            try (Translog.Snapshot snapshot = mappedTranslog.newSnapshot()) {
+                Translog.Operation op;
+                while ((op = snapshot.next()) != null) {
+                    if (op.opType() == Translog.Operation.Type.INDEX && op.seqNo() < seqNo) {
+                        assertThat(((Translog.Index) op).source(), instanceOf(ByteBufferReference.class));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testCompressedSources() throws IOException {
+        final Settings settings = Settings.builder()
+            .put(IndexMetaData.SETTING_VERSION_CREATED, org.elasticsearch.Version.CURRENT)
+            .put(IndexSettings.INDEX_TRANSLOG_COMPRESS_SETTING.getKey(), true)
+            .build();
+        final TranslogConfig config = getTranslogConfig(createTempDir(), settings);
+        assertTrue(config.isCompress());
+        final List<Translog.Operation> ops = new ArrayList<>();
+        try (Translog compressedTranslog = new Translog(config, null, createTranslogDeletionPolicy(config.getIndexSettings()),
+            () -> SequenceNumbers.UNASSIGNED_SEQ_NO)) {
+            final int numOps = randomIntBetween(1, 100);
+            for (int seqNo = 0; seqNo < numOps; seqNo++) {
+                final StringBuilder source = new StringBuilder("{");
+                final int numFields = randomIntBetween(1, 50);
+                for (int field = 0; field < numFields; field++) {
+                    source.append("\"field_").append(field).append("\":\"").append(randomAlphaOfLength(5)).append("\",");
+                }
+                source.append("\"seq_no\":").append(seqNo).append("}");
+                final Translog.Index op = new Translog.Index("test", Integer.toString(seqNo), seqNo,
+                    source.toString().getBytes(StandardCharsets.UTF_8));
+                final Translog.Operation written = Translog.compressSource(op);
+                if (op.source().length() < Translog.MIN_COMPRESSED_SOURCE_SIZE) {
+                    assertSame(op, written);
+                } else {
+                    assertTrue(CompressorFactory.LZ4_COMPRESSOR.isCompressed(((Translog.Index) written).source()));
+                }
+                addToTranslogAndList(compressedTranslog, ops, op);
+                if (rarely()) {
+                    compressedTranslog.rollGeneration();
+                }
+            }
+            try (Translog.Snapshot snapshot = compressedTranslog.newSnapshot()) {
+                assertThat(snapshot, SnapshotMatchers.equalsTo(ops));
+            }
+            try (Translog.Snapshot snapshot = compressedTranslog.newSnapshot()) {
+                Translog.Operation op;
+                while ((op = snapshot.next()) != null) {
+                    assertFalse(CompressorFactory.LZ4_COMPRESSOR.isCompressed(((Translog.Index) op).source()));
+                }
+            }
+        }
+    }
+
     public void testSnapshotWithNewTranslog() throws IOException {
         List<Closeable> toClose = new ArrayList<>();
         try {
@@ -2436,6 +2556,26 @@ public class TranslogTests extends ESTestCase {
         assertFileIsPresent(translog, generation + rolls);
     }
 
+    public void testRollGenerationWritesGenerationCheckpoint() throws IOException {
+        final int operations = randomIntBetween(1, 128);
+        for (int i = 0; i < operations; i++) {
+            translog.add(new Translog.NoOp(i, 0, "test"));
+        }
+        final long generation = translog.currentFileGeneration();
+        final Checkpoint current = Checkpoint.read(translog.location().resolve(Translog.CHECKPOINT_FILE_NAME));
+        assertThat(current.generation, equalTo(generation));
+        translog.rollGeneration();
+        final Path generationCheckpoint = translog.location().resolve(Translog.getCommitCheckpointFileName(generation));
+        assertThat(Files.size(generationCheckpoint), equalTo((long) Checkpoint.FILE_SIZE));
+        final Checkpoint checkpoint = Checkpoint.read(generationCheckpoint);
+        assertThat(checkpoint.generation, equalTo(generation));
+        assertThat(checkpoint.numOps, equalTo(operations));
+        assertThat(checkpoint.minSeqNo, equalTo(0L));
+        assertThat(checkpoint.maxSeqNo, equalTo((long) operations - 1));
+        assertThat(checkpoint.minTranslogGeneration, equalTo(current.minTranslogGeneration));
+        assertThat(Checkpoint.read(translog.location().resolve(Translog.CHECKPOINT_FILE_NAME)).generation, equalTo(generation + 1));
+    }
+
     public void testMinSeqNoBasedAPI() throws IOException {
         final int operations = randomIntBetween(1, 512);
         final List<Long> shuffledSeqNos = LongStream.range(0, operations).boxed().collect(Collectors.toList());
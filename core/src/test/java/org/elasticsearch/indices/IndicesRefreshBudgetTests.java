@@ -0,0 +1,63 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IndicesRefreshBudgetTests extends ESTestCase {
+
+    public void testUnlimitedByDefault() {
+        IndicesRefreshBudget budget = new IndicesRefreshBudget(Settings.EMPTY);
+        assertTrue(budget.isUnlimited());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(budget.tryAcquire());
+        }
+    }
+
+    public void testBudgetIsRefilledOverTime() {
+        final int permitsPerSecond = randomIntBetween(1, 100);
+        final AtomicLong nanoTime = new AtomicLong(randomNonNegativeLong() / 2);
+        IndicesRefreshBudget budget = new IndicesRefreshBudget(Settings.builder()
+            .put(IndicesRefreshBudget.INDICES_REFRESH_MAX_SCHEDULED_PER_SECOND_SETTING.getKey(), permitsPerSecond).build(), nanoTime::get);
+        assertFalse(budget.isUnlimited());
+        for (int i = 0; i < permitsPerSecond; i++) {
+            assertTrue(budget.tryAcquire());
+        }
+        assertFalse(budget.tryAcquire());
+
+        // half a second only buys half of the budget
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        for (int i = 0; i < permitsPerSecond / 2; i++) {
+            assertTrue(budget.tryAcquire());
+        }
+        assertFalse(budget.tryAcquire());
+
+        // we never accumulate more than a second worth of permits
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(randomIntBetween(2, 60)));
+        for (int i = 0; i < permitsPerSecond; i++) {
+            assertTrue(budget.tryAcquire());
+        }
+        assertFalse(budget.tryAcquire());
+    }
+}
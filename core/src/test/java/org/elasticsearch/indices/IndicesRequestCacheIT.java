@@ -448,6 +448,60 @@ public class IndicesRequestCacheIT extends ESIntegTestCase {
                 equalTo(4L));
     }
 
+    public void testCachedHitCountAfterRefreshWithAddsAndDeletes() throws Exception {
+        Client client = client();
+        assertAcked(client.admin().indices().prepareCreate("index").addMapping("type", "f", "type=keyword")
+            .setSettings(Settings.builder().put(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING.getKey(), true)
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1).put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .put("index.refresh_interval", -1)).get());
+        final int numDocs = randomIntBetween(10, 50);
+        for (int i = 0; i < numDocs; i++) {
+            client.prepareIndex("index", "type", Integer.toString(i)).setSource("f", i % 2 == 0 ? "even" : "odd").get();
+        }
+        refresh("index");
+
+        assertCachedHitCount(client, numDocs / 2 + numDocs % 2);
+        assertRequestCacheStats(client, 0L, 1L);
+        assertCachedHitCount(client, numDocs / 2 + numDocs % 2);
+        assertRequestCacheStats(client, 1L, 1L);
+
+        // a refresh that adds a new segment and deletes documents from the cached one
+        final int numNewDocs = randomIntBetween(1, 10);
+        for (int i = 0; i < numNewDocs; i++) {
+            client.prepareIndex("index", "type", Integer.toString(numDocs + i)).setSource("f", "even").get();
+        }
+        final int numDeletes = randomIntBetween(1, numDocs / 2);
+        for (int i = 0; i < numDeletes; i++) {
+            client.prepareDelete("index", "type", Integer.toString(i * 2)).get();
+        }
+        refresh("index");
+
+        // the segment with new deletes is counted again instead of being served from the cache
+        assertCachedHitCount(client, numDocs / 2 + numDocs % 2 + numNewDocs - numDeletes);
+        assertRequestCacheStats(client, 1L, 2L);
+        assertCachedHitCount(client, numDocs / 2 + numDocs % 2 + numNewDocs - numDeletes);
+        assertRequestCacheStats(client, 2L, 2L);
+    }
+
+    private static void assertCachedHitCount(Client client, long expectedHits) {
+        final SearchResponse cached = client.prepareSearch("index").setSearchType(SearchType.QUERY_THEN_FETCH).setSize(0)
+            .setRequestCache(true).setQuery(QueryBuilders.termQuery("f", "even")).get();
+        assertSearchResponse(cached);
+        final SearchResponse fresh = client.prepareSearch("index").setSearchType(SearchType.QUERY_THEN_FETCH).setSize(0)
+            .setRequestCache(false).setQuery(QueryBuilders.termQuery("f", "even")).get();
+        assertSearchResponse(fresh);
+        assertThat(cached.getHits().getTotalHits(), equalTo(fresh.getHits().getTotalHits()));
+        assertThat(cached.getHits().getTotalHits(), equalTo(expectedHits));
+    }
+
+    private static void assertRequestCacheStats(Client client, long expectedHits, long expectedMisses) {
+        // per segment lookups count as a single hit or miss per request
+        assertThat(client.admin().indices().prepareStats("index").setRequestCache(true).get().getTotal().getRequestCache().getHitCount(),
+            equalTo(expectedHits));
+        assertThat(client.admin().indices().prepareStats("index").setRequestCache(true).get().getTotal().getRequestCache().getMissCount(),
+            equalTo(expectedMisses));
+    }
+
     public void testCacheWithFilteredAlias() {
         Client client = client();
         Settings settings = Settings.builder().put(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING.getKey(), true)
@@ -56,6 +56,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.UnaryOperator;
 
@@ -287,6 +288,68 @@ public class RestControllerTests extends ESTestCase {
         assertEquals(0, inFlightRequestsBreaker.getUsed());
     }
 
+    public void testDispatchRequestAccountsRetainedBuffers() {
+        int contentLength = BREAKER_LIMIT.bytesAsInt() / 4;
+        int buffersSize = randomIntBetween(contentLength + 1, contentLength * 2);
+        AtomicLong usedWhileHandling = new AtomicLong();
+        restController.registerHandler(RestRequest.Method.GET, "/unsafe", new UnsafeBuffersHandler(usedWhileHandling));
+        TestRestRequest request = new TestRestRequest("/unsafe", randomAlphaOfLength(contentLength), XContentType.JSON, buffersSize);
+        AssertingChannel channel = new AssertingChannel(request, true, RestStatus.OK);
+
+        restController.dispatchRequest(request, channel, new ThreadContext(Settings.EMPTY));
+
+        assertEquals(buffersSize, usedWhileHandling.get());
+        assertFalse(request.safeBuffers);
+        assertEquals(0, inFlightRequestsBreaker.getTrippedCount());
+        assertEquals(0, inFlightRequestsBreaker.getUsed());
+    }
+
+    public void testDispatchRequestCopiesLargeRetainedBuffers() {
+        int contentLength = randomIntBetween(1, BREAKER_LIMIT.bytesAsInt() / 2);
+        // the buffers are either much larger than the content or do not fit into the breaker
+        int buffersSize = randomBoolean() ? contentLength * 4 + 1 : BREAKER_LIMIT.bytesAsInt() + 1;
+        AtomicLong usedWhileHandling = new AtomicLong();
+        restController.registerHandler(RestRequest.Method.GET, "/unsafe", new UnsafeBuffersHandler(usedWhileHandling));
+        TestRestRequest request = new TestRestRequest("/unsafe", randomAlphaOfLength(contentLength), XContentType.JSON, buffersSize);
+        AssertingChannel channel = new AssertingChannel(request, true, RestStatus.OK);
+
+        restController.dispatchRequest(request, channel, new ThreadContext(Settings.EMPTY));
+
+        assertEquals(contentLength, usedWhileHandling.get());
+        assertTrue(request.safeBuffers);
+        assertEquals(0, inFlightRequestsBreaker.getUsed());
+    }
+
+    public void testDispatchRequestCopiesBuffersUnlessAllowedByHandler() {
+        TestRestRequest request = new TestRestRequest("/", randomAlphaOfLength(1), XContentType.JSON, 2);
+        AssertingChannel channel = new AssertingChannel(request, true, RestStatus.OK);
+
+        restController.dispatchRequest(request, channel, new ThreadContext(Settings.EMPTY));
+
+        assertTrue(request.safeBuffers);
+        assertEquals(0, inFlightRequestsBreaker.getUsed());
+    }
+
+    private final class UnsafeBuffersHandler implements RestHandler {
+
+        private final AtomicLong usedWhileHandling;
+
+        private UnsafeBuffersHandler(AtomicLong usedWhileHandling) {
+            this.usedWhileHandling = usedWhileHandling;
+        }
+
+        @Override
+        public void handleRequest(RestRequest request, RestChannel channel, NodeClient client) throws Exception {
+            usedWhileHandling.set(inFlightRequestsBreaker.getUsed());
+            channel.sendResponse(new BytesRestResponse(RestStatus.OK, BytesRestResponse.TEXT_CONTENT_TYPE, BytesArray.EMPTY));
+        }
+
+        @Override
+        public boolean allowsUnsafeBuffers() {
+            return true;
+        }
+    }
+
     public void testDispatchRequiresContentTypeForRequestsWithContent() {
         String content = randomAlphaOfLengthBetween(1, BREAKER_LIMIT.bytesAsInt());
         TestRestRequest request = new TestRestRequest("/", content, null);
@@ -549,11 +612,28 @@ public class RestControllerTests extends ESTestCase {
     private static final class TestRestRequest extends RestRequest {
 
         private final BytesReference content;
+        private final long buffersSize;
+        private boolean safeBuffers;
 
         private TestRestRequest(String path, String content, XContentType xContentType) {
+            this(path, content, xContentType, content.length());
+        }
+
+        private TestRestRequest(String path, String content, XContentType xContentType, long buffersSize) {
             super(NamedXContentRegistry.EMPTY, Collections.emptyMap(), path, xContentType == null ?
                 Collections.emptyMap() : Collections.singletonMap("Content-Type", Collections.singletonList(xContentType.mediaType())));
             this.content = new BytesArray(content);
+            this.buffersSize = buffersSize;
+        }
+
+        @Override
+        public void ensureSafeBuffers() {
+            safeBuffers = true;
+        }
+
+        @Override
+        public long unsafeBuffersSize() {
+            return safeBuffers ? content.length() : buffersSize;
         }
 
         @Override
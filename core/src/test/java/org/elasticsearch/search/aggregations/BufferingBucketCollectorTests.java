@@ -0,0 +1,171 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.search.aggregations.metrics.avg.AvgAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.avg.InternalAvg;
+import org.elasticsearch.search.aggregations.metrics.max.InternalMax;
+import org.elasticsearch.search.aggregations.metrics.max.MaxAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.min.InternalMin;
+import org.elasticsearch.search.aggregations.metrics.min.MinAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.stats.InternalStats;
+import org.elasticsearch.search.aggregations.metrics.stats.StatsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.sum.InternalSum;
+import org.elasticsearch.search.aggregations.metrics.sum.SumAggregationBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BufferingBucketCollectorTests extends AggregatorTestCase {
+
+    private static final double TOLERANCE = 1e-8;
+
+    public void testSameResultsAsPerDocCollection() throws IOException {
+        MappedFieldType ft = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.DOUBLE);
+        ft.setName("field");
+        final boolean multiValued = randomBoolean();
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter iw = new RandomIndexWriter(random(), directory)) {
+                final int numDocs = randomIntBetween(BufferingBucketCollector.BUFFER_SIZE, BufferingBucketCollector.BUFFER_SIZE * 5);
+                for (int i = 0; i < numDocs; i++) {
+                    Document doc = new Document();
+                    doc.add(new StringField("filter", randomBoolean() ? "a" : "b", Field.Store.NO));
+                    if (rarely() == false) {
+                        final int numValues = multiValued ? randomIntBetween(1, 3) : 1;
+                        for (int j = 0; j < numValues; j++) {
+                            final double value = randomDoubleBetween(-100d, 100d, true);
+                            doc.add(new SortedNumericDocValuesField("field", NumericUtils.doubleToSortableLong(value)));
+                        }
+                    }
+                    iw.addDocument(doc);
+                }
+            }
+            try (IndexReader reader = wrap(DirectoryReader.open(directory))) {
+                IndexSearcher searcher = newSearcher(reader, true, true);
+                Query query = randomBoolean() ? new MatchAllDocsQuery() : new TermQuery(new Term("filter", "a"));
+
+                InternalStats expectedStats = collect(searcher, query, new StatsAggregationBuilder("stats").field("field"), false, ft);
+                InternalStats stats = collect(searcher, query, new StatsAggregationBuilder("stats").field("field"), true, ft);
+                assertEquals(expectedStats.getCount(), stats.getCount());
+                assertEquals(expectedStats.getSum(), stats.getSum(), TOLERANCE);
+                assertEquals(expectedStats.getMin(), stats.getMin(), 0);
+                assertEquals(expectedStats.getMax(), stats.getMax(), 0);
+
+                InternalSum expectedSum = collect(searcher, query, new SumAggregationBuilder("sum").field("field"), false, ft);
+                InternalSum sum = collect(searcher, query, new SumAggregationBuilder("sum").field("field"), true, ft);
+                assertEquals(expectedSum.getValue(), sum.getValue(), TOLERANCE);
+
+                InternalAvg expectedAvg = collect(searcher, query, new AvgAggregationBuilder("avg").field("field"), false, ft);
+                InternalAvg avg = collect(searcher, query, new AvgAggregationBuilder("avg").field("field"), true, ft);
+                assertEquals(expectedAvg.getValue(), avg.getValue(), TOLERANCE);
+
+                InternalMin expectedMin = collect(searcher, query, new MinAggregationBuilder("min").field("field"), false, ft);
+                InternalMin min = collect(searcher, query, new MinAggregationBuilder("min").field("field"), true, ft);
+                assertEquals(expectedMin.getValue(), min.getValue(), 0);
+
+                InternalMax expectedMax = collect(searcher, query, new MaxAggregationBuilder("max").field("field"), false, ft);
+                InternalMax max = collect(searcher, query, new MaxAggregationBuilder("max").field("field"), true, ft);
+                assertEquals(expectedMax.getValue(), max.getValue(), 0);
+            }
+        }
+    }
+
+    public void testTerminatedSegment() throws IOException {
+        try (Directory directory = newDirectory()) {
+            final int numDocs = randomIntBetween(BufferingBucketCollector.BUFFER_SIZE * 2, BufferingBucketCollector.BUFFER_SIZE * 4);
+            try (RandomIndexWriter iw = new RandomIndexWriter(random(), directory)) {
+                for (int i = 0; i < numDocs; i++) {
+                    iw.addDocument(new Document());
+                }
+                iw.forceMerge(1);
+            }
+            try (IndexReader reader = DirectoryReader.open(directory)) {
+                final List<Integer> blockSizes = new ArrayList<>();
+                BucketCollector terminating = new BucketCollector() {
+                    @Override
+                    public LeafBucketCollector getLeafCollector(LeafReaderContext ctx) {
+                        return new LeafBucketCollector() {
+                            @Override
+                            public void collect(int doc, long bucket) {
+                                throw new AssertionError("docs must be collected in blocks");
+                            }
+
+                            @Override
+                            public void collect(int[] docs, int count, long bucket) {
+                                blockSizes.add(count);
+                                throw new CollectionTerminatedException();
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void preCollection() {
+                    }
+
+                    @Override
+                    public void postCollection() {
+                    }
+
+                    @Override
+                    public boolean needsScores() {
+                        return false;
+                    }
+                };
+                BufferingBucketCollector collector = new BufferingBucketCollector(terminating);
+                collector.preCollection();
+                new IndexSearcher(reader).search(new MatchAllDocsQuery(), collector);
+                collector.postCollection();
+                assertEquals(1, blockSizes.size());
+                assertEquals(BufferingBucketCollector.BUFFER_SIZE, (int) blockSizes.get(0));
+            }
+        }
+    }
+
+    private <A extends InternalAggregation> A collect(IndexSearcher searcher, Query query, AggregationBuilder builder,
+                                                      boolean buffered, MappedFieldType fieldType) throws IOException {
+        Aggregator aggregator = createAggregator(builder, searcher, fieldType);
+        BucketCollector collector = buffered ? new BufferingBucketCollector(aggregator) : aggregator;
+        collector.preCollection();
+        searcher.search(query, collector);
+        collector.postCollection();
+        @SuppressWarnings("unchecked")
+        A result = (A) aggregator.buildAggregation(0L);
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.MergePolicyConfig;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.bucket.global.Global;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.avg.Avg;
+import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.aggregations.metrics.tophits.TopHits;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import static org.elasticsearch.search.aggregations.AggregationBuilders.avg;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.cardinality;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.global;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.histogram;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.max;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.topHits;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+
+public class ConcurrentSlicesAggregationsIT extends ESIntegTestCase {
+
+    public void testSlicedAggregationsMatchSequentialOnes() throws Exception {
+        assertAcked(prepareCreate("index")
+            .setSettings(Settings.builder()
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+                .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .put(MergePolicyConfig.INDEX_MERGE_ENABLED, false))
+            .addMapping("type", "tag", "type=keyword", "value", "type=long"));
+        final int numSegments = randomIntBetween(2, 8);
+        int id = 0;
+        for (int segment = 0; segment < numSegments; segment++) {
+            final int numDocs = randomIntBetween(1, 50);
+            for (int i = 0; i < numDocs; i++) {
+                client().prepareIndex("index", "type", Integer.toString(id))
+                    .setSource("tag", "tag_" + randomIntBetween(0, 20), "value", id).get();
+                id++;
+            }
+            refresh("index");
+        }
+
+        final int minValue = randomIntBetween(0, 10);
+        final int size = randomIntBetween(0, 10);
+        final SearchResponse sequential = search(minValue, size);
+        assertAcked(client().admin().indices().prepareUpdateSettings("index")
+            .setSettings(Settings.builder().put(IndexSettings.MAX_CONCURRENT_SLICES_SETTING.getKey(), randomIntBetween(2, 8))));
+        final SearchResponse sliced = search(minValue, size);
+
+        final Terms sequentialTerms = sequential.getAggregations().get("tags");
+        final Terms slicedTerms = sliced.getAggregations().get("tags");
+        assertEquals(sequentialTerms.getBuckets().size(), slicedTerms.getBuckets().size());
+        for (Terms.Bucket bucket : sequentialTerms.getBuckets()) {
+            final Terms.Bucket slicedBucket = slicedTerms.getBucketByKey(bucket.getKeyAsString());
+            assertNotNull(slicedBucket);
+            assertEquals(bucket.getDocCount(), slicedBucket.getDocCount());
+            assertEquals(((Avg) bucket.getAggregations().get("avg")).getValue(),
+                ((Avg) slicedBucket.getAggregations().get("avg")).getValue(), 0d);
+        }
+        assertEquals(((Max) sequential.getAggregations().get("max")).getValue(),
+            ((Max) sliced.getAggregations().get("max")).getValue(), 0d);
+        assertEquals(((Cardinality) sequential.getAggregations().get("cardinality")).getValue(),
+            ((Cardinality) sliced.getAggregations().get("cardinality")).getValue());
+        assertEquals(((Global) sequential.getAggregations().get("global")).getDocCount(),
+            ((Global) sliced.getAggregations().get("global")).getDocCount());
+        final Histogram sequentialHistogram = sequential.getAggregations().get("histogram");
+        final Histogram slicedHistogram = sliced.getAggregations().get("histogram");
+        assertEquals(sequentialHistogram.getBuckets().size(), slicedHistogram.getBuckets().size());
+        for (int i = 0; i < sequentialHistogram.getBuckets().size(); i++) {
+            assertEquals(sequentialHistogram.getBuckets().get(i).getKey(), slicedHistogram.getBuckets().get(i).getKey());
+            assertEquals(sequentialHistogram.getBuckets().get(i).getDocCount(), slicedHistogram.getBuckets().get(i).getDocCount());
+        }
+        final TopHits sequentialTopHits = sequential.getAggregations().get("top");
+        final TopHits slicedTopHits = sliced.getAggregations().get("top");
+        assertEquals(sequentialTopHits.getHits().getTotalHits(), slicedTopHits.getHits().getTotalHits());
+        assertEquals(sequentialTopHits.getHits().getHits().length, slicedTopHits.getHits().getHits().length);
+        for (int i = 0; i < sequentialTopHits.getHits().getHits().length; i++) {
+            assertEquals(sequentialTopHits.getHits().getAt(i).getId(), slicedTopHits.getHits().getAt(i).getId());
+        }
+    }
+
+    private SearchResponse search(int minValue, int size) {
+        final SearchRequestBuilder request = client().prepareSearch("index")
+            .setQuery(QueryBuilders.rangeQuery("value").gte(minValue))
+            .setSize(size)
+            // the second search must not be served from the request cache
+            .setRequestCache(false)
+            .addAggregation(terms("tags").field("tag").size(100).subAggregation(avg("avg").field("value")))
+            .addAggregation(max("max").field("value"))
+            .addAggregation(cardinality("cardinality").field("tag"))
+            .addAggregation(global("global"))
+            .addAggregation(histogram("histogram").field("value").interval(10))
+            .addAggregation(topHits("top").size(3).sort("value", SortOrder.DESC));
+        final SearchResponse response = request.get();
+        assertSearchResponse(response);
+        return response;
+    }
+}
@@ -63,6 +63,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -999,6 +1000,42 @@ public class CompositeAggregatorTests extends AggregatorTestCase {
         );
     }
 
+    public void testPagingWithIndexSort() throws Exception {
+        final List<Map<String, List<Object>>> dataset = new ArrayList<>();
+        final TreeMap<Long, Long> expected = new TreeMap<>();
+        final int numDocs = randomIntBetween(1, 200);
+        for (int i = 0; i < numDocs; i++) {
+            final long value = randomIntBetween(0, 50);
+            dataset.add(createDocument("long", value));
+            expected.merge(value, 1L, Long::sum);
+        }
+        final Sort sort = new Sort(new SortedNumericSortField("long", SortField.Type.LONG));
+        final List<Map.Entry<Long, Long>> buckets = new ArrayList<>(expected.entrySet());
+        final int size = randomIntBetween(1, 5);
+        for (int from = 0; from <= buckets.size(); from += size) {
+            final Long afterKey = from == 0 ? null : buckets.get(from - 1).getKey();
+            final List<Map.Entry<Long, Long>> page = buckets.subList(from, Math.min(from + size, buckets.size()));
+            testSearchCase(new MatchAllDocsQuery(), sort, dataset,
+                () -> {
+                    TermsValuesSourceBuilder terms = new TermsValuesSourceBuilder("long")
+                        .field("long");
+                    CompositeAggregationBuilder builder = new CompositeAggregationBuilder("name", Collections.singletonList(terms))
+                        .size(size);
+                    if (afterKey != null) {
+                        builder.aggregateAfter(createAfterKey("long", afterKey));
+                    }
+                    return builder;
+                }, (result) -> {
+                    assertEquals(page.size(), result.getBuckets().size());
+                    for (int i = 0; i < page.size(); i++) {
+                        assertEquals(page.get(i).getKey(), result.getBuckets().get(i).getKey().get("long"));
+                        assertEquals((long) page.get(i).getValue(), result.getBuckets().get(i).getDocCount());
+                    }
+                }
+            );
+        }
+    }
+
     private void testSearchCase(Query query,
                                 Sort sort,
                                 List<Map<String, List<Object>>> dataset,
@@ -19,17 +19,24 @@
 
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
+import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
 import org.elasticsearch.index.mapper.DateFieldMapper;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.AggregatorTestCase;
@@ -38,9 +45,13 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static org.elasticsearch.search.aggregations.MultiBucketConsumerService.TooManyBucketsException;
+import static org.mockito.Mockito.when;
 
 public class DateHistogramAggregatorTests extends AggregatorTestCase {
 
@@ -370,6 +381,67 @@ public class DateHistogramAggregatorTests extends AggregatorTestCase {
             histogram -> {}, 5));
     }
 
+    public void testIndexSortedByDate() throws IOException {
+        final boolean reverse = randomBoolean();
+        final Sort sort = new Sort(new SortedNumericSortField(DATE_FIELD, SortField.Type.LONG, reverse));
+        final long[] values = new long[randomIntBetween(1, 500)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = randomLongBetween(0, TimeUnit.DAYS.toMillis(30));
+        }
+        final long lower = randomLongBetween(0, TimeUnit.DAYS.toMillis(15));
+        final long upper = randomLongBetween(lower, TimeUnit.DAYS.toMillis(30));
+
+        try (Directory directory = newDirectory()) {
+            IndexWriterConfig config = LuceneTestCase.newIndexWriterConfig(random(), new MockAnalyzer(random()));
+            config.setIndexSort(sort);
+            // the asserting codec hides that the doc values of the date field are single-valued
+            config.setCodec(TestUtil.getDefaultCodec());
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory, config)) {
+                Document document = new Document();
+                for (long value : values) {
+                    document.add(new SortedNumericDocValuesField(DATE_FIELD, value));
+                    document.add(new LongPoint(DATE_FIELD, value));
+                    indexWriter.addDocument(document);
+                    document.clear();
+                }
+            }
+
+            try (IndexReader indexReader = DirectoryReader.open(directory)) {
+                IndexSearcher indexSearcher = newSearcher(indexReader, false, false);
+                DateFieldMapper.Builder builder = new DateFieldMapper.Builder("_name");
+                DateFieldMapper.DateFieldType fieldType = builder.fieldType();
+                fieldType.setHasDocValues(true);
+                fieldType.setName(DATE_FIELD);
+
+                for (Query query : Arrays.asList(new MatchAllDocsQuery(), LongPoint.newRangeQuery(DATE_FIELD, lower, upper))) {
+                    final TreeMap<Long, Long> expected = new TreeMap<>();
+                    for (long value : values) {
+                        if (query instanceof MatchAllDocsQuery || (value >= lower && value <= upper)) {
+                            expected.merge(value - Math.floorMod(value, TimeUnit.DAYS.toMillis(1)), 1L, Long::sum);
+                        }
+                    }
+
+                    DateHistogramAggregationBuilder aggregationBuilder = new DateHistogramAggregationBuilder("_name")
+                        .field(DATE_FIELD).dateHistogramInterval(DateHistogramInterval.DAY);
+                    DateHistogramAggregator aggregator = createAggregator(aggregationBuilder, indexSearcher, fieldType);
+                    when(aggregator.context().query()).thenReturn(query);
+                    aggregator.preCollection();
+                    indexSearcher.search(query, aggregator);
+                    aggregator.postCollection();
+                    InternalDateHistogram histogram = (InternalDateHistogram) aggregator.buildAggregation(0L);
+
+                    assertEquals(expected.size(), histogram.getBuckets().size());
+                    int i = 0;
+                    for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+                        InternalDateHistogram.Bucket bucket = histogram.getBuckets().get(i++);
+                        assertEquals((long) entry.getKey(), bucket.key);
+                        assertEquals((long) entry.getValue(), bucket.getDocCount());
+                    }
+                }
+            }
+        }
+    }
+
     private void testSearchCase(Query query, List<String> dataset,
                                 Consumer<DateHistogramAggregationBuilder> configure,
                                 Consumer<Histogram> verify) throws IOException {
@@ -19,9 +19,11 @@
 
 package org.elasticsearch.search.aggregations.metrics;
 
+import org.apache.lucene.document.Document;
 import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.RandomIndexWriter;
@@ -30,10 +32,15 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.CheckedConsumer;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorTestCase;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
 import org.elasticsearch.search.aggregations.metrics.cardinality.CardinalityAggregationBuilder;
 import org.elasticsearch.search.aggregations.metrics.cardinality.CardinalityAggregator;
 import org.elasticsearch.search.aggregations.metrics.cardinality.InternalCardinality;
@@ -41,6 +48,10 @@ import org.elasticsearch.search.aggregations.support.ValueType;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import static java.util.Collections.singleton;
@@ -103,6 +114,56 @@ public class CardinalityAggregatorTests extends AggregatorTestCase {
         });
     }
 
+    public void testKeywordUnderManyBuckets() throws IOException {
+        final Map<String, Set<String>> expected = new HashMap<>();
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                final int numDocs = randomIntBetween(100, 500);
+                final int numGroups = randomIntBetween(1, 50);
+                final int numValues = randomIntBetween(1, 20);
+                for (int i = 0; i < numDocs; i++) {
+                    Document document = new Document();
+                    final String group = "group" + randomInt(numGroups);
+                    document.add(new SortedSetDocValuesField("group", new BytesRef(group)));
+                    final Set<String> groupValues = expected.computeIfAbsent(group, k -> new HashSet<>());
+                    for (int j = randomIntBetween(0, 3); j > 0; j--) {
+                        final String value = "value" + randomInt(numValues);
+                        document.add(new SortedSetDocValuesField("value", new BytesRef(value)));
+                        groupValues.add(value);
+                    }
+                    indexWriter.addDocument(document);
+                    if (rarely()) {
+                        indexWriter.commit();
+                    }
+                }
+            }
+            try (IndexReader indexReader = DirectoryReader.open(directory)) {
+                IndexSearcher indexSearcher = newSearcher(indexReader, true, true);
+                MappedFieldType groupFieldType = new KeywordFieldMapper.KeywordFieldType();
+                groupFieldType.setName("group");
+                groupFieldType.setHasDocValues(true);
+                MappedFieldType valueFieldType = new KeywordFieldMapper.KeywordFieldType();
+                valueFieldType.setName("value");
+                valueFieldType.setHasDocValues(true);
+                TermsAggregationBuilder aggregationBuilder = new TermsAggregationBuilder("terms", ValueType.STRING)
+                    .field("group")
+                    .size(expected.size())
+                    .subAggregation(new CardinalityAggregationBuilder("cardinality", ValueType.STRING).field("value"));
+                Aggregator aggregator = createAggregator(aggregationBuilder, indexSearcher, groupFieldType, valueFieldType);
+                aggregator.preCollection();
+                indexSearcher.search(new MatchAllDocsQuery(), aggregator);
+                aggregator.postCollection();
+                Terms terms = (Terms) aggregator.buildAggregation(0L);
+                assertEquals(expected.size(), terms.getBuckets().size());
+                for (Terms.Bucket bucket : terms.getBuckets()) {
+                    InternalCardinality cardinality = bucket.getAggregations().get("cardinality");
+                    // counts are exact at such low cardinalities
+                    assertEquals(expected.get(bucket.getKeyAsString()).size(), cardinality.getValue());
+                }
+            }
+        }
+    }
+
     private void testCase(Query query, CheckedConsumer<RandomIndexWriter, IOException> buildIndex,
             Consumer<InternalCardinality> verify) throws IOException {
         Directory directory = newDirectory();
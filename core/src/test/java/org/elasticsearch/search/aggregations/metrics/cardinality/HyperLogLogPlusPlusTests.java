@@ -21,12 +21,19 @@ package org.elasticsearch.search.aggregations.metrics.cardinality;
 
 import com.carrotsearch.hppc.BitMixer;
 import com.carrotsearch.hppc.IntHashSet;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
+
+import java.io.IOException;
 
 import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MAX_PRECISION;
 import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MIN_PRECISION;
 import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThan;
 
 public class HyperLogLogPlusPlusTests extends ESTestCase {
     public void testEncodeDecode() {
@@ -117,6 +124,52 @@ public class HyperLogLogPlusPlusTests extends ESTestCase {
         assertEquals(1, counts.cardinality(0));
     }
 
+    public void testSerialization() throws IOException {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        // sometimes stay in linear counting, sometimes have sparse or dense registers
+        final int numValues = randomFrom(randomIntBetween(1, 10), randomIntBetween(1, 1 << p), randomIntBetween(1 << p, 4 << p));
+        for (int i = 0; i < numValues; ++i) {
+            counts.collect(0, BitMixer.mix64(randomInt()));
+        }
+        if (randomBoolean()) {
+            counts.upgradeToHll(0);
+        }
+        final Version version = randomBoolean() ? Version.CURRENT : VersionUtils.randomVersion(random());
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(version);
+            counts.writeTo(0, out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(version);
+                final HyperLogLogPlusPlus read = HyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+                assertEquals(-1, in.read());
+                assertEquals(counts.cardinality(0), read.cardinality(0));
+                try (BytesStreamOutput again = new BytesStreamOutput()) {
+                    again.setVersion(Version.CURRENT);
+                    read.writeTo(0, again);
+                    try (BytesStreamOutput expected = new BytesStreamOutput()) {
+                        counts.writeTo(0, expected);
+                        // hashes are sorted and registers are written in order, so the compact encoding is deterministic
+                        assertEquals(expected.bytes(), again.bytes());
+                    }
+                }
+            }
+        }
+    }
+
+    public void testSparseRegistersAreSmallerOnTheWire() throws IOException {
+        final int p = randomIntBetween(10, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        for (int i = 0; i < (1 << p) / 16; ++i) {
+            counts.collect(0, BitMixer.mix64(i));
+        }
+        counts.upgradeToHll(0);
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            counts.writeTo(0, out);
+            assertThat(out.size(), lessThan((1 << p) / 2));
+        }
+    }
+
     public void testPrecisionFromThreshold() {
         assertEquals(4, HyperLogLogPlusPlus.precisionFromThreshold(0));
         assertEquals(6, HyperLogLogPlusPlus.precisionFromThreshold(10));
@@ -0,0 +1,94 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles.tdigest;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class TDigestStateTests extends ESTestCase {
+
+    public void testMergeEmpty() {
+        assertEquals(0, TDigestState.merge(100, Collections.emptyList()).size());
+        assertEquals(0, TDigestState.merge(100, Arrays.asList(new TDigestState(100), new TDigestState(100))).size());
+    }
+
+    public void testMerge() {
+        final double compression = randomFrom(50d, 100d, 200d);
+        final int numDigests = randomIntBetween(1, 200);
+        final List<TDigestState> digests = new ArrayList<>(numDigests);
+        final TDigestState expected = new TDigestState(compression);
+        final List<Double> values = new ArrayList<>();
+        for (int i = 0; i < numDigests; i++) {
+            final TDigestState digest = new TDigestState(compression);
+            for (int j = randomIntBetween(0, 1000); j > 0; j--) {
+                final double value = randomGaussian() * 100;
+                digest.add(value);
+                values.add(value);
+            }
+            digests.add(digest);
+            expected.add(digest);
+        }
+        final TDigestState merged = TDigestState.merge(compression, digests);
+        assertEquals(values.size(), merged.size());
+        if (values.isEmpty()) {
+            return;
+        }
+        Collections.sort(values);
+        assertEquals(values.get(0), merged.quantile(0), 0d);
+        assertEquals(values.get(values.size() - 1), merged.quantile(1), 0d);
+        // the folded centroids respect the same size bound as the ones that are added one by one
+        assertThat(merged.centroidCount(), lessThanOrEqualTo(Math.max(expected.centroidCount() * 2, 10)));
+        for (double q : new double[] {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99}) {
+            final double exact = values.get((int) (q * (values.size() - 1)));
+            final double tolerance = Math.abs(expected.quantile(q) - exact) + 0.05 * (values.get(values.size() - 1) - values.get(0));
+            assertEquals(exact, merged.quantile(q), tolerance);
+        }
+    }
+
+    public void testSerialization() throws IOException {
+        final TDigestState state = new TDigestState(randomFrom(50d, 100d, 200d));
+        // few enough values for every centroid to be a single value, so that reading the centroids back doesn't merge them
+        for (int i = randomIntBetween(0, 50); i > 0; i--) {
+            state.add(randomBoolean() ? randomGaussian() : randomDoubleBetween(-1e6, 1e6, true));
+        }
+        final Version version = randomBoolean() ? Version.CURRENT : VersionUtils.randomVersion(random());
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(version);
+            TDigestState.write(state, out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(version);
+                final TDigestState read = TDigestState.read(in);
+                assertEquals(-1, in.read());
+                assertEquals(state, read);
+            }
+        }
+    }
+}
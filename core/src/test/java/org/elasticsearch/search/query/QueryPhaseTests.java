@@ -35,6 +35,7 @@ import org.apache.lucene.queries.MinDocQuery;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.FieldComparator;
 import org.apache.lucene.search.FieldDoc;
@@ -48,15 +49,23 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.Directory;
+import org.elasticsearch.Version;
 import org.elasticsearch.action.search.SearchTask;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.query.ParsedQuery;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardTestCase;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.sort.SortAndFormats;
 import org.elasticsearch.test.TestSearchContext;
@@ -64,12 +73,18 @@ import org.elasticsearch.test.TestSearchContext;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class QueryPhaseTests extends IndexShardTestCase {
 
@@ -464,6 +479,133 @@ public class QueryPhaseTests extends IndexShardTestCase {
         dir.close();
     }
 
+    public void testConcurrentSlices() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numDocs = scaledRandomIntBetween(100, 200);
+        for (int i = 0; i < numDocs; ++i) {
+            Document doc = new Document();
+            if (randomBoolean()) {
+                doc.add(new StringField("foo", "bar", Store.NO));
+            }
+            doc.add(new NumericDocValuesField("rank", randomIntBetween(0, 20)));
+            w.addDocument(doc);
+            if (rarely()) {
+                w.commit();
+            }
+        }
+        final IndexReader reader = w.getReader();
+        w.close();
+
+        final int maxSlices = randomIntBetween(2, 8);
+        final List<List<LeafReaderContext>> slices = ContextIndexSearcher.slices(reader.leaves(), maxSlices);
+        assertThat(slices.size(), lessThanOrEqualTo(maxSlices));
+        assertEquals(reader.leaves(), slices.stream().flatMap(List::stream).collect(Collectors.toList()));
+
+        final ExecutorService threadPool = Executors.newFixedThreadPool(randomIntBetween(1, 4));
+        final Executor rejectingExecutor = command -> {
+            throw new EsRejectedExecutionException("rejected");
+        };
+        final ContextIndexSearcher contextSearcher = new ContextIndexSearcher(new Engine.Searcher("test", new IndexSearcher(reader)),
+            IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy());
+        final IndexSearcher searcher = new IndexSearcher(reader);
+        try {
+            for (Query query : new Query[] { new MatchAllDocsQuery(), new TermQuery(new Term("foo", "bar")) }) {
+                for (Sort sort : new Sort[] { null, new Sort(new SortField("rank", SortField.Type.INT)) }) {
+                    TestSearchContext context = new TestSearchContext(null, indexShard);
+                    context.parsedQuery(new ParsedQuery(query));
+                    context.setSize(randomIntBetween(1, numDocs));
+                    context.setTask(new SearchTask(123L, "", "", "", null));
+                    if (sort != null) {
+                        context.sort(new SortAndFormats(sort, new DocValueFormat[] {DocValueFormat.RAW}));
+                    }
+                    TopDocsCollectorContext topDocsContext = TopDocsCollectorContext.createTopDocsCollectorContext(context, reader, false);
+                    contextSearcher.search(query, topDocsContext.createSlicedCollectorManager(),
+                        randomBoolean() ? threadPool : rejectingExecutor, maxSlices, () -> false);
+                    topDocsContext.postProcess(context.queryResult(), true);
+
+                    TopDocs expected = sort == null ? searcher.search(query, context.size()) : searcher.search(query, context.size(), sort);
+                    TopDocs topDocs = context.queryResult().topDocs();
+                    assertEquals(expected.totalHits, topDocs.totalHits);
+                    assertEquals(expected.scoreDocs.length, topDocs.scoreDocs.length);
+                    for (int i = 0; i < expected.scoreDocs.length; i++) {
+                        assertEquals(expected.scoreDocs[i].doc, topDocs.scoreDocs[i].doc);
+                        assertEquals(-1, topDocs.scoreDocs[i].shardIndex);
+                        if (sort == null) {
+                            assertEquals(expected.scoreDocs[i].score, topDocs.scoreDocs[i].score, 0f);
+                        } else {
+                            assertArrayEquals(((FieldDoc) expected.scoreDocs[i]).fields, ((FieldDoc) topDocs.scoreDocs[i]).fields);
+                        }
+                    }
+                }
+            }
+        } finally {
+            terminate(threadPool);
+            reader.close();
+            dir.close();
+        }
+    }
+
+    public void testConcurrentSlicesTimeout() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numDocs = scaledRandomIntBetween(100, 200);
+        for (int i = 0; i < numDocs; ++i) {
+            w.addDocument(new Document());
+            if (i % 10 == 9) {
+                w.commit();
+            }
+        }
+        final IndexReader reader = w.getReader();
+        w.close();
+
+        final int maxSlices = randomIntBetween(2, 8);
+        final Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexSettings.MAX_CONCURRENT_SLICES_SETTING.getKey(), maxSlices)
+            .build();
+        final IndexMetaData metaData = IndexMetaData.builder("test").settings(settings).primaryTerm(0, 1).build();
+        final IndexShard slicedShard = newShard(new ShardId(metaData.getIndex(), 0), true, "n1", metaData, null);
+        try {
+            TestSearchContext context = new TestSearchContext(null, slicedShard);
+            context.parsedQuery(new ParsedQuery(new MatchAllDocsQuery()));
+            context.setSize(numDocs);
+            context.setTask(new SearchTask(123L, "", "", "", null));
+            final ContextIndexSearcher contextSearcher = new ContextIndexSearcher(new Engine.Searcher("test", new IndexSearcher(reader)),
+                IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy()) {
+                @Override
+                public <C extends Collector, T> T search(Query query, CollectorManager<C, T> collectorManager, Executor executor,
+                                                         int slices, BooleanSupplier cancelled) throws IOException {
+                    // search the slices one after the other on this thread, so that the first one is complete when time runs out
+                    return super.search(query, collectorManager, command -> {
+                        throw new EsRejectedExecutionException("rejected");
+                    }, slices, cancelled);
+                }
+
+                @Override
+                protected void search(List<LeafReaderContext> leaves, Weight weight, Collector collector) throws IOException {
+                    super.search(leaves, weight, collector);
+                    context.timeEstimateCounter().addAndGet(1);
+                }
+            };
+            QueryPhase.execute(context, contextSearcher, contextSearcher::setCheckCancelled, null);
+
+            final List<LeafReaderContext> firstSlice = ContextIndexSearcher.slices(reader.leaves(), maxSlices).get(0);
+            final int firstSliceDocs = firstSlice.stream().mapToInt(leaf -> leaf.reader().numDocs()).sum();
+            assertTrue(context.queryResult().searchTimedOut());
+            // the hits of the slice that was searched before the timeout are kept
+            assertEquals(firstSliceDocs, context.queryResult().topDocs().totalHits);
+            assertEquals(firstSliceDocs, context.queryResult().topDocs().scoreDocs.length);
+        } finally {
+            closeShards(slicedShard);
+            reader.close();
+            dir.close();
+        }
+    }
+
     public void testIndexSortScrollOptimization() throws Exception {
         Directory dir = newDirectory();
         final Sort indexSort = new Sort(
@@ -97,6 +97,58 @@ public class CompressibleBytesOutputStreamTests extends ESTestCase {
         stream.close();
     }
 
+    public void testStreamWithLZ4Compression() throws IOException {
+        BytesStream bStream = new ZeroOutOnCloseStream();
+        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, CompressorFactory.LZ4_COMPRESSOR);
+
+        byte[] expectedBytes = randomBytes(randomInt(30));
+        stream.write(expectedBytes);
+
+        BytesReference bytesRef = stream.materializeBytes();
+
+        assertTrue(stream.isCompressed());
+        assertSame(CompressorFactory.LZ4_COMPRESSOR, CompressorFactory.compressor(bytesRef));
+
+        StreamInput streamInput = CompressorFactory.LZ4_COMPRESSOR.streamInput(bytesRef.streamInput());
+        byte[] actualBytes = new byte[expectedBytes.length];
+        streamInput.readBytes(actualBytes, 0, expectedBytes.length);
+
+        assertEquals(-1, streamInput.read());
+        assertArrayEquals(expectedBytes, actualBytes);
+        stream.close();
+    }
+
+    public void testDeferredCompression() throws IOException {
+        final int minSize = randomIntBetween(1, 30);
+        final ZeroOutOnCloseStream uncompressedStream = new ZeroOutOnCloseStream();
+        final ZeroOutOnCloseStream compressedStream = new ZeroOutOnCloseStream();
+        CompressibleBytesOutputStream stream =
+            new CompressibleBytesOutputStream(uncompressedStream, CompressorFactory.LZ4_COMPRESSOR, minSize, () -> compressedStream);
+
+        byte[] expectedBytes = randomBytes(randomInt(2 * minSize));
+        stream.write(expectedBytes);
+
+        BytesReference bytesRef = stream.materializeBytes();
+
+        final boolean shouldCompress = expectedBytes.length >= minSize;
+        assertEquals(shouldCompress, stream.isCompressed());
+        assertEquals(shouldCompress, CompressorFactory.LZ4_COMPRESSOR.isCompressed(bytesRef));
+        // the uncompressed bytes are released as soon as they are compressed
+        assertEquals(shouldCompress, uncompressedStream.closed);
+
+        StreamInput streamInput = shouldCompress
+            ? CompressorFactory.LZ4_COMPRESSOR.streamInput(bytesRef.streamInput()) : bytesRef.streamInput();
+        byte[] actualBytes = new byte[expectedBytes.length];
+        streamInput.readBytes(actualBytes, 0, expectedBytes.length);
+
+        assertEquals(-1, streamInput.read());
+        assertArrayEquals(expectedBytes, actualBytes);
+        stream.close();
+
+        assertTrue(uncompressedStream.closed);
+        assertEquals(shouldCompress, compressedStream.closed);
+    }
+
     private static byte[] randomBytes(int length) {
         byte[] bytes = new byte[length];
         for (int i = 0; i < bytes.length; ++i) {
@@ -107,8 +159,11 @@ public class CompressibleBytesOutputStreamTests extends ESTestCase {
 
     private static class ZeroOutOnCloseStream extends BytesStreamOutput {
 
+        private boolean closed;
+
         @Override
         public void close() {
+            closed = true;
             int size = (int) bytes.size();
             bytes.set(0, new byte[size], 0, size);
         }
@@ -0,0 +1,144 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport;
+
+import org.apache.lucene.util.BytesRefIterator;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.CompositeBytesReference;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+
+public class InboundChunksTests extends ESTestCase {
+
+    private final MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(Long.MAX_VALUE), 1.0, logger);
+
+    public void testReassemble() throws IOException {
+        try (InboundChunks chunks = new InboundChunks(breaker, Long.MAX_VALUE)) {
+            final long requestId = randomNonNegativeLong();
+            final BytesReference first = new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 100)));
+            final BytesReference second = new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 100)));
+            final BytesReference otherResponse = new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 100)));
+            chunks.add(requestId, true, first, null);
+            // responses are tracked separately from requests, as their ids come from the other node
+            chunks.add(requestId, false, otherResponse, null);
+            chunks.add(requestId, true, second, null);
+            assertEquals(first.length() + second.length() + otherResponse.length(), breaker.getUsed());
+
+            try (InboundChunks.Message request = chunks.remove(requestId, true)) {
+                assertNull(request.getFailure());
+                assertEquals(new CompositeBytesReference(first, second), request.bytes());
+                // chunks without a releasable are copied
+                assertNotSame(((BytesArray) first).array(), request.bytes().iterator().next().bytes);
+            }
+            assertNull(chunks.remove(requestId, true));
+            try (InboundChunks.Message response = chunks.remove(requestId, false)) {
+                assertEquals(otherResponse, response.bytes());
+            }
+            // the complete message is accounted for by the caller
+            assertEquals(0, breaker.getUsed());
+            // a message sent in one piece has no previous chunks
+            assertNull(chunks.remove(randomValueOtherThan(requestId, ESTestCase::randomNonNegativeLong), randomBoolean()));
+        }
+    }
+
+    public void testRetainedChunksAreNotCopied() throws IOException {
+        final AtomicInteger released = new AtomicInteger();
+        final Releasable releasable = released::incrementAndGet;
+        try (InboundChunks chunks = new InboundChunks(breaker, Long.MAX_VALUE)) {
+            final long requestId = randomNonNegativeLong();
+            final BytesArray first = new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 100)));
+            final BytesArray second = new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 100)));
+            chunks.add(requestId, true, first, releasable);
+            chunks.add(requestId, true, second, releasable);
+            final InboundChunks.Message message = chunks.remove(requestId, true);
+            final BytesRefIterator iterator = message.bytes().iterator();
+            assertSame(first.array(), iterator.next().bytes);
+            assertSame(second.array(), iterator.next().bytes);
+            assertEquals(0, released.get());
+            message.close();
+            assertEquals(2, released.get());
+        }
+    }
+
+    public void testTooLarge() {
+        final int maxMessageSize = randomIntBetween(1, 100);
+        final AtomicInteger released = new AtomicInteger();
+        try (InboundChunks chunks = new InboundChunks(breaker, maxMessageSize)) {
+            final long requestId = randomNonNegativeLong();
+            chunks.add(requestId, true, new BytesArray(randomByteArrayOfLength(maxMessageSize)), released::incrementAndGet);
+            chunks.add(requestId, true, new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 10))), released::incrementAndGet);
+            // the chunks of the message are released right away, and the chunks that are still to come are dropped
+            assertEquals(2, released.get());
+            assertEquals(0, breaker.getUsed());
+            chunks.add(requestId, true, new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 10))), released::incrementAndGet);
+            assertEquals(3, released.get());
+            try (InboundChunks.Message message = chunks.remove(requestId, true)) {
+                assertThat(message.getFailure(), instanceOf(IllegalArgumentException.class));
+                assertThat(message.getFailure().getMessage(), containsString("exceeded"));
+            }
+        }
+    }
+
+    public void testCircuitBreaker() {
+        final int limit = randomIntBetween(1, 100);
+        final MemoryCircuitBreaker limitedBreaker = new MemoryCircuitBreaker(new ByteSizeValue(limit), 1.0, logger);
+        final AtomicInteger released = new AtomicInteger();
+        try (InboundChunks chunks = new InboundChunks(limitedBreaker, Long.MAX_VALUE)) {
+            final long requestId = randomNonNegativeLong();
+            final boolean isRequest = randomBoolean();
+            // other messages that are in flight on the channel count towards the limit as well
+            chunks.add(randomValueOtherThan(requestId, ESTestCase::randomNonNegativeLong), isRequest,
+                new BytesArray(randomByteArrayOfLength(limit)), null);
+            chunks.add(requestId, isRequest, new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 10))), released::incrementAndGet);
+            assertEquals(1, released.get());
+            assertEquals(limit, limitedBreaker.getUsed());
+            try (InboundChunks.Message message = chunks.remove(requestId, isRequest)) {
+                assertThat(message.getFailure(), instanceOf(CircuitBreakingException.class));
+            }
+        }
+        assertEquals(0, limitedBreaker.getUsed());
+    }
+
+    public void testReleasedOnClose() {
+        final AtomicInteger released = new AtomicInteger();
+        final InboundChunks chunks = new InboundChunks(breaker, Long.MAX_VALUE);
+        final int numMessages = randomIntBetween(1, 10);
+        for (int i = 0; i < numMessages; i++) {
+            chunks.add(i, randomBoolean(), new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 100))), released::incrementAndGet);
+        }
+        chunks.close();
+        assertEquals(numMessages, released.get());
+        assertEquals(0, breaker.getUsed());
+        // chunks that are received once the channel is closed are dropped
+        chunks.add(randomNonNegativeLong(), randomBoolean(), new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 100))),
+            released::incrementAndGet);
+        assertEquals(numMessages + 1, released.get());
+    }
+}
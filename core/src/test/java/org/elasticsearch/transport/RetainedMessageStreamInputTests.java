@@ -0,0 +1,73 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collections;
+
+public class RetainedMessageStreamInputTests extends ESTestCase {
+
+    private static final NamedWriteableRegistry REGISTRY = new NamedWriteableRegistry(Collections.emptyList());
+
+    public void testCopiesUntilRetained() throws IOException {
+        final BytesReference first = new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 100)));
+        final BytesReference second = new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 100)));
+        final String value = randomAlphaOfLength(10);
+        final BytesStreamOutput out = new BytesStreamOutput();
+        out.writeBytesReference(first);
+        out.writeString(value);
+        out.writeBytesReference(second);
+        out.writeVInt(42);
+        final BytesArray message = new BytesArray(BytesReference.toBytes(out.bytes()));
+
+        final Releasable releasable = () -> {};
+        final RetainedMessageStreamInput in = new RetainedMessageStreamInput(message, message.streamInput(), REGISTRY, releasable);
+        final BytesReference copy = in.readBytesReference();
+        assertEquals(first, copy);
+        assertNotSame(message.array(), copy.toBytesRef().bytes);
+        assertEquals(value, in.readString());
+
+        assertFalse(in.isRetained());
+        assertSame(releasable, in.retain());
+        assertTrue(in.isRetained());
+
+        final BytesReference slice = in.readBytesReference();
+        assertEquals(second, slice);
+        // the slice shares the bytes of the message
+        assertSame(message.array(), slice.toBytesRef().bytes);
+        assertEquals(42, in.readVInt());
+        assertEquals(-1, in.read());
+    }
+
+    public void testSliceBeyondMessage() throws IOException {
+        final BytesArray message = new BytesArray(randomByteArrayOfLength(randomIntBetween(0, 10)));
+        final RetainedMessageStreamInput in = new RetainedMessageStreamInput(message, message.streamInput(), REGISTRY, () -> {});
+        in.retain();
+        expectThrows(EOFException.class, () -> in.readBytesReference(message.length() + 1));
+    }
+}
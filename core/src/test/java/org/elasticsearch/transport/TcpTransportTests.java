@@ -23,6 +23,7 @@ import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -173,11 +174,38 @@ public class TcpTransportTests extends ESTestCase {
     public void testCompressRequest() throws IOException {
         final boolean compressed = randomBoolean();
         Req request = new Req(randomRealisticUnicodeOfLengthBetween(10, 100));
+        Settings settings = Settings.builder().put("transport.tcp.compress", compressed).build();
+        assertRequestSent(settings, request, TransportRequestOptions.EMPTY, compressed ? CompressorFactory.COMPRESSOR : null);
+    }
+
+    public void testCompressRequestOfType() throws IOException {
+        final boolean large = randomBoolean();
+        final String scheme = randomFrom("deflate", "lz4");
+        Req request = new Req(randomRealisticUnicodeOfLengthBetween(10, 100));
+        Settings settings = Settings.builder()
+            .put("transport.tcp.compression_scheme", scheme)
+            .putList("transport.tcp.compress_types", "bulk", "recovery")
+            .put("transport.tcp.compress_min_size", large ? "1b" : "1mb")
+            .build();
+        TransportRequestOptions.Type type = randomFrom(TransportRequestOptions.Type.values());
+        final boolean compressed = large && (type == TransportRequestOptions.Type.BULK || type == TransportRequestOptions.Type.RECOVERY);
+        assertRequestSent(settings, request, TransportRequestOptions.builder().withType(type).build(),
+            compressed ? ("lz4".equals(scheme) ? CompressorFactory.LZ4_COMPRESSOR : CompressorFactory.COMPRESSOR) : null);
+    }
+
+    public void testInvalidCompressionScheme() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> TcpTransport.TCP_COMPRESSION_SCHEME.get(
+            Settings.builder().put("transport.tcp.compression_scheme", "snappy").build()));
+        assertEquals("unknown compression scheme [snappy], must be one of [deflate, lz4]", e.getMessage());
+    }
+
+    private void assertRequestSent(Settings settings, Req request, TransportRequestOptions options,
+                                   Compressor expectedCompressor) throws IOException {
         ThreadPool threadPool = new TestThreadPool(TcpTransportTests.class.getName());
         AtomicReference<BytesReference> messageCaptor = new AtomicReference<>();
         try {
             TcpTransport transport = new TcpTransport(
-                "test", Settings.builder().put("transport.tcp.compress", compressed).build(), threadPool,
+                "test", settings, threadPool,
                 new BigArrays(new PageCacheRecycler(Settings.EMPTY), null), null, null, null) {
 
                 @Override
@@ -204,7 +232,7 @@ public class TcpTransportTests extends ESTestCase {
 
             DiscoveryNode node = new DiscoveryNode("foo", buildNewFakeTransportAddress(), Version.CURRENT);
             Transport.Connection connection = transport.getConnection(node);
-            connection.sendRequest(42, "foobar", request, TransportRequestOptions.EMPTY);
+            connection.sendRequest(42, "foobar", request, options);
 
             BytesReference reference = messageCaptor.get();
             assertNotNull(reference);
@@ -217,12 +245,13 @@ public class TcpTransportTests extends ESTestCase {
             byte status = streamIn.readByte();
             Version version = Version.fromId(streamIn.readInt());
             assertEquals(Version.CURRENT, version);
-            assertEquals(compressed, TransportStatus.isCompress(status));
-            if (compressed) {
+            assertEquals(expectedCompressor != null, TransportStatus.isCompress(status));
+            if (expectedCompressor != null) {
                 final int bytesConsumed = TcpHeader.HEADER_SIZE;
-                streamIn = CompressorFactory.compressor(reference.slice(bytesConsumed, reference.length() - bytesConsumed))
-                    .streamInput(streamIn);
-                }
+                Compressor compressor = CompressorFactory.compressor(reference.slice(bytesConsumed, reference.length() - bytesConsumed));
+                assertSame(expectedCompressor, compressor);
+                streamIn = compressor.streamInput(streamIn);
+            }
             threadPool.getThreadContext().readHeaders(streamIn);
             assertEquals("foobar", streamIn.readString());
             Req readReq = new Req("");
@@ -156,6 +156,8 @@ final class Netty4HttpChannel extends AbstractRestChannel {
             if (pipelinedRequest != null) {
                 pipelinedRequest.release();
             }
+            // handlers that allow unsafe buffers may use the content of the request until they send the response
+            ((Netty4HttpRequest) request).release();
         }
     }
 
@@ -37,14 +37,20 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class Netty4HttpRequest extends RestRequest {
 
     private final FullHttpRequest request;
     private final Channel channel;
-    private final BytesReference content;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private BytesReference content;
 
+    /**
+     * Creates a request whose content is backed by the (possibly pooled) buffer of the given netty request, the reference to
+     * which is taken over by this request and released by {@link #release()}.
+     */
     Netty4HttpRequest(NamedXContentRegistry xContentRegistry, FullHttpRequest request, Channel channel) {
         super(xContentRegistry, request.uri(), new HttpHeadersMap(request.headers()));
         this.request = request;
@@ -101,6 +107,35 @@ public class Netty4HttpRequest extends RestRequest {
         return content;
     }
 
+    @Override
+    public void ensureSafeBuffers() {
+        if (released.get() == false) {
+            if (content.length() > 0) {
+                content = new BytesArray(BytesReference.toBytes(content));
+            }
+            release();
+        }
+    }
+
+    @Override
+    public long unsafeBuffersSize() {
+        if (released.get()) {
+            return content.length();
+        }
+        // the aggregated content keeps the whole pooled buffers that it was read into alive
+        return Math.max(content.length(), Netty4Utils.retainedCapacity(request.content()));
+    }
+
+    /**
+     * Releases the buffer backing the content of this request, unless it was already released or copied by
+     * {@link #ensureSafeBuffers()}. Called once the response to this request is sent.
+     */
+    void release() {
+        if (released.compareAndSet(false, true)) {
+            request.release();
+        }
+    }
+
     /**
      * Returns the remote address where this rest request channel is "connected to".  The
      * returned {@link SocketAddress} is supposed to be down-cast into more
@@ -19,11 +19,9 @@
 
 package org.elasticsearch.http.netty4;
 
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.FullHttpRequest;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.http.netty4.pipelining.HttpPipelinedRequest;
@@ -56,18 +54,14 @@ class Netty4HttpRequestHandler extends SimpleChannelInboundHandler<Object> {
             request = (FullHttpRequest) msg;
         }
 
-        final FullHttpRequest copy =
-                new DefaultFullHttpRequest(
-                        request.protocolVersion(),
-                        request.method(),
-                        request.uri(),
-                        Unpooled.copiedBuffer(request.content()),
-                        request.headers(),
-                        request.trailingHeaders());
+        // the aggregated content is not copied to the heap here: the rest controller copies it for the handlers that don't
+        // allow unsafe buffers, and it is released once the response is sent otherwise
+        request.retain();
         final Netty4HttpRequest httpRequest;
         try {
-            httpRequest = new Netty4HttpRequest(serverTransport.xContentRegistry, copy, ctx.channel());
+            httpRequest = new Netty4HttpRequest(serverTransport.xContentRegistry, request, ctx.channel());
         } catch (Exception ex) {
+            request.release();
             if (pipelinedRequest != null) {
                 pipelinedRequest.release();
             }
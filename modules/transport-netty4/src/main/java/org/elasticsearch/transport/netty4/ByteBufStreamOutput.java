@@ -0,0 +1,118 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport.netty4;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStream;
+import org.elasticsearch.common.util.BigArrays;
+
+/**
+ * A {@link BytesStream} that writes into direct buffers of a {@link ByteBufAllocator}, so that the bytes of an outbound
+ * message are written to the socket without being copied from the heap first. The buffers are allocated in chunks of
+ * {@link #CHUNK_SIZE} bytes as the stream grows, and joined into a composite buffer without copying.
+ * <p>
+ * The stream owns the buffer and releases it on {@link #close()}. Writing the {@link #bytes()} to a channel takes an extra
+ * reference to the buffer, see {@link Netty4Utils#toByteBuf}, which Netty releases once the bytes have been written.
+ */
+final class ByteBufStreamOutput extends BytesStream {
+
+    static final int CHUNK_SIZE = BigArrays.BYTE_PAGE_SIZE;
+
+    private final ByteBufAllocator allocator;
+    private final CompositeByteBuf buffer;
+    private ByteBuf current;
+    private boolean closed;
+
+    ByteBufStreamOutput(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+        this.buffer = allocator.compositeDirectBuffer(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void writeByte(byte b) {
+        ensureWritable();
+        current.writeByte(b);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) {
+        while (length > 0) {
+            ensureWritable();
+            final int toWrite = Math.min(length, current.writableBytes());
+            current.writeBytes(b, offset, toWrite);
+            offset += toWrite;
+            length -= toWrite;
+        }
+    }
+
+    private void ensureWritable() {
+        if (closed) {
+            throw new IllegalStateException("stream is already closed");
+        }
+        if (current == null || current.isWritable() == false) {
+            addCurrent();
+            current = allocator.directBuffer(CHUNK_SIZE, CHUNK_SIZE);
+        }
+    }
+
+    private void addCurrent() {
+        if (current != null) {
+            // the composite takes over the reference to the chunk and moves its writer index past the bytes of the chunk
+            buffer.addComponent(true, current);
+            current = null;
+        }
+    }
+
+    @Override
+    public long position() {
+        return buffer.writerIndex() + (current == null ? 0 : current.readableBytes());
+    }
+
+    @Override
+    public BytesReference bytes() {
+        addCurrent();
+        return new ByteBufBytesReference(buffer, buffer.readableBytes());
+    }
+
+    @Override
+    public void flush() {
+        // nothing to do, bytes are written when the message is sent
+    }
+
+    @Override
+    public void reset() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (closed == false) {
+            closed = true;
+            if (current != null) {
+                current.release();
+                current = null;
+            }
+            buffer.release();
+        }
+    }
+}
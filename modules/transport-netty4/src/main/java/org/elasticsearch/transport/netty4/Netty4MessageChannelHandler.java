@@ -24,7 +24,10 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.Attribute;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.RetainedBuffers;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.transport.TcpHeader;
 import org.elasticsearch.transport.Transports;
 
@@ -57,11 +60,23 @@ final class Netty4MessageChannelHandler extends ChannelDuplexHandler {
         try {
             Channel channel = ctx.channel();
             InetSocketAddress remoteAddress = (InetSocketAddress) channel.remoteAddress();
-            // netty always copies a buffer, either in NioWorker in its read handler, where it copies to a fresh
-            // buffer, or in the cumulative buffer, which is cleaned each time so it could be bigger than the actual size
-            BytesReference reference = Netty4Utils.toBytesReference(buffer, remainingMessageSize);
             Attribute<NettyTcpChannel> channelAttribute = channel.attr(Netty4Transport.CHANNEL_KEY);
-            transport.messageReceived(reference, channelAttribute.get(), profileName, remoteAddress, remainingMessageSize);
+            // retaining the message keeps the whole cumulative buffer alive, so its other bytes are accounted for as well
+            final CircuitBreaker breaker = transport.getInFlightRequestBreaker();
+            final long reserved = RetainedBuffers.tryReserve(breaker, remainingMessageSize, Netty4Utils.retainedCapacity(buffer),
+                "<transport_request_buffers>");
+            if (reserved >= 0) {
+                // the message is a retained slice of the cumulative buffer, which netty does not discard or write into while it is
+                // referenced elsewhere, so that requests may keep slices of it until they are responded to instead of copying them
+                final ByteBuf message = buffer.retainedSlice(buffer.readerIndex(), remainingMessageSize);
+                final BytesReference reference = Netty4Utils.toBytesReference(message, remainingMessageSize);
+                transport.messageReceived(reference, channelAttribute.get(), profileName, remoteAddress, remainingMessageSize,
+                    Releasables.wrap(message::release, () -> breaker.addWithoutBreaking(-reserved)));
+            } else {
+                // the message is small compared to the cumulative buffer, so it is only read while it is valid and copied as needed
+                final BytesReference reference = Netty4Utils.toBytesReference(buffer, remainingMessageSize);
+                transport.messageReceived(reference, channelAttribute.get(), profileName, remoteAddress, remainingMessageSize);
+            }
         } finally {
             // Set the expected position of the buffer, no matter what happened
             buffer.readerIndex(expectedReaderIndex);
@@ -32,6 +32,7 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefIterator;
 import org.elasticsearch.common.Booleans;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.CompositeBytesReference;
 import org.elasticsearch.common.logging.ESLoggerFactory;
 
 import java.io.IOException;
@@ -39,11 +40,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -108,7 +111,20 @@ public class Netty4Utils {
             return Unpooled.EMPTY_BUFFER;
         }
         if (reference instanceof ByteBufBytesReference) {
-            return ((ByteBufBytesReference) reference).toByteBuf();
+            // netty releases the buffers it writes, so the returned buffer holds its own reference to the bytes: the owner of the
+            // bytes releases them independently, and the same bytes, or slices of them, can be written more than once
+            return ((ByteBufBytesReference) reference).toByteBuf().retain();
+        } else if (reference instanceof CompositeBytesReference) {
+            // convert each reference on its own so that references to netty buffers, like outbound messages serialized
+            // into direct buffers, are written without being copied to the heap
+            final List<BytesReference> references = ((CompositeBytesReference) reference).references();
+            final CompositeByteBuf composite = Unpooled.compositeBuffer(references.size());
+            for (BytesReference component : references) {
+                if (component.length() > 0) {
+                    composite.addComponent(true, toByteBuf(component));
+                }
+            }
+            return composite;
         } else {
             final BytesRefIterator iterator = reference.iterator();
             // usually we have one, two, or three components from the header, the message, and a buffer
@@ -141,6 +157,33 @@ public class Netty4Utils {
         return new ByteBufBytesReference(buffer, size);
     }
 
+    /**
+     * Returns the number of bytes that retaining the given buffer, or a slice of it, keeps alive: the capacity of the buffers that
+     * it is derived from, or of all of its components if it is a composite buffer.
+     */
+    public static long retainedCapacity(final ByteBuf buffer) {
+        final Set<ByteBuf> roots = Collections.newSetFromMap(new IdentityHashMap<>());
+        addRoots(buffer, roots);
+        long capacity = 0;
+        for (ByteBuf root : roots) {
+            capacity += root.capacity();
+        }
+        return capacity;
+    }
+
+    private static void addRoots(final ByteBuf buffer, final Set<ByteBuf> roots) {
+        if (buffer instanceof CompositeByteBuf) {
+            for (ByteBuf component : (CompositeByteBuf) buffer) {
+                addRoots(component, roots);
+            }
+        } else if (buffer.unwrap() != null) {
+            // slices and duplicates keep the buffer they are derived from alive
+            addRoots(buffer.unwrap(), roots);
+        } else {
+            roots.add(buffer);
+        }
+    }
+
     public static void closeChannels(final Collection<Channel> channels) throws IOException {
         IOException closingExceptions = null;
         final List<ChannelFuture> futures = new ArrayList<>();
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.http.netty4;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
@@ -41,6 +42,7 @@ import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.bytes.ReleasablePagedBytesReference;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
@@ -252,6 +254,48 @@ public class Netty4HttpChannelTests extends ESTestCase {
         }
     }
 
+    public void testRequestContentReleasedOnSendResponse() {
+        final Settings settings = Settings.builder().build();
+        final NamedXContentRegistry registry = xContentRegistry();
+        try (Netty4HttpServerTransport httpServerTransport =
+                 new Netty4HttpServerTransport(settings, networkService, bigArrays, threadPool, registry, new NullDispatcher())) {
+            final byte[] bytes = randomByteArrayOfLength(randomIntBetween(1, 1024));
+            final ByteBuf content = Unpooled.copiedBuffer(bytes);
+            final FullHttpRequest httpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/", content);
+            final EmbeddedChannel embeddedChannel = new EmbeddedChannel();
+            final Netty4HttpRequest request = new Netty4HttpRequest(registry, httpRequest, embeddedChannel);
+            final Netty4HttpChannel channel =
+                new Netty4HttpChannel(httpServerTransport, request, null, randomBoolean(), threadPool.getThreadContext());
+            // handlers that allow unsafe buffers read the content without copying it until they respond
+            assertEquals(new BytesArray(bytes), request.content());
+            assertEquals(1, content.refCnt());
+            channel.sendResponse(new TestResponse(bigArrays));
+            assertEquals(0, content.refCnt());
+        }
+    }
+
+    public void testEnsureSafeBuffersCopiesAndReleasesRequestContent() {
+        final Settings settings = Settings.builder().build();
+        final NamedXContentRegistry registry = xContentRegistry();
+        try (Netty4HttpServerTransport httpServerTransport =
+                 new Netty4HttpServerTransport(settings, networkService, bigArrays, threadPool, registry, new NullDispatcher())) {
+            final byte[] bytes = randomByteArrayOfLength(randomIntBetween(1, 1024));
+            final ByteBuf content = Unpooled.copiedBuffer(bytes);
+            final FullHttpRequest httpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/", content);
+            final EmbeddedChannel embeddedChannel = new EmbeddedChannel();
+            final Netty4HttpRequest request = new Netty4HttpRequest(registry, httpRequest, embeddedChannel);
+            final Netty4HttpChannel channel =
+                new Netty4HttpChannel(httpServerTransport, request, null, randomBoolean(), threadPool.getThreadContext());
+            request.ensureSafeBuffers();
+            assertEquals(0, content.refCnt());
+            assertThat(request.content(), instanceOf(BytesArray.class));
+            assertEquals(new BytesArray(bytes), request.content());
+            // the copy outlives the response
+            channel.sendResponse(new TestResponse(bigArrays));
+            assertEquals(new BytesArray(bytes), request.content());
+        }
+    }
+
     public void testReleaseOnSendToChannelAfterException() throws IOException {
         final Settings settings = Settings.builder().build();
         final NamedXContentRegistry registry = xContentRegistry();
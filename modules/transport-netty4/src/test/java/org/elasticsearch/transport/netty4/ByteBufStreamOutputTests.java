@@ -0,0 +1,99 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport.netty4;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.CompositeBytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+
+public class ByteBufStreamOutputTests extends ESTestCase {
+
+    public void testWriteAndRead() throws IOException {
+        final byte[] expected = randomByteArrayOfLength(randomIntBetween(0, 4 * ByteBufStreamOutput.CHUNK_SIZE));
+        try (ByteBufStreamOutput out = new ByteBufStreamOutput(PooledByteBufAllocator.DEFAULT)) {
+            int offset = 0;
+            while (offset < expected.length) {
+                if (randomBoolean()) {
+                    out.writeByte(expected[offset++]);
+                } else {
+                    final int length = randomIntBetween(0, expected.length - offset);
+                    out.writeBytes(expected, offset, length);
+                    offset += length;
+                }
+                assertEquals(offset, out.position());
+            }
+            final BytesReference bytes = out.bytes();
+            assertEquals(expected.length, bytes.length());
+            assertArrayEquals(expected, BytesReference.toBytes(bytes));
+        }
+    }
+
+    public void testSerialization() throws IOException {
+        try (ByteBufStreamOutput out = new ByteBufStreamOutput(PooledByteBufAllocator.DEFAULT)) {
+            final String value = randomRealisticUnicodeOfLengthBetween(0, 2 * ByteBufStreamOutput.CHUNK_SIZE);
+            final long number = randomLong();
+            out.writeString(value);
+            out.writeZLong(number);
+            try (StreamInput in = out.bytes().streamInput()) {
+                assertEquals(value, in.readString());
+                assertEquals(number, in.readZLong());
+            }
+        }
+    }
+
+    public void testReleasedOnClose() throws IOException {
+        final ByteBufStreamOutput out = new ByteBufStreamOutput(PooledByteBufAllocator.DEFAULT);
+        out.writeBytes(randomByteArrayOfLength(randomIntBetween(1, 2 * ByteBufStreamOutput.CHUNK_SIZE)));
+        final ByteBuf buffer = ((ByteBufBytesReference) out.bytes()).toByteBuf();
+        assertEquals(1, buffer.refCnt());
+        out.close();
+        assertEquals(0, buffer.refCnt());
+        expectThrows(IllegalStateException.class, () -> out.writeByte((byte) 0));
+    }
+
+    public void testWrittenToChannel() throws IOException {
+        final ByteBufStreamOutput out = new ByteBufStreamOutput(PooledByteBufAllocator.DEFAULT);
+        final byte[] body = randomByteArrayOfLength(randomIntBetween(1, 2 * ByteBufStreamOutput.CHUNK_SIZE));
+        out.writeBytes(body);
+        final ByteBuf buffer = ((ByteBufBytesReference) out.bytes()).toByteBuf();
+        final BytesReference header = new BytesArray(randomByteArrayOfLength(randomIntBetween(1, 20)));
+        // the message may be written in several pieces, each of which holds its own reference to the buffer
+        final int split = randomIntBetween(0, body.length);
+        final BytesReference first = new CompositeBytesReference(header, out.bytes().slice(0, split));
+        final BytesReference second = out.bytes().slice(split, body.length - split);
+        final ByteBuf firstBuffer = Netty4Utils.toByteBuf(first);
+        final ByteBuf secondBuffer = Netty4Utils.toByteBuf(second);
+        assertArrayEquals(BytesReference.toBytes(first), BytesReference.toBytes(Netty4Utils.toBytesReference(firstBuffer)));
+        assertArrayEquals(BytesReference.toBytes(second), BytesReference.toBytes(Netty4Utils.toBytesReference(secondBuffer)));
+        // netty releases messages once they are written
+        firstBuffer.release();
+        secondBuffer.release();
+        assertEquals(1, buffer.refCnt());
+        // and the stream releases its own reference
+        out.close();
+        assertEquals(0, buffer.refCnt());
+    }
+}
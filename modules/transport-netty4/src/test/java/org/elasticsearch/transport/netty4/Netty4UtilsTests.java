@@ -79,6 +79,25 @@ public class Netty4UtilsTests extends ESTestCase {
         assertArrayEquals(BytesReference.toBytes(ref), BytesReference.toBytes(bytesReference));
     }
 
+    public void testRetainedCapacity() {
+        final ByteBuf buffer = Unpooled.buffer(randomIntBetween(1, 1024), 4096);
+        buffer.writeBytes(randomByteArrayOfLength(buffer.capacity()));
+        // a slice keeps the whole buffer alive
+        final int sliceLength = randomIntBetween(1, buffer.capacity());
+        assertEquals(buffer.capacity(), Netty4Utils.retainedCapacity(buffer.slice(0, sliceLength)));
+        assertEquals(buffer.capacity(), Netty4Utils.retainedCapacity(buffer.duplicate()));
+
+        final ByteBuf other = Unpooled.buffer(randomIntBetween(1, 1024));
+        other.writeBytes(randomByteArrayOfLength(other.capacity()));
+        final CompositeByteBuf composite = Unpooled.compositeBuffer();
+        // components that share a buffer are only counted once
+        composite.addComponents(true, buffer.retainedSlice(0, sliceLength), buffer.retainedDuplicate(), other);
+        assertEquals(buffer.capacity() + other.capacity(), Netty4Utils.retainedCapacity(composite));
+        assertEquals(buffer.capacity() + other.capacity(), Netty4Utils.retainedCapacity(composite.slice(0, 1)));
+        composite.release();
+        buffer.release();
+    }
+
     public void testMaybeError() {
         final Error outOfMemoryError = new OutOfMemoryError();
         assertError(outOfMemoryError, outOfMemoryError);
@@ -20,12 +20,18 @@
 package org.elasticsearch.transport.netty4;
 
 import org.elasticsearch.Version;
+import io.netty.buffer.ByteBuf;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.network.NetworkService;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
@@ -35,19 +41,30 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.AbstractSimpleTransportTestCase;
 import org.elasticsearch.transport.BindTransportException;
 import org.elasticsearch.transport.ConnectTransportException;
+import org.elasticsearch.transport.EmptyTransportResponseHandler;
+import org.elasticsearch.transport.FutureTransportResponseHandler;
 import org.elasticsearch.transport.TcpChannel;
 import org.elasticsearch.transport.TcpTransport;
 import org.elasticsearch.transport.Transport;
+import org.elasticsearch.transport.TransportFuture;
+import org.elasticsearch.transport.TransportRequest;
+import org.elasticsearch.transport.TransportResponse;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
 
 public class SimpleNetty4TransportTests extends AbstractSimpleTransportTestCase {
 
@@ -128,4 +145,129 @@ public class SimpleNetty4TransportTests extends AbstractSimpleTransportTestCase
         assertEquals("Failed to bind to ["+ port + "]", bindTransportException.getMessage());
     }
 
+    public void testZeroCopyRequestsAreReleasedOnResponse() throws Exception {
+        final String zeroCopyAction = "internal:test/zero_copy";
+        final String copyAction = "internal:test/copy";
+        final Settings settings = Settings.builder()
+            .put(TcpTransport.PORT.getKey(), "0")
+            .putList(TcpTransport.TCP_ZERO_COPY_ACTIONS.getKey(), zeroCopyAction)
+            // small reads, so that the cumulative buffer of a message is not much larger than the message
+            .put(Netty4Transport.NETTY_RECEIVE_PREDICTOR_SIZE.getKey(), "1kb")
+            .build();
+        try (MockTransportService sender = nettyFromThreadPool(settings, threadPool, Version.CURRENT, null, true);
+             MockTransportService receiver = nettyFromThreadPool(settings, threadPool, Version.CURRENT, null, true)) {
+            receiver.acceptIncomingRequests();
+            final AtomicReference<BytesReference> received = new AtomicReference<>();
+            final AtomicReference<ByteBuf> retainedBuffer = new AtomicReference<>();
+            receiver.registerRequestHandler(zeroCopyAction, BytesRequest::new, ThreadPool.Names.GENERIC, (request, channel) -> {
+                // the request reads a slice of the network buffer, which must be alive until the response is sent
+                assertThat(request.bytes, instanceOf(ByteBufBytesReference.class));
+                final ByteBuf buffer = ((ByteBufBytesReference) request.bytes).toByteBuf();
+                assertThat(buffer.refCnt(), greaterThan(0));
+                retainedBuffer.set(buffer);
+                received.set(new BytesArray(BytesReference.toBytes(request.bytes)));
+                channel.sendResponse(TransportResponse.Empty.INSTANCE);
+            });
+            receiver.registerRequestHandler(copyAction, BytesRequest::new, ThreadPool.Names.GENERIC, (request, channel) -> {
+                assertThat(request.bytes, not(instanceOf(ByteBufBytesReference.class)));
+                received.set(request.bytes);
+                channel.sendResponse(TransportResponse.Empty.INSTANCE);
+            });
+            sender.connectToNode(receiver.getLocalNode());
+
+            final BytesReference bytes = new BytesArray(randomByteArrayOfLength(randomIntBetween(4 << 10, 1 << 16)));
+            sender.submitRequest(receiver.getLocalNode(), zeroCopyAction, new BytesRequest(bytes),
+                new EmptyTransportResponseHandler(ThreadPool.Names.SAME)).txGet();
+            assertEquals(bytes, received.get());
+            // leak detection: the message is released once the response is sent
+            assertBusy(() -> assertEquals(0, retainedBuffer.get().refCnt()));
+
+            sender.submitRequest(receiver.getLocalNode(), copyAction, new BytesRequest(bytes),
+                new EmptyTransportResponseHandler(ThreadPool.Names.SAME)).txGet();
+            assertEquals(bytes, received.get());
+        }
+    }
+
+    public void testLargeMessagesAreSentInChunks() throws Exception {
+        final String action = "internal:test/echo";
+        final Settings settings = Settings.builder()
+            .put(TcpTransport.PORT.getKey(), "0")
+            .put(TcpTransport.TCP_MESSAGE_CHUNK_SIZE.getKey(), new ByteSizeValue(randomIntBetween(1, 1024)))
+            .build();
+        try (MockTransportService sender = nettyFromThreadPool(settings, threadPool, Version.CURRENT, null, true);
+             MockTransportService receiver = nettyFromThreadPool(settings, threadPool, Version.CURRENT, null, true)) {
+            receiver.acceptIncomingRequests();
+            receiver.registerRequestHandler(action, BytesRequest::new, ThreadPool.Names.GENERIC,
+                (request, channel) -> channel.sendResponse(new BytesResponse(new BytesArray(BytesReference.toBytes(request.bytes)))));
+            sender.connectToNode(receiver.getLocalNode());
+
+            // chunks of concurrent messages are interleaved on the same channels
+            final List<BytesReference> sent = new ArrayList<>();
+            final List<TransportFuture<BytesResponse>> responses = new ArrayList<>();
+            final int numRequests = randomIntBetween(1, 10);
+            for (int i = 0; i < numRequests; i++) {
+                final BytesReference bytes = new BytesArray(randomByteArrayOfLength(randomIntBetween(0, 1 << 16)));
+                sent.add(bytes);
+                responses.add(sender.submitRequest(receiver.getLocalNode(), action, new BytesRequest(bytes),
+                    new FutureTransportResponseHandler<BytesResponse>() {
+                        @Override
+                        public BytesResponse newInstance() {
+                            return new BytesResponse();
+                        }
+                    }));
+            }
+            for (int i = 0; i < numRequests; i++) {
+                assertEquals(sent.get(i), responses.get(i).txGet().bytes);
+            }
+        }
+    }
+
+    private static final class BytesResponse extends TransportResponse {
+
+        private BytesReference bytes;
+
+        BytesResponse() {
+        }
+
+        BytesResponse(BytesReference bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            bytes = in.readBytesReference();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeBytesReference(bytes);
+        }
+    }
+
+    private static final class BytesRequest extends TransportRequest {
+
+        private BytesReference bytes;
+
+        BytesRequest() {
+        }
+
+        BytesRequest(BytesReference bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            bytes = in.readBytesReference();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeBytesReference(bytes);
+        }
+    }
+
 }
@@ -65,6 +65,7 @@ import org.elasticsearch.index.similarity.SimilarityService;
 import org.elasticsearch.index.snapshots.IndexShardSnapshotStatus;
 import org.elasticsearch.index.store.DirectoryService;
 import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.translog.TranslogGroupCommitService;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
 import org.elasticsearch.indices.recovery.PeerRecoveryTargetService;
@@ -117,18 +118,21 @@ public abstract class IndexShardTestCase extends ESTestCase {
     };
 
     protected ThreadPool threadPool;
+    protected TranslogGroupCommitService translogGroupCommitService;
     private long primaryTerm;
 
     @Override
     public void setUp() throws Exception {
         super.setUp();
         threadPool = new TestThreadPool(getClass().getName(), threadPoolSettings());
+        translogGroupCommitService = new TranslogGroupCommitService(Settings.EMPTY, threadPool.generic());
         primaryTerm = randomIntBetween(1, 100); // use random but fixed term for creating shards
     }
 
     @Override
     public void tearDown() throws Exception {
         try {
+            translogGroupCommitService.close();
             ThreadPool.terminate(threadPool, 30, TimeUnit.SECONDS);
         } finally {
             super.tearDown();
@@ -297,7 +301,7 @@ public abstract class IndexShardTestCase extends ESTestCase {
             indexShard = new IndexShard(routing, indexSettings, shardPath, store, () -> null, indexCache, mapperService, similarityService,
                 engineFactory, indexEventListener, indexSearcherWrapper, threadPool,
                 BigArrays.NON_RECYCLING_INSTANCE, warmer, Collections.emptyList(), Arrays.asList(listeners), globalCheckpointSyncer,
-                breakerService);
+                breakerService, translogGroupCommitService);
             success = true;
         } finally {
             if (success == false) {